@@ -15,15 +15,16 @@
  */
 package org.robovm.answerme.app;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 import org.robovm.answerme.core.AnswerMeService;
 import org.robovm.answerme.core.api.Topic;
 import org.robovm.apple.dispatch.DispatchQueue;
+import org.robovm.apple.foundation.NSData;
 import org.robovm.apple.foundation.NSIndexPath;
-import org.robovm.apple.foundation.NSURL;
-import org.robovm.apple.foundation.NSURLSession;
 import org.robovm.apple.uikit.UIImage;
 import org.robovm.apple.uikit.UIImageView;
 import org.robovm.apple.uikit.UILabel;
@@ -55,12 +56,25 @@ public class AnswerMeViewController extends UITableViewController {
 
     @IBOutlet UISearchBar searchBar;
 
+    /**
+     * Maximum number of topics shown from the offline index.
+     */
+    private static final int MAX_OFFLINE_TOPICS = 50;
+
     private List<Topic> topics = Collections.emptyList();
 
     private AnswerMeService answerMeService;
 
     public AnswerMeViewController() {
-        this.answerMeService = new AnswerMeService();
+        // Keep answers, icons and previously seen topics in <Application_Home>/Library/Caches so they survive restarts
+        File caches = new File(System.getenv("HOME"), "Library/Caches");
+        this.answerMeService = new AnswerMeService.Builder()
+                .diskCache(new File(caches, "answers"), 4 * 1024 * 1024)
+                .iconDiskCache(new File(caches, "icons"), 8 * 1024 * 1024)
+                .offlineIndex(new File(caches, "topics.idx"), 5000)
+                .hedgeRequests(true)
+                .supersedePrevious(true)
+                .build();
     }
 
     @Override
@@ -68,22 +82,40 @@ public class AnswerMeViewController extends UITableViewController {
         super.viewDidLoad();
 
         searchBar.setDelegate(new UISearchBarDelegateAdapter() {
+            @Override
+            public void textDidChange(UISearchBar searchBar, String searchText) {
+                // Show matching topics seen before while typing
+                showOfflineTopics(searchText);
+            }
+
             @Override
             public void searchButtonClicked(UISearchBar searchBar) {
                 String query = searchBar.getText();
 
-                answerMeService.search(query, (l -> {
+                // Show what we have offline until the answer arrives
+                showOfflineTopics(query);
+                // Deliver the topics straight to the main queue. Replace the
+                // offline topics with each topic as soon as it has been parsed
+                // and with the complete answer once it has arrived.
+                List<Topic> streamed = new ArrayList<>();
+                answerMeService.search(query, r -> DispatchQueue.getMainQueue().async(r), topic -> {
+                    streamed.add(topic);
+                    topics = streamed;
+                    getTableView().reloadData();
+                }).thenAccept(l -> {
                     topics = l;
-                    DispatchQueue.getMainQueue().async(() -> {
-                        getTableView().reloadData();
-                    });
-                }), t -> {
-                    // TODO: Error handling
-                    });
+                    getTableView().reloadData();
+                });
+                // TODO: Error handling
             }
         });
     }
 
+    private void showOfflineTopics(String prefix) {
+        topics = answerMeService.lookupOffline(prefix, MAX_OFFLINE_TOPICS);
+        getTableView().reloadData();
+    }
+
     @Override
     public UITableViewCell getCellForRow(UITableView uiTableView, NSIndexPath nsIndexPath) {
         TopicCell cell = (TopicCell) uiTableView.dequeueReusableCell("cell");
@@ -92,12 +124,21 @@ public class AnswerMeViewController extends UITableViewController {
         cell.icon.setImage(null);
 
         if (topic.icon != null && topic.icon.url != null && !topic.icon.url.isEmpty()) {
-            NSURLSession.getSharedSession().newDataTask(new NSURL(topic.icon.url), (data, response, error) -> {
-                DispatchQueue.getMainQueue().async(() -> {
-                    cell.icon.setContentMode(UIViewContentMode.ScaleAspectFill);
-                    cell.icon.setImage(new UIImage(data));
-                });
-            }).resume();
+            // Icons have usually been prefetched by the time the cell is shown
+            byte[] cached = answerMeService.getIconCache().getIfPresent(topic.icon.url);
+            if (cached != null) {
+                cell.icon.setContentMode(UIViewContentMode.ScaleAspectFill);
+                cell.icon.setImage(new UIImage(new NSData(cached)));
+            } else {
+                answerMeService.getIconCache().get(topic.icon.url, data -> {
+                    DispatchQueue.getMainQueue().async(() -> {
+                        cell.icon.setContentMode(UIViewContentMode.ScaleAspectFill);
+                        cell.icon.setImage(new UIImage(new NSData(data)));
+                    });
+                }, t -> {
+                    // No icon
+                    });
+            }
         }
 
         return cell;
@@ -15,12 +15,38 @@
  */
 package org.robovm.answerme.core;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.robovm.answerme.core.api.InstantAnswerAPI;
 import org.robovm.answerme.core.api.Result;
+import org.robovm.answerme.core.api.ResultTypeAdapter;
 import org.robovm.answerme.core.api.Topic;
 
+import com.google.gson.GsonBuilder;
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.ResponseBody;
+
 import retrofit.GsonConverterFactory;
 import retrofit.Response;
 import retrofit.Retrofit;
@@ -28,43 +54,1153 @@ import retrofit.Retrofit;
 /**
  * {@link AnswerMeService} encapsulates the <a
  * href="https://duckduckgo.com/api">DuckDuckGo Instant Answer API</a>.
+ * <p>
+ * Answers are cached on two levels: parsed {@link Result}s are kept in an
+ * in-memory {@link ResultCache} keyed by normalized query and, if a cache
+ * directory has been configured using {@link Builder#diskCache(File, long)},
+ * raw HTTP responses are kept on disk so that answers survive restarts. Both
+ * levels use the same time to live.
+ * <p>
+ * Identical searches issued while a request for the same (normalized) query
+ * is in flight share that request. Normalization only applies to these
+ * keys, the API is sent the query of the first search, trimmed but
+ * otherwise as typed. Every search returns a
+ * {@link Cancellable} and the underlying request is cancelled once all
+ * searches sharing it have been cancelled. Search-as-you-type UIs can enable
+ * {@link Builder#supersedePrevious(boolean)} to have each new search cancel
+ * the previous one so that only the callbacks of the latest search are run.
+ * {@link #search(String, Executor)} returns a {@link CompletableFuture}
+ * completed on an {@link Executor} chosen by the caller, e.g. the UI thread.
+ * {@link #searchAll(Collection)} runs many queries as a batch with a bounded
+ * number of requests in flight.
+ * <p>
+ * Answers are parsed by {@link ResultTypeAdapter} while they are downloaded.
+ * {@link #search(String, Executor, Callback)} reports each {@link Topic} as
+ * soon as it has been parsed so that a UI can show the first topics before
+ * the whole answer has arrived.
+ * <p>
+ * Failed requests are retried with jittered exponential backoff. If enabled
+ * using {@link Builder#hedgeRequests(boolean)} a duplicate request is sent
+ * when the first hasn't completed within the 95th percentile of past request
+ * latencies and the first response wins. A {@link CircuitBreaker} stops
+ * requests after repeated failures. While it is open, and whenever all
+ * retries fail, stale answers from the in-memory or disk cache are served if
+ * there are any. The latency of each search is recorded in a
+ * {@link LatencyHistogram} per {@link Outcome}.
+ * <p>
+ * If enabled using {@link Builder#offlineIndex(File, int)} all
+ * {@link Topic}s received are added to a persistent {@link TopicIndex} which
+ * {@link #lookupOffline(String, int)} searches by prefix without touching the
+ * network, e.g. to show something while a search is in flight.
+ * <p>
+ * When an answer arrives from the network the icons of its {@link Topic}s
+ * are prefetched into the {@link IconCache} returned by
+ * {@link #getIconCache()} so that the UI usually finds them there.
  */
 public class AnswerMeService {
 
+    public static final String DEFAULT_BASE_URL = "http://api.duckduckgo.com";
+
+    private static final long ICON_TTL_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * Requests are hedged after this delay until enough latencies have been
+     * recorded to compute a p95.
+     */
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 1000;
+    private static final int MIN_HEDGE_SAMPLES = 20;
+
+    /**
+     * The offline index is saved this long after the last change.
+     */
+    private static final long INDEX_SAVE_DELAY_MILLIS = 2000;
+
+    /**
+     * Runs hedge and retry timers for all instances. The tasks only enqueue
+     * requests so a single thread is enough.
+     */
+    private static final ScheduledExecutorService SCHEDULER = createScheduler("AnswerMeService scheduler");
+
+    /**
+     * Loads and saves offline indexes for all instances. Kept off
+     * {@link #SCHEDULER} so that slow disk I/O never delays hedges and
+     * retries.
+     */
+    private static final ScheduledExecutorService INDEX_IO = createScheduler("AnswerMeService index I/O");
+
+    /**
+     * Runs tasks on the calling thread.
+     */
+    private static final Executor DIRECT = Runnable::run;
+
+    /**
+     * How a search which wasn't answered from the in-memory cache ended.
+     */
+    public enum Outcome {
+        /** Answered by the first attempt. */
+        SUCCESS,
+        /** Answered by the hedged duplicate request. */
+        HEDGED,
+        /** Answered after one or more retries. */
+        RETRIED,
+        /** Answered with a stale cached answer after failures. */
+        STALE,
+        /** Failed. */
+        FAILURE
+    }
+
     private final InstantAnswerAPI api;
+    private final ResultCache resultCache;
+    private final Cache diskCache;
+    private final boolean supersedePrevious;
+    private final int maxConcurrentRequests;
+    private final boolean hedgeRequests;
+    private final int maxRetries;
+    private final long retryBaseDelayMillis;
+    private final CircuitBreaker circuitBreaker;
+    private final LatencyHistogram attemptLatency = new LatencyHistogram();
+    private final Map<Outcome, LatencyHistogram> latency = new EnumMap<>(Outcome.class);
+    private final IconCache iconCache;
+    private final TopicIndex offlineIndex;
+    private final AtomicBoolean indexSavePending = new AtomicBoolean();
+    private final boolean prefetchIcons;
+
+    /**
+     * Requests currently in flight keyed by normalized query. Guarded by
+     * itself.
+     */
+    private final Map<String, InFlight> inFlight = new HashMap<>();
+    private Search latestSearch;
 
     /**
-     * Creates a new instance.
+     * Creates a new instance with the default configuration: a 100 entry
+     * in-memory cache with a time to live of 10 minutes, no disk cache and
+     * icon prefetching into a 1 MB in-memory icon cache.
      */
     public AnswerMeService() {
+        this(new Builder());
+    }
+
+    private AnswerMeService(Builder builder) {
+        OkHttpClient client = new OkHttpClient();
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(builder.maxConcurrentRequests);
+        dispatcher.setMaxRequestsPerHost(builder.maxConcurrentRequests);
+        client.setDispatcher(dispatcher);
+        maxConcurrentRequests = builder.maxConcurrentRequests;
+        if (builder.cacheDirectory != null) {
+            diskCache = new Cache(builder.cacheDirectory, builder.diskCacheSize);
+            client.setCache(diskCache);
+            client.networkInterceptors().add(new CacheControlInterceptor(builder.ttlMillis));
+        } else {
+            diskCache = null;
+        }
+        supersedePrevious = builder.supersedePrevious;
+        hedgeRequests = builder.hedgeRequests;
+        maxRetries = builder.maxRetries;
+        retryBaseDelayMillis = builder.retryBaseDelayMillis;
+        circuitBreaker = new CircuitBreaker(builder.failureThreshold, builder.openMillis, TimeUnit.MILLISECONDS);
+        for (Outcome outcome : Outcome.values()) {
+            latency.put(outcome, new LatencyHistogram());
+        }
+        prefetchIcons = builder.prefetchIcons;
+        iconCache = new IconCache(createIconClient(builder), builder.iconMemoryCacheSize);
+        if (builder.offlineIndexFile != null) {
+            offlineIndex = new TopicIndex(builder.offlineIndexFile, builder.offlineIndexSize);
+            INDEX_IO.execute(() -> {
+                try {
+                    offlineIndex.load();
+                } catch (IOException e) {
+                    // Start over with an empty index
+                }
+            });
+        } else {
+            offlineIndex = null;
+        }
+        resultCache = new ResultCache(builder.memoryCacheSize, builder.ttlMillis, TimeUnit.MILLISECONDS);
         api = new Retrofit.Builder()
-                .baseUrl("http://api.duckduckgo.com")
-                .addConverterFactory(GsonConverterFactory.create())
+                .baseUrl(builder.baseUrl)
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create(new GsonBuilder()
+                        .registerTypeAdapter(Result.class, new ResultTypeAdapter())
+                        .create()))
                 .build()
                 .create(InstantAnswerAPI.class);
     }
 
+    private static ScheduledExecutorService createScheduler(String threadName) {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private long hedgeDelayMillis() {
+        if (attemptLatency.getCount() < MIN_HEDGE_SAMPLES) {
+            return DEFAULT_HEDGE_DELAY_MILLIS;
+        }
+        return Math.max(1, attemptLatency.getPercentile(95, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Returns the delay before the specified retry (1-based): a random value
+     * between half and all of the exponentially growing backoff.
+     */
+    private long backoffMillis(int retry) {
+        long backoff = retryBaseDelayMillis << Math.min(retry - 1, 20);
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * Returns the {@link LatencyHistogram} of searches which ended with the
+     * specified {@link Outcome}. Searches answered from the in-memory cache
+     * aren't recorded.
+     */
+    public LatencyHistogram getLatencyHistogram(Outcome outcome) {
+        return latency.get(outcome);
+    }
+
+    /**
+     * Returns the {@link CircuitBreaker} guarding requests to the Instant
+     * Answer API.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    private static OkHttpClient createIconClient(Builder builder) {
+        OkHttpClient client = new OkHttpClient();
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(builder.iconParallelism);
+        dispatcher.setMaxRequestsPerHost(builder.iconParallelism);
+        client.setDispatcher(dispatcher);
+        if (builder.iconCacheDirectory != null) {
+            client.setCache(new Cache(builder.iconCacheDirectory, builder.iconDiskCacheSize));
+            client.networkInterceptors().add(new CacheControlInterceptor(ICON_TTL_MILLIS));
+        }
+        return client;
+    }
+
+    /**
+     * Returns at most {@code limit} previously seen {@link Topic}s whose text
+     * or title starts with the specified prefix. Never touches the network.
+     * Returns an empty list if the offline index hasn't been enabled using
+     * {@link Builder#offlineIndex(File, int)}.
+     */
+    public List<Topic> lookupOffline(String prefix, int limit) {
+        if (offlineIndex == null) {
+            return Collections.emptyList();
+        }
+        return offlineIndex.lookup(prefix, limit);
+    }
+
+    private void index(Result result) {
+        if (offlineIndex == null) {
+            return;
+        }
+        offlineIndex.addAll(result.getTopics());
+        if (indexSavePending.compareAndSet(false, true)) {
+            INDEX_IO.schedule(() -> {
+                indexSavePending.set(false);
+                try {
+                    offlineIndex.save();
+                } catch (IOException e) {
+                    // The index stays dirty and is saved with the next change
+                }
+            }, INDEX_SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the {@link IconCache} used to download and cache the icons of
+     * {@link Topic}s.
+     */
+    public IconCache getIconCache() {
+        return iconCache;
+    }
+
     /**
-     * Asynchronously runs a query for topic summaries.
+     * Returns a snapshot of the hit and miss counts of the in-memory and disk
+     * caches.
+     */
+    public CacheStats getCacheStats() {
+        long diskHits = 0;
+        long diskRequests = 0;
+        if (diskCache != null) {
+            diskHits = diskCache.getHitCount();
+            diskRequests = diskCache.getRequestCount();
+        }
+        return resultCache.getStats(diskHits, diskRequests);
+    }
+
+    /**
+     * Asynchronously runs a query for topic summaries. If the answer to the
+     * same (normalized) query is in the in-memory cache {@code onSuccess} is
+     * called immediately on the calling thread. If a request for the same
+     * query is already in flight this search will share its result.
      * 
      * @param query the query to run.
      * @param onSuccess {@link Callback} which will be run when a result is
      *            returned successfully.
      * @param onFailure {@link Callback} which will be run on failure.
+     * @return a {@link Cancellable} which can be used to cancel the search.
      */
-    public void search(String query, final Callback<List<Topic>> onSuccess,
+    public Cancellable search(String query, final Callback<List<Topic>> onSuccess,
             final Callback<Throwable> onFailure) {
 
-        api.search(query).enqueue(new retrofit.Callback<Result>() {
-            @Override
-            public void onResponse(Response<Result> response, Retrofit retrofit) {
-                onSuccess.call(response.body().getTopics());
+        final Search search = startSearch(query, DIRECT, supersedePrevious, null);
+        search.future.whenComplete((topics, t) -> {
+            if (t == null) {
+                onSuccess.call(topics);
+            } else if (!search.future.isCancelled()) {
+                onFailure.call(t);
             }
+        });
+        return search;
+    }
 
-            @Override
-            public void onFailure(Throwable t) {
-                onFailure.call(t);
+    /**
+     * Asynchronously runs a query for topic summaries. The returned
+     * {@link CompletableFuture} is completed on the specified
+     * {@link Executor}, so stages added to it using the non-async methods
+     * (e.g. {@code thenAccept()}) run there as well without any further
+     * thread hops. As always with {@link CompletableFuture} stages added after
+     * completion run on the thread adding them, so call this from the
+     * {@link Executor}'s thread to have everything happen there. Cancelling
+     * the future cancels the search. Otherwise this behaves like
+     * {@link #search(String, Callback, Callback)}.
+     * 
+     * @param query the query to run.
+     * @param executor the {@link Executor} used to complete the future.
+     * @return a {@link CompletableFuture} of the {@link Topic}s.
+     */
+    public CompletableFuture<List<Topic>> search(String query, Executor executor) {
+        return search(query, executor, null);
+    }
+
+    /**
+     * Like {@link #search(String, Executor)} but also calls {@code onTopic}
+     * on the {@link Executor} for each {@link Topic} as soon as it has been
+     * parsed from the response, before the returned future completes. Topics
+     * are reported in the order they appear in the response, which may differ
+     * from the order of the final list. Answers from the caches and topics
+     * parsed before this search joined an identical search already in flight
+     * are not reported, they're only part of the final list. Topics are never
+     * reported twice, not even if a request is hedged or retried.
+     * 
+     * @param query the query to run.
+     * @param executor the {@link Executor} used to complete the future and
+     *            call {@code onTopic}.
+     * @param onTopic {@link Callback} run for each {@link Topic} parsed. May
+     *            be {@code null}.
+     * @return a {@link CompletableFuture} of the {@link Topic}s.
+     */
+    public CompletableFuture<List<Topic>> search(String query, Executor executor,
+            Callback<Topic> onTopic) {
+
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        return startSearch(query, executor, supersedePrevious, onTopic).future;
+    }
+
+    /**
+     * Runs all the specified queries using at most
+     * {@link Builder#maxConcurrentRequests(int)} requests at a time. See
+     * {@link #searchAll(Collection, int)}.
+     */
+    public CompletableFuture<List<List<Topic>>> searchAll(Collection<String> queries) {
+        return searchAll(queries, maxConcurrentRequests);
+    }
+
+    /**
+     * Asynchronously runs all the specified queries with at most
+     * {@code maxConcurrency} of them in flight at any time. The returned
+     * {@link CompletableFuture} completes with the {@link Topic}s of each
+     * query in the order of {@code queries}. If any query fails the future
+     * completes exceptionally right away and the queries still running are
+     * cancelled. Cancelling the future cancels all remaining queries. Batch
+     * searches never supersede or get superseded by other searches.
+     * 
+     * @param queries the queries to run.
+     * @param maxConcurrency the maximum number of queries to run at once.
+     * @return a {@link CompletableFuture} of the results in query order.
+     */
+    public CompletableFuture<List<List<Topic>>> searchAll(Collection<String> queries,
+            int maxConcurrency) {
+
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency <= 0");
+        }
+        return new Batch(new ArrayList<>(queries), maxConcurrency).start();
+    }
+
+    private Search startSearch(String query, Executor executor, boolean supersede,
+            Callback<Topic> onTopic) {
+
+        String key = ResultCache.normalize(query);
+        final Search search = new Search(executor, onTopic);
+        search.future.whenComplete((topics, t) -> {
+            if (search.future.isCancelled()) {
+                search.cancel();
+            }
+            if (supersede) {
+                // Don't keep the finished search and its topics reachable
+                synchronized (inFlight) {
+                    if (latestSearch == search) {
+                        latestSearch = null;
+                    }
+                }
             }
         });
+        if (supersede) {
+            Search previous;
+            synchronized (inFlight) {
+                previous = latestSearch;
+                latestSearch = search;
+            }
+            if (previous != null) {
+                previous.cancel();
+            }
+        }
+
+        Result cached = resultCache.get(key);
+        if (cached != null) {
+            search.succeeded(cached);
+            return search;
+        }
+
+        InFlight request;
+        boolean start = false;
+        synchronized (inFlight) {
+            request = inFlight.get(key);
+            if (request == null) {
+                request = new InFlight(key, query.trim());
+                inFlight.put(key, request);
+                start = true;
+            }
+            request.searches.add(search);
+            search.request = request;
+        }
+        if (start) {
+            request.start();
+        }
+        return search;
+    }
+
+    /**
+     * A single call to {@link AnswerMeService#searchAll(Collection, int)}.
+     */
+    private class Batch {
+        final List<String> queries;
+        final AtomicReferenceArray<List<Topic>> results;
+        final AtomicReferenceArray<Cancellable> searches;
+        final CompletableFuture<List<List<Topic>>> future = new CompletableFuture<>();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger remaining;
+        final AtomicInteger pendingLaunches = new AtomicInteger();
+        final int maxConcurrency;
+
+        Batch(List<String> queries, int maxConcurrency) {
+            this.queries = queries;
+            this.results = new AtomicReferenceArray<>(queries.size());
+            this.searches = new AtomicReferenceArray<>(queries.size());
+            this.remaining = new AtomicInteger(queries.size());
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        CompletableFuture<List<List<Topic>>> start() {
+            if (queries.isEmpty()) {
+                future.complete(Collections.<List<Topic>> emptyList());
+                return future;
+            }
+            future.whenComplete((r, t) -> {
+                if (t != null) {
+                    cancelAll();
+                }
+            });
+            for (int i = 0; i < maxConcurrency; i++) {
+                launch();
+            }
+            return future;
+        }
+
+        /**
+         * Starts the next query. Answers from the in-memory cache complete
+         * synchronously, so instead of recursing the thread which is already
+         * launching picks up launches requested meanwhile.
+         */
+        void launch() {
+            if (pendingLaunches.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                launchOne();
+            } while (pendingLaunches.decrementAndGet() != 0);
+        }
+
+        private void launchOne() {
+            final int i = next.getAndIncrement();
+            if (i >= queries.size() || future.isDone()) {
+                return;
+            }
+            Search search = startSearch(queries.get(i), DIRECT, false, null);
+            searches.set(i, search);
+            if (future.isDone()) {
+                search.cancel();
+                return;
+            }
+            search.future.whenComplete((topics, t) -> {
+                if (t != null) {
+                    future.completeExceptionally(t);
+                    return;
+                }
+                results.set(i, topics);
+                if (remaining.decrementAndGet() == 0) {
+                    List<List<Topic>> l = new ArrayList<>(queries.size());
+                    for (int j = 0; j < queries.size(); j++) {
+                        l.add(results.get(j));
+                    }
+                    future.complete(Collections.unmodifiableList(l));
+                } else {
+                    launch();
+                }
+            });
+        }
+
+        private void cancelAll() {
+            for (int i = 0; i < searches.length(); i++) {
+                Cancellable search = searches.get(i);
+                if (search != null) {
+                    search.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * A single request to the Instant Answer API shared by all
+     * {@link Search}es for the same query. Runs one or more {@link Attempt}s:
+     * a hedged duplicate if the first is slower than the p95 attempt latency
+     * and retries with jittered exponential backoff after retriable failures.
+     * Falls back to stale answers if all attempts fail or the circuit breaker
+     * is open.
+     */
+    private class InFlight {
+        /** The normalized query used for the {@link ResultCache} and {@link #inFlight}. */
+        final String key;
+        /** The query sent to the API as typed by the user who started the request. */
+        final String query;
+        final List<Search> searches = new ArrayList<>(1);
+        final long started = System.nanoTime();
+
+        /**
+         * The attempts currently running. Guarded by {@code this} as are the
+         * fields below.
+         */
+        private final List<Attempt> attempts = new ArrayList<>(2);
+        private ScheduledFuture<?> timer;
+        private int retries;
+        private boolean hedged;
+        private boolean finished;
+
+        /**
+         * Serializes topic reports so that they keep the order of the
+         * response. Guards {@link #topicsReported}.
+         */
+        private final Object topicLock = new Object();
+        private int topicsReported;
+
+        InFlight(String key, String query) {
+            this.key = key;
+            this.query = query;
+        }
+
+        void start() {
+            if (!circuitBreaker.allowRequest()) {
+                finish();
+                fallBack(new IOException("Circuit breaker open"));
+                return;
+            }
+            attempt(false);
+        }
+
+        private synchronized void attempt(boolean hedge) {
+            if (finished) {
+                return;
+            }
+            Attempt attempt = new Attempt(this, api.searchStreaming(query), hedge);
+            attempts.add(attempt);
+            if (hedge) {
+                hedged = true;
+            } else if (hedgeRequests && !hedged) {
+                timer = SCHEDULER.schedule(() -> attempt(true), hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+            }
+            attempt.call.enqueue(attempt);
+        }
+
+        private void retry() {
+            if (!circuitBreaker.allowRequest()) {
+                if (finish() != null) {
+                    fallBack(new IOException("Circuit breaker open"));
+                }
+                return;
+            }
+            attempt(false);
+        }
+
+        /**
+         * Marks this request as finished and returns the attempts which were
+         * still running or {@code null} if it had already finished.
+         */
+        private synchronized List<Attempt> finish() {
+            if (finished) {
+                return null;
+            }
+            finished = true;
+            if (timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+            List<Attempt> running = new ArrayList<>(attempts);
+            attempts.clear();
+            return running;
+        }
+
+        void cancel() {
+            List<Attempt> running = finish();
+            if (running != null) {
+                for (Attempt attempt : running) {
+                    attempt.call.cancel();
+                }
+            }
+        }
+
+        /**
+         * Reports the {@code index}th topic parsed by an {@link Attempt}
+         * unless another attempt has already reported it. Hedged and retried
+         * attempts parse the same response, so each topic is reported once.
+         */
+        void topicParsed(int index, Topic topic) {
+            synchronized (topicLock) {
+                if (index != topicsReported) {
+                    return;
+                }
+                topicsReported++;
+                List<Search> targets;
+                synchronized (inFlight) {
+                    targets = new ArrayList<>(searches);
+                }
+                for (Search search : targets) {
+                    search.topic(topic);
+                }
+            }
+        }
+
+        void succeeded(Attempt winner, Result result) {
+            List<Attempt> running = finish();
+            if (running == null) {
+                return;
+            }
+            for (Attempt attempt : running) {
+                if (attempt != winner) {
+                    attempt.call.cancel();
+                }
+            }
+            attemptLatency.record(System.nanoTime() - winner.started);
+            circuitBreaker.onSuccess();
+            record(winner.hedge ? Outcome.HEDGED : retries > 0 ? Outcome.RETRIED : Outcome.SUCCESS);
+            resultCache.put(key, result);
+            index(result);
+            deliver(result);
+            if (prefetchIcons) {
+                iconCache.prefetch(result.getTopics());
+            }
+        }
+
+        void failed(Attempt attempt, Throwable t, boolean retriable) {
+            boolean giveUp = false;
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                attempts.remove(attempt);
+                if (attempts.isEmpty()) {
+                    // No hedged attempt left which could still succeed
+                    if (timer != null) {
+                        timer.cancel(false);
+                    }
+                    if (retriable && retries < maxRetries) {
+                        retries++;
+                        timer = SCHEDULER.schedule(this::retry, backoffMillis(retries), TimeUnit.MILLISECONDS);
+                    } else {
+                        timer = null;
+                        giveUp = true;
+                    }
+                }
+            }
+            if (retriable) {
+                circuitBreaker.onFailure();
+            } else {
+                // The API responded, it just didn't like the request
+                circuitBreaker.onSuccess();
+            }
+            if (giveUp && finish() != null) {
+                fallBack(t);
+            }
+        }
+
+        /**
+         * Delivers a stale answer from the in-memory cache or, if there is
+         * none, from the disk cache. Fails with {@code t} if neither has one.
+         */
+        private void fallBack(final Throwable t) {
+            Result stale = resultCache.getStale(key);
+            if (stale != null) {
+                record(Outcome.STALE);
+                deliver(stale);
+                return;
+            }
+            if (diskCache == null) {
+                record(Outcome.FAILURE);
+                fail(t);
+                return;
+            }
+            api.searchCached(query).enqueue(new retrofit.Callback<Result>() {
+                @Override
+                public void onResponse(Response<Result> response, Retrofit retrofit) {
+                    if (response.isSuccess() && response.body() != null) {
+                        record(Outcome.STALE);
+                        deliver(response.body());
+                    } else {
+                        onFailure(t);
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable ignored) {
+                    record(Outcome.FAILURE);
+                    fail(t);
+                }
+            });
+        }
+
+        private void record(Outcome outcome) {
+            latency.get(outcome).record(System.nanoTime() - started);
+        }
+
+        private List<Search> complete() {
+            synchronized (inFlight) {
+                if (inFlight.get(key) == this) {
+                    inFlight.remove(key);
+                }
+                return new ArrayList<>(searches);
+            }
+        }
+
+        private void deliver(Result result) {
+            for (Search search : complete()) {
+                search.succeeded(result);
+            }
+        }
+
+        private void fail(Throwable t) {
+            for (Search search : complete()) {
+                search.failed(t);
+            }
+        }
+    }
+
+    /**
+     * A single HTTP request made on behalf of an {@link InFlight}. Parses the
+     * response while it is downloaded and reports each {@link Topic} to the
+     * {@link InFlight}.
+     */
+    private static class Attempt implements retrofit.Callback<ResponseBody>, Callback<Topic> {
+        final InFlight request;
+        final retrofit.Call<ResponseBody> call;
+        final boolean hedge;
+        final long started = System.nanoTime();
+        private int topics;
+
+        Attempt(InFlight request, retrofit.Call<ResponseBody> call, boolean hedge) {
+            this.request = request;
+            this.call = call;
+            this.hedge = hedge;
+        }
+
+        @Override
+        public void call(Topic topic) {
+            request.topicParsed(topics++, topic);
+        }
+
+        @Override
+        public void onResponse(Response<ResponseBody> response, Retrofit retrofit) {
+            ResponseBody body = response.body();
+            if (response.isSuccess() && body != null) {
+                Result result;
+                try {
+                    result = ResultTypeAdapter.parse(body.charStream(), this);
+                } catch (IOException | RuntimeException e) {
+                    onFailure(e);
+                    return;
+                } finally {
+                    try {
+                        body.close();
+                    } catch (IOException e) {
+                        // Already read what we need
+                    }
+                }
+                if (result != null) {
+                    request.succeeded(this, result);
+                } else {
+                    request.failed(this, new IOException("Empty response"), false);
+                }
+            } else {
+                request.failed(this, new IOException("Unexpected response: " + response.code()
+                        + " " + response.message()), response.code() >= 500);
+            }
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            request.failed(this, t, t instanceof IOException);
+        }
+    }
+
+    /**
+     * A single search. Completes its {@link #future} on its {@link Executor}.
+     */
+    private class Search implements Cancellable {
+        final CompletableFuture<List<Topic>> future = new CompletableFuture<>();
+        final Executor executor;
+        final Callback<Topic> onTopic;
+        InFlight request;
+        private volatile boolean cancelled;
+        private boolean done;
+
+        Search(Executor executor, Callback<Topic> onTopic) {
+            this.executor = executor;
+            this.onTopic = onTopic;
+        }
+
+        private synchronized boolean markDone() {
+            if (done || cancelled) {
+                return false;
+            }
+            done = true;
+            return true;
+        }
+
+        void topic(Topic topic) {
+            if (onTopic == null) {
+                return;
+            }
+            synchronized (this) {
+                if (done || cancelled) {
+                    return;
+                }
+            }
+            executor.execute(() -> {
+                if (!cancelled) {
+                    onTopic.call(topic);
+                }
+            });
+        }
+
+        void succeeded(Result result) {
+            if (markDone()) {
+                executor.execute(() -> future.complete(result.getTopics()));
+            }
+        }
+
+        void failed(Throwable t) {
+            if (markDone()) {
+                executor.execute(() -> future.completeExceptionally(t));
+            }
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (cancelled || done) {
+                    cancelled = true;
+                    future.cancel(false);
+                    return;
+                }
+                cancelled = true;
+            }
+            future.cancel(false);
+            InFlight orphaned = null;
+            synchronized (inFlight) {
+                if (request != null) {
+                    request.searches.remove(this);
+                    if (request.searches.isEmpty() && inFlight.get(request.key) == request) {
+                        inFlight.remove(request.key);
+                        orphaned = request;
+                    }
+                }
+            }
+            if (orphaned != null) {
+                orphaned.cancel();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Rewrites the caching headers of responses from the Instant Answer API
+     * so that the on-disk cache keeps them for the configured time to live.
+     */
+    private static class CacheControlInterceptor implements Interceptor {
+        private final String cacheControl;
+
+        CacheControlInterceptor(long ttlMillis) {
+            this.cacheControl = "public, max-age=" + TimeUnit.MILLISECONDS.toSeconds(ttlMillis);
+        }
+
+        @Override
+        public com.squareup.okhttp.Response intercept(Chain chain) throws IOException {
+            com.squareup.okhttp.Response response = chain.proceed(chain.request());
+            if (!response.isSuccessful()) {
+                return response;
+            }
+            return response.newBuilder()
+                    .removeHeader("Pragma")
+                    .removeHeader("Expires")
+                    .header("Cache-Control", cacheControl)
+                    .build();
+        }
+    }
+
+    /**
+     * Builds {@link AnswerMeService} instances with a non-default
+     * configuration.
+     */
+    public static class Builder {
+        private String baseUrl = DEFAULT_BASE_URL;
+        private int memoryCacheSize = 100;
+        private long ttlMillis = TimeUnit.MINUTES.toMillis(10);
+        private File cacheDirectory;
+        private long diskCacheSize;
+        private boolean supersedePrevious;
+        private int maxConcurrentRequests = 5;
+        private boolean hedgeRequests;
+        private int maxRetries = 2;
+        private long retryBaseDelayMillis = 250;
+        private int failureThreshold = 5;
+        private long openMillis = TimeUnit.SECONDS.toMillis(30);
+        private boolean prefetchIcons = true;
+        private int iconMemoryCacheSize = 1024 * 1024;
+        private int iconParallelism = 4;
+        private File iconCacheDirectory;
+        private long iconDiskCacheSize;
+        private File offlineIndexFile;
+        private int offlineIndexSize;
+
+        /**
+         * Sets the base URL of the Instant Answer API. Defaults to
+         * {@link AnswerMeService#DEFAULT_BASE_URL}.
+         */
+        public Builder baseUrl(String baseUrl) {
+            if (baseUrl == null) {
+                throw new NullPointerException("baseUrl");
+            }
+            this.baseUrl = baseUrl;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of {@link Result}s kept in the in-memory
+         * cache. 0 disables the in-memory cache.
+         */
+        public Builder memoryCacheSize(int maxEntries) {
+            if (maxEntries < 0) {
+                throw new IllegalArgumentException("maxEntries < 0");
+            }
+            this.memoryCacheSize = maxEntries;
+            return this;
+        }
+
+        /**
+         * Enables the on-disk HTTP cache in the specified directory with the
+         * specified maximum size in bytes.
+         */
+        public Builder diskCache(File directory, long maxSize) {
+            if (directory == null) {
+                throw new NullPointerException("directory");
+            }
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize <= 0");
+            }
+            this.cacheDirectory = directory;
+            this.diskCacheSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets the time to live of cached answers in both the in-memory and
+         * the on-disk caches.
+         */
+        public Builder cacheTtl(long ttl, TimeUnit unit) {
+            if (ttl < 0) {
+                throw new IllegalArgumentException("ttl < 0");
+            }
+            this.ttlMillis = unit.toMillis(ttl);
+            return this;
+        }
+
+        /**
+         * If {@code true} every search cancels the previous search made
+         * through the same {@link AnswerMeService} so that only the callbacks
+         * of the most recent search are run. Useful for search-as-you-type.
+         * Defaults to {@code false}.
+         */
+        public Builder supersedePrevious(boolean supersedePrevious) {
+            this.supersedePrevious = supersedePrevious;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of requests to the Instant Answer API in
+         * flight at any time. Further requests are queued. Also the default
+         * concurrency of {@link AnswerMeService#searchAll(Collection)}.
+         * Defaults to 5.
+         */
+        public Builder maxConcurrentRequests(int maxRequests) {
+            if (maxRequests <= 0) {
+                throw new IllegalArgumentException("maxRequests <= 0");
+            }
+            this.maxConcurrentRequests = maxRequests;
+            return this;
+        }
+
+        /**
+         * If {@code true} a duplicate request is sent when a request hasn't
+         * completed within the 95th percentile of past request latencies (1
+         * second until enough requests have been made). Whichever response
+         * arrives first is used and the other request is cancelled. Trades a
+         * few percent more requests for a shorter latency tail. Defaults to
+         * {@code false}.
+         */
+        public Builder hedgeRequests(boolean hedgeRequests) {
+            this.hedgeRequests = hedgeRequests;
+            return this;
+        }
+
+        /**
+         * Sets how many times a request which failed with an I/O error or a
+         * 5xx response is retried and the base delay of the exponential
+         * backoff between retries. Each delay is randomized between half and
+         * all of the backoff. Defaults to 2 retries and 250 ms.
+         */
+        public Builder retries(int maxRetries, long baseDelay, TimeUnit unit) {
+            if (maxRetries < 0) {
+                throw new IllegalArgumentException("maxRetries < 0");
+            }
+            if (baseDelay < 0) {
+                throw new IllegalArgumentException("baseDelay < 0");
+            }
+            this.maxRetries = maxRetries;
+            this.retryBaseDelayMillis = unit.toMillis(baseDelay);
+            return this;
+        }
+
+        /**
+         * Sets the number of consecutive failed requests which opens the
+         * {@link CircuitBreaker} and how long it stays open before a trial
+         * request is let through. Defaults to 5 failures and 30 seconds.
+         */
+        public Builder circuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+            if (failureThreshold <= 0) {
+                throw new IllegalArgumentException("failureThreshold <= 0");
+            }
+            if (openDuration < 0) {
+                throw new IllegalArgumentException("openDuration < 0");
+            }
+            this.failureThreshold = failureThreshold;
+            this.openMillis = unit.toMillis(openDuration);
+            return this;
+        }
+
+        /**
+         * If {@code true} the icons of the {@link Topic}s in each answer
+         * received from the network are downloaded into the
+         * {@link IconCache} right away. Defaults to {@code true}.
+         */
+        public Builder prefetchIcons(boolean prefetchIcons) {
+            this.prefetchIcons = prefetchIcons;
+            return this;
+        }
+
+        /**
+         * Sets the maximum total size in bytes of the icons kept in the
+         * in-memory {@link IconCache}. Defaults to 1 MB. 0 disables the
+         * in-memory icon cache.
+         */
+        public Builder iconMemoryCacheSize(int maxBytes) {
+            if (maxBytes < 0) {
+                throw new IllegalArgumentException("maxBytes < 0");
+            }
+            this.iconMemoryCacheSize = maxBytes;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of icons downloaded in parallel. Defaults to
+         * 4.
+         */
+        public Builder iconParallelism(int maxRequests) {
+            if (maxRequests <= 0) {
+                throw new IllegalArgumentException("maxRequests <= 0");
+            }
+            this.iconParallelism = maxRequests;
+            return this;
+        }
+
+        /**
+         * Enables the on-disk icon cache in the specified directory with the
+         * specified maximum size in bytes. Must not be the same directory as
+         * the one passed to {@link #diskCache(File, long)}.
+         */
+        public Builder iconDiskCache(File directory, long maxSize) {
+            if (directory == null) {
+                throw new NullPointerException("directory");
+            }
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("maxSize <= 0");
+            }
+            this.iconCacheDirectory = directory;
+            this.iconDiskCacheSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Enables the offline {@link TopicIndex} holding at most
+         * {@code maxTopics} of the most recently received {@link Topic}s. The
+         * index is loaded from and saved to the specified file.
+         */
+        public Builder offlineIndex(File file, int maxTopics) {
+            if (file == null) {
+                throw new NullPointerException("file");
+            }
+            if (maxTopics <= 0) {
+                throw new IllegalArgumentException("maxTopics <= 0");
+            }
+            this.offlineIndexFile = file;
+            this.offlineIndexSize = maxTopics;
+            return this;
+        }
+
+        public AnswerMeService build() {
+            return new AnswerMeService(this);
+        }
     }
 }
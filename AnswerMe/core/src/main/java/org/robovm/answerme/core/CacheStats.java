@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.core;
+
+/**
+ * Immutable snapshot of the hit and miss counts of the two cache levels used
+ * by {@link AnswerMeService}.
+ */
+public class CacheStats {
+    private final long memoryHits;
+    private final long memoryMisses;
+    private final long memoryEvictions;
+    private final long memoryExpirations;
+    private final long diskHits;
+    private final long diskRequests;
+
+    CacheStats(long memoryHits, long memoryMisses, long memoryEvictions, long memoryExpirations,
+            long diskHits, long diskRequests) {
+        this.memoryHits = memoryHits;
+        this.memoryMisses = memoryMisses;
+        this.memoryEvictions = memoryEvictions;
+        this.memoryExpirations = memoryExpirations;
+        this.diskHits = diskHits;
+        this.diskRequests = diskRequests;
+    }
+
+    /**
+     * Returns the number of searches answered from the in-memory cache.
+     */
+    public long getMemoryHits() {
+        return memoryHits;
+    }
+
+    /**
+     * Returns the number of searches not found in the in-memory cache.
+     */
+    public long getMemoryMisses() {
+        return memoryMisses;
+    }
+
+    /**
+     * Returns the number of entries evicted from the in-memory cache because
+     * it was full.
+     */
+    public long getMemoryEvictions() {
+        return memoryEvictions;
+    }
+
+    /**
+     * Returns the number of entries in the in-memory cache which have expired.
+     * Expired entries are only used as stale answers.
+     */
+    public long getMemoryExpirations() {
+        return memoryExpirations;
+    }
+
+    /**
+     * Returns the ratio of searches answered from the in-memory cache.
+     */
+    public double getMemoryHitRate() {
+        long total = memoryHits + memoryMisses;
+        return total == 0 ? 0.0 : (double) memoryHits / total;
+    }
+
+    /**
+     * Returns the number of HTTP requests served from the on-disk cache.
+     */
+    public long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * Returns the number of HTTP requests which went through the on-disk
+     * cache.
+     */
+    public long getDiskRequests() {
+        return diskRequests;
+    }
+
+    /**
+     * Returns the ratio of HTTP requests served from the on-disk cache.
+     */
+    public double getDiskHitRate() {
+        return diskRequests == 0 ? 0.0 : (double) diskHits / diskRequests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "memoryHits=" + memoryHits +
+                ", memoryMisses=" + memoryMisses +
+                ", memoryEvictions=" + memoryEvictions +
+                ", memoryExpirations=" + memoryExpirations +
+                ", diskHits=" + diskHits +
+                ", diskRequests=" + diskRequests +
+                '}';
+    }
+}
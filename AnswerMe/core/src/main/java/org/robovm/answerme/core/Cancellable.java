@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.core;
+
+/**
+ * Handle to an asynchronous operation which can be cancelled.
+ */
+public interface Cancellable {
+
+    /**
+     * Cancels the operation. No callbacks will be called after this method
+     * returns. Calling this on a completed or already cancelled operation has
+     * no effect.
+     */
+    void cancel();
+
+    /**
+     * Returns {@code true} if {@link #cancel()} has been called.
+     */
+    boolean isCancelled();
+
+}
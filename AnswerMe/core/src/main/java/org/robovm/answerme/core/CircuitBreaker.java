@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Simple consecutive-failure circuit breaker. After
+ * {@code failureThreshold} failures in a row the breaker opens and rejects
+ * requests for {@code openDuration}. It then lets a single trial request
+ * through; if that succeeds the breaker closes again, otherwise it reopens.
+ * Thread-safe.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long changedAt;
+
+    CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * Returns {@code true} if a request may be made now. While half-open only
+     * one trial request is allowed per {@code openDuration}.
+     */
+    synchronized boolean allowRequest() {
+        switch (state) {
+        case CLOSED:
+            return true;
+        default:
+            long now = System.nanoTime();
+            if (now - changedAt >= openNanos) {
+                // Either the open period is over or the last trial never
+                // reported back (e.g. it was cancelled). Allow a new trial.
+                state = State.HALF_OPEN;
+                changedAt = now;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            changedAt = System.nanoTime();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.robovm.answerme.core.api.Topic;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+
+/**
+ * Downloads and caches the icon images referenced by {@link Topic}s. Image
+ * bytes are kept in an in-memory LRU cache bounded by total size in bytes.
+ * The {@link OkHttpClient} passed to the constructor determines how many
+ * downloads run in parallel and whether icons are also cached on disk.
+ * Concurrent requests for the same URL share a single download. Thread-safe.
+ */
+public class IconCache {
+    private final OkHttpClient client;
+    private final int maxMemoryBytes;
+    private final LinkedHashMap<String, byte[]> memory =
+            new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private int memoryBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Downloads currently in flight keyed by URL. Guarded by {@code this}.
+     */
+    private final Map<String, Fetch> inFlight = new HashMap<>();
+
+    IconCache(OkHttpClient client, int maxMemoryBytes) {
+        if (maxMemoryBytes < 0) {
+            throw new IllegalArgumentException("maxMemoryBytes < 0");
+        }
+        this.client = client;
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * Returns the bytes of the icon at the specified URL if they are in the
+     * in-memory cache or {@code null} otherwise. Never touches the network.
+     */
+    public synchronized byte[] getIfPresent(String url) {
+        byte[] data = memory.get(url);
+        if (data != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return data;
+    }
+
+    /**
+     * Asynchronously gets the bytes of the icon at the specified URL. If the
+     * icon is in the in-memory cache {@code onSuccess} is called immediately on
+     * the calling thread. Otherwise it is called on a background thread once
+     * the icon has been read from disk or downloaded.
+     *
+     * @param url the URL of the icon.
+     * @param onSuccess {@link Callback} which will be run with the icon bytes.
+     * @param onFailure {@link Callback} which will be run on failure.
+     */
+    public void get(String url, Callback<byte[]> onSuccess, Callback<Throwable> onFailure) {
+        byte[] data = getIfPresent(url);
+        if (data != null) {
+            onSuccess.call(data);
+            return;
+        }
+        fetch(url, onSuccess, onFailure);
+    }
+
+    /**
+     * Starts downloading the icons of the specified {@link Topic}s which
+     * aren't in the in-memory cache or already being downloaded.
+     */
+    public void prefetch(Collection<Topic> topics) {
+        for (Topic topic : topics) {
+            if (topic.icon != null && topic.icon.url != null && !topic.icon.url.isEmpty()) {
+                fetch(topic.icon.url, null, null);
+            }
+        }
+    }
+
+    private void fetch(String url, Callback<byte[]> onSuccess, Callback<Throwable> onFailure) {
+        Fetch fetch;
+        boolean start = false;
+        byte[] data;
+        synchronized (this) {
+            data = memory.get(url);
+            if (data == null) {
+                fetch = inFlight.get(url);
+                if (fetch == null) {
+                    fetch = new Fetch(url);
+                    inFlight.put(url, fetch);
+                    start = true;
+                }
+                if (onSuccess != null) {
+                    fetch.onSuccess.add(onSuccess);
+                    fetch.onFailure.add(onFailure);
+                }
+            } else {
+                fetch = null;
+            }
+        }
+        if (data != null) {
+            if (onSuccess != null) {
+                onSuccess.call(data);
+            }
+            return;
+        }
+        if (start) {
+            Request request;
+            try {
+                request = new Request.Builder().url(url).build();
+            } catch (IllegalArgumentException e) {
+                fetch.onFailure(null, new IOException("Invalid icon URL: " + url, e));
+                return;
+            }
+            client.newCall(request).enqueue(fetch);
+        }
+    }
+
+    private synchronized void put(String url, byte[] data) {
+        if (data.length > maxMemoryBytes) {
+            return;
+        }
+        byte[] old = memory.put(url, data);
+        if (old != null) {
+            memoryBytes -= old.length;
+        }
+        memoryBytes += data.length;
+        for (Iterator<byte[]> it = memory.values().iterator(); memoryBytes > maxMemoryBytes && it.hasNext();) {
+            memoryBytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Removes all icons from the in-memory cache.
+     */
+    public synchronized void clear() {
+        memory.clear();
+        memoryBytes = 0;
+    }
+
+    /**
+     * Returns the total number of bytes currently held by the in-memory
+     * cache.
+     */
+    public synchronized int getMemorySize() {
+        return memoryBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * A single download shared by all requests for the same URL.
+     */
+    private class Fetch implements com.squareup.okhttp.Callback {
+        final String url;
+        final List<Callback<byte[]>> onSuccess = new ArrayList<>(1);
+        final List<Callback<Throwable>> onFailure = new ArrayList<>(1);
+
+        Fetch(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public void onResponse(Response response) throws IOException {
+            byte[] data;
+            try {
+                if (!response.isSuccessful()) {
+                    response.body().close();
+                    throw new IOException("Unexpected response: " + response.code()
+                            + " " + response.message());
+                }
+                data = response.body().bytes();
+            } catch (IOException e) {
+                onFailure(response.request(), e);
+                return;
+            }
+            List<Callback<byte[]>> callbacks;
+            synchronized (IconCache.this) {
+                put(url, data);
+                inFlight.remove(url);
+                callbacks = new ArrayList<>(onSuccess);
+            }
+            for (Callback<byte[]> callback : callbacks) {
+                callback.call(data);
+            }
+        }
+
+        @Override
+        public void onFailure(Request request, IOException e) {
+            List<Callback<Throwable>> callbacks;
+            synchronized (IconCache.this) {
+                inFlight.remove(url);
+                callbacks = new ArrayList<>(onFailure);
+            }
+            for (Callback<Throwable> callback : callbacks) {
+                callback.call(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.core;
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Compact prefix trie (radix tree) mapping string keys to sets of string
+ * values. Chains of nodes with a single child are collapsed into one edge so
+ * common prefixes of keys are stored once and every node either holds values
+ * or branches. Edges are plain {@code char[]}s, children are kept in arrays
+ * sorted by the first character of their edge and a single value is stored
+ * without an array, which keeps the per node overhead low. Iteration is in
+ * key order, shorter keys first, and in value order for the same key. Not
+ * thread-safe.
+ */
+final class PrefixTrie {
+    private static final char[] NO_CHARS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final String[] NO_VALUES = new String[0];
+
+    private static final class Node {
+        /**
+         * The characters on the edge from the parent to this node. Never empty
+         * except for the root.
+         */
+        char[] label;
+        Node[] children = NO_CHILDREN;
+        /**
+         * {@code null}, a single {@link String} or a sorted {@code String[]}
+         * of at least two values.
+         */
+        Object values;
+
+        Node(char[] label) {
+            this.label = label;
+        }
+
+        String[] values() {
+            if (values == null) {
+                return NO_VALUES;
+            }
+            if (values instanceof String) {
+                return new String[] { (String) values };
+            }
+            return (String[]) values;
+        }
+
+        void setValues(String[] values) {
+            this.values = values.length == 0 ? null : values.length == 1 ? values[0] : values;
+        }
+    }
+
+    private final Node root = new Node(NO_CHARS);
+    private int size;
+
+    /**
+     * Returns the number of key/value pairs in this trie.
+     */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        root.children = NO_CHILDREN;
+        root.values = null;
+        size = 0;
+    }
+
+    /**
+     * Adds the specified value to the values of the specified key. Returns
+     * {@code false} if it was already there.
+     */
+    public boolean put(String key, String value) {
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            int index = indexOf(node, key.charAt(i));
+            if (index < 0) {
+                Node child = new Node(key.substring(i).toCharArray());
+                node.children = insert(node.children, -index - 1, child);
+                node = child;
+                break;
+            }
+            Node child = node.children[index];
+            int n = commonPrefix(child.label, key, i);
+            if (n < child.label.length) {
+                // Split the edge where the key leaves it
+                Node split = new Node(Arrays.copyOf(child.label, n));
+                child.label = Arrays.copyOfRange(child.label, n, child.label.length);
+                split.children = new Node[] { child };
+                node.children[index] = split;
+                child = split;
+            }
+            node = child;
+            i += n;
+        }
+        if (node.values == null) {
+            node.values = value;
+        } else {
+            String[] values = node.values();
+            int index = Arrays.binarySearch(values, value);
+            if (index >= 0) {
+                return false;
+            }
+            node.setValues(insert(values, -index - 1, value));
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes the specified value from the values of the specified key.
+     * Returns {@code false} if it wasn't there.
+     */
+    public boolean remove(String key, String value) {
+        Node parent = null;
+        int indexInParent = -1;
+        Node node = root;
+        int i = 0;
+        while (i < key.length()) {
+            int index = indexOf(node, key.charAt(i));
+            if (index < 0) {
+                return false;
+            }
+            Node child = node.children[index];
+            if (commonPrefix(child.label, key, i) < child.label.length) {
+                return false;
+            }
+            parent = node;
+            indexInParent = index;
+            node = child;
+            i += child.label.length;
+        }
+        String[] values = node.values();
+        int index = Arrays.binarySearch(values, value);
+        if (index < 0) {
+            return false;
+        }
+        node.setValues(remove(values, index));
+        size--;
+        if (node != root && node.values == null) {
+            if (node.children.length == 0) {
+                parent.children = remove(parent.children, indexInParent);
+                if (parent != root && parent.values == null && parent.children.length == 1) {
+                    merge(parent);
+                }
+            } else if (node.children.length == 1) {
+                merge(node);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the values of all keys starting with the specified prefix to
+     * {@code result} in key order until it holds {@code limit} values.
+     */
+    public void collect(String prefix, int limit, Set<String> result) {
+        Node node = root;
+        int i = 0;
+        while (i < prefix.length()) {
+            int index = indexOf(node, prefix.charAt(i));
+            if (index < 0) {
+                return;
+            }
+            Node child = node.children[index];
+            int n = commonPrefix(child.label, prefix, i);
+            if (n < child.label.length && i + n < prefix.length()) {
+                return;
+            }
+            node = child;
+            i += n;
+        }
+        collect(node, limit, result);
+    }
+
+    private static boolean collect(Node node, int limit, Set<String> result) {
+        if (node.values instanceof String) {
+            if (result.add((String) node.values) && result.size() >= limit) {
+                return true;
+            }
+        } else if (node.values != null) {
+            for (String value : (String[]) node.values) {
+                if (result.add(value) && result.size() >= limit) {
+                    return true;
+                }
+            }
+        }
+        for (Node child : node.children) {
+            if (collect(child, limit, result)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collapses a node without values into its only child.
+     */
+    private static void merge(Node node) {
+        Node child = node.children[0];
+        char[] label = Arrays.copyOf(node.label, node.label.length + child.label.length);
+        System.arraycopy(child.label, 0, label, node.label.length, child.label.length);
+        node.label = label;
+        node.children = child.children;
+        node.values = child.values;
+    }
+
+    /**
+     * Returns the index of the child whose edge starts with {@code c} or, if
+     * there is none, {@code -(insertion point) - 1}.
+     */
+    private static int indexOf(Node node, char c) {
+        Node[] children = node.children;
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char m = children[mid].label[0];
+            if (m < c) {
+                low = mid + 1;
+            } else if (m > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the length of the common prefix of {@code label} and
+     * {@code key} starting at {@code offset}.
+     */
+    private static int commonPrefix(char[] label, String key, int offset) {
+        int max = Math.min(label.length, key.length() - offset);
+        int n = 0;
+        while (n < max && label[n] == key.charAt(offset + n)) {
+            n++;
+        }
+        return n;
+    }
+
+    private static <T> T[] insert(T[] array, int index, T element) {
+        T[] result = Arrays.copyOf(array, array.length + 1);
+        System.arraycopy(array, index, result, index + 1, array.length - index);
+        result[index] = element;
+        return result;
+    }
+
+    private static <T> T[] remove(T[] array, int index) {
+        T[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.robovm.answerme.core.api.Result;
+
+/**
+ * In-memory LRU cache of parsed {@link Result}s keyed by normalized query.
+ * Entries expire after a configurable time to live. Expired entries are no
+ * longer returned by {@link #get(String)} but are kept as stale answers for
+ * {@link #getStale(String)} until they are evicted, purged or replaced.
+ * Thread-safe.
+ */
+public class ResultCache {
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    /**
+     * Creates a new cache.
+     * 
+     * @param maxEntries the maximum number of {@link Result}s to keep.
+     * @param ttl the time to live of each entry.
+     * @param unit the unit of {@code ttl}.
+     */
+    public ResultCache(int maxEntries, long ttl, TimeUnit unit) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries < 0");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ResultCache.Entry> eldest) {
+                if (size() > ResultCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Normalizes a query by trimming it, collapsing runs of whitespace into a
+     * single space and converting it to lower case. Queries which only differ
+     * in these respects return the same answers.
+     */
+    public static String normalize(String query) {
+        StringBuilder sb = new StringBuilder(query.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = sb.length() > 0;
+            } else {
+                if (pendingSpace) {
+                    sb.append(' ');
+                    pendingSpace = false;
+                }
+                sb.append(Character.toLowerCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the cached {@link Result} for the specified normalized query or
+     * {@code null} if there is none or it has expired.
+     */
+    public synchronized Result get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && System.nanoTime() - entry.created > ttlNanos) {
+            if (!entry.stale) {
+                entry.stale = true;
+                expirations++;
+            }
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.result;
+    }
+
+    /**
+     * Returns the cached {@link Result} for the specified normalized query
+     * even if it has expired or {@code null} if there is none. Used when
+     * fresh answers can't be fetched.
+     */
+    public synchronized Result getStale(String key) {
+        Entry entry = entries.get(key);
+        return entry != null ? entry.result : null;
+    }
+
+    /**
+     * Caches the {@link Result} for the specified normalized query.
+     */
+    public synchronized void put(String key, Result result) {
+        if (maxEntries > 0) {
+            entries.put(key, new Entry(result, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Removes all expired entries.
+     */
+    public synchronized void purgeExpired() {
+        long now = System.nanoTime();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            if (now - entry.created > ttlNanos) {
+                it.remove();
+                if (!entry.stale) {
+                    expirations++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized CacheStats getStats(long diskHits, long diskRequests) {
+        return new CacheStats(hits, misses, evictions, expirations, diskHits, diskRequests);
+    }
+
+    private static class Entry {
+        final Result result;
+        final long created;
+        boolean stale;
+
+        Entry(Result result, long created) {
+            this.result = result;
+            this.created = created;
+        }
+    }
+}
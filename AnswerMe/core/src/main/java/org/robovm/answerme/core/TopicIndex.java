@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.robovm.answerme.core.api.Icon;
+import org.robovm.answerme.core.api.Topic;
+
+/**
+ * Offline index of previously seen {@link Topic}s supporting prefix lookups.
+ * Every {@link Topic} is keyed on its normalized text and on the title part of
+ * its first URL (e.g. {@code valley forge national historical park} for
+ * {@code https://duckduckgo.com/Valley_Forge_National_Historical_Park}). Keys
+ * are kept in a {@link PrefixTrie} which stores common prefixes once, so a
+ * prefix lookup walks down to the prefix and collects the subtree. The index
+ * holds at most a fixed number of {@link Topic}s and drops the least recently
+ * seen when full. It can be saved to and loaded from a file. Thread-safe.
+ */
+public class TopicIndex {
+    private static final int MAGIC = 0x414d5449; // "AMTI"
+    private static final int VERSION = 1;
+
+    private final File file;
+    private final int maxTopics;
+
+    /**
+     * All indexed topics by id in least recently seen order.
+     */
+    private final LinkedHashMap<String, Topic> topics;
+
+    /**
+     * Search keys mapped to the ids of the topics having them.
+     */
+    private final PrefixTrie keys = new PrefixTrie();
+
+    private boolean dirty;
+
+    /**
+     * Creates a new empty index.
+     * 
+     * @param file the file used by {@link #load()} and {@link #save()} or
+     *            {@code null} to keep the index in memory only.
+     * @param maxTopics the maximum number of {@link Topic}s to keep.
+     */
+    public TopicIndex(File file, int maxTopics) {
+        if (maxTopics <= 0) {
+            throw new IllegalArgumentException("maxTopics <= 0");
+        }
+        this.file = file;
+        this.maxTopics = maxTopics;
+        this.topics = new LinkedHashMap<String, Topic>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Topic> eldest) {
+                if (size() > TopicIndex.this.maxTopics) {
+                    removeKeys(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private static String id(Topic topic) {
+        return topic.firstUrl != null ? topic.firstUrl : topic.text;
+    }
+
+    /**
+     * Returns the keys of the specified {@link Topic}: its normalized text
+     * and the normalized title part of its first URL.
+     */
+    static Set<String> keysOf(Topic topic) {
+        Set<String> result = new LinkedHashSet<>(2);
+        String text = ResultCache.normalize(topic.text);
+        if (!text.isEmpty()) {
+            result.add(text);
+        }
+        if (topic.firstUrl != null) {
+            String title = topic.firstUrl.substring(topic.firstUrl.lastIndexOf('/') + 1);
+            try {
+                title = URLDecoder.decode(title, "UTF-8");
+            } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                // Use the title as is
+            }
+            title = ResultCache.normalize(title.replace('_', ' '));
+            if (!title.isEmpty()) {
+                result.add(title);
+            }
+        }
+        return result;
+    }
+
+    private void removeKeys(String id, Topic topic) {
+        for (String key : keysOf(topic)) {
+            keys.remove(key, id);
+        }
+    }
+
+    /**
+     * Adds the specified {@link Topic}s to the index replacing any
+     * {@link Topic}s with the same first URL. {@link Topic}s without text are
+     * ignored.
+     */
+    public synchronized void addAll(Collection<Topic> topics) {
+        for (Topic topic : topics) {
+            if (topic.text == null) {
+                continue;
+            }
+            String id = id(topic);
+            Topic old = this.topics.remove(id);
+            if (old != null) {
+                removeKeys(id, old);
+            }
+            for (String key : keysOf(topic)) {
+                keys.put(key, id);
+            }
+            this.topics.put(id, topic);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Returns at most {@code limit} {@link Topic}s with a key starting with
+     * the specified prefix, ordered by key. The prefix is normalized the same
+     * way as queries.
+     */
+    public synchronized List<Topic> lookup(String prefix, int limit) {
+        String p = ResultCache.normalize(prefix);
+        if (p.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        keys.collect(p, limit, ids);
+        List<Topic> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            result.add(topics.get(id));
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return topics.size();
+    }
+
+    /**
+     * Loads the contents of this index from its file. {@link Topic}s already
+     * in the index are kept and count as more recent than the loaded ones.
+     * Does nothing if the file doesn't exist.
+     */
+    public void load() throws IOException {
+        if (file == null) {
+            return;
+        }
+        List<Topic> loaded = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a topic index: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Topic topic = new Topic();
+                topic.text = readString(in);
+                topic.result = readString(in);
+                topic.firstUrl = readString(in);
+                String iconUrl = readString(in);
+                if (iconUrl != null) {
+                    topic.icon = new Icon();
+                    topic.icon.url = iconUrl;
+                }
+                loaded.add(topic);
+            }
+        } catch (FileNotFoundException e) {
+            return;
+        }
+        synchronized (this) {
+            List<Topic> current = new ArrayList<>(topics.values());
+            topics.clear();
+            keys.clear();
+            addAll(loaded);
+            addAll(current);
+            dirty = !current.isEmpty();
+        }
+    }
+
+    /**
+     * Writes this index to its file if it has changed since it was last
+     * loaded or saved. The file is replaced atomically.
+     */
+    public void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        List<Topic> snapshot;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            snapshot = new ArrayList<>(topics.values());
+            dirty = false;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (Topic topic : snapshot) {
+                    writeString(out, topic.text);
+                    writeString(out, topic.result);
+                    writeString(out, topic.firstUrl);
+                    writeString(out, topic.icon != null ? topic.icon.url : null);
+                }
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Failed to rename " + tmp + " to " + file);
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                dirty = true;
+            }
+            tmp.delete();
+            throw e;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -15,9 +15,13 @@
  */
 package org.robovm.answerme.core.api;
 
+import com.squareup.okhttp.ResponseBody;
+
 import retrofit.Call;
 import retrofit.http.GET;
+import retrofit.http.Headers;
 import retrofit.http.Query;
+import retrofit.http.Streaming;
 
 /**
  * Retrofit interface which calls the <a
@@ -34,4 +38,28 @@ public interface InstantAnswerAPI {
     @GET("/?format=json")
     Call<Result> search(@Query("q") String query);
 
+    /**
+     * Like {@link #search(String)} but returns the response body unread so
+     * that it can be parsed while it is being downloaded, e.g. using
+     * {@link ResultTypeAdapter#parse(java.io.Reader, org.robovm.answerme.core.Callback)}.
+     * The caller must close the body.
+     * 
+     * @param query the query to run.
+     * @return the unread response body.
+     */
+    @GET("/?format=json")
+    @Streaming
+    Call<ResponseBody> searchStreaming(@Query("q") String query);
+
+    /**
+     * Like {@link #search(String)} but only answers from the HTTP cache, no
+     * matter how stale. Fails with a 504 if the answer isn't cached.
+     * 
+     * @param query the query to run.
+     * @return the result.
+     */
+    @GET("/?format=json")
+    @Headers("Cache-Control: only-if-cached, max-stale=2147483647")
+    Call<Result> searchCached(@Query("q") String query);
+
 }
@@ -17,7 +17,6 @@ package org.robovm.answerme.core.api;
 
 import com.google.gson.annotations.SerializedName;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -36,16 +35,7 @@ public class Result {
      * Recursively extracts all {@link Topic}s in this {@link Result}.
      */
     public List<Topic> getTopics() {
-        List<Topic> topics = new ArrayList<>();
-        for (Topic t : this.relatedTopics) {
-            if (t.text != null) {
-                topics.add(t);
-            }
-        }
-        for (Topic t : relatedTopics) {
-            topics.addAll(t.getTopics());
-        }
-        return topics;
+        return Topic.flatten(relatedTopics);
     }
 
     @Override
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *   
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License. 
+ */
+package org.robovm.answerme.core.api;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.robovm.answerme.core.Callback;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Streaming Gson {@link TypeAdapter} for {@link Result}s. Unlike Gson's
+ * reflective adapter this reads the JSON token by token, skips all fields
+ * {@link Result}, {@link Topic} and {@link Icon} don't use and flattens nested
+ * {@code Topics} while parsing. The {@link Result#relatedTopics} of a
+ * {@link Result} read by this adapter are already flat and only contain
+ * {@link Topic}s with a {@code Text}, in the same order as
+ * {@link Result#getTopics()} would have returned them.
+ * {@link #write(JsonWriter, Result)} writes the fields this adapter reads, so
+ * a {@link Result} survives a round trip.
+ */
+public class ResultTypeAdapter extends TypeAdapter<Result> {
+
+    private final Callback<Topic> onTopic;
+
+    /**
+     * Creates a new adapter.
+     */
+    public ResultTypeAdapter() {
+        this(null);
+    }
+
+    /**
+     * Creates a new adapter which calls {@code onTopic} for each {@link Topic}
+     * as soon as it has been parsed. {@link Topic}s are reported in the order
+     * they appear in the JSON which may differ from the order in the returned
+     * {@link Result}.
+     */
+    public ResultTypeAdapter(Callback<Topic> onTopic) {
+        this.onTopic = onTopic;
+    }
+
+    /**
+     * Parses a {@link Result} from the specified {@link Reader} calling
+     * {@code onTopic} for each {@link Topic} as soon as it has been parsed.
+     */
+    public static Result parse(Reader in, Callback<Topic> onTopic) throws IOException {
+        return new ResultTypeAdapter(onTopic).read(new JsonReader(in));
+    }
+
+    @Override
+    public Result read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Result result = new Result();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+            case "Heading":
+                result.heading = nextStringOrNull(in);
+                break;
+            case "RelatedTopics":
+                result.relatedTopics = readTopics(in);
+                break;
+            default:
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        if (result.relatedTopics == null) {
+            result.relatedTopics = new ArrayList<>(0);
+        }
+        return result;
+    }
+
+    /**
+     * Reads an array of topics. Returns the topics in this array which have a
+     * {@code Text} followed by the flattened topics of each nested group, the
+     * same order {@link Topic#getTopics()} uses.
+     */
+    private List<Topic> readTopics(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        List<Topic> topics = new ArrayList<>();
+        List<Topic> nested = null;
+        in.beginArray();
+        while (in.hasNext()) {
+            Topic topic = new Topic();
+            List<Topic> children = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                case "Result":
+                    topic.result = nextStringOrNull(in);
+                    break;
+                case "Text":
+                    topic.text = nextStringOrNull(in);
+                    break;
+                case "FirstURL":
+                    topic.firstUrl = nextStringOrNull(in);
+                    break;
+                case "Icon":
+                    topic.icon = readIcon(in);
+                    break;
+                case "Topics":
+                    children = readTopics(in);
+                    break;
+                default:
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+            if (topic.text != null) {
+                topics.add(topic);
+                if (onTopic != null) {
+                    onTopic.call(topic);
+                }
+            }
+            if (children != null && !children.isEmpty()) {
+                if (nested == null) {
+                    nested = new ArrayList<>();
+                }
+                nested.addAll(children);
+            }
+        }
+        in.endArray();
+        if (nested != null) {
+            topics.addAll(nested);
+        }
+        return topics;
+    }
+
+    private Icon readIcon(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Icon icon = new Icon();
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("URL".equals(in.nextName())) {
+                icon.url = nextStringOrNull(in);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return icon;
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Writes the {@link Result} in the Instant Answer API's format. Only the
+     * fields read by {@link #read(JsonReader)} are written.
+     */
+    @Override
+    public void write(JsonWriter out, Result value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("Heading").value(value.heading);
+        out.name("RelatedTopics");
+        writeTopics(out, value.relatedTopics);
+        out.endObject();
+    }
+
+    private void writeTopics(JsonWriter out, List<Topic> topics) throws IOException {
+        if (topics == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (Topic topic : topics) {
+            out.beginObject();
+            out.name("Result").value(topic.result);
+            out.name("Text").value(topic.text);
+            out.name("FirstURL").value(topic.firstUrl);
+            out.name("Icon");
+            writeIcon(out, topic.icon);
+            if (topic.topics != null) {
+                out.name("Topics");
+                writeTopics(out, topic.topics);
+            }
+            out.endObject();
+        }
+        out.endArray();
+    }
+
+    private void writeIcon(JsonWriter out, Icon icon) throws IOException {
+        if (icon == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("URL").value(icon.url);
+        out.endObject();
+    }
+}
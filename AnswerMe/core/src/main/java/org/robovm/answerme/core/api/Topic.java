@@ -17,8 +17,11 @@ package org.robovm.answerme.core.api;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -31,41 +34,132 @@ public class Topic {
     public String result;
     @SerializedName("Text")
     public String text;
+    @SerializedName("FirstURL")
+    public String firstUrl;
     @SerializedName("Icon")
     public Icon icon;
     @SerializedName("Topics")
     public List<Topic> topics;
 
+    private transient String displayText;
+    private transient List<Topic> flattened;
+
     /**
      * Returns a nice display text from this {@link Topic} by extracting the
      * text of the {@code <a>} tag contained in the {@code Result} JSON value.
+     * The text is computed once and then reused.
      */
     public String getDisplayText() {
-        if (result != null) {
-            String s = result.replaceAll("<a href[^>]*>", "");
-            s = s.replaceAll("</a>", ": ");
+        String s = displayText;
+        if (s == null) {
+            s = result != null ? stripAnchors(result) : text;
+            displayText = s;
+        }
+        return s;
+    }
+
+    /**
+     * Removes all {@code <a href...>} tags and replaces all {@code </a>}
+     * tags with {@code ": "} in a single pass.
+     */
+    static String stripAnchors(String s) {
+        int i = s.indexOf('<');
+        if (i == -1) {
             return s;
         }
-        return text;
+        int n = s.length();
+        StringBuilder sb = new StringBuilder(n);
+        sb.append(s, 0, i);
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c == '<') {
+                if (s.startsWith("<a href", i)) {
+                    int end = s.indexOf('>', i + 7);
+                    if (end != -1) {
+                        i = end + 1;
+                        continue;
+                    }
+                } else if (s.startsWith("</a>", i)) {
+                    sb.append(": ");
+                    i += 4;
+                    continue;
+                }
+            }
+            sb.append(c);
+            i++;
+        }
+        return sb.toString();
     }
 
     /**
-     * Recursively extracts all {@link Topic}s in this {@link Topic}.
+     * Recursively extracts all {@link Topic}s in this {@link Topic}. The
+     * returned {@link List} is computed once and is unmodifiable.
      */
     public List<Topic> getTopics() {
-        if (this.topics == null) {
+        List<Topic> l = flattened;
+        if (l == null) {
+            l = flatten(topics);
+            flattened = l;
+        }
+        return l;
+    }
+
+    /**
+     * Flattens the specified {@link Topic}s without recursion. For each list
+     * the {@link Topic}s which have a {@code Text} come first followed by the
+     * flattened {@link Topic}s of each entry in order.
+     */
+    static List<Topic> flatten(List<Topic> topics) {
+        if (topics == null || topics.isEmpty()) {
             return Collections.emptyList();
         }
-        List<Topic> topics = new ArrayList<>();
-        for (Topic t : this.topics) {
-            if (t.text != null) {
-                topics.add(t);
+        // First pass counts so that the result can be allocated up front.
+        List<Topic> result = new ArrayList<>(walk(topics, null));
+        walk(topics, result);
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Walks the {@link Topic} tree depth-first adding each {@link Topic} with
+     * a {@code Text} to {@code out} (if not {@code null}). Returns the number
+     * of such {@link Topic}s.
+     */
+    private static int walk(List<Topic> topics, List<Topic> out) {
+        int count = 0;
+        Deque<Iterator<Topic>> stack = new ArrayDeque<>();
+        List<Topic> level = topics;
+        while (level != null) {
+            for (Topic t : level) {
+                if (t.text != null) {
+                    count++;
+                    if (out != null) {
+                        out.add(t);
+                    }
+                }
             }
+            stack.push(level.iterator());
+            level = next(stack);
         }
-        for (Topic t : this.topics) {
-            topics.addAll(t.getTopics());
+        return count;
+    }
+
+    /**
+     * Returns the next non-empty list of child {@link Topic}s in depth-first
+     * order, popping exhausted iterators off the stack. Returns {@code null}
+     * once the stack is empty.
+     */
+    private static List<Topic> next(Deque<Iterator<Topic>> stack) {
+        while (!stack.isEmpty()) {
+            Iterator<Topic> it = stack.peek();
+            while (it.hasNext()) {
+                List<Topic> children = it.next().topics;
+                if (children != null && !children.isEmpty()) {
+                    return children;
+                }
+            }
+            stack.pop();
         }
-        return topics;
+        return null;
     }
 
     @Override
@@ -73,6 +167,7 @@ public class Topic {
         return "Topic{" +
                 "result='" + result + '\'' +
                 ", text='" + text + '\'' +
+                ", firstUrl='" + firstUrl + '\'' +
                 ", icon=" + icon +
                 ", topics=" + topics +
                 '}';
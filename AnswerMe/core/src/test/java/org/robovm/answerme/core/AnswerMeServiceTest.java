@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.core;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robovm.answerme.core.AnswerMeService.Outcome;
+import org.robovm.answerme.core.api.Topic;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+/**
+ * Tests how {@link AnswerMeService} shares, cancels and supersedes requests,
+ * runs batches, retries, hedges and falls back to stale answers while the
+ * {@link CircuitBreaker} is open. By default the server holds every response until
+ * {@link #release} is counted down so that requests stay in flight while a
+ * test issues more searches. Tests which need other responses replace the
+ * dispatcher.
+ */
+public class AnswerMeServiceTest {
+    private static final String ANSWER = "{\"Heading\":\"Java\",\"RelatedTopics\":["
+            + "{\"Text\":\"Java - A programming language\",\"FirstURL\":\"https://duckduckgo.com/Java\","
+            + "\"Icon\":{\"URL\":\"\"}}]}";
+    private static final Executor DIRECT = Runnable::run;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                release.await(10, TimeUnit.SECONDS);
+                return new MockResponse()
+                        .addHeader("Content-Type", "application/x-javascript")
+                        .setBody(ANSWER);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        release.countDown();
+        server.shutdown();
+    }
+
+    private AnswerMeService.Builder builder() {
+        return new AnswerMeService.Builder()
+                .baseUrl("http://" + server.getHostName() + ":" + server.getPort())
+                .retries(0, 0, TimeUnit.MILLISECONDS)
+                .prefetchIcons(false);
+    }
+
+    private static List<Topic> get(CompletableFuture<List<Topic>> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the query sent in the specified request.
+     */
+    private static String queryOf(RecordedRequest request) throws UnsupportedEncodingException {
+        String path = request.getPath();
+        int start = path.indexOf("q=") + 2;
+        int end = path.indexOf('&', start);
+        return URLDecoder.decode(path.substring(start, end != -1 ? end : path.length()), "UTF-8");
+    }
+
+    /**
+     * Returns a {@link Dispatcher} which answers each query with a single
+     * topic with the query as text while {@code healthy} is set and with a
+     * 503 otherwise.
+     */
+    private static Dispatcher healthDispatcher(final AtomicBoolean healthy) {
+        return new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (!healthy.get()) {
+                    return new MockResponse().setResponseCode(503);
+                }
+                try {
+                    return answer(queryOf(request));
+                } catch (UnsupportedEncodingException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+    }
+
+    private static void assertFails(CompletableFuture<List<Topic>> future, String message)
+            throws Exception {
+        try {
+            get(future);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains(message));
+        }
+    }
+
+    private static void assertOutcomes(AnswerMeService service, int success, int hedged, int retried,
+            int stale, int failure) {
+
+        assertEquals(success, service.getLatencyHistogram(Outcome.SUCCESS).getCount());
+        assertEquals(hedged, service.getLatencyHistogram(Outcome.HEDGED).getCount());
+        assertEquals(retried, service.getLatencyHistogram(Outcome.RETRIED).getCount());
+        assertEquals(stale, service.getLatencyHistogram(Outcome.STALE).getCount());
+        assertEquals(failure, service.getLatencyHistogram(Outcome.FAILURE).getCount());
+    }
+
+    /**
+     * Returns an answer with a single topic with the specified text.
+     */
+    private static MockResponse answer(String text) {
+        return new MockResponse()
+                .addHeader("Content-Type", "application/x-javascript")
+                .setBody("{\"Heading\":\"" + text + "\",\"RelatedTopics\":[{\"Text\":\"" + text + "\"}]}");
+    }
+
+    @Test
+    public void testIdenticalSearchesShareRequest() throws Exception {
+        AnswerMeService service = builder().build();
+        CompletableFuture<List<Topic>> first = service.search("Java", DIRECT);
+        CompletableFuture<List<Topic>> second = service.search("  JAVA ", DIRECT);
+        RecordedRequest request = server.takeRequest();
+        release.countDown();
+
+        assertEquals("Java - A programming language", get(first).get(0).text);
+        assertEquals("Java - A programming language", get(second).get(0).text);
+        assertEquals(1, server.getRequestCount());
+        // The query is only normalized for the cache, the API gets it as typed
+        assertTrue(request.getPath(), request.getPath().contains("q=Java"));
+
+        // Answered from the in-memory cache
+        assertEquals(1, get(service.search("java", DIRECT)).size());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testSearchReportsTopicsBeforeCompleting() throws Exception {
+        AnswerMeService service = builder().build();
+        final List<Topic> reported = new ArrayList<>();
+        CompletableFuture<List<Topic>> search = service.search("java", DIRECT, reported::add)
+                .thenApply(topics -> {
+                    // Every topic has been reported by the time the future completes
+                    assertEquals(topics, reported);
+                    return topics;
+                });
+        release.countDown();
+        assertEquals(1, get(search).size());
+
+        // Cached answers are not reported topic by topic
+        reported.clear();
+        assertEquals(1, get(service.search("java", DIRECT, reported::add)).size());
+        assertTrue(reported.isEmpty());
+    }
+
+    @Test
+    public void testCancellingAllSearchesCancelsRequest() throws Exception {
+        AnswerMeService service = builder().build();
+        CompletableFuture<List<Topic>> first = service.search("java", DIRECT);
+        CompletableFuture<List<Topic>> second = service.search("java", DIRECT);
+        server.takeRequest();
+
+        first.cancel(false);
+        assertTrue(first.isCancelled());
+        assertFalse(second.isDone());
+        second.cancel(false);
+        assertTrue(second.isCancelled());
+
+        // Nothing is in flight for the query anymore so a new search makes a
+        // new request
+        CompletableFuture<List<Topic>> third = service.search("java", DIRECT);
+        server.takeRequest();
+        release.countDown();
+        assertEquals(1, get(third).size());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testSearchSupersedesPreviousSearch() throws Exception {
+        AnswerMeService service = builder().supersedePrevious(true).build();
+        CompletableFuture<List<Topic>> first = service.search("jav", DIRECT);
+        server.takeRequest();
+        CompletableFuture<List<Topic>> second = service.search("java", DIRECT);
+        server.takeRequest();
+        assertTrue(first.isCancelled());
+
+        release.countDown();
+        assertEquals(1, get(second).size());
+        assertEquals(2, server.getRequestCount());
+
+        // The superseded request was cancelled before it got an answer so
+        // nothing was cached for it
+        assertEquals(1, get(service.search("jav", DIRECT)).size());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void testBatchSearchesAreNotSuperseded() throws Exception {
+        AnswerMeService service = builder().supersedePrevious(true).build();
+        CompletableFuture<List<List<Topic>>> batch = service.searchAll(Arrays.asList("jav", "java"));
+        server.takeRequest();
+        server.takeRequest();
+        CompletableFuture<List<Topic>> search = service.search("javascript", DIRECT);
+        server.takeRequest();
+
+        release.countDown();
+        assertEquals(2, batch.get(10, TimeUnit.SECONDS).size());
+        assertEquals(1, get(search).size());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void testSearchAllReturnsResultsInQueryOrder() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                try {
+                    // Earlier queries are answered later
+                    String query = queryOf(request);
+                    Thread.sleep(20 * (5 - Integer.parseInt(query.substring(1))));
+                    return answer(query);
+                } catch (UnsupportedEncodingException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        AnswerMeService service = builder().build();
+        List<List<Topic>> results = service.searchAll(Arrays.asList("q0", "q1", "q2", "q3", "q4"), 5)
+                .get(10, TimeUnit.SECONDS);
+
+        assertEquals(5, results.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("q" + i, results.get(i).get(0).text);
+        }
+    }
+
+    @Test
+    public void testSearchAllBoundsConcurrency() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int n = running.incrementAndGet();
+                maxRunning.accumulateAndGet(n, Math::max);
+                try {
+                    Thread.sleep(50);
+                    return answer(queryOf(request));
+                } catch (UnsupportedEncodingException e) {
+                    throw new AssertionError(e);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        });
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            queries.add("q" + i);
+        }
+        AnswerMeService service = builder().build();
+        assertEquals(12, service.searchAll(queries, 3).get(10, TimeUnit.SECONDS).size());
+        assertEquals(12, server.getRequestCount());
+        assertEquals(3, maxRunning.get());
+
+        // Defaults to maxConcurrentRequests
+        maxRunning.set(0);
+        service = builder().maxConcurrentRequests(2).build();
+        assertEquals(12, service.searchAll(queries).get(10, TimeUnit.SECONDS).size());
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testSearchAllFailsWhenOneQueryFails() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                try {
+                    String query = queryOf(request);
+                    return query.equals("bad") ? new MockResponse().setResponseCode(404) : answer(query);
+                } catch (UnsupportedEncodingException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        AnswerMeService service = builder().build();
+        CompletableFuture<List<List<Topic>>> batch = service.searchAll(
+                Arrays.asList("q0", "bad", "q2", "q3"), 1);
+        try {
+            batch.get(10, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("404"));
+        }
+        // The queries after the failed one are never sent
+        assertEquals(2, server.getRequestCount());
+        // The answer which did arrive is cached
+        assertEquals("q0", get(service.search("q0", DIRECT)).get(0).text);
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testRetriesAfterServerError() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return requests.incrementAndGet() == 1 ? new MockResponse().setResponseCode(503) : answer("java");
+            }
+        });
+        AnswerMeService service = builder().retries(1, 1, TimeUnit.MILLISECONDS).build();
+
+        assertEquals("java", get(service.search("java", DIRECT)).get(0).text);
+        assertEquals(2, server.getRequestCount());
+        assertOutcomes(service, 0, 0, 1, 0, 0);
+        // The success after the retry resets the breaker
+        assertEquals(CircuitBreaker.State.CLOSED, service.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void testCircuitBreakerOpensFailsFastAndHalfOpens() throws Exception {
+        AtomicBoolean healthy = new AtomicBoolean();
+        server.setDispatcher(healthDispatcher(healthy));
+        AnswerMeService service = builder().circuitBreaker(2, 200, TimeUnit.MILLISECONDS).build();
+        CircuitBreaker breaker = service.getCircuitBreaker();
+
+        assertFails(service.search("a", DIRECT), "503");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertFails(service.search("b", DIRECT), "503");
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, server.getRequestCount());
+
+        // Open: fails without a request
+        assertFails(service.search("c", DIRECT), "Circuit breaker open");
+        assertEquals(2, server.getRequestCount());
+
+        // After the cooldown a failing trial request reopens the breaker
+        Thread.sleep(250);
+        assertFails(service.search("d", DIRECT), "503");
+        assertEquals(3, server.getRequestCount());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFails(service.search("e", DIRECT), "Circuit breaker open");
+        assertEquals(3, server.getRequestCount());
+
+        // A successful trial closes it
+        Thread.sleep(250);
+        healthy.set(true);
+        assertEquals("f", get(service.search("f", DIRECT)).get(0).text);
+        assertEquals(4, server.getRequestCount());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals("g", get(service.search("g", DIRECT)).get(0).text);
+        assertOutcomes(service, 2, 0, 0, 0, 5);
+    }
+
+    @Test
+    public void testServesStaleAnswerWhileBreakerOpen() throws Exception {
+        AtomicBoolean healthy = new AtomicBoolean(true);
+        server.setDispatcher(healthDispatcher(healthy));
+        AnswerMeService service = builder()
+                .cacheTtl(50, TimeUnit.MILLISECONDS)
+                .circuitBreaker(1, 1, TimeUnit.MINUTES)
+                .build();
+
+        assertEquals("java", get(service.search("java", DIRECT)).get(0).text);
+        Thread.sleep(100);
+        healthy.set(false);
+        assertFails(service.search("other", DIRECT), "503");
+        assertEquals(CircuitBreaker.State.OPEN, service.getCircuitBreaker().getState());
+
+        // The expired answer is served without a request
+        assertEquals("java", get(service.search("java", DIRECT)).get(0).text);
+        assertEquals(2, server.getRequestCount());
+        assertOutcomes(service, 1, 0, 0, 1, 1);
+    }
+
+    @Test
+    public void testHedgedRequestWinsAgainstSlowFirstResponse() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (requests.incrementAndGet() == 1) {
+                    // The first response is held until the test ends
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                return answer("java");
+            }
+        });
+        AnswerMeService service = builder().hedgeRequests(true).build();
+
+        // Hedged after the default delay of 1 s as nothing has been recorded yet
+        long start = System.nanoTime();
+        assertEquals("java", get(service.search("java", DIRECT)).get(0).text);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(Long.toString(millis), millis >= 1000 && millis < 5000);
+        assertEquals(2, server.getRequestCount());
+        assertOutcomes(service, 0, 1, 0, 0, 0);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.core;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the bucketing of {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMean(TimeUnit.NANOSECONDS), 0.0);
+        assertEquals(0, histogram.getPercentile(50, TimeUnit.NANOSECONDS));
+        assertEquals(0, histogram.getMax(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 8; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+        assertEquals(9, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0, TimeUnit.NANOSECONDS));
+        // Ranks 1 and 2 are the two zeros
+        assertEquals(0, histogram.getPercentile(20, TimeUnit.NANOSECONDS));
+        assertEquals(3, histogram.getPercentile(50, TimeUnit.NANOSECONDS));
+        assertEquals(7, histogram.getPercentile(100, TimeUnit.NANOSECONDS));
+        assertEquals(7, histogram.getMax(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testPercentilesWithinBucketWidth() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long ms = TimeUnit.MILLISECONDS.toNanos(1);
+        // 90 samples of 1 ms, 9 of 10 ms and one of 100 ms
+        for (int i = 0; i < 90; i++) {
+            histogram.record(ms);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(10 * ms);
+        }
+        histogram.record(100 * ms);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals((90 + 90 + 100) / 100.0, histogram.getMean(TimeUnit.MILLISECONDS), 1e-9);
+        assertBetween(ms, ms * 9 / 8, histogram.getPercentile(50, TimeUnit.NANOSECONDS));
+        assertBetween(ms, ms * 9 / 8, histogram.getPercentile(90, TimeUnit.NANOSECONDS));
+        assertBetween(10 * ms, 10 * ms * 9 / 8, histogram.getPercentile(91, TimeUnit.NANOSECONDS));
+        assertBetween(10 * ms, 10 * ms * 9 / 8, histogram.getPercentile(99, TimeUnit.NANOSECONDS));
+        // Never above the maximum
+        assertEquals(100 * ms, histogram.getPercentile(100, TimeUnit.NANOSECONDS));
+        assertEquals(100, histogram.getMax(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testNeighbouringValuesShareBuckets() {
+        // 1024..1151 ns fall into the same bucket, 1152 starts the next one
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1024);
+        histogram.record(1151);
+        histogram.record(1152);
+        assertEquals(1151, histogram.getPercentile(34, TimeUnit.NANOSECONDS));
+        assertEquals(1151, histogram.getPercentile(66, TimeUnit.NANOSECONDS));
+        assertEquals(1152, histogram.getPercentile(67, TimeUnit.NANOSECONDS));
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual + " < " + min, actual >= min);
+        assertTrue(actual + " > " + max, actual <= max);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link PrefixTrie} against the sorted map of key + separator + value
+ * strings which {@link TopicIndex} used before.
+ */
+public class PrefixTrieTest {
+
+    private static List<String> collect(PrefixTrie trie, String prefix, int limit) {
+        Set<String> result = new LinkedHashSet<>();
+        trie.collect(prefix, limit, result);
+        return new ArrayList<>(result);
+    }
+
+    private static List<String> collect(TreeMap<String, String> map, String prefix, int limit) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String value : map.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            if (result.add(value) && result.size() == limit) {
+                break;
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    @Test
+    public void testLookup() {
+        PrefixTrie trie = new PrefixTrie();
+        assertTrue(trie.put("java", "2"));
+        assertTrue(trie.put("java", "1"));
+        assertFalse(trie.put("java", "1"));
+        assertTrue(trie.put("javascript", "3"));
+        assertTrue(trie.put("jam", "4"));
+        assertTrue(trie.put("ja", "5"));
+        assertEquals(5, trie.size());
+
+        assertEquals(Arrays.asList("5", "4", "1", "2", "3"), collect(trie, "j", 10));
+        assertEquals(Arrays.asList("1", "2", "3"), collect(trie, "jav", 10));
+        assertEquals(Arrays.asList("3"), collect(trie, "javas", 10));
+        assertEquals(Arrays.asList("5", "4"), collect(trie, "ja", 2));
+        assertEquals(Arrays.asList(), collect(trie, "jx", 10));
+        assertEquals(Arrays.asList(), collect(trie, "javax", 10));
+
+        assertTrue(trie.remove("java", "1"));
+        assertFalse(trie.remove("java", "1"));
+        assertFalse(trie.remove("jav", "2"));
+        assertTrue(trie.remove("ja", "5"));
+        assertEquals(Arrays.asList("4", "2", "3"), collect(trie, "ja", 10));
+        assertTrue(trie.remove("java", "2"));
+        assertTrue(trie.remove("jam", "4"));
+        assertEquals(Arrays.asList("3"), collect(trie, "j", 10));
+        assertEquals(1, trie.size());
+
+        trie.clear();
+        assertEquals(0, trie.size());
+        assertEquals(Arrays.asList(), collect(trie, "j", 10));
+    }
+
+    @Test
+    public void testMatchesSortedMap() {
+        Random random = new Random(42);
+        String alphabet = "ab c\u00e9";
+        PrefixTrie trie = new PrefixTrie();
+        TreeMap<String, String> map = new TreeMap<>();
+        List<String[]> pairs = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            if (pairs.isEmpty() || random.nextInt(3) > 0) {
+                StringBuilder key = new StringBuilder();
+                for (int n = 1 + random.nextInt(6); n > 0; n--) {
+                    key.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+                String value = Integer.toString(random.nextInt(50));
+                boolean added = map.put(key + "\0" + value, value) == null;
+                assertEquals(added, trie.put(key.toString(), value));
+                if (added) {
+                    pairs.add(new String[] { key.toString(), value });
+                }
+            } else {
+                String[] pair = pairs.remove(random.nextInt(pairs.size()));
+                assertNotNull(map.remove(pair[0] + "\0" + pair[1]));
+                assertTrue(trie.remove(pair[0], pair[1]));
+            }
+            assertEquals(map.size(), trie.size());
+
+            StringBuilder prefix = new StringBuilder();
+            for (int n = 1 + random.nextInt(3); n > 0; n--) {
+                prefix.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            int limit = 1 + random.nextInt(10);
+            assertEquals(prefix.toString(), collect(map, prefix.toString(), limit),
+                    collect(trie, prefix.toString(), limit));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.core.api;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.gson.Gson;
+
+/**
+ * Tests {@link ResultTypeAdapter} against Gson's reflective adapter followed
+ * by {@link Result#getTopics()}, which is how answers were parsed before.
+ */
+public class ResultTypeAdapterTest {
+    private static final String ANSWER = "{\"Abstract\":\"\",\"Heading\":\"Java\",\"Image\":\"\","
+            + "\"RelatedTopics\":["
+            + "{\"Result\":\"<a href=\\\"https://duckduckgo.com/Java\\\">Java</a> A language\","
+            + "\"Text\":\"Java A language\",\"FirstURL\":\"https://duckduckgo.com/Java\","
+            + "\"Icon\":{\"URL\":\"https://duckduckgo.com/i/java.png\",\"Height\":\"\",\"Width\":\"\"}},"
+            + "{\"Name\":\"Places\",\"Topics\":["
+            + "{\"Text\":\"Java (island)\",\"FirstURL\":\"https://duckduckgo.com/Java_(island)\",\"Icon\":null},"
+            + "{\"Name\":\"Nested\",\"Topics\":[{\"Text\":\"Jakarta\",\"Icon\":{\"URL\":null}}]}]},"
+            + "{\"Text\":\"Java coffee\",\"FirstURL\":null,\"Topics\":null}],"
+            + "\"Results\":[],\"Type\":\"D\",\"meta\":{\"id\":1,\"tags\":[\"a\",{\"b\":[1,2.5,true,null]}]}}";
+
+    private final ResultTypeAdapter adapter = new ResultTypeAdapter();
+
+    private static void assertSameTopics(List<Topic> expected, List<Topic> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Topic e = expected.get(i);
+            Topic a = actual.get(i);
+            assertEquals(e.result, a.result);
+            assertEquals(e.text, a.text);
+            assertEquals(e.firstUrl, a.firstUrl);
+            assertEquals(e.icon == null, a.icon == null);
+            if (e.icon != null) {
+                assertEquals(e.icon.url, a.icon.url);
+            }
+        }
+    }
+
+    private static Topic randomTopic(Random random, int depth) {
+        Topic topic = new Topic();
+        if (random.nextInt(4) != 0) {
+            topic.text = "text " + random.nextInt(1000);
+            topic.result = random.nextBoolean() ? "<a href=\"u\">" + topic.text + "</a>" : null;
+            topic.firstUrl = random.nextBoolean() ? "https://duckduckgo.com/" + random.nextInt(1000) : null;
+        }
+        if (random.nextBoolean()) {
+            topic.icon = new Icon();
+            topic.icon.url = random.nextBoolean() ? "https://duckduckgo.com/i/" + random.nextInt(1000) : "";
+        }
+        if (depth < 3 && random.nextInt(3) == 0) {
+            topic.topics = randomTopics(random, depth + 1);
+        }
+        return topic;
+    }
+
+    private static List<Topic> randomTopics(Random random, int depth) {
+        List<Topic> topics = new ArrayList<>();
+        int n = random.nextInt(6);
+        for (int i = 0; i < n; i++) {
+            topics.add(randomTopic(random, depth));
+        }
+        return topics;
+    }
+
+    @Test
+    public void testMatchesReflectiveParse() throws Exception {
+        Result expected = new Gson().fromJson(ANSWER, Result.class);
+        Result actual = adapter.fromJson(ANSWER);
+        assertEquals("Java", actual.heading);
+        assertEquals(4, actual.relatedTopics.size());
+        assertSameTopics(expected.getTopics(), actual.relatedTopics);
+        assertSameTopics(expected.getTopics(), actual.getTopics());
+    }
+
+    @Test
+    public void testMatchesReflectiveParseOfRandomTrees() throws Exception {
+        Random random = new Random(4711);
+        Gson gson = new Gson();
+        for (int i = 0; i < 500; i++) {
+            Result result = new Result();
+            result.heading = "heading " + i;
+            result.relatedTopics = randomTopics(random, 0);
+            String json = gson.toJson(result);
+
+            Result expected = gson.fromJson(json, Result.class);
+            Result actual = adapter.fromJson(json);
+            assertEquals(expected.heading, actual.heading);
+            assertSameTopics(expected.getTopics(), actual.relatedTopics);
+        }
+    }
+
+    @Test
+    public void testMissingAndNullTopics() throws Exception {
+        assertTrue(adapter.fromJson("{\"Heading\":null}").relatedTopics.isEmpty());
+        assertTrue(adapter.fromJson("{\"RelatedTopics\":null}").relatedTopics.isEmpty());
+    }
+
+    @Test
+    public void testParseReportsEveryTopic() throws Exception {
+        final List<Topic> reported = new ArrayList<>();
+        Result result = ResultTypeAdapter.parse(new StringReader(ANSWER), reported::add);
+        assertEquals(result.relatedTopics.size(), reported.size());
+        assertTrue(reported.containsAll(result.relatedTopics));
+        // Reported in document order: the nested topics come before the last
+        // top-level one
+        assertEquals("Java A language", reported.get(0).text);
+        assertEquals("Java (island)", reported.get(1).text);
+        assertEquals("Jakarta", reported.get(2).text);
+        assertEquals("Java coffee", reported.get(3).text);
+    }
+
+    @Test
+    public void testWriteRoundTrip() throws Exception {
+        Result result = adapter.fromJson(ANSWER);
+        String json = adapter.toJson(result);
+        Result copy = adapter.fromJson(json);
+        assertEquals(result.heading, copy.heading);
+        assertSameTopics(result.relatedTopics, copy.relatedTopics);
+
+        // Unflattened topics are written as nested Topics
+        Result tree = new Gson().fromJson(ANSWER, Result.class);
+        assertSameTopics(tree.getTopics(), adapter.fromJson(adapter.toJson(tree)).relatedTopics);
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.robovm.answerme.core.AnswerMeService;
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+/**
+ * Measures the throughput, latency and allocation rate of
+ * {@link AnswerMeService} against a local {@link MockWebServer} serving a
+ * canned Instant Answer API response. Run it using
+ * 
+ * <pre>
+ * mvn -f loadtest/pom.xml compile exec:java -Dexec.args="--requests 5000 --concurrency 16"
+ * </pre>
+ * 
+ * Options:
+ * <ul>
+ * <li>{@code --requests N}: number of measured searches (default 5000).</li>
+ * <li>{@code --warmup N}: number of unmeasured searches run first (default
+ * 1000).</li>
+ * <li>{@code --concurrency N}: maximum number of searches in flight (default
+ * 8).</li>
+ * <li>{@code --distinct N}: number of distinct queries in the mix (default
+ * 1000).</li>
+ * <li>{@code --hot-fraction F}: fraction of searches picking one of the 10
+ * most popular queries (default 0.2).</li>
+ * <li>{@code --memory-cache N}: size of the service's in-memory answer cache.
+ * Defaults to 0 so that every search exercises the HTTP, Retrofit and Gson
+ * stack.</li>
+ * <li>{@code --latency MS}: delay added by the server to every response
+ * (default 0).</li>
+ * <li>{@code --payload FILE}: JSON file to serve instead of the built-in
+ * answer.</li>
+ * </ul>
+ */
+public class AnswerMeLoadTest {
+    private static final int HOT_QUERIES = 10;
+
+    /**
+     * Completes futures on the thread completing the search.
+     */
+    private static final Executor DIRECT = Runnable::run;
+
+    private int requests = 5000;
+    private int warmup = 1000;
+    private int concurrency = 8;
+    private int distinct = 1000;
+    private double hotFraction = 0.2;
+    private int memoryCacheSize = 0;
+    private long latencyMillis = 0;
+    private String payloadFile;
+
+    private final AtomicInteger serverRequests = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        AnswerMeLoadTest test = new AnswerMeLoadTest();
+        test.parseArgs(args);
+        test.run();
+        System.exit(0);
+    }
+
+    private void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+            case "--requests":
+                requests = Integer.parseInt(value);
+                break;
+            case "--warmup":
+                warmup = Integer.parseInt(value);
+                break;
+            case "--concurrency":
+                concurrency = Integer.parseInt(value);
+                break;
+            case "--distinct":
+                distinct = Integer.parseInt(value);
+                break;
+            case "--hot-fraction":
+                hotFraction = Double.parseDouble(value);
+                break;
+            case "--memory-cache":
+                memoryCacheSize = Integer.parseInt(value);
+                break;
+            case "--latency":
+                latencyMillis = Long.parseLong(value);
+                break;
+            case "--payload":
+                payloadFile = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (requests <= 0 || warmup < 0 || concurrency <= 0 || distinct <= 0) {
+            throw new IllegalArgumentException("--requests, --concurrency and --distinct must be > 0");
+        }
+    }
+
+    private void run() throws Exception {
+        final String payload = loadPayload();
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                serverRequests.incrementAndGet();
+                if (latencyMillis > 0) {
+                    Thread.sleep(latencyMillis);
+                }
+                return new MockResponse()
+                        .addHeader("Content-Type", "application/x-javascript")
+                        .setBody(payload);
+            }
+        });
+        server.start();
+        try {
+            AnswerMeService service = new AnswerMeService.Builder()
+                    .baseUrl("http://" + server.getHostName() + ":" + server.getPort())
+                    .memoryCacheSize(memoryCacheSize)
+                    .maxConcurrentRequests(concurrency)
+                    .prefetchIcons(false)
+                    .build();
+
+            System.out.printf("payload=%d bytes requests=%d warmup=%d concurrency=%d distinct=%d "
+                    + "hot-fraction=%.2f memory-cache=%d latency=%dms%n",
+                    payload.length(), requests, warmup, concurrency, distinct, hotFraction,
+                    memoryCacheSize, latencyMillis);
+
+            Random random = new Random(42);
+            drive(service, random, warmup, null);
+            serverRequests.set(0);
+
+            long[] latencies = new long[requests];
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long allocatedBefore = allocatedBytes(threads);
+            long start = System.nanoTime();
+            int failures = drive(service, random, requests, latencies);
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes(threads) - allocatedBefore;
+
+            report(latencies, failures, elapsed, allocatedBefore < 0 ? -1 : allocated);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Runs {@code count} searches with at most {@link #concurrency} in flight
+     * and records the latency of each in {@code latencies} (if not
+     * {@code null}). Returns the number of failed searches.
+     */
+    private int drive(AnswerMeService service, Random random, int count, final long[] latencies)
+            throws InterruptedException {
+
+        final Semaphore permits = new Semaphore(concurrency);
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            String query = nextQuery(random);
+            permits.acquire();
+            final long start = System.nanoTime();
+            service.search(query, DIRECT).whenComplete((topics, t) -> {
+                if (latencies != null) {
+                    latencies[index] = System.nanoTime() - start;
+                }
+                if (t != null) {
+                    failures.incrementAndGet();
+                }
+                permits.release();
+                done.countDown();
+            });
+        }
+        done.await();
+        return failures.get();
+    }
+
+    private String nextQuery(Random random) {
+        if (random.nextDouble() < hotFraction) {
+            return "query " + random.nextInt(Math.min(HOT_QUERIES, distinct));
+        }
+        return "query " + random.nextInt(distinct);
+    }
+
+    /**
+     * Returns the total number of bytes allocated by all live threads or -1
+     * if the JVM can't measure it. Threads which die during the run are not
+     * accounted for.
+     */
+    private static long allocatedBytes(ThreadMXBean threads) {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) threads;
+        if (!mx.isThreadAllocatedMemorySupported() || !mx.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : mx.getThreadAllocatedBytes(mx.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    private void report(long[] latencies, int failures, long elapsedNanos, long allocated) {
+        Arrays.sort(latencies);
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("failures=%d server-requests=%d%n", failures, serverRequests.get());
+        System.out.printf("throughput: %.1f searches/s%n", requests / seconds);
+        System.out.printf("latency: p50=%.2fms p90=%.2fms p99=%.2fms max=%.2fms%n",
+                percentile(latencies, 50), percentile(latencies, 90),
+                percentile(latencies, 99), latencies[latencies.length - 1] / 1e6);
+        if (allocated >= 0) {
+            System.out.printf("allocation: %.1f MB/s, %.1f KB/search%n",
+                    allocated / seconds / (1024 * 1024), (double) allocated / requests / 1024);
+        } else {
+            System.out.println("allocation: not supported by this JVM");
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(sorted.length * percentile / 100.0) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private String loadPayload() throws IOException {
+        if (payloadFile != null) {
+            return new String(Files.readAllBytes(Paths.get(payloadFile)), StandardCharsets.UTF_8);
+        }
+        try (InputStream in = AnswerMeLoadTest.class.getResourceAsStream("answer.json")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
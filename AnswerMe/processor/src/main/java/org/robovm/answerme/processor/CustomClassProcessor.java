@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a {@code CustomClasses} class in every package containing classes
+ * annotated with {@code @CustomClass}. The generated class has a static
+ * {@code ALL} array referencing all such classes in the package so that they
+ * can be registered with the Objective-C runtime without scanning all loaded
+ * classes at startup. The annotation is matched by name, so this processor
+ * doesn't depend on RoboVM and runs on any JVM.
+ */
+@SupportedAnnotationTypes(CustomClassProcessor.CUSTOM_CLASS)
+public class CustomClassProcessor extends AbstractProcessor {
+
+    static final String CUSTOM_CLASS = "org.robovm.objc.annotation.CustomClass";
+    static final String REGISTRY_CLASS = "CustomClasses";
+
+    /**
+     * The packages which have already been generated, with the classes
+     * written for each.
+     */
+    private final Map<String, Set<String>> generated = new HashMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<String, Set<String>> byPackage = new HashMap<>();
+        for (TypeElement annotation : annotations) {
+            if (!annotation.getQualifiedName().contentEquals(CUSTOM_CLASS)) {
+                continue;
+            }
+            for (Element e : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (e.getKind() != ElementKind.CLASS || !isAccessible((TypeElement) e)) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "@CustomClass must be used on a top-level or static nested class "
+                                    + "which isn't private", e);
+                    continue;
+                }
+                TypeElement type = (TypeElement) e;
+                String pkg = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+                Set<String> names = byPackage.get(pkg);
+                if (names == null) {
+                    names = new TreeSet<>();
+                    byPackage.put(pkg, names);
+                }
+                names.add(type.getQualifiedName().toString());
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : byPackage.entrySet()) {
+            String pkg = entry.getKey();
+            if (generated.containsKey(pkg)) {
+                // Only happens if another processor generates @CustomClass
+                // types after the registry has been written.
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "@CustomClass types " + entry.getValue() + " in package " + pkg
+                                + " were found after " + REGISTRY_CLASS + " had been generated");
+                continue;
+            }
+            generated.put(pkg, Collections.unmodifiableSet(entry.getValue()));
+            write(pkg, entry.getValue());
+        }
+        return false;
+    }
+
+    /**
+     * Returns {@code true} if the specified class can be referenced by
+     * {@code CustomClasses}, i.e. it's a top-level class or a static member
+     * class and neither it nor any enclosing class is private.
+     */
+    private static boolean isAccessible(TypeElement type) {
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            TypeElement t = (TypeElement) e;
+            if (t.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            switch (t.getNestingKind()) {
+            case TOP_LEVEL:
+                return true;
+            case MEMBER:
+                if (!t.getModifiers().contains(Modifier.STATIC)) {
+                    return false;
+                }
+                break;
+            default:
+                // Local or anonymous class
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(String pkg, Set<String> classNames) {
+        String registry = pkg.isEmpty() ? REGISTRY_CLASS : pkg + "." + REGISTRY_CLASS;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(registry);
+            try (Writer out = file.openWriter()) {
+                out.write(generate(pkg, classNames));
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to write " + registry + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the source code of the {@code CustomClasses} class for the
+     * specified package and classes.
+     */
+    static String generate(String pkg, Set<String> classNames) {
+        StringBuilder sb = new StringBuilder();
+        if (!pkg.isEmpty()) {
+            sb.append("package ").append(pkg).append(";\n\n");
+        }
+        sb.append("/**\n");
+        sb.append(" * All classes annotated with {@code @CustomClass} in this package.\n");
+        sb.append(" * Generated by ").append(CustomClassProcessor.class.getName()).append(". Don't edit.\n");
+        sb.append(" */\n");
+        sb.append("final class ").append(REGISTRY_CLASS).append(" {\n");
+        sb.append("    static final Class<?>[] ALL = {\n");
+        for (String className : classNames) {
+            sb.append("        ").append(className).append(".class,\n");
+        }
+        sb.append("    };\n\n");
+        sb.append("    private ").append(REGISTRY_CLASS).append("() {\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2015 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.answerme.processor;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs {@link CustomClassProcessor} with {@link JavaCompiler} over fixture
+ * sources using a stand-in for RoboVM's {@code @CustomClass}, which the
+ * processor matches by name, and loads the generated registries.
+ */
+public class CustomClassProcessorTest {
+    private static final String CUSTOM_CLASS_SOURCE = "package org.robovm.objc.annotation;\n"
+            + "public @interface CustomClass { String value(); }\n";
+
+    private File outputDir;
+    private DiagnosticCollector<JavaFileObject> diagnostics;
+
+    @Before
+    public void setUp() throws IOException {
+        outputDir = Files.createTempDirectory("CustomClassProcessorTest").toFile();
+        diagnostics = new DiagnosticCollector<>();
+    }
+
+    @After
+    public void tearDown() {
+        delete(outputDir);
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        f.delete();
+    }
+
+    private static JavaFileObject source(final String className, final String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/')
+                + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    /**
+     * Compiles the specified sources together with the {@code @CustomClass}
+     * stand-in and returns {@code true} if compilation succeeded.
+     */
+    private boolean compile(JavaFileObject... sources) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null)) {
+            List<JavaFileObject> units = new ArrayList<>(Arrays.asList(sources));
+            units.add(source("org.robovm.objc.annotation.CustomClass", CUSTOM_CLASS_SOURCE));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics,
+                    Arrays.asList("-d", outputDir.getPath(), "-s", outputDir.getPath()),
+                    null, units);
+            task.setProcessors(Collections.singletonList(new CustomClassProcessor()));
+            return task.call();
+        }
+    }
+
+    private Set<String> registry(String pkg) throws Exception {
+        try (URLClassLoader loader = new URLClassLoader(new URL[] { outputDir.toURI().toURL() })) {
+            Class<?> registry = loader.loadClass(pkg + "." + CustomClassProcessor.REGISTRY_CLASS);
+            Field all = registry.getDeclaredField("ALL");
+            all.setAccessible(true);
+            Set<String> names = new TreeSet<>();
+            for (Class<?> c : (Class<?>[]) all.get(null)) {
+                names.add(c.getName());
+            }
+            return names;
+        }
+    }
+
+    private String errors() {
+        StringBuilder sb = new StringBuilder();
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+            if (d.getKind() == Diagnostic.Kind.ERROR) {
+                sb.append(d.getMessage(null)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testGeneratesRegistryPerPackage() throws Exception {
+        assertTrue(errors(), compile(
+                source("a.Foo", "package a;\n"
+                        + "import org.robovm.objc.annotation.CustomClass;\n"
+                        + "@CustomClass(\"Foo\") public class Foo {\n"
+                        + "    @CustomClass(\"Nested\") static class Nested {}\n"
+                        + "    static class NotAnnotated {}\n"
+                        + "}\n"),
+                source("a.Bar", "package a;\n"
+                        + "@org.robovm.objc.annotation.CustomClass(\"Bar\") class Bar {}\n"),
+                source("a.Plain", "package a;\n"
+                        + "public class Plain {}\n"),
+                source("b.Baz", "package b;\n"
+                        + "@org.robovm.objc.annotation.CustomClass(\"Baz\") public class Baz {}\n")));
+
+        assertEquals(new TreeSet<>(Arrays.asList("a.Bar", "a.Foo", "a.Foo$Nested")), registry("a"));
+        assertEquals(Collections.singleton("b.Baz"), registry("b"));
+    }
+
+    @Test
+    public void testNoRegistryWithoutCustomClasses() throws Exception {
+        assertTrue(errors(), compile(source("c.Plain", "package c;\npublic class Plain {}\n")));
+        assertFalse(new File(outputDir, "c/" + CustomClassProcessor.REGISTRY_CLASS + ".java").exists());
+    }
+
+    @Test
+    public void testRejectsPrivateClass() throws Exception {
+        assertFalse(compile(source("d.Foo", "package d;\n"
+                + "public class Foo {\n"
+                + "    @org.robovm.objc.annotation.CustomClass(\"Private\") private static class Private {}\n"
+                + "}\n")));
+        assertTrue(errors(), errors().contains("@CustomClass must be used on"));
+    }
+
+    @Test
+    public void testRejectsInnerClass() throws Exception {
+        assertFalse(compile(source("e.Foo", "package e;\n"
+                + "public class Foo {\n"
+                + "    @org.robovm.objc.annotation.CustomClass(\"Inner\") class Inner {}\n"
+                + "}\n")));
+        assertTrue(errors(), errors().contains("@CustomClass must be used on"));
+    }
+
+    @Test
+    public void testGenerate() {
+        String source = CustomClassProcessor.generate("a",
+                new TreeSet<>(Arrays.asList("a.Foo", "a.Foo.Nested")));
+        assertTrue(source, source.startsWith("package a;\n"));
+        assertTrue(source, source.contains("final class CustomClasses {\n"));
+        assertTrue(source, source.contains("        a.Foo.class,\n        a.Foo.Nested.class,\n"));
+    }
+}
@@ -40,7 +40,7 @@
   
   [self->sdk searchWithQuery:query onSuccess:^(NSArray<AMTopic *> *_topics) {
     self->topics = _topics;
-    [self.tableView performSelectorOnMainThread:@selector(reloadData) withObject:nil waitUntilDone:NO];
+    [self.tableView reloadData];
   } onFailure:^(NSString *errorMsg) {
     // TODO: Error handling
     NSLog(@"errorMsg = %@", errorMsg);
@@ -53,14 +53,14 @@
   cell.text.text = topic.displayText;
   cell.icon.image = nil;
   
-  // Load the icon URL asynchronously if there is one
+  // Load the icon asynchronously if there is one. Icons are prefetched by the SDK.
   if (topic.icon && topic.icon.url && topic.icon.url.length > 0) {
-    [[[NSURLSession sharedSession] dataTaskWithURL:[NSURL URLWithString:topic.icon.url] completionHandler:^(NSData * _Nullable data, NSURLResponse * _Nullable response, NSError * _Nullable error) {
-      dispatch_async(dispatch_get_main_queue(), ^{
-        cell.icon.contentMode = UIViewContentModeScaleAspectFill;
-        cell.icon.image = [UIImage imageWithData:data];
-      });
-    }] resume];
+    [self->sdk loadIconWithURL:topic.icon.url onSuccess:^(NSData *data) {
+      cell.icon.contentMode = UIViewContentModeScaleAspectFill;
+      cell.icon.image = [UIImage imageWithData:data];
+    } onFailure:^(NSString *errorMsg) {
+      NSLog(@"errorMsg = %@", errorMsg);
+    }];
   }
   return cell;
 }
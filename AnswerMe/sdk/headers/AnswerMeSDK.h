@@ -31,8 +31,13 @@
 
 + (AMAnswerMeSDK*) instance;
 
+// All blocks are run on the main queue.
 - (void) searchWithQuery:(NSString*) query
                onSuccess:(void (^)(NSArray<AMTopic*> *topics)) successBlock
                onFailure:(void (^)(NSString *errorMsg)) failureBlock;
 
+- (void) loadIconWithURL:(NSString*) url
+               onSuccess:(void (^)(NSData *data)) successBlock
+               onFailure:(void (^)(NSString *errorMsg)) failureBlock;
+
 @end
@@ -15,12 +15,17 @@
  */
 package org.robovm.answerme.sdk;
 
+import java.io.File;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import org.robovm.answerme.core.AnswerMeService;
 import org.robovm.answerme.core.api.Topic;
+import org.robovm.apple.dispatch.DispatchQueue;
 import org.robovm.apple.foundation.Foundation;
 import org.robovm.apple.foundation.NSArray;
+import org.robovm.apple.foundation.NSData;
 import org.robovm.apple.foundation.NSMutableArray;
 import org.robovm.apple.foundation.NSObject;
 import org.robovm.apple.foundation.NSString;
@@ -30,7 +35,6 @@ import org.robovm.objc.annotation.Block;
 import org.robovm.objc.annotation.CustomClass;
 import org.robovm.objc.annotation.Method;
 import org.robovm.objc.block.VoidBlock1;
-import org.robovm.rt.VM;
 
 /**
  * Actual implementation of the Objective-C {@code AMAnswerMeSDK} "abstract"
@@ -46,20 +50,26 @@ public class AMAnswerMeSDKImpl extends NSObject {
      */
     private static AMAnswerMeSDKImpl instance;
 
+    /**
+     * Runs tasks on the main queue. Results are converted and handed to
+     * Objective-C there.
+     */
+    private static final Executor MAIN_QUEUE = r -> DispatchQueue.getMainQueue().async(r);
+
     private final AnswerMeService answerMeService;
 
     /**
      * Registers all custom class (Objective-C classes defined in Java) in the
-     * SDK packages with the Objective-C runtime.
+     * SDK package with the Objective-C runtime. The classes are listed in
+     * {@link CustomClasses} which is generated at compile time by the
+     * annotation processor in the {@code processor} module. This avoids
+     * scanning all classes in the VM at startup.
      */
     @SuppressWarnings("unchecked")
     static void registerCustomClasses() {
-        String packageName = AMAnswerMeSDKImpl.class.getName().substring(0, AMAnswerMeSDKImpl.class.getName().lastIndexOf('.'));
-        for (Class<?> cls : VM.listClasses(NSObject.class, ClassLoader.getSystemClassLoader())) {
-            if (cls.getName().startsWith(packageName)) {
-                Foundation.log("Registering " + cls.getName() + " with the Objective-C runtime");
-                ObjCClass.registerCustomClass((Class<? extends ObjCObject>) cls);
-            }
+        for (Class<?> cls : CustomClasses.ALL) {
+            Foundation.log("Registering " + cls.getName() + " with the Objective-C runtime");
+            ObjCClass.registerCustomClass((Class<? extends ObjCObject>) cls);
         }
     }
 
@@ -71,7 +81,10 @@ public class AMAnswerMeSDKImpl extends NSObject {
     static void initialize() {
         Foundation.log("Initializing " + AMAnswerMeSDKImpl.class.getName());
         instance = new AMAnswerMeSDKImpl();
+        long start = System.nanoTime();
         registerCustomClasses();
+        Foundation.log("Registered " + CustomClasses.ALL.length + " custom classes in "
+                + (System.nanoTime() - start) / 1000 + " us");
         Foundation.log("Initialization of " + AMAnswerMeSDKImpl.class.getName() + " done!");
     }
 
@@ -85,7 +98,13 @@ public class AMAnswerMeSDKImpl extends NSObject {
     }
 
     private AMAnswerMeSDKImpl() {
-        this.answerMeService = new AnswerMeService();
+        // Keep answers and icons in <Application_Home>/Library/Caches so they survive restarts
+        File caches = new File(System.getenv("HOME"), "Library/Caches");
+        this.answerMeService = new AnswerMeService.Builder()
+                .diskCache(new File(caches, "answers"), 4 * 1024 * 1024)
+                .iconDiskCache(new File(caches, "icons"), 8 * 1024 * 1024)
+                .hedgeRequests(true)
+                .build();
     }
 
     /**
@@ -102,9 +121,9 @@ public class AMAnswerMeSDKImpl extends NSObject {
 
     /**
      * Asynchronously runs a query for topic summaries. Wraps
-     * {@link AnswerMeService#search(String, org.robovm.answerme.core.Callback, org.robovm.answerme.core.Callback)}
-     * and makes it callable from Objective-C using the
-     * {@code searchWithQuery:onSuccess:onFailure:} selector.
+     * {@link AnswerMeService#search(String, Executor)} and makes it callable
+     * from Objective-C using the {@code searchWithQuery:onSuccess:onFailure:}
+     * selector. The blocks are run on the main queue.
      * 
      * @param query the query to run.
      * @param onSuccess Objective-C block which will be run when a result is
@@ -115,9 +134,37 @@ public class AMAnswerMeSDKImpl extends NSObject {
     public void search(String query, final @Block VoidBlock1<NSArray<AMTopicImpl>> onSuccess,
             final @Block VoidBlock1<NSString> onFailure) {
 
-        answerMeService.search(
-                query,
-                l -> onSuccess.invoke(new NSArray<>(toAMTopics(l))),
-                t -> onFailure.invoke(new NSString(t.getMessage())));
+        answerMeService.search(query, MAIN_QUEUE)
+                .thenApply(l -> new NSArray<>(toAMTopics(l)))
+                .whenComplete((topics, t) -> {
+                    if (t == null) {
+                        onSuccess.invoke(topics);
+                    } else {
+                        Throwable cause = t instanceof CompletionException ? t.getCause() : t;
+                        onFailure.invoke(new NSString(String.valueOf(cause.getMessage())));
+                    }
+                });
+    }
+
+    /**
+     * Asynchronously loads the icon at the specified URL. Wraps
+     * {@link org.robovm.answerme.core.IconCache#get(String, org.robovm.answerme.core.Callback, org.robovm.answerme.core.Callback)}
+     * and makes it callable from Objective-C using the
+     * {@code loadIconWithURL:onSuccess:onFailure:} selector. Icons of search
+     * results are prefetched so {@code onSuccess} is usually run right away.
+     * The blocks are run on the main queue.
+     * 
+     * @param url the URL of the icon.
+     * @param onSuccess Objective-C block which will be run with the icon data.
+     * @param onFailure Objective-C block which will be run on failure.
+     */
+    @Method(selector = "loadIconWithURL:onSuccess:onFailure:")
+    public void loadIcon(String url, final @Block VoidBlock1<NSData> onSuccess,
+            final @Block VoidBlock1<NSString> onFailure) {
+
+        answerMeService.getIconCache().get(
+                url,
+                data -> MAIN_QUEUE.execute(() -> onSuccess.invoke(new NSData(data))),
+                t -> MAIN_QUEUE.execute(() -> onFailure.invoke(new NSString(String.valueOf(t.getMessage())))));
     }
 }
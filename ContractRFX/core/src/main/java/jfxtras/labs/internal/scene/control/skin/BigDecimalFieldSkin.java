@@ -54,6 +54,7 @@ import jfxtras.labs.scene.control.BigDecimalField;
 
 import java.math.BigDecimal;
 import java.text.ParseException;
+import java.util.Objects;
 
 
 /**
@@ -249,7 +250,10 @@ public class BigDecimalFieldSkin extends SkinBase<BigDecimalField> {
             CONTROL.numberProperty().addListener(new InvalidationListener() {
                 @Override
                 public void invalidated(Observable arg0) {
-                    setText(CONTROL.getText());
+                    String text = CONTROL.getText();
+                    if (!Objects.equals(text, getText())) {
+                        setText(text);
+                    }
                 }
             });
 
@@ -271,6 +275,24 @@ public class BigDecimalFieldSkin extends SkinBase<BigDecimalField> {
 
         }
 
+        /**
+         * Rejects typed or pasted text containing characters which can't be
+         * part of a number in the control's NumberFormat.
+         */
+        @Override
+        public void replaceText(int start, int end, String text) {
+            if (CONTROL.isAcceptableInput(text)) {
+                super.replaceText(start, end, text);
+            }
+        }
+
+        @Override
+        public void replaceSelection(String replacement) {
+            if (CONTROL.isAcceptableInput(replacement)) {
+                super.replaceSelection(replacement);
+            }
+        }
+
         /**
          * Tries to parse the user input to a number according to the provided
          * NumberFormat
@@ -282,8 +304,7 @@ public class BigDecimalFieldSkin extends SkinBase<BigDecimalField> {
                     CONTROL.setNumber(null);
                     return;
                 }
-                Number parsedNumber = CONTROL.getFormat().parse(input);
-                BigDecimal newValue = new BigDecimal(parsedNumber.toString());
+                BigDecimal newValue = CONTROL.parse(input);
                 // if parsing succeeded change number in Controller
                 CONTROL.setNumber(newValue);
                 selectAll();
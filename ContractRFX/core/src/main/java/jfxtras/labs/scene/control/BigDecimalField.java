@@ -30,9 +30,13 @@
 package jfxtras.labs.scene.control;
 
 import java.math.BigDecimal;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
 import java.text.MessageFormat;
 import java.text.NumberFormat;
 import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,11 +58,45 @@ import javafx.scene.control.Control;
  * {@link #maxValue} are set, values outside these boundaries are not accepted
  * for {@link #number}</li>
  * </ul>
+ * The formatted text of the current {@link #number} and the most recently
+ * parsed text are cached, so repeated calls to {@link #getText()} and
+ * re-parsing unchanged input don't touch the {@link NumberFormat}. Formatting
+ * and parsing is done on per-thread copies of the {@link #format}, which makes
+ * it safe to share a single {@link NumberFormat} between many fields. The
+ * {@link NumberFormat} must not be modified after it has been set.
  *
  * @author Thomas Bolz
  */
 public class BigDecimalField extends Control {
 
+    private static final int MAX_THREAD_FORMATS = 32;
+
+    /**
+     * Per-thread copies of the {@link NumberFormat}s used by all fields. Keyed
+     * on value equality so fields with equal formats share copies.
+     */
+    private static final ThreadLocal<Map<NumberFormat, NumberFormat>> THREAD_FORMATS =
+            new ThreadLocal<Map<NumberFormat, NumberFormat>>() {
+                @Override
+                protected Map<NumberFormat, NumberFormat> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+
+    // Cache of the formatted text of the current number
+    private BigDecimal formattedNumber;
+    private NumberFormat formattedWith;
+    private String formattedText;
+
+    // Cache of the most recently parsed text
+    private String parsedText;
+    private NumberFormat parsedWith;
+    private BigDecimal parsedNumber;
+
+    // Characters which may occur in text formatted using acceptedCharsFor
+    private NumberFormat acceptedCharsFor;
+    private String acceptedChars;
+
     /**
      * Default constructor. Returns a {@link BigDecimalField} with no number,
      * minValue and maxValue set, but stepwidth 1 and default
@@ -104,10 +142,17 @@ public class BigDecimalField extends Control {
      * @return The formatted String representation of {@link #number}
      */
     public String getText() {
-        if (number.getValue() != null)
-            return getFormat().format(number.getValue());
-        else
+        BigDecimal value = number.getValue();
+        if (value == null) {
             return null;
+        }
+        NumberFormat fmt = getFormat();
+        if (value != formattedNumber || fmt != formattedWith) {
+            formattedText = threadFormat(fmt).format(value);
+            formattedNumber = value;
+            formattedWith = fmt;
+        }
+        return formattedText;
     }
 
     /**
@@ -115,14 +160,110 @@ public class BigDecimalField extends Control {
      */
     public void setText(String formattedNumber) {
         try {
-            Number parsedNumber = getFormat().parse(formattedNumber);
-            setNumber(new BigDecimal(parsedNumber.toString()));
+            setNumber(parse(formattedNumber));
         } catch (ParseException ex) {
             Logger.getLogger(BigDecimalField.class.getName()).log(Level.INFO,
                     null, ex);
         }
     }
 
+    /**
+     * Parses text according to {@link #format}. Returns the cached result if
+     * the text was the last one parsed. Trailing zeros are stripped from the
+     * result, so "1.50" parses to 1.5 and "2.0" to 2, the same values the
+     * {@link Long}s and {@link Double}s returned by a plain
+     * {@link DecimalFormat} used to convert to.
+     *
+     * @param text the text to parse.
+     * @return the parsed value.
+     * @throws ParseException if the text cannot be parsed.
+     */
+    public BigDecimal parse(String text) throws ParseException {
+        NumberFormat fmt = getFormat();
+        if (fmt == parsedWith && text.equals(parsedText)) {
+            return parsedNumber;
+        }
+        Number parsed = threadFormat(fmt).parse(text);
+        BigDecimal value = parsed instanceof BigDecimal
+                ? normalize((BigDecimal) parsed) : new BigDecimal(parsed.toString());
+        parsedText = text;
+        parsedWith = fmt;
+        parsedNumber = value;
+        return value;
+    }
+
+    private static BigDecimal normalize(BigDecimal value) {
+        BigDecimal stripped = value.stripTrailingZeros();
+        return stripped.scale() < 0 ? stripped.setScale(0) : stripped;
+    }
+
+    /**
+     * Checks whether text typed or pasted into the field only consists of
+     * characters which can occur in numbers formatted by {@link #format}. Runs
+     * in time proportional to the length of the inserted text and doesn't
+     * parse the whole input, so it's cheap enough to call on every keystroke.
+     *
+     * @param text the inserted text.
+     * @return true if the text may be inserted.
+     */
+    public boolean isAcceptableInput(String text) {
+        NumberFormat fmt = getFormat();
+        if (!(fmt instanceof DecimalFormat)) {
+            return true;
+        }
+        if (fmt != acceptedCharsFor) {
+            acceptedChars = computeAcceptedChars((DecimalFormat) fmt);
+            acceptedCharsFor = fmt;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (acceptedChars.indexOf(c) == -1 && !Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String computeAcceptedChars(DecimalFormat fmt) {
+        DecimalFormatSymbols symbols = fmt.getDecimalFormatSymbols();
+        StringBuilder sb = new StringBuilder("0123456789\u00a0");
+        char zero = symbols.getZeroDigit();
+        for (int i = 0; i < 10; i++) {
+            sb.append((char) (zero + i));
+        }
+        sb.append(symbols.getDecimalSeparator());
+        sb.append(symbols.getGroupingSeparator());
+        sb.append(symbols.getMinusSign());
+        sb.append(symbols.getPercent());
+        sb.append(symbols.getPerMill());
+        sb.append(symbols.getExponentSeparator());
+        sb.append(fmt.getPositivePrefix()).append(fmt.getPositiveSuffix());
+        sb.append(fmt.getNegativePrefix()).append(fmt.getNegativeSuffix());
+        return sb.toString();
+    }
+
+    /**
+     * Returns this thread's copy of the specified {@link NumberFormat}.
+     * {@link DecimalFormat}s are set up to parse directly into
+     * {@link BigDecimal}s.
+     */
+    private static NumberFormat threadFormat(NumberFormat prototype) {
+        Map<NumberFormat, NumberFormat> formats = THREAD_FORMATS.get();
+        NumberFormat fmt = formats.get(prototype);
+        if (fmt == null) {
+            if (formats.size() >= MAX_THREAD_FORMATS) {
+                formats.clear();
+            }
+            fmt = (NumberFormat) prototype.clone();
+            if (fmt instanceof DecimalFormat) {
+                ((DecimalFormat) fmt).setParseBigDecimal(true);
+            }
+            // Key on a copy so later changes to the prototype can't corrupt the map
+            formats.put((NumberFormat) prototype.clone(), fmt);
+        }
+        return fmt;
+    }
+
     /**
      * increments the number by {@link #stepwidth}
      */
@@ -22,6 +22,7 @@ import net.engio.mbassy.bus.config.BusConfiguration;
 import net.engio.mbassy.bus.config.Feature;
 import net.engio.mbassy.listener.Handler;
 
+import org.robovm.samples.contractr.core.metrics.Metrics;
 import org.robovm.samples.contractr.core.service.ClientManager;
 
 /**
@@ -47,6 +48,15 @@ public class ClientModel {
                 .addFeature(Feature.AsynchronousMessageDispatch.Default()));
     }
 
+    private void publish(Object event) {
+        long start = Metrics.start();
+        try {
+            bus.publish(event);
+        } finally {
+            Metrics.stop("ClientModel.publish", start);
+        }
+    }
+
     /**
      * Subscribes to events fired by this {@link ClientModel}. Use MBassador's
      * {@link Handler} annotation to mark methods in the listener as listener
@@ -73,7 +83,7 @@ public class ClientModel {
         Client oldClient = this.selectedClient;
         this.selectedClient = newClient;
         if (!Objects.equals(oldClient, newClient)) {
-            bus.publish(new SelectedClientChangedEvent(oldClient, newClient));
+            publish(new SelectedClientChangedEvent(oldClient, newClient));
         }
     }
 
@@ -112,7 +122,7 @@ public class ClientModel {
      */
     public void save(Client client) {
         clientManager.save(client);
-        bus.publish(new ClientSavedEvent(client));
+        publish(new ClientSavedEvent(client));
     }
 
     /**
@@ -126,7 +136,7 @@ public class ClientModel {
             if (client.equals(selectedClient)) {
                 selectClient(null);
             }
-            bus.publish(new ClientDeletedEvent(client));
+            publish(new ClientDeletedEvent(client));
         }
     }
 
@@ -25,6 +25,7 @@ import net.engio.mbassy.bus.config.Feature;
 import net.engio.mbassy.listener.Handler;
 
 import org.robovm.samples.contractr.core.ClientModel.SelectedClientChangedEvent;
+import org.robovm.samples.contractr.core.metrics.Metrics;
 import org.robovm.samples.contractr.core.service.TaskManager;
 
 /**
@@ -55,6 +56,15 @@ public class TaskModel {
         selectTask(null);
     }
 
+    private void publish(Object event) {
+        long start = Metrics.start();
+        try {
+            bus.publish(event);
+        } finally {
+            Metrics.stop("TaskModel.publish", start);
+        }
+    }
+
     /**
      * Subscribes to events fired by this {@link TaskModel}. Use MBassador's
      * {@link Handler} annotation to mark methods in the listener as listener
@@ -81,7 +91,7 @@ public class TaskModel {
         Task oldTask = this.selectedTask;
         this.selectedTask = newTask;
         if (!Objects.equals(oldTask, newTask)) {
-            bus.publish(new SelectedTaskChangedEvent(oldTask, newTask));
+            publish(new SelectedTaskChangedEvent(oldTask, newTask));
         }
     }
 
@@ -128,7 +138,7 @@ public class TaskModel {
      */
     public void save(Task task) {
         taskManager.save(task);
-        bus.publish(new TaskSavedEvent(task));
+        publish(new TaskSavedEvent(task));
     }
 
     /**
@@ -142,7 +152,7 @@ public class TaskModel {
             if (task.equals(selectedTask)) {
                 selectTask(null);
             }
-            bus.publish(new TaskDeletedEvent(task));
+            publish(new TaskDeletedEvent(task));
         }
     }
 
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.samples.contractr.core.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process wide registry of {@link Counter}s and {@link Histogram}s. Metrics
+ * are disabled by default. While disabled {@link #start()} returns 0 without
+ * reading the clock and {@link #stop(String, long)} and
+ * {@link #increment(String)} return immediately, so instrumented code only
+ * pays for a volatile read.
+ * <p>
+ * Typical use:
+ * 
+ * <pre>
+ * long start = Metrics.start();
+ * try {
+ *     ...
+ * } finally {
+ *     Metrics.stop("TaskManager.save", start);
+ * }
+ * </pre>
+ */
+public final class Metrics {
+    private static volatile boolean enabled = false;
+    private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Returns the {@link Counter} with the specified name. Creates it if it
+     * doesn't exist.
+     */
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter newCounter = new Counter();
+            counter = counters.putIfAbsent(name, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Returns the {@link Histogram} with the specified name. Creates it if it
+     * doesn't exist.
+     */
+    public static Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram newHistogram = new Histogram();
+            histogram = histograms.putIfAbsent(name, newHistogram);
+            if (histogram == null) {
+                histogram = newHistogram;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Increments the {@link Counter} with the specified name if metrics are
+     * enabled.
+     */
+    public static void increment(String name) {
+        if (enabled) {
+            counter(name).increment();
+        }
+    }
+
+    /**
+     * Returns a start time to be passed to {@link #stop(String, long)} or 0
+     * if metrics are disabled.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records the time elapsed since {@code start} in the {@link Histogram}
+     * with the specified name. The number of calls is the count of the
+     * {@link Histogram}. Does nothing if {@code start} is 0.
+     */
+    public static void stop(String name, long start) {
+        if (start != 0) {
+            long elapsed = System.nanoTime() - start;
+            histogram(name).record(elapsed);
+        }
+    }
+
+    /**
+     * Returns a snapshot of all {@link Counter}s sorted by name.
+     */
+    public static Map<String, Counter> getCounters() {
+        return Collections.unmodifiableMap(new TreeMap<>(counters));
+    }
+
+    /**
+     * Returns a snapshot of all {@link Histogram}s sorted by name.
+     */
+    public static Map<String, Histogram> getHistograms() {
+        return Collections.unmodifiableMap(new TreeMap<>(histograms));
+    }
+
+    /**
+     * Resets all {@link Counter}s and {@link Histogram}s to zero.
+     */
+    public static void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+}
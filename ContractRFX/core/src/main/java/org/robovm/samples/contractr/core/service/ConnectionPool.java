@@ -25,4 +25,12 @@ public interface ConnectionPool {
 
     Connection getConnection() throws SQLException;
 
+    /**
+     * Returns a {@link Connection} for long running read-only queries such as
+     * reports and exports. Implementations may return a separate
+     * {@link Connection} so that such queries don't block writes made through
+     * {@link #getConnection()}.
+     */
+    Connection getReadOnlyConnection() throws SQLException;
+
 }
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.samples.contractr.core.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Outbox of all inserts, updates and deletes made through
+ * {@link JdbcClientManager} and {@link JdbcTaskManager}. Every change is
+ * written to the {@code changes} table in the same transaction as the change
+ * itself and is assigned a monotonically increasing sequence number.
+ * Consumers keep track of the last sequence number they have seen and use
+ * {@link #getChangesSince(long, int)} to fetch what has happened since.
+ */
+public class JdbcChangeLog {
+
+    public static final String TABLE_CLIENTS = "clients";
+    public static final String TABLE_TASKS = "tasks";
+    public static final String TABLE_WORK_UNITS = "work_units";
+
+    // @formatter:off
+    private static final String SQL_CREATE_TABLE_CHANGES =
+            "create table if not exists changes ("
+          + "  seq integer primary key autoincrement,"
+          + "  table_name varchar(255) not null,"
+          + "  entity_id varchar(255) not null,"
+          + "  operation varchar(16) not null,"
+          + "  change_time bigint not null"
+          + ")";
+    private static final String SQL_INSERT_CHANGE =
+            "insert into changes (table_name, entity_id, operation, change_time)"
+          + "  values (?, ?, ?, ?)";
+    private static final String SQL_SELECT_CHANGES_SINCE =
+            "select * from changes where seq > ? order by seq limit ?";
+    private static final String SQL_SELECT_LATEST_SEQ =
+            "select max(seq) from changes";
+    private static final String SQL_DELETE_CHANGES_UP_TO =
+            "delete from changes where seq <= ?";
+    private static final String SQL_DELETE_CHANGES_OLDER_THAN =
+            "delete from changes where change_time < ?";
+    // @formatter:on
+
+    /**
+     * The kind of change recorded by a {@link Change}.
+     */
+    public enum Operation {
+        INSERT, UPDATE, DELETE
+    }
+
+    private final ConnectionPool connectionPool;
+
+    public JdbcChangeLog(ConnectionPool connectionPool) {
+        this.connectionPool = Objects.requireNonNull(connectionPool, "connectionPool");
+        createSchemaIfNeeded();
+    }
+
+    private Connection getConnection() throws SQLException {
+        return connectionPool.getConnection();
+    }
+
+    private Connection getReadOnlyConnection() throws SQLException {
+        return connectionPool.getReadOnlyConnection();
+    }
+
+    private void createSchemaIfNeeded() {
+        try {
+            Connection conn = getConnection();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate(SQL_CREATE_TABLE_CHANGES);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Records a change using the specified {@link Connection}. The caller is
+     * responsible for running this in the same transaction as the change
+     * itself.
+     */
+    void record(Connection conn, String table, String entityId, Operation operation)
+            throws SQLException {
+
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_INSERT_CHANGE)) {
+            stmt.setString(1, table);
+            stmt.setString(2, entityId);
+            stmt.setString(3, operation.name());
+            stmt.setLong(4, System.currentTimeMillis());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Returns at most {@code limit} {@link Change}s with a sequence number
+     * greater than {@code sequence}, ordered by sequence number. Pass 0 to
+     * start from the beginning of the log.
+     */
+    public List<Change> getChangesSince(long sequence, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be > 0");
+        }
+        List<Change> result = new ArrayList<>();
+        try {
+            Connection conn = getReadOnlyConnection();
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_CHANGES_SINCE)) {
+                stmt.setLong(1, sequence);
+                stmt.setInt(2, limit);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    result.add(new Change(rs.getLong("seq"),
+                            rs.getString("table_name"),
+                            rs.getString("entity_id"),
+                            Operation.valueOf(rs.getString("operation")),
+                            rs.getLong("change_time")));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the sequence number of the most recent {@link Change} or 0 if
+     * the log is empty.
+     */
+    public long getLatestSequence() {
+        try {
+            Connection conn = getReadOnlyConnection();
+            try (PreparedStatement stmt = conn.prepareStatement(SQL_SELECT_LATEST_SEQ)) {
+                ResultSet rs = stmt.executeQuery();
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Removes all {@link Change}s with a sequence number less than or equal
+     * to {@code sequence}. Call this once every consumer has processed the
+     * log up to that point. Returns the number of removed {@link Change}s.
+     */
+    public int pruneUpTo(long sequence) {
+        return prune(SQL_DELETE_CHANGES_UP_TO, sequence);
+    }
+
+    /**
+     * Removes all {@link Change}s recorded before the specified time (in
+     * milliseconds since the epoch). Consumers which haven't synced since then
+     * have to fall back to a full read. Returns the number of removed
+     * {@link Change}s.
+     */
+    public int pruneOlderThan(long time) {
+        return prune(SQL_DELETE_CHANGES_OLDER_THAN, time);
+    }
+
+    private int prune(String sql, long value) {
+        try {
+            Connection conn = getConnection();
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, value);
+                return stmt.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A single recorded change.
+     */
+    public static class Change {
+        private final long sequence;
+        private final String table;
+        private final String entityId;
+        private final Operation operation;
+        private final long time;
+
+        Change(long sequence, String table, String entityId, Operation operation, long time) {
+            this.sequence = sequence;
+            this.table = table;
+            this.entityId = entityId;
+            this.operation = operation;
+            this.time = time;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Returns the name of the table which was changed, one of
+         * {@link JdbcChangeLog#TABLE_CLIENTS},
+         * {@link JdbcChangeLog#TABLE_TASKS} and
+         * {@link JdbcChangeLog#TABLE_WORK_UNITS}.
+         */
+        public String getTable() {
+            return table;
+        }
+
+        public String getEntityId() {
+            return entityId;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        /**
+         * Returns the time of the change in milliseconds since the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Change [sequence=%s, table=%s, entityId=%s, operation=%s, time=%s]",
+                    sequence, table, entityId, operation, time);
+        }
+    }
+}
@@ -27,6 +27,8 @@ import java.util.Objects;
 import java.util.UUID;
 
 import org.robovm.samples.contractr.core.Client;
+import org.robovm.samples.contractr.core.metrics.Metrics;
+import org.robovm.samples.contractr.core.service.JdbcChangeLog.Operation;
 
 /**
  * {@link ClientManager} implementation which stores {@link Client}s in a
@@ -60,6 +62,7 @@ public class JdbcClientManager implements ClientManager {
     private boolean dirty = true;
     private final ArrayList<JdbcClientImpl> clients = new ArrayList<>();
     private JdbcTaskManager taskManager;
+    private JdbcChangeLog changeLog;
 
     public JdbcClientManager(ConnectionPool connectionPool) {
         this.connectionPool = Objects.requireNonNull(connectionPool, "connectionPool");
@@ -70,6 +73,20 @@ public class JdbcClientManager implements ClientManager {
         this.taskManager = taskManager;
     }
 
+    /**
+     * Sets the {@link JdbcChangeLog} which all changes made by this
+     * {@link JdbcClientManager} will be recorded in.
+     */
+    public void setChangeLog(JdbcChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    private void recordChange(Connection conn, String id, Operation operation) throws SQLException {
+        if (changeLog != null) {
+            changeLog.record(conn, JdbcChangeLog.TABLE_CLIENTS, id, operation);
+        }
+    }
+
     private Connection getConnection() throws SQLException {
         return connectionPool.getConnection();
     }
@@ -87,6 +104,7 @@ public class JdbcClientManager implements ClientManager {
 
     private ArrayList<JdbcClientImpl> getClients() {
         if (dirty) {
+            long start = Metrics.start();
             clients.clear();
             try {
                 Connection conn = getConnection();
@@ -104,6 +122,9 @@ public class JdbcClientManager implements ClientManager {
                 throw new RuntimeException(e);
             }
             dirty = false;
+            Metrics.stop("JdbcClientManager.cache.reload", start);
+        } else {
+            Metrics.increment("JdbcClientManager.cache.hit");
         }
         return clients;
     }
@@ -128,8 +149,13 @@ public class JdbcClientManager implements ClientManager {
         return getClients().indexOf(client);
     }
 
+    /**
+     * Returns the {@link Client} with the specified id. {@link JdbcTaskManager}
+     * calls this once per task while reloading its tasks so lookups from the
+     * cache aren't counted as cache hits.
+     */
     public JdbcClientImpl getById(String id) {
-        for (JdbcClientImpl client : getClients()) {
+        for (JdbcClientImpl client : dirty ? getClients() : clients) {
             if (id.equals(client.id)) {
                 return client;
             }
@@ -141,21 +167,28 @@ public class JdbcClientManager implements ClientManager {
     public void save(Client client) {
         String id = ((JdbcClientImpl) client).id;
         String sql = null;
+        Operation operation = null;
         if (id == null) {
             // New client
             id = UUID.randomUUID().toString();
             ((JdbcClientImpl) client).id = id;
             sql = SQL_INSERT_CLIENT;
+            operation = Operation.INSERT;
         } else {
             sql = SQL_UPDATE_CLIENT;
+            operation = Operation.UPDATE;
         }
         try {
             Connection conn = getConnection();
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, client.getName());
-                stmt.setString(2, client.getHourlyRate().toString());
-                stmt.setString(3, id);
-                stmt.executeUpdate();
+            try (Transaction tx = new Transaction(conn)) {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, client.getName());
+                    stmt.setString(2, client.getHourlyRate().toString());
+                    stmt.setString(3, id);
+                    stmt.executeUpdate();
+                }
+                recordChange(conn, id, operation);
+                tx.commit();
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -169,10 +202,18 @@ public class JdbcClientManager implements ClientManager {
         String id = ((JdbcClientImpl) client).id;
         try {
             Connection conn = getConnection();
-            taskManager.deleteForClient(client);
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_CLIENT)) {
-                stmt.setString(1, id);
-                return stmt.executeUpdate() > 0;
+            try (Transaction tx = new Transaction(conn)) {
+                taskManager.deleteForClient(client);
+                boolean found = false;
+                try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_CLIENT)) {
+                    stmt.setString(1, id);
+                    found = stmt.executeUpdate() > 0;
+                }
+                if (found) {
+                    recordChange(conn, id, Operation.DELETE);
+                }
+                tx.commit();
+                return found;
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
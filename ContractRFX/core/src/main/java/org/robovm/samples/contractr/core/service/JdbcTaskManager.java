@@ -25,12 +25,15 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.UUID;
 
 import org.robovm.samples.contractr.core.Client;
 import org.robovm.samples.contractr.core.Task;
 import org.robovm.samples.contractr.core.WorkUnit;
+import org.robovm.samples.contractr.core.metrics.Metrics;
+import org.robovm.samples.contractr.core.service.JdbcChangeLog.Operation;
 import org.robovm.samples.contractr.core.service.JdbcClientManager.JdbcClientImpl;
 
 /**
@@ -75,12 +78,16 @@ public class JdbcTaskManager implements TaskManager {
           + "  where id = ?";
     private static final String SQL_DELETE_TASK =
             "delete from tasks where id = ?";
+    private static final String SQL_SELECT_TASK_IDS_FOR_CLIENT =
+            "select id from tasks where client_id = ?";
     private static final String SQL_DELETE_TASKS_FOR_CLIENT =
             "delete from tasks where client_id = ?";
     private static final String SQL_INSERT_WORK_UNIT =
             "insert into work_units "
           + "  (task_id, start_time, end_time, id)"
           + "  values (?, ?, ?, ?)";
+    private static final String SQL_SELECT_DANGLING_WORK_UNIT_IDS =
+            "select id from work_units where task_id not in (select id from tasks)";
     private static final String SQL_DELETE_DANGLING_WORK_UNITS =
             "delete from work_units where task_id not in (select id from tasks)";
     // @formatter:on
@@ -89,6 +96,7 @@ public class JdbcTaskManager implements TaskManager {
     private boolean dirty = true;
     private final ArrayList<JdbcTaskImpl> tasks = new ArrayList<>();
     private JdbcClientManager clientManager;
+    private JdbcChangeLog changeLog;
 
     public JdbcTaskManager(ConnectionPool connectionPool) {
         this.connectionPool = Objects.requireNonNull(connectionPool, "connectionPool");
@@ -99,6 +107,47 @@ public class JdbcTaskManager implements TaskManager {
         this.clientManager = Objects.requireNonNull(clientManager, "clientManager");
     }
 
+    /**
+     * Sets the {@link JdbcChangeLog} which all changes made by this
+     * {@link JdbcTaskManager} will be recorded in.
+     */
+    public void setChangeLog(JdbcChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    private void recordChange(Connection conn, String table, String id, Operation operation)
+            throws SQLException {
+
+        if (changeLog != null) {
+            changeLog.record(conn, table, id, operation);
+        }
+    }
+
+    private List<String> selectIds(Connection conn, String sql, String param) throws SQLException {
+        List<String> ids = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (param != null) {
+                stmt.setString(1, param);
+            }
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                ids.add(rs.getString("id"));
+            }
+        }
+        return ids;
+    }
+
+    private void deleteDanglingWorkUnits(Connection conn) throws SQLException {
+        if (changeLog != null) {
+            for (String workUnitId : selectIds(conn, SQL_SELECT_DANGLING_WORK_UNIT_IDS, null)) {
+                recordChange(conn, JdbcChangeLog.TABLE_WORK_UNITS, workUnitId, Operation.DELETE);
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_DANGLING_WORK_UNITS)) {
+            stmt.executeUpdate();
+        }
+    }
+
     private Connection getConnection() throws SQLException {
         return connectionPool.getConnection();
     }
@@ -117,6 +166,7 @@ public class JdbcTaskManager implements TaskManager {
 
     private ArrayList<JdbcTaskImpl> getTasks() {
         if (dirty) {
+            long start = Metrics.start();
             tasks.clear();
             try {
                 Connection conn = getConnection();
@@ -157,6 +207,9 @@ public class JdbcTaskManager implements TaskManager {
                 throw new RuntimeException(e);
             }
             dirty = false;
+            Metrics.stop("JdbcTaskManager.cache.reload", start);
+        } else {
+            Metrics.increment("JdbcTaskManager.cache.hit");
         }
         return tasks;
     }
@@ -187,6 +240,19 @@ public class JdbcTaskManager implements TaskManager {
         return getTasks().get(index);
     }
 
+    /**
+     * Returns the {@link Task} with the specified id. Used by consumers of the
+     * {@link JdbcChangeLog} to look up changed {@link Task}s.
+     */
+    public Task getById(String id) {
+        for (JdbcTaskImpl task : getTasks()) {
+            if (id.equals(task.id)) {
+                return task;
+            }
+        }
+        throw new NoSuchElementException("Task with id '" + id + "' not found");
+    }
+
     @Override
     public List<Task> getForClient(Client client, boolean unfinishedOnly) {
         List<Task> result = new ArrayList<>();
@@ -202,39 +268,47 @@ public class JdbcTaskManager implements TaskManager {
     public void save(Task task) {
         String id = ((JdbcTaskImpl) task).id;
         String sql = null;
+        Operation operation = null;
         if (id == null) {
             // New task
             id = UUID.randomUUID().toString();
             ((JdbcTaskImpl) task).id = id;
             sql = SQL_INSERT_TASK;
+            operation = Operation.INSERT;
         } else {
             sql = SQL_UPDATE_TASK;
+            operation = Operation.UPDATE;
         }
         try {
             Connection conn = getConnection();
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, ((JdbcClientImpl) task.getClient()).id);
-                stmt.setString(2, task.getTitle());
-                stmt.setString(3, task.getNotes());
-                stmt.setInt(4, task.isFinished() ? 1 : 0);
-                stmt.setObject(5, task.getWorkStartTime() == null 
-                        ? null : task.getWorkStartTime().getTime());
-                stmt.setInt(6, task.getSecondsWorked());
-                stmt.setString(7, id);
-                stmt.executeUpdate();
-            }
-            for (WorkUnit wu : task.getWorkUnits()) {
-                JdbcWorkUnitImpl workUnit = (JdbcWorkUnitImpl) wu;
-                if (workUnit.id == null) {
-                    try (PreparedStatement stmt = conn.prepareStatement(SQL_INSERT_WORK_UNIT)) {
-                        workUnit.id = UUID.randomUUID().toString();
-                        stmt.setString(1, ((JdbcTaskImpl) task).id);
-                        stmt.setLong(2, workUnit.getStartTime().getTime());
-                        stmt.setLong(3, workUnit.getEndTime().getTime());
-                        stmt.setString(4, workUnit.id);
-                        stmt.executeUpdate();
+            try (Transaction tx = new Transaction(conn)) {
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, ((JdbcClientImpl) task.getClient()).id);
+                    stmt.setString(2, task.getTitle());
+                    stmt.setString(3, task.getNotes());
+                    stmt.setInt(4, task.isFinished() ? 1 : 0);
+                    stmt.setObject(5, task.getWorkStartTime() == null 
+                            ? null : task.getWorkStartTime().getTime());
+                    stmt.setInt(6, task.getSecondsWorked());
+                    stmt.setString(7, id);
+                    stmt.executeUpdate();
+                }
+                recordChange(conn, JdbcChangeLog.TABLE_TASKS, id, operation);
+                for (WorkUnit wu : task.getWorkUnits()) {
+                    JdbcWorkUnitImpl workUnit = (JdbcWorkUnitImpl) wu;
+                    if (workUnit.id == null) {
+                        try (PreparedStatement stmt = conn.prepareStatement(SQL_INSERT_WORK_UNIT)) {
+                            workUnit.id = UUID.randomUUID().toString();
+                            stmt.setString(1, ((JdbcTaskImpl) task).id);
+                            stmt.setLong(2, workUnit.getStartTime().getTime());
+                            stmt.setLong(3, workUnit.getEndTime().getTime());
+                            stmt.setString(4, workUnit.id);
+                            stmt.executeUpdate();
+                        }
+                        recordChange(conn, JdbcChangeLog.TABLE_WORK_UNITS, workUnit.id, Operation.INSERT);
                     }
                 }
+                tx.commit();
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -248,17 +322,19 @@ public class JdbcTaskManager implements TaskManager {
         String id = ((JdbcTaskImpl) task).id;
         try {
             Connection conn = getConnection();
-            boolean found = false;
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_TASK)) {
-                stmt.setString(1, id);
-                found = stmt.executeUpdate() > 0;
-            }
-            if (found) {
-                try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_DANGLING_WORK_UNITS)) {
-                    stmt.executeUpdate();
+            try (Transaction tx = new Transaction(conn)) {
+                boolean found = false;
+                try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_TASK)) {
+                    stmt.setString(1, id);
+                    found = stmt.executeUpdate() > 0;
                 }
+                if (found) {
+                    recordChange(conn, JdbcChangeLog.TABLE_TASKS, id, Operation.DELETE);
+                    deleteDanglingWorkUnits(conn);
+                }
+                tx.commit();
+                return found;
             }
-            return found;
         } catch (SQLException e) {
             throw new RuntimeException(e);
         } finally {
@@ -270,12 +346,18 @@ public class JdbcTaskManager implements TaskManager {
         String id = ((JdbcClientImpl) client).id;
         try {
             Connection conn = getConnection();
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_TASKS_FOR_CLIENT)) {
-                stmt.setString(1, id);
-                stmt.executeUpdate();
-            }
-            try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_DANGLING_WORK_UNITS)) {
-                stmt.executeUpdate();
+            try (Transaction tx = new Transaction(conn)) {
+                if (changeLog != null) {
+                    for (String taskId : selectIds(conn, SQL_SELECT_TASK_IDS_FOR_CLIENT, id)) {
+                        recordChange(conn, JdbcChangeLog.TABLE_TASKS, taskId, Operation.DELETE);
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(SQL_DELETE_TASKS_FOR_CLIENT)) {
+                    stmt.setString(1, id);
+                    stmt.executeUpdate();
+                }
+                deleteDanglingWorkUnits(conn);
+                tx.commit();
             }
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.samples.contractr.core.service;
+
+import java.util.Objects;
+
+import org.robovm.samples.contractr.core.Client;
+import org.robovm.samples.contractr.core.metrics.Metrics;
+
+/**
+ * {@link ClientManager} which records call counts and latencies in
+ * {@link Metrics} before delegating to another {@link ClientManager}.
+ */
+public class MeteredClientManager implements ClientManager {
+    private final ClientManager delegate;
+
+    public MeteredClientManager(ClientManager delegate) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+    }
+
+    @Override
+    public Client create() {
+        long start = Metrics.start();
+        try {
+            return delegate.create();
+        } finally {
+            Metrics.stop("ClientManager.create", start);
+        }
+    }
+
+    @Override
+    public int count() {
+        long start = Metrics.start();
+        try {
+            return delegate.count();
+        } finally {
+            Metrics.stop("ClientManager.count", start);
+        }
+    }
+
+    @Override
+    public Client get(int index) {
+        long start = Metrics.start();
+        try {
+            return delegate.get(index);
+        } finally {
+            Metrics.stop("ClientManager.get", start);
+        }
+    }
+
+    @Override
+    public int indexOf(Client client) {
+        long start = Metrics.start();
+        try {
+            return delegate.indexOf(client);
+        } finally {
+            Metrics.stop("ClientManager.indexOf", start);
+        }
+    }
+
+    @Override
+    public void save(Client client) {
+        long start = Metrics.start();
+        try {
+            delegate.save(client);
+        } finally {
+            Metrics.stop("ClientManager.save", start);
+        }
+    }
+
+    @Override
+    public boolean delete(Client client) {
+        long start = Metrics.start();
+        try {
+            return delegate.delete(client);
+        } finally {
+            Metrics.stop("ClientManager.delete", start);
+        }
+    }
+}
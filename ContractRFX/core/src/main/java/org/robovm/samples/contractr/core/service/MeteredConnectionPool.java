@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.samples.contractr.core.service;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Objects;
+
+import org.robovm.samples.contractr.core.metrics.Metrics;
+
+/**
+ * {@link ConnectionPool} which wraps the {@link Connection}s returned by
+ * another {@link ConnectionPool} and records SQL execution times in
+ * {@link Metrics}. Queries are recorded as {@code sql.query} and everything
+ * else as {@code sql.update}.
+ */
+public class MeteredConnectionPool implements ConnectionPool {
+    private final ConnectionPool delegate;
+
+    public MeteredConnectionPool(ConnectionPool delegate) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(delegate.getConnection());
+    }
+
+    @Override
+    public Connection getReadOnlyConnection() throws SQLException {
+        return wrap(delegate.getReadOnlyConnection());
+    }
+
+    private static Connection wrap(final Connection conn) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        Object result = call(conn, method, args);
+                        if (result instanceof CallableStatement) {
+                            return wrap((Statement) result, CallableStatement.class);
+                        } else if (result instanceof PreparedStatement) {
+                            return wrap((Statement) result, PreparedStatement.class);
+                        } else if (result instanceof Statement) {
+                            return wrap((Statement) result, Statement.class);
+                        }
+                        return result;
+                    }
+                });
+    }
+
+    private static Statement wrap(final Statement stmt, Class<? extends Statement> type) {
+        return (Statement) Proxy.newProxyInstance(type.getClassLoader(),
+                new Class<?>[] { type }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        String name = method.getName();
+                        if (!name.startsWith("execute")) {
+                            return call(stmt, method, args);
+                        }
+                        long start = Metrics.start();
+                        try {
+                            return call(stmt, method, args);
+                        } finally {
+                            Metrics.stop(name.equals("executeQuery") ? "sql.query" : "sql.update", start);
+                        }
+                    }
+                });
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.samples.contractr.core.service;
+
+import java.util.List;
+import java.util.Objects;
+
+import org.robovm.samples.contractr.core.Client;
+import org.robovm.samples.contractr.core.Task;
+import org.robovm.samples.contractr.core.metrics.Metrics;
+
+/**
+ * {@link TaskManager} which records call counts and latencies in
+ * {@link Metrics} before delegating to another {@link TaskManager}.
+ */
+public class MeteredTaskManager implements TaskManager {
+    private final TaskManager delegate;
+
+    public MeteredTaskManager(TaskManager delegate) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+    }
+
+    @Override
+    public Task create(Client client) {
+        long start = Metrics.start();
+        try {
+            return delegate.create(client);
+        } finally {
+            Metrics.stop("TaskManager.create", start);
+        }
+    }
+
+    @Override
+    public int count() {
+        long start = Metrics.start();
+        try {
+            return delegate.count();
+        } finally {
+            Metrics.stop("TaskManager.count", start);
+        }
+    }
+
+    @Override
+    public int countUnfinished() {
+        long start = Metrics.start();
+        try {
+            return delegate.countUnfinished();
+        } finally {
+            Metrics.stop("TaskManager.countUnfinished", start);
+        }
+    }
+
+    @Override
+    public Task get(int index) {
+        long start = Metrics.start();
+        try {
+            return delegate.get(index);
+        } finally {
+            Metrics.stop("TaskManager.get", start);
+        }
+    }
+
+    @Override
+    public List<Task> getForClient(Client client, boolean unfinishedOnly) {
+        long start = Metrics.start();
+        try {
+            return delegate.getForClient(client, unfinishedOnly);
+        } finally {
+            Metrics.stop("TaskManager.getForClient", start);
+        }
+    }
+
+    @Override
+    public void save(Task task) {
+        long start = Metrics.start();
+        try {
+            delegate.save(task);
+        } finally {
+            Metrics.stop("TaskManager.save", start);
+        }
+    }
+
+    @Override
+    public boolean delete(Task task) {
+        long start = Metrics.start();
+        try {
+            return delegate.delete(task);
+        } finally {
+            Metrics.stop("TaskManager.delete", start);
+        }
+    }
+}
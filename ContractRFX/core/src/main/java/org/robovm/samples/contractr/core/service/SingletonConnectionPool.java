@@ -18,26 +18,104 @@ package org.robovm.samples.contractr.core.service;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Objects;
+import java.util.Properties;
 
 /**
  * {@link ConnectionPool} which returns the same {@link Connection} until it is
- * closed.
+ * closed. A second, read-only {@link Connection} is handed out by
+ * {@link #getReadOnlyConnection()} unless the database is in-memory.
+ * <p>
+ * The SQLite specific properties {@link #JOURNAL_MODE}, {@link #SYNCHRONOUS},
+ * {@link #CACHE_SIZE} and {@link #MMAP_SIZE} are applied as {@code PRAGMA}s
+ * whenever a {@link Connection} is opened. All other properties are passed on
+ * to the JDBC driver as is.
  */
 public class SingletonConnectionPool implements ConnectionPool {
 
+    public static final String JOURNAL_MODE = "journal_mode";
+    public static final String SYNCHRONOUS = "synchronous";
+    public static final String CACHE_SIZE = "cache_size";
+    public static final String MMAP_SIZE = "mmap_size";
+
+    private static final String[] PRAGMAS = {JOURNAL_MODE, SYNCHRONOUS, CACHE_SIZE, MMAP_SIZE};
+
     private final String jdbcUrl;
+    private final Properties properties;
     private Connection connection;
+    private Connection readOnlyConnection;
 
     public SingletonConnectionPool(String jdbcUrl) {
+        this(jdbcUrl, new Properties());
+    }
+
+    public SingletonConnectionPool(String jdbcUrl, Properties properties) {
         this.jdbcUrl = Objects.requireNonNull(jdbcUrl, "jdbcUrl");
+        this.properties = Objects.requireNonNull(properties, "properties");
     }
 
-    public Connection getConnection() throws SQLException {
+    /**
+     * Returns properties which enable write-ahead logging with
+     * {@code synchronous=NORMAL}, a 8 MB page cache and a 64 MB memory mapped
+     * I/O region. With WAL readers don't block the writer and vice versa.
+     */
+    public static Properties walProperties() {
+        Properties props = new Properties();
+        props.setProperty(JOURNAL_MODE, "WAL");
+        props.setProperty(SYNCHRONOUS, "NORMAL");
+        // Negative values are in KiB rather than pages
+        props.setProperty(CACHE_SIZE, "-8192");
+        props.setProperty(MMAP_SIZE, String.valueOf(64 * 1024 * 1024));
+        return props;
+    }
+
+    public synchronized Connection getConnection() throws SQLException {
         if (connection == null || connection.isClosed()) {
-            connection = DriverManager.getConnection(jdbcUrl);
+            connection = open(false);
         }
         return connection;
     }
 
+    public synchronized Connection getReadOnlyConnection() throws SQLException {
+        if (isInMemory()) {
+            // Every connection to an in-memory db gets its own private db
+            return getConnection();
+        }
+        if (readOnlyConnection == null || readOnlyConnection.isClosed()) {
+            readOnlyConnection = open(true);
+        }
+        return readOnlyConnection;
+    }
+
+    private boolean isInMemory() {
+        return jdbcUrl.contains(":memory:");
+    }
+
+    private Connection open(boolean readOnly) throws SQLException {
+        Properties driverProps = new Properties();
+        driverProps.putAll(properties);
+        for (String pragma : PRAGMAS) {
+            driverProps.remove(pragma);
+        }
+        if (readOnly) {
+            // SQLITE_OPEN_READONLY for drivers which support it
+            driverProps.setProperty("open_mode", "1");
+        }
+        Connection conn = DriverManager.getConnection(jdbcUrl, driverProps);
+        try (Statement stmt = conn.createStatement()) {
+            for (String pragma : PRAGMAS) {
+                String value = properties.getProperty(pragma);
+                if (value != null && !(readOnly && pragma.equals(JOURNAL_MODE))) {
+                    stmt.execute("pragma " + pragma + " = " + value);
+                }
+            }
+            if (readOnly) {
+                // Ignored by SQLite versions without support for query_only
+                stmt.execute("pragma query_only = 1");
+            }
+        }
+        return conn;
+    }
+
 }
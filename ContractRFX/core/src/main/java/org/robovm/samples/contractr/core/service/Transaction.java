@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.samples.contractr.core.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Groups the statements executed on a {@link Connection} into a single
+ * transaction. Meant to be used in a try-with-resources block. If the
+ * {@link Connection} is already part of a transaction (i.e. auto-commit is
+ * off) this {@link Transaction} joins it and leaves committing to the
+ * outermost {@link Transaction}.
+ */
+class Transaction implements AutoCloseable {
+    private final Connection conn;
+    private final boolean outermost;
+    private boolean committed = false;
+
+    Transaction(Connection conn) throws SQLException {
+        this.conn = conn;
+        this.outermost = conn.getAutoCommit();
+        if (outermost) {
+            conn.setAutoCommit(false);
+        }
+    }
+
+    /**
+     * Commits the transaction if this is the outermost {@link Transaction}.
+     */
+    void commit() throws SQLException {
+        if (outermost) {
+            conn.commit();
+        }
+        committed = true;
+    }
+
+    /**
+     * Rolls back the transaction unless {@link #commit()} has been called.
+     */
+    @Override
+    public void close() throws SQLException {
+        if (outermost) {
+            try {
+                if (!committed) {
+                    conn.rollback();
+                }
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+}
@@ -22,8 +22,14 @@ import org.robovm.samples.contractr.core.Client;
 import org.robovm.samples.contractr.core.ClientModel;
 import org.robovm.samples.contractr.core.Task;
 import org.robovm.samples.contractr.core.TaskModel;
+import org.robovm.samples.contractr.core.metrics.Metrics;
+import org.robovm.samples.contractr.core.service.ConnectionPool;
+import org.robovm.samples.contractr.core.service.JdbcChangeLog;
 import org.robovm.samples.contractr.core.service.JdbcClientManager;
 import org.robovm.samples.contractr.core.service.JdbcTaskManager;
+import org.robovm.samples.contractr.core.service.MeteredClientManager;
+import org.robovm.samples.contractr.core.service.MeteredConnectionPool;
+import org.robovm.samples.contractr.core.service.MeteredTaskManager;
 import org.robovm.samples.contractr.core.service.SingletonConnectionPool;
 import org.robovm.samples.contractr.fx.core.ContractRFXApp;
 
@@ -39,15 +45,36 @@ public class ContractRFXDesktopApp extends ContractRFXApp {
         File dbFile = new File(System.getProperty("user.home"), ".ContractR/db.sqlite");
         dbFile.getParentFile().mkdirs();
         System.out.println("Using db in file: " + dbFile.getAbsolutePath());
-        SingletonConnectionPool connectionPool = new SingletonConnectionPool(
+        /*
+         * Run with -Dcontractr.metrics=true to collect metrics and export them
+         * over JMX.
+         */
+        boolean metricsEnabled = Boolean.getBoolean("contractr.metrics");
+        Metrics.setEnabled(metricsEnabled);
+        if (metricsEnabled) {
+            MetricsMBean.register();
+        }
+
+        ConnectionPool connectionPool = new SingletonConnectionPool(
                 "jdbc:sqlite::memory:");
+        if (metricsEnabled) {
+            connectionPool = new MeteredConnectionPool(connectionPool);
+        }
         JdbcClientManager clientManager = new JdbcClientManager(connectionPool);
         JdbcTaskManager taskManager = new JdbcTaskManager(connectionPool);
         clientManager.setTaskManager(taskManager);
         taskManager.setClientManager(clientManager);
+        JdbcChangeLog changeLog = new JdbcChangeLog(connectionPool);
+        clientManager.setChangeLog(changeLog);
+        taskManager.setChangeLog(changeLog);
         
-        super.clientModel = new ClientModel(clientManager);
-        super.taskModel = new TaskModel(taskManager);
+        if (metricsEnabled) {
+            super.clientModel = new ClientModel(new MeteredClientManager(clientManager));
+            super.taskModel = new TaskModel(new MeteredTaskManager(taskManager));
+        } else {
+            super.clientModel = new ClientModel(clientManager);
+            super.taskModel = new TaskModel(taskManager);
+        }
 
         for (String name : Arrays.asList("Apple", "Google", "Oracle")) {
             Client client = clientModel.create();
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.samples.contractr.fx.desktop;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import org.robovm.samples.contractr.core.metrics.Counter;
+import org.robovm.samples.contractr.core.metrics.Histogram;
+import org.robovm.samples.contractr.core.metrics.Metrics;
+
+/**
+ * Exports {@link Metrics} over JMX. Every {@link Counter} becomes a read-only
+ * attribute. Every {@link Histogram} becomes a set of attributes suffixed with
+ * {@code .count}, {@code .meanMicros}, {@code .p50Micros},
+ * {@code .p99Micros} and {@code .maxMicros}. The attribute set is recomputed
+ * whenever the {@link MBeanInfo} is requested, so metrics created after
+ * registration show up once the JMX client reconnects.
+ */
+public class MetricsMBean implements DynamicMBean {
+
+    public static final String OBJECT_NAME = "org.robovm.samples.contractr:type=Metrics";
+
+    private static final String[] HISTOGRAM_SUFFIXES = {
+        ".count", ".meanMicros", ".p50Micros", ".p99Micros", ".maxMicros"
+    };
+
+    /**
+     * Registers a {@link MetricsMBean} with the platform MBean server.
+     */
+    public static void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(),
+                new ObjectName(OBJECT_NAME));
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Counter counter = Metrics.getCounters().get(attribute);
+        if (counter != null) {
+            return counter.getCount();
+        }
+        for (String suffix : HISTOGRAM_SUFFIXES) {
+            if (attribute.endsWith(suffix)) {
+                String name = attribute.substring(0, attribute.length() - suffix.length());
+                Histogram histogram = Metrics.getHistograms().get(name);
+                if (histogram != null) {
+                    return getHistogramValue(histogram, suffix);
+                }
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    private static long getHistogramValue(Histogram histogram, String suffix) {
+        switch (suffix) {
+        case ".count":
+            return histogram.getCount();
+        case ".meanMicros":
+            return histogram.getMean() / 1000;
+        case ".p50Micros":
+            return histogram.getPercentile(50) / 1000;
+        case ".p99Micros":
+            return histogram.getPercentile(99) / 1000;
+        default:
+            return histogram.getMax() / 1000;
+        }
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList result = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                result.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // Skip as required by DynamicMBean
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("All attributes are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature)
+            throws ReflectionException {
+        if ("reset".equals(actionName)) {
+            Metrics.reset();
+            return null;
+        }
+        throw new ReflectionException(new NoSuchMethodException(actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Entry<String, Counter> entry : Metrics.getCounters().entrySet()) {
+            attributes.add(new MBeanAttributeInfo(entry.getKey(), "long",
+                    "Counter " + entry.getKey(), true, false, false));
+        }
+        Map<String, Histogram> histograms = Metrics.getHistograms();
+        for (String name : histograms.keySet()) {
+            for (String suffix : HISTOGRAM_SUFFIXES) {
+                attributes.add(new MBeanAttributeInfo(name + suffix, "long",
+                        "Histogram " + name, true, false, false));
+            }
+        }
+        MBeanOperationInfo reset = new MBeanOperationInfo("reset",
+                "Resets all metrics to zero", new MBeanParameterInfo[0], "void",
+                MBeanOperationInfo.ACTION);
+        return new MBeanInfo(getClass().getName(), "ContractR metrics",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+                null, new MBeanOperationInfo[] { reset }, null);
+    }
+}
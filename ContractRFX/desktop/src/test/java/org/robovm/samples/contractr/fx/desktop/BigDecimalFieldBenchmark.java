@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.samples.contractr.fx.desktop;
+
+import java.math.BigDecimal;
+import java.text.NumberFormat;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import javafx.application.Platform;
+
+import jfxtras.labs.scene.control.BigDecimalField;
+
+import com.sun.javafx.application.PlatformImpl;
+
+/**
+ * Formats and parses the values of many {@link BigDecimalField}s sharing one
+ * {@link NumberFormat}, like the hourly rate fields do, and compares the
+ * field's cached {@link BigDecimalField#getText()} and
+ * {@link BigDecimalField#parse(String)} with the uncached path the field used
+ * before: {@code format.format(number)} and
+ * {@code new BigDecimal(format.parse(text).toString())}. Two workloads are
+ * measured:
+ * <ul>
+ * <li>{@code unchanged}: every round formats and re-parses each field's
+ * current value, like repeated layout passes and focus changes do.</li>
+ * <li>{@code changed}: every round sets a new value on each field before
+ * formatting and parsing it, so the caches never hit.</li>
+ * </ul>
+ * Before timing anything the benchmark checks that both paths produce equal
+ * text and equal {@link BigDecimal}s, including their scale, for every
+ * value, and fails if they don't.
+ *
+ * <pre>
+ * java org.robovm.samples.contractr.fx.desktop.BigDecimalFieldBenchmark \
+ *     --fields=10000 --rounds=50
+ * </pre>
+ *
+ * Run with the test class path, which includes the Monocle jar used to start
+ * the FX toolkit headless.
+ */
+public class BigDecimalFieldBenchmark {
+
+    private static final String[] TEXTS = {
+        "$1.50", "$2.0", "$2", "$0.10", "$1,234.50", "-$3.00", "$0.00", "$0.005", "$100"
+    };
+
+    private final NumberFormat format = NumberFormat.getCurrencyInstance(Locale.US);
+    private final BigDecimalField[] fields;
+    private final BigDecimal[][] values;
+    private final int rounds;
+
+    private long sink;
+
+    BigDecimalFieldBenchmark(int fieldCount, int rounds) {
+        this.rounds = rounds;
+        Random random = new Random(1);
+        fields = new BigDecimalField[fieldCount];
+        values = new BigDecimal[rounds][fieldCount];
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < fieldCount; i++) {
+                values[r][i] = BigDecimal.valueOf(random.nextInt(10000000), 2);
+            }
+        }
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = new BigDecimalField(values[0][i], BigDecimal.ONE, format);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+        System.setProperty("prism.text", "t2k");
+        System.setProperty("java.awt.headless", "true");
+
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                params.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        int fieldCount = Integer.parseInt(getOrDefault(params, "fields", "10000"));
+        int rounds = Integer.parseInt(getOrDefault(params, "rounds", "50"));
+
+        // Controls can't be created before the toolkit has been started
+        CountDownLatch started = new CountDownLatch(1);
+        PlatformImpl.startup(started::countDown);
+        started.await();
+        try {
+            BigDecimalFieldBenchmark benchmark = new BigDecimalFieldBenchmark(fieldCount, rounds);
+            benchmark.verify();
+
+            System.out.format("%d fields, %d rounds%n%n", fieldCount, rounds);
+            System.out.format("%-10s %14s %14s%n", "", "uncached(ns)", "cached(ns)");
+            // The first pass warms up the JIT, the second is reported
+            for (int pass = 0; pass < 2; pass++) {
+                long uncached = benchmark.uncachedUnchanged();
+                long cached = benchmark.cachedUnchanged();
+                if (pass == 1) {
+                    benchmark.report("unchanged", uncached, cached);
+                }
+                uncached = benchmark.uncachedChanged();
+                cached = benchmark.cachedChanged();
+                if (pass == 1) {
+                    benchmark.report("changed", uncached, cached);
+                }
+            }
+        } finally {
+            Platform.exit();
+        }
+    }
+
+    private static String getOrDefault(Map<String, String> params, String key, String defaultValue) {
+        String value = params.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private void verify() throws ParseException {
+        BigDecimalField field = new BigDecimalField(BigDecimal.ZERO, BigDecimal.ONE, format);
+        for (String text : TEXTS) {
+            check(text, uncachedParse(text), field.parse(text));
+        }
+        for (BigDecimal[] round : values) {
+            for (BigDecimal value : round) {
+                field.setNumber(value);
+                String text = field.getText();
+                check(value.toString(), format.format(value), text);
+                check(text, uncachedParse(text), field.parse(text));
+            }
+        }
+    }
+
+    private static void check(String input, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException(input + ": expected " + expected + " but got " + actual);
+        }
+    }
+
+    private BigDecimal uncachedParse(String text) throws ParseException {
+        return new BigDecimal(format.parse(text).toString());
+    }
+
+    private long uncachedUnchanged() throws ParseException {
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (BigDecimalField field : fields) {
+                String text = format.format(field.getNumber());
+                sink += uncachedParse(text).scale();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long cachedUnchanged() throws ParseException {
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (BigDecimalField field : fields) {
+                String text = field.getText();
+                sink += field.parse(text).scale();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long uncachedChanged() throws ParseException {
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].setNumber(values[r][i]);
+                String text = format.format(fields[i].getNumber());
+                sink += uncachedParse(text).scale();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private long cachedChanged() throws ParseException {
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < fields.length; i++) {
+                fields[i].setNumber(values[r][i]);
+                String text = fields[i].getText();
+                sink += fields[i].parse(text).scale();
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void report(String name, long uncachedNanos, long cachedNanos) {
+        long operations = (long) rounds * fields.length;
+        System.out.format("%-10s %14.1f %14.1f%n", name, (double) uncachedNanos / operations,
+                (double) cachedNanos / operations);
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.samples.contractr.fx.desktop;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.robovm.samples.contractr.core.Client;
+import org.robovm.samples.contractr.core.Task;
+import org.robovm.samples.contractr.core.metrics.Histogram;
+import org.robovm.samples.contractr.core.metrics.Metrics;
+import org.robovm.samples.contractr.core.service.ConnectionPool;
+import org.robovm.samples.contractr.core.service.JdbcClientManager;
+import org.robovm.samples.contractr.core.service.JdbcTaskManager;
+import org.robovm.samples.contractr.core.service.SingletonConnectionPool;
+
+/**
+ * Mixed read/write benchmark for {@link SingletonConnectionPool}. One thread
+ * starts and stops work on tasks through {@link JdbcTaskManager}, like the
+ * Start/Stop button does, while another thread runs a report query over all
+ * work units as fast as it can. Each configuration runs against a fresh
+ * database file:
+ * <ul>
+ * <li>{@code rollback-read-only}: the baseline. Rollback journal, reports on
+ * {@link SingletonConnectionPool#getReadOnlyConnection()}. A report holds a
+ * shared lock on the database file, so writes wait for it to finish.</li>
+ * <li>{@code wal-read-only}: {@link SingletonConnectionPool#walProperties()},
+ * reports on {@link SingletonConnectionPool#getReadOnlyConnection()}. Reports
+ * read a snapshot and don't block writes.</li>
+ * <li>{@code wal-shared}: {@link SingletonConnectionPool#walProperties()},
+ * reports on the write connection, so reads and writes take turns on it.</li>
+ * </ul>
+ * All configurations wait up to {@link #BUSY_TIMEOUT_MS} for a lock rather
+ * than failing, so contention shows up as write latency.
+ * Prints the write latency distribution and the number of reports completed
+ * for each configuration:
+ *
+ * <pre>
+ * java org.robovm.samples.contractr.fx.desktop.ConnectionPoolBenchmark \
+ *     --workUnits=200000 --seconds=10
+ * </pre>
+ *
+ * Run with the test classes and the sqlite-jdbc driver on the class path.
+ */
+public class ConnectionPoolBenchmark {
+
+    private static final int CLIENTS = 20;
+    private static final int BUSY_TIMEOUT_MS = 10000;
+    private static final int TASKS_PER_CLIENT = 10;
+
+    // @formatter:off
+    private static final String SQL_REPORT =
+            "select t.client_id, count(*), sum(w.end_time - w.start_time)"
+          + "  from work_units w join tasks t on t.id = w.task_id"
+          + "  group by t.client_id";
+    private static final String SQL_SELECT_TASK_IDS =
+            "select id from tasks";
+    private static final String SQL_INSERT_WORK_UNIT =
+            "insert into work_units (task_id, start_time, end_time, id) values (?, ?, ?, ?)";
+    // @formatter:on
+
+    private final int workUnits;
+    private final long durationNanos;
+
+    public ConnectionPoolBenchmark(int workUnits, long durationNanos) {
+        this.workUnits = workUnits;
+        this.durationNanos = durationNanos;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Class.forName("org.sqlite.JDBC");
+
+        Map<String, String> params = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                params.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        int workUnits = Integer.parseInt(getOrDefault(params, "workUnits", "200000"));
+        int seconds = Integer.parseInt(getOrDefault(params, "seconds", "10"));
+        ConnectionPoolBenchmark benchmark = new ConnectionPoolBenchmark(workUnits,
+                TimeUnit.SECONDS.toNanos(seconds));
+
+        System.out.format("%d work units, %d s per configuration%n%n", workUnits, seconds);
+        System.out.format("%-16s %8s %10s %10s %10s %10s %8s%n", "", "writes", "mean(us)",
+                "p50(us)", "p99(us)", "max(us)", "reports");
+        benchmark.run("rollback-read-only", rollbackProperties(), false);
+        benchmark.run("wal-read-only", SingletonConnectionPool.walProperties(), false);
+        benchmark.run("wal-shared", SingletonConnectionPool.walProperties(), true);
+    }
+
+    private static Properties rollbackProperties() {
+        Properties props = new Properties();
+        props.setProperty(SingletonConnectionPool.JOURNAL_MODE, "DELETE");
+        return props;
+    }
+
+    private static String getOrDefault(Map<String, String> params, String key, String defaultValue) {
+        String value = params.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    private void run(String name, Properties properties, boolean shareConnection)
+            throws IOException, SQLException, InterruptedException {
+
+        File dbFile = File.createTempFile("contractr-benchmark", ".sqlite");
+        try {
+            Properties props = new Properties();
+            props.putAll(properties);
+            // Passed on to the driver, which sets the busy timeout pragma
+            props.setProperty("busy_timeout", String.valueOf(BUSY_TIMEOUT_MS));
+            SingletonConnectionPool singleton = new SingletonConnectionPool(
+                    "jdbc:sqlite:" + dbFile.getAbsolutePath(), props);
+            ConnectionPool pool = shareConnection ? new SharedConnectionPool(singleton) : singleton;
+
+            JdbcClientManager clientManager = new JdbcClientManager(pool);
+            JdbcTaskManager taskManager = new JdbcTaskManager(pool);
+            clientManager.setTaskManager(taskManager);
+            taskManager.setClientManager(clientManager);
+            List<Task> tasks = seed(pool, clientManager, taskManager);
+
+            Histogram writes = Metrics.histogram("benchmark." + name + ".write");
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicLong reports = new AtomicLong();
+            Thread reader = new Thread("ConnectionPoolBenchmark reader") {
+                @Override
+                public void run() {
+                    try {
+                        while (!done.get()) {
+                            report(pool.getReadOnlyConnection());
+                            reports.incrementAndGet();
+                        }
+                    } catch (SQLException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            reader.start();
+
+            long end = System.nanoTime() + durationNanos;
+            for (int i = 0; System.nanoTime() < end; i++) {
+                Task task = tasks.get(i % tasks.size());
+                Date startTime = new Date();
+                long start = System.nanoTime();
+                task.setWorkStartTime(startTime);
+                taskManager.save(task);
+                writes.record(System.nanoTime() - start);
+
+                start = System.nanoTime();
+                task.addWorkUnit(startTime, new Date());
+                task.setWorkStartTime(null);
+                taskManager.save(task);
+                writes.record(System.nanoTime() - start);
+            }
+            done.set(true);
+            reader.join();
+
+            System.out.format("%-16s %8d %10d %10d %10d %10d %8d%n", name, writes.getCount(),
+                    writes.getMean() / 1000, writes.getPercentile(50) / 1000,
+                    writes.getPercentile(99) / 1000, writes.getMax() / 1000, reports.get());
+
+            singleton.getConnection().close();
+            if (!shareConnection) {
+                singleton.getReadOnlyConnection().close();
+            }
+        } finally {
+            for (String suffix : new String[] { "", "-wal", "-shm", "-journal" }) {
+                new File(dbFile.getAbsolutePath() + suffix).delete();
+            }
+        }
+    }
+
+    private List<Task> seed(ConnectionPool pool, JdbcClientManager clientManager,
+            JdbcTaskManager taskManager) throws SQLException {
+
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            Client client = clientManager.create();
+            client.setName(String.format("Client %05d", i));
+            client.setHourlyRate(BigDecimal.valueOf(50 + i));
+            clientManager.save(client);
+            for (int j = 0; j < TASKS_PER_CLIENT; j++) {
+                Task task = taskManager.create(client);
+                task.setTitle(String.format("Task %05d", j));
+                taskManager.save(task);
+            }
+        }
+        for (int i = 0; i < taskManager.count(); i++) {
+            tasks.add(taskManager.get(i));
+        }
+
+        // Work units are inserted directly, going through Task.addWorkUnit()
+        // would take ages.
+        Connection conn = pool.getConnection();
+        List<String> taskIds = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery(SQL_SELECT_TASK_IDS);
+            while (rs.next()) {
+                taskIds.add(rs.getString(1));
+            }
+        }
+        conn.setAutoCommit(false);
+        try (PreparedStatement stmt = conn.prepareStatement(SQL_INSERT_WORK_UNIT)) {
+            long time = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(365);
+            for (int i = 0; i < workUnits; i++) {
+                stmt.setString(1, taskIds.get(i % taskIds.size()));
+                stmt.setLong(2, time);
+                stmt.setLong(3, time + TimeUnit.MINUTES.toMillis(30));
+                stmt.setString(4, UUID.randomUUID().toString());
+                stmt.addBatch();
+                time += TimeUnit.MINUTES.toMillis(40);
+                if (i % 1000 == 999) {
+                    stmt.executeBatch();
+                }
+            }
+            stmt.executeBatch();
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(true);
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("analyze");
+        }
+        return tasks;
+    }
+
+    private static void report(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            ResultSet rs = stmt.executeQuery(SQL_REPORT);
+            while (rs.next()) {
+                rs.getLong(3);
+            }
+        }
+    }
+
+    /**
+     * {@link ConnectionPool} which runs reports on the write connection, as
+     * {@link SingletonConnectionPool} did before it had a separate read-only
+     * connection.
+     */
+    private static class SharedConnectionPool implements ConnectionPool {
+        private final ConnectionPool pool;
+
+        SharedConnectionPool(ConnectionPool pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return pool.getConnection();
+        }
+
+        @Override
+        public Connection getReadOnlyConnection() throws SQLException {
+            return pool.getConnection();
+        }
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.robovm.samples.contractr.fx.desktop;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TextField;
+import javafx.scene.control.TreeItem;
+import javafx.scene.control.TreeView;
+import javafx.scene.layout.BorderPane;
+import javafx.stage.PopupWindow;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+
+import org.robovm.samples.contractr.core.Client;
+import org.robovm.samples.contractr.core.Task;
+import org.robovm.samples.contractr.core.metrics.Histogram;
+import org.robovm.samples.contractr.core.metrics.Metrics;
+
+import com.sun.javafx.tk.TKPulseListener;
+import com.sun.javafx.tk.Toolkit;
+
+/**
+ * Boots {@link ContractRFXDesktopApp} headless using Monocle, seeds it with
+ * clients and tasks and scripts the interactions a user would make (selecting
+ * clients, editing tasks, starting and stopping work) while recording how
+ * long each interaction blocks the FX application thread and how long each
+ * FX pulse takes (animations, CSS, layout and syncing the scene graph to the
+ * renderer). Use it to see how the controllers degrade as the data set
+ * grows:
+ * 
+ * <pre>
+ * java org.robovm.samples.contractr.fx.desktop.ContractRFXLoadDriver \
+ *     --clients=200 --tasks=20 --iterations=100
+ * </pre>
+ * 
+ * Run with the test class path, which includes the Monocle jar. Results are
+ * printed to stdout and the application exits when done.
+ */
+public class ContractRFXLoadDriver extends ContractRFXDesktopApp {
+
+    private static final int TAB_WORK = 0;
+    private static final int TAB_CLIENTS = 2;
+    private static final int TAB_TASKS = 3;
+
+    private final Histogram pulseDurations = Metrics.histogram("fx.pulse");
+    private final List<Stall> stalls = Collections.synchronizedList(new ArrayList<Stall>());
+    private long pulseStart;
+    private volatile CountDownLatch nextPulse;
+
+    private int clients;
+    private int tasksPerClient;
+    private int iterations;
+    private Scene scene;
+    private TabPane rootTabPane;
+
+    @Override
+    public void init() throws Exception {
+        super.init();
+        Map<String, String> params = getParameters().getNamed();
+        clients = Integer.parseInt(getOrDefault(params, "clients", "100"));
+        tasksPerClient = Integer.parseInt(getOrDefault(params, "tasks", "10"));
+        iterations = Integer.parseInt(getOrDefault(params, "iterations", "50"));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            Client client = clientModel.create();
+            client.setName(String.format("Client %05d", i));
+            client.setHourlyRate(BigDecimal.valueOf(50 + i % 100));
+            clientModel.save(client);
+            for (int j = 0; j < tasksPerClient; j++) {
+                Task task = taskModel.create(client);
+                task.setTitle(String.format("Task %05d", j));
+                taskModel.save(task);
+            }
+        }
+        System.out.format("Seeded %d clients with %d tasks each in %d ms%n", clients,
+                tasksPerClient, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private static String getOrDefault(Map<String, String> params, String key, String defaultValue) {
+        String value = params.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    @Override
+    public void start(Stage primaryStage) throws Exception {
+        super.start(primaryStage);
+        scene = primaryStage.getScene();
+        rootTabPane = (TabPane) ((BorderPane) scene.getRoot()).getCenter();
+
+        // Animation timers run first in a pulse and post scene pulse
+        // listeners last, once CSS and layout have been done and the scene
+        // graph has been synced to the renderer. The running timer also
+        // makes sure there's always a next pulse to wait for.
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                pulseStart = System.nanoTime();
+            }
+        }.start();
+        Toolkit.getToolkit().addPostSceneTkPulseListener(new TKPulseListener() {
+            @Override
+            public void pulse() {
+                if (pulseStart != 0) {
+                    pulseDurations.record(System.nanoTime() - pulseStart);
+                    pulseStart = 0;
+                }
+                CountDownLatch latch = nextPulse;
+                if (latch != null) {
+                    nextPulse = null;
+                    latch.countDown();
+                }
+            }
+        });
+
+        Thread driver = new Thread("ContractRFXLoadDriver") {
+            @Override
+            public void run() {
+                try {
+                    drive();
+                    report();
+                } catch (Throwable t) {
+                    t.printStackTrace();
+                } finally {
+                    Platform.exit();
+                }
+            }
+        };
+        driver.setDaemon(true);
+        driver.start();
+    }
+
+    private void drive() throws InterruptedException {
+        for (int i = 0; i < iterations; i++) {
+            final int clientIndex = i % clientModel.count();
+            final int iteration = i;
+
+            onFxThread("select clients tab", () -> rootTabPane.getSelectionModel().select(TAB_CLIENTS));
+            onFxThread("select client", () -> {
+                ListView<?> clientsList = lookup(TAB_CLIENTS, "#clientsList");
+                clientsList.getSelectionModel().select(clientIndex);
+            });
+
+            onFxThread("select tasks tab", () -> rootTabPane.getSelectionModel().select(TAB_TASKS));
+            onFxThread("select task", () -> {
+                TreeView<String> tasksTreeView = lookup(TAB_TASKS, "#tasksTreeView");
+                TreeItem<String> clientItem = tasksTreeView.getRoot().getChildren().get(clientIndex);
+                if (!clientItem.getChildren().isEmpty()) {
+                    tasksTreeView.getSelectionModel().select(clientItem.getChildren().get(0));
+                }
+            });
+            onFxThread("edit task", () -> {
+                TextField titleTextField = lookup(TAB_TASKS, "#titleTextField");
+                titleTextField.setText(String.format("Task %05d (edited %d)", 0, iteration));
+                Button saveButton = lookup(TAB_TASKS, "#saveButton");
+                saveButton.fire();
+            });
+
+            onFxThread("select work tab", () -> rootTabPane.getSelectionModel().select(TAB_WORK));
+            onFxThread("show select task", () -> {
+                Button startStopButton = lookup(TAB_WORK, "#startStopButton");
+                if (taskModel.getWorkingTask() == null) {
+                    // Opens the SelectTaskController popup
+                    startStopButton.fire();
+                }
+            });
+            onFxThread("start work", () -> {
+                TreeView<String> tasksTreeView = lookupPopup("#tasksTreeView");
+                if (tasksTreeView != null) {
+                    TreeItem<String> clientItem = tasksTreeView.getRoot().getChildren().get(clientIndex);
+                    if (!clientItem.getChildren().isEmpty()) {
+                        // Starts work on the task and hides the popup
+                        tasksTreeView.getSelectionModel().select(clientItem.getChildren().get(0));
+                    }
+                }
+            });
+            onFxThread("stop work", () -> {
+                Button startStopButton = lookup(TAB_WORK, "#startStopButton");
+                if (taskModel.getWorkingTask() != null) {
+                    // Stops work on the working task
+                    startStopButton.fire();
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Node> T lookup(int tab, String selector) {
+        return (T) rootTabPane.getTabs().get(tab).getContent().lookup(selector);
+    }
+
+    @SuppressWarnings({ "unchecked", "deprecation" })
+    private <T extends Node> T lookupPopup(String selector) {
+        for (Iterator<Window> it = Window.impl_getWindows(); it.hasNext();) {
+            Window window = it.next();
+            if (window instanceof PopupWindow && window.isShowing()) {
+                Node node = window.getScene().getRoot().lookup(selector);
+                if (node != null) {
+                    return (T) node;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs the specified action on the FX application thread, waits for it
+     * and the following pulse to complete and records the time the action
+     * blocked the FX application thread. The pulse applies the CSS, layout
+     * and rendering changes made by the action, its duration is recorded in
+     * {@code fx.pulse}.
+     */
+    private void onFxThread(String name, Runnable action) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        CountDownLatch pulse = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            long start = System.nanoTime();
+            try {
+                action.run();
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                Metrics.histogram("fx.action." + name).record(elapsed);
+                stalls.add(new Stall(name, elapsed));
+                // Set on the FX application thread after the action so the
+                // pulse waited for is one which follows it.
+                nextPulse = pulse;
+                latch.countDown();
+            }
+        });
+        if (!latch.await(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Timed out waiting for '" + name + "'");
+        }
+        if (!pulse.await(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Timed out waiting for a pulse after '" + name + "'");
+        }
+    }
+
+    private void report() {
+        System.out.format("%n%d clients, %d tasks per client, %d iterations%n", clients,
+                tasksPerClient, iterations);
+        System.out.format("%-28s %8s %10s %10s %10s %10s%n", "", "count", "mean(us)", "p50(us)",
+                "p99(us)", "max(us)");
+        for (Map.Entry<String, Histogram> entry : Metrics.getHistograms().entrySet()) {
+            Histogram h = entry.getValue();
+            System.out.format("%-28s %8d %10d %10d %10d %10d%n", entry.getKey(), h.getCount(),
+                    h.getMean() / 1000, h.getPercentile(50) / 1000, h.getPercentile(99) / 1000,
+                    h.getMax() / 1000);
+        }
+        List<Stall> sorted;
+        synchronized (stalls) {
+            sorted = new ArrayList<>(stalls);
+        }
+        Collections.sort(sorted, (a, b) -> Long.compare(b.nanos, a.nanos));
+        System.out.format("%nLongest UI thread stalls:%n");
+        for (Stall stall : sorted.subList(0, Math.min(10, sorted.size()))) {
+            System.out.format("  %8d us  %s%n", stall.nanos / 1000, stall.name);
+        }
+    }
+
+    private static class Stall {
+        final String name;
+        final long nanos;
+
+        Stall(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+        System.setProperty("prism.text", "t2k");
+        System.setProperty("java.awt.headless", "true");
+        launch(args);
+    }
+}
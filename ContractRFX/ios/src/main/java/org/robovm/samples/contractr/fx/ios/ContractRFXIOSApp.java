@@ -31,6 +31,7 @@ import org.robovm.apple.uikit.UIApplicationDelegateAdapter;
 import org.robovm.apple.uikit.UIApplicationLaunchOptions;
 import org.robovm.samples.contractr.core.ClientModel;
 import org.robovm.samples.contractr.core.TaskModel;
+import org.robovm.samples.contractr.core.service.JdbcChangeLog;
 import org.robovm.samples.contractr.core.service.JdbcClientManager;
 import org.robovm.samples.contractr.core.service.JdbcTaskManager;
 import org.robovm.samples.contractr.core.service.SingletonConnectionPool;
@@ -62,11 +63,15 @@ public class ContractRFXIOSApp  extends UIApplicationDelegateAdapter {
             dbFile.getParentFile().mkdirs();
             Foundation.log("Using db in file: " + dbFile.getAbsolutePath());
             SingletonConnectionPool connectionPool = new SingletonConnectionPool(
-                    "jdbc:sqlite:" + dbFile.getAbsolutePath());
+                    "jdbc:sqlite:" + dbFile.getAbsolutePath(),
+                    SingletonConnectionPool.walProperties());
             JdbcClientManager clientManager = new JdbcClientManager(connectionPool);
             JdbcTaskManager taskManager = new JdbcTaskManager(connectionPool);
             clientManager.setTaskManager(taskManager);
             taskManager.setClientManager(clientManager);
+            JdbcChangeLog changeLog = new JdbcChangeLog(connectionPool);
+            clientManager.setChangeLog(changeLog);
+            taskManager.setChangeLog(changeLog);
             super.clientModel = new ClientModel(clientManager);
             super.taskModel = new TaskModel(taskManager);
         }
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.robovm.samples.adventure.sim.APACharacterData;
+import org.robovm.samples.adventure.sim.APACharacterSystems;
+import org.robovm.samples.adventure.sim.APAGameRules;
+import org.robovm.samples.adventure.util.APAFlowField;
+import org.robovm.samples.adventure.util.APAPngDecoder;
+
+/**
+ * Compares the update throughput of {@link APACharacterSystems} with the
+ * same chase and move logic run over one object per character, for 1k, 10k
+ * and 100k goblins chasing 4 heroes on the real level map. The objects are
+ * measured twice: allocated back to back, and scattered across the heap and
+ * visited in random order as after a long game. Every round starts from the
+ * same positions:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar org.robovm.samples.adventure.bench.APACharacterBenchmark \
+ *     ../adventure/resources/Environment/map_level.png
+ * </pre>
+ */
+public final class APACharacterBenchmark {
+    private static final double CELL_SIZE = APAGameRules.CELL_SIZE;
+    private static final double ALERT_RADIUS = APAGameRules.ENEMY_ALERT_RADIUS;
+    private static final double CHASE_RADIUS = APAGameRules.CHASE_RADIUS;
+    private static final double ATTACK_INTERVAL = APAGameRules.GOBLIN_ATTACK_INTERVAL;
+    private static final double ATTACK_DAMAGE = APAGameRules.GOBLIN_DAMAGE;
+    private static final double MOVEMENT_SPEED = APAGameRules.MOVEMENT_SPEED;
+    private static final double STEP = APAGameRules.FIXED_TIME_STEP;
+    private static final int HEROES = 4;
+    private static final int ROUNDS = 5;
+
+    /** One character as a plain object, for comparison. */
+    private static final class Goblin {
+        double x;
+        double y;
+        double previousX;
+        double previousY;
+        double velocityX;
+        double velocityY;
+        double speed;
+        double health = 100;
+        double timer;
+        byte state = APACharacterData.IDLE;
+        int target = APACharacterData.NO_TARGET;
+    }
+
+    private final byte[] walls;
+    private final int width;
+    private final int height;
+    private final double[] heroX = new double[HEROES];
+    private final double[] heroY = new double[HEROES];
+    private final APAFlowField[] heroFields = new APAFlowField[HEROES];
+    private final double[] heroDamage = new double[HEROES];
+
+    private APACharacterBenchmark (byte[] walls, int width, int height) {
+        this.walls = walls;
+        this.width = width;
+        this.height = height;
+    }
+
+    public static void main (String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: APACharacterBenchmark <map_level.png>");
+            System.exit(1);
+        }
+        APAPngDecoder.Image map = APAPngDecoder.decode(readFully(new File(args[0])));
+        byte[] walls = new byte[map.width * map.height];
+        for (int i = 0; i < walls.length; i++) {
+            walls[i] = (byte)(APAGameRules.isWall(map.argb[i * 4 + 1]) ? 1 : 0);
+        }
+        new APACharacterBenchmark(walls, map.width, map.height).run(new Random(42));
+    }
+
+    private void run (Random random) {
+        int[] openCells = new int[walls.length];
+        int openCount = 0;
+        for (int i = 0; i < walls.length; i++) {
+            if (walls[i] == 0) {
+                openCells[openCount++] = i;
+            }
+        }
+        for (int h = 0; h < HEROES; h++) {
+            int cell = openCells[random.nextInt(openCount)];
+            heroX[h] = (cell % width + 0.5) * CELL_SIZE;
+            heroY[h] = (cell / width + 0.5) * CELL_SIZE;
+            heroFields[h] = new APAFlowField(walls, width, height);
+            heroFields[h].setGoal(cell % width, cell / width);
+            heroFields[h].update(Integer.MAX_VALUE);
+        }
+        APACharacterSystems systems = new APACharacterSystems(walls, width, height, CELL_SIZE, ALERT_RADIUS,
+            CHASE_RADIUS, ATTACK_INTERVAL, ATTACK_DAMAGE);
+
+        System.out.println("goblins     steps   arrays ns/goblin   objects ns/goblin   scattered ns/goblin");
+        for (int n : new int[] {1000, 10000, 100000}) {
+            double[] startX = new double[n];
+            double[] startY = new double[n];
+            double[] speed = new double[n];
+            for (int i = 0; i < n; i++) {
+                int cell = openCells[random.nextInt(openCount)];
+                startX[i] = (cell % width + random.nextDouble()) * CELL_SIZE;
+                startY[i] = (cell / width + random.nextDouble()) * CELL_SIZE;
+                speed[i] = MOVEMENT_SPEED * random.nextDouble();
+            }
+
+            APACharacterData data = new APACharacterData(n);
+            for (int i = 0; i < n; i++) {
+                data.add(startX[i], startY[i], speed[i], 0);
+            }
+            List<Goblin> packed = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                packed.add(newGoblin(startX[i], startY[i], speed[i]));
+            }
+            List<Goblin> scattered = new ArrayList<>(n);
+            List<byte[]> garbage = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                for (int k = random.nextInt(4); k > 0; k--) {
+                    garbage.add(new byte[16 + random.nextInt(200)]);
+                }
+                scattered.add(newGoblin(startX[i], startY[i], speed[i]));
+            }
+            garbage = null;
+            Collections.shuffle(scattered, random);
+            System.gc();
+
+            int steps = Math.max(60, 6000000 / n);
+            long arrayTime = 0;
+            long packedTime = 0;
+            long scatteredTime = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long t0 = System.nanoTime();
+                for (int s = 0; s < steps; s++) {
+                    systems.clearTargets();
+                    for (int h = 0; h < HEROES; h++) {
+                        systems.addTarget(heroX[h], heroY[h], true, heroFields[h]);
+                    }
+                    APACharacterSystems.storePositions(data);
+                    systems.update(data, STEP);
+                }
+                long t1 = System.nanoTime();
+                for (int s = 0; s < steps; s++) {
+                    step(packed);
+                }
+                long t2 = System.nanoTime();
+                for (int s = 0; s < steps; s++) {
+                    step(scattered);
+                }
+                long t3 = System.nanoTime();
+
+                // The first rounds only warm up.
+                if (round >= ROUNDS / 2) {
+                    arrayTime += t1 - t0;
+                    packedTime += t2 - t1;
+                    scatteredTime += t3 - t2;
+                }
+                for (int i = 0; i < n; i++) {
+                    data.place(i, startX[i], startY[i]);
+                    data.setTimer(i, 0);
+                }
+                reset(packed, startX, startY);
+                reset(scattered, startX, startY);
+            }
+            double updates = (double)steps * n * (ROUNDS - ROUNDS / 2);
+            System.out.printf("%7d %9d %20.1f %19.1f %21.1f%n", n, steps, arrayTime / updates, packedTime / updates,
+                scatteredTime / updates);
+        }
+    }
+
+    private static Goblin newGoblin (double x, double y, double speed) {
+        Goblin goblin = new Goblin();
+        goblin.x = goblin.previousX = x;
+        goblin.y = goblin.previousY = y;
+        goblin.speed = speed;
+        return goblin;
+    }
+
+    private static void reset (List<Goblin> goblins, double[] startX, double[] startY) {
+        // Scattered goblins were shuffled, so give them any start position.
+        for (int i = 0; i < goblins.size(); i++) {
+            Goblin goblin = goblins.get(i);
+            goblin.x = startX[i];
+            goblin.y = startY[i];
+            goblin.timer = 0;
+        }
+    }
+
+    /** The systems of {@link APACharacterSystems}, one object at a time. */
+    private void step (List<Goblin> goblins) {
+        for (Goblin g : goblins) {
+            g.previousX = g.x;
+            g.previousY = g.y;
+        }
+        for (Goblin g : goblins) {
+            g.timer -= STEP;
+        }
+        double alertRadiusSquared = ALERT_RADIUS * ALERT_RADIUS;
+        for (Goblin g : goblins) {
+            if (g.state == APACharacterData.FREE || g.state == APACharacterData.DYING) {
+                continue;
+            }
+            int best = APACharacterData.NO_TARGET;
+            double bestDistance = alertRadiusSquared;
+            for (int h = 0; h < HEROES; h++) {
+                double dx = heroX[h] - g.x;
+                double dy = heroY[h] - g.y;
+                double d = dx * dx + dy * dy;
+                if (d < bestDistance) {
+                    bestDistance = d;
+                    best = h;
+                }
+            }
+            g.target = best;
+            if (best == APACharacterData.NO_TARGET) {
+                g.velocityX = 0;
+                g.velocityY = 0;
+                g.state = APACharacterData.IDLE;
+                continue;
+            }
+            double distance = Math.sqrt(bestDistance);
+            if (distance > CHASE_RADIUS) {
+                double ux;
+                double uy;
+                int direction = heroFields[best].getDirection(cell(g.x), cell(g.y));
+                if (direction != APAFlowField.NO_DIRECTION) {
+                    ux = APAFlowField.getDirectionX(direction);
+                    uy = APAFlowField.getDirectionY(direction);
+                } else {
+                    ux = (heroX[best] - g.x) / distance;
+                    uy = (heroY[best] - g.y) / distance;
+                }
+                g.velocityX = ux * g.speed;
+                g.velocityY = uy * g.speed;
+                g.state = APACharacterData.CHASING;
+            } else {
+                g.velocityX = 0;
+                g.velocityY = 0;
+                g.state = APACharacterData.ATTACKING;
+                if (g.timer <= 0) {
+                    g.timer = ATTACK_INTERVAL;
+                    heroDamage[best] += ATTACK_DAMAGE;
+                }
+            }
+        }
+        for (Goblin g : goblins) {
+            if (g.velocityX == 0 && g.velocityY == 0) {
+                continue;
+            }
+            double x = g.x + g.velocityX * STEP;
+            double y = g.y + g.velocityY * STEP;
+            if (isOpen(x, y)) {
+                g.x = x;
+                g.y = y;
+            } else if (isOpen(x, g.y)) {
+                g.x = x;
+            } else if (isOpen(g.x, y)) {
+                g.y = y;
+            }
+        }
+    }
+
+    private static int cell (double v) {
+        return (int)Math.floor(v / CELL_SIZE);
+    }
+
+    private boolean isOpen (double x, double y) {
+        int cx = cell(x);
+        int cy = cell(y);
+        return cx >= 0 && cy >= 0 && cx < width && cy < height && walls[cy * width + cx] == 0;
+    }
+
+    private static byte[] readFully (File f) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(f, "r")) {
+            byte[] data = new byte[(int)file.length()];
+            file.readFully(data);
+            return data;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robovm.samples.adventure.util.APAFlowField;
+
+/**
+ * Frames of {@link APAFlowField} steering {@code agents} agents towards a
+ * hero which runs into another level map cell every frame, faster than a
+ * field can be integrated with the scene's budget of 8192 cells per frame.
+ * {@code frame} moves the goal, updates the field and moves every agent a
+ * quarter cell along its direction; agents which arrive start over at a
+ * random open cell. {@code fullIntegration} integrates a field for a new goal
+ * in one go. The grid is level sized with 900 random 3x3 wall blocks.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar APAFlowFieldBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class APAFlowFieldBenchmark {
+    private static final int SIZE = 256;
+    private static final int CELLS_PER_FRAME = 8192;
+    private static final double AGENT_SPEED = 0.25;
+
+    @Param({"1000", "5000"})
+    public int agents;
+
+    private byte[] walls;
+    private int[] open;
+    private APAFlowField field;
+    private APAFlowField fullField;
+    private double[] positions;
+    private int[] goalPath;
+    private int frame;
+    private Random random;
+
+    @Setup
+    public void setUp () {
+        random = new Random(42);
+        walls = new byte[SIZE * SIZE];
+        for (int i = 0; i < 900; i++) {
+            int bx = random.nextInt(SIZE - 3);
+            int by = random.nextInt(SIZE - 3);
+            for (int y = by; y < by + 3; y++) {
+                for (int x = bx; x < bx + 3; x++) {
+                    walls[y * SIZE + x] = 1;
+                }
+            }
+        }
+        int count = 0;
+        open = new int[SIZE * SIZE];
+        for (int i = 0; i < walls.length; i++) {
+            if (walls[i] == 0) {
+                open[count++] = i;
+            }
+        }
+        open = Arrays.copyOf(open, count);
+
+        // The hero's path: a random walk over open cells, one cell per frame
+        goalPath = new int[4096];
+        int cell = open[random.nextInt(open.length)];
+        for (int i = 0; i < goalPath.length; i++) {
+            int next;
+            do {
+                next = cell + (random.nextInt(3) - 1) + (random.nextInt(3) - 1) * SIZE;
+            } while (next == cell || next < 0 || next >= walls.length || walls[next] != 0
+                || Math.abs(next % SIZE - cell % SIZE) > 1);
+            goalPath[i] = cell = next;
+        }
+
+        field = new APAFlowField(walls, SIZE, SIZE);
+        field.setGoal(goalPath[0] % SIZE, goalPath[0] / SIZE);
+        field.update(Integer.MAX_VALUE);
+        fullField = new APAFlowField(walls, SIZE, SIZE);
+        positions = new double[agents * 2];
+        for (int i = 0; i < agents; i++) {
+            respawn(i);
+        }
+    }
+
+    private void respawn (int agent) {
+        int cell = open[random.nextInt(open.length)];
+        positions[agent * 2] = cell % SIZE + 0.5;
+        positions[agent * 2 + 1] = cell / SIZE + 0.5;
+    }
+
+    @Benchmark
+    public int frame () {
+        frame = (frame + 1) % goalPath.length;
+        field.setGoal(goalPath[frame] % SIZE, goalPath[frame] / SIZE);
+        field.update(CELLS_PER_FRAME);
+        int arrived = 0;
+        for (int i = 0; i < agents; i++) {
+            double x = positions[i * 2];
+            double y = positions[i * 2 + 1];
+            int direction = field.getDirection((int)x, (int)y);
+            if (direction == APAFlowField.NO_DIRECTION) {
+                respawn(i);
+                arrived++;
+                continue;
+            }
+            positions[i * 2] = x + APAFlowField.getDirectionX(direction) * AGENT_SPEED;
+            positions[i * 2 + 1] = y + APAFlowField.getDirectionY(direction) * AGENT_SPEED;
+        }
+        return arrived;
+    }
+
+    @Benchmark
+    public boolean fullIntegration () {
+        frame = (frame + 1) % goalPath.length;
+        fullField.setGoal(goalPath[frame] % SIZE, goalPath[frame] / SIZE);
+        return fullField.update(Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robovm.samples.adventure.util.APAGridRaycaster;
+
+/**
+ * Compares {@link APAGridRaycaster} with the sampling loop the adventure scene
+ * used for line-of-sight before, which took one sample per level map unit
+ * along the ray. Both run over the same {@code byte[]} grid so the numbers
+ * leave out the native struct access and {@code CGPoint} allocations the old
+ * code also paid for in the app. Rays are random segments of up to
+ * {@code maxLength} cells on a level sized grid with {@code wallBlocks}
+ * random 3x3 wall blocks.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar APAGridRaycasterBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class APAGridRaycasterBenchmark {
+    private static final int SIZE = 256;
+    private static final int RAYS = 4096;
+
+    @Param({"1200"})
+    public int wallBlocks;
+
+    @Param({"16", "128"})
+    public int maxLength;
+
+    private byte[] walls;
+    private APAGridRaycaster raycaster;
+    private final double[] rays = new double[RAYS * 4];
+
+    @Setup
+    public void setUp () {
+        Random random = new Random(42);
+        walls = new byte[SIZE * SIZE];
+        for (int i = 0; i < wallBlocks; i++) {
+            int bx = random.nextInt(SIZE - 3);
+            int by = random.nextInt(SIZE - 3);
+            for (int y = by; y < by + 3; y++) {
+                for (int x = bx; x < bx + 3; x++) {
+                    walls[y * SIZE + x] = 1;
+                }
+            }
+        }
+        raycaster = new APAGridRaycaster(walls, SIZE, SIZE);
+        for (int i = 0; i < RAYS; i++) {
+            double x0;
+            double y0;
+            do {
+                x0 = random.nextDouble() * SIZE;
+                y0 = random.nextDouble() * SIZE;
+            } while (walls[(int)y0 * SIZE + (int)x0] != 0);
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double length = 1 + random.nextDouble() * (maxLength - 1);
+            rays[i * 4] = x0;
+            rays[i * 4 + 1] = y0;
+            rays[i * 4 + 2] = Math.max(0, Math.min(SIZE - 1e-6, x0 + Math.cos(angle) * length));
+            rays[i * 4 + 3] = Math.max(0, Math.min(SIZE - 1e-6, y0 + Math.sin(angle) * length));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public int dda () {
+        int visible = 0;
+        for (int i = 0; i < rays.length; i += 4) {
+            if (raycaster.canSee(rays[i], rays[i + 1], rays[i + 2], rays[i + 3])) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RAYS)
+    public int sampled () {
+        int visible = 0;
+        for (int i = 0; i < rays.length; i += 4) {
+            if (sampledCanSee(walls, (int)rays[i], (int)rays[i + 1], (int)rays[i + 2], (int)rays[i + 3])) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * The old canSee() of the adventure scene: end points truncated to level
+     * map cells and one sample every unit of length.
+     */
+    static boolean sampledCanSee (byte[] walls, int ax, int ay, int bx, int by) {
+        double deltaX = bx - ax;
+        double deltaY = by - ay;
+        double inc = 1.0 / Math.hypot(deltaX, deltaY);
+        for (double i = 0; i <= 1; i += inc) {
+            int x = (int)(ax + i * deltaX);
+            int y = (int)(ay + i * deltaY);
+            if (walls[y * SIZE + x] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
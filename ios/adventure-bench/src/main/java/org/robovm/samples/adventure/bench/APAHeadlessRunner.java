@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import org.robovm.samples.adventure.sim.APAGameRules;
+import org.robovm.samples.adventure.sim.APASimWorld;
+import org.robovm.samples.adventure.util.APAPngDecoder;
+
+/**
+ * Runs an {@link APASimWorld} on a plain JVM as fast as it will go, for soak
+ * and performance testing without a device. Prints throughput, game
+ * statistics, heap and GC activity once per reported interval and a checksum
+ * of the final state, which must be the same for two runs with the same
+ * arguments:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar org.robovm.samples.adventure.bench.APAHeadlessRunner \
+ *     ../adventure/resources/Environment/map_level.png 3600
+ * </pre>
+ */
+public final class APAHeadlessRunner {
+    private static final double REPORT_INTERVAL = 60; // game seconds
+
+    private APAHeadlessRunner () {
+    }
+
+    public static void main (String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: APAHeadlessRunner <map_level.png> [game seconds = 600] [heroes = 2] [seed = 1]");
+            System.exit(1);
+        }
+        double duration = args.length > 1 ? Double.parseDouble(args[1]) : 600;
+        int heroCount = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        APASimWorld world = APASimWorld.fromLevelMap(APAPngDecoder.decode(readFully(new File(args[0]))), heroCount,
+            seed);
+
+        long totalSteps = Math.round(duration / APAGameRules.FIXED_TIME_STEP);
+        long stepsPerReport = Math.max(1, Math.round(REPORT_INTERVAL / APAGameRules.FIXED_TIME_STEP));
+        long start = System.nanoTime();
+        long intervalStart = start;
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+        long slowestStep = 0;
+
+        for (long i = 1; i <= totalSteps; i++) {
+            long t = System.nanoTime();
+            world.step(APAGameRules.FIXED_TIME_STEP);
+            slowestStep = Math.max(slowestStep, System.nanoTime() - t);
+
+            if (i % stepsPerReport == 0 || i == totalSteps) {
+                long now = System.nanoTime();
+                long steps = i % stepsPerReport == 0 ? stepsPerReport : i % stepsPerReport;
+                Runtime runtime = Runtime.getRuntime();
+                System.out.printf("t=%7.0fs %9.0f steps/s slowest %6.0f us | goblins %2d spawned %6d killed %6d"
+                    + " | hero deaths %4d caves %4d levels %3d | heap %4d MB gc %d (%d ms)%n", world.getTime(), steps
+                    / ((now - intervalStart) / 1e9), slowestStep / 1e3, world.getGoblins().size(),
+                    world.getGoblinsSpawned(), world.getGoblinsKilled(), world.getHeroDeaths(),
+                    world.getCavesDestroyed(), world.getLevelsCleared(),
+                    (runtime.totalMemory() - runtime.freeMemory()) >> 20, gcCount() - gcCountBefore, gcTime()
+                        - gcTimeBefore);
+                intervalStart = System.nanoTime();
+                slowestStep = 0;
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d steps in %.2f s: %.0f steps/s, %.0fx real time%n", totalSteps, seconds, totalSteps
+            / seconds, world.getTime() / seconds);
+        System.out.printf("checksum %016x%n", world.getChecksum());
+    }
+
+    private static long gcCount () {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcTime () {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static byte[] readFully (File f) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(f, "r")) {
+            byte[] data = new byte[(int)file.length()];
+            file.readFully(data);
+            return data;
+        }
+    }
+}
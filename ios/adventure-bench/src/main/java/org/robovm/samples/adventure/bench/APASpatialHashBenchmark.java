@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robovm.samples.adventure.util.APASpatialHash;
+
+/**
+ * Headless benchmark of {@link APASpatialHash} with {@code entities} moving
+ * entities spread over a 4096 point world, the numbers the hash was sized
+ * for. Each operation works on one of {@code QUERIES} precomputed query
+ * points: {@code move} moves an entity by up to half a cell and back,
+ * {@code nearest4} finds the 4 nearest entities within 256 points, as an
+ * enemy picking targets does, {@code radius} collects everything within 256
+ * points, and {@code bruteForceNearest4} is the linear scan over all
+ * entities the scene did before.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar APASpatialHashBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class APASpatialHashBenchmark {
+    private static final double WORLD_SIZE = 4096;
+    private static final double QUERY_DISTANCE = 256;
+    private static final int QUERIES = 2000;
+
+    @Param({"10000"})
+    public int entities;
+
+    @Param({"64", "128", "256"})
+    public double cellSize;
+
+    private APASpatialHash<Integer> hash;
+    private Integer[] items;
+    private double[] positions;
+    private final double[] queries = new double[QUERIES * 2];
+    private final List<Integer> out = new ArrayList<>();
+
+    @Setup
+    public void setUp () {
+        Random random = new Random(42);
+        hash = new APASpatialHash<>(cellSize);
+        items = new Integer[entities];
+        positions = new double[entities * 2];
+        for (int i = 0; i < entities; i++) {
+            items[i] = i;
+            positions[i * 2] = random.nextDouble() * WORLD_SIZE;
+            positions[i * 2 + 1] = random.nextDouble() * WORLD_SIZE;
+            hash.insert(items[i], positions[i * 2], positions[i * 2 + 1]);
+        }
+        for (int i = 0; i < queries.length; i++) {
+            queries[i] = random.nextDouble() * WORLD_SIZE;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void move () {
+        for (int i = 0; i < QUERIES; i++) {
+            int item = (i * 7919) % entities;
+            // Back and forth so the world doesn't drift between invocations
+            double dx = (queries[i * 2] / WORLD_SIZE - 0.5) * cellSize;
+            double dy = (queries[i * 2 + 1] / WORLD_SIZE - 0.5) * cellSize;
+            hash.move(items[item], positions[item * 2] + dx, positions[item * 2 + 1] + dy);
+            hash.move(items[item], positions[item * 2], positions[item * 2 + 1]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int nearest4 () {
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            out.clear();
+            found += hash.nearest(queries[i * 2], queries[i * 2 + 1], 4, QUERY_DISTANCE, null, out);
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int radius () {
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            out.clear();
+            found += hash.queryRadius(queries[i * 2], queries[i * 2 + 1], QUERY_DISTANCE, null, out);
+        }
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public int bruteForceNearest4 () {
+        int found = 0;
+        double[] best = new double[4];
+        for (int i = 0; i < QUERIES; i++) {
+            double x = queries[i * 2];
+            double y = queries[i * 2 + 1];
+            int n = 0;
+            for (int j = 0; j < entities; j++) {
+                double dx = positions[j * 2] - x;
+                double dy = positions[j * 2 + 1] - y;
+                double d = dx * dx + dy * dy;
+                if (d >= QUERY_DISTANCE * QUERY_DISTANCE || n == 4 && d >= best[3]) {
+                    continue;
+                }
+                int k = n < 4 ? n++ : 3;
+                while (k > 0 && best[k - 1] > d) {
+                    best[k] = best[k - 1];
+                    k--;
+                }
+                best[k] = d;
+            }
+            found += n;
+        }
+        return found;
+    }
+}
@@ -21,12 +21,19 @@ package org.robovm.samples.adventure.ai;
 
 import org.robovm.apple.coregraphics.CGPoint;
 import org.robovm.samples.adventure.scene.APAMultiplayerLayeredCharacterScene;
+import org.robovm.samples.adventure.sim.APAGameRules;
 import org.robovm.samples.adventure.sprites.APACharacter;
 import org.robovm.samples.adventure.sprites.APAHeroCharacter;
+import org.robovm.samples.adventure.util.APASpatialHash;
 import org.robovm.samples.adventure.util.APAUtils;
 
 public class APAChaseAI extends APAArtificialIntelligence {
-    private static final int ENEMY_ALERT_RADIUS = APACharacter.CHARACTER_COLLISION_RADIUS * 500;
+    private static final APASpatialHash.Filter<APAHeroCharacter> LIVING_HEROES = new APASpatialHash.Filter<APAHeroCharacter>() {
+        @Override
+        public boolean accept (APAHeroCharacter hero) {
+            return !hero.isDying();
+        }
+    };
 
     private double chaseRadius;
     private double maxAlertRadius;
@@ -34,31 +41,29 @@ public class APAChaseAI extends APAArtificialIntelligence {
     public APAChaseAI (APACharacter character, APACharacter target) {
         super(character, target);
 
-        maxAlertRadius = ENEMY_ALERT_RADIUS * 2.0;
-        chaseRadius = APACharacter.CHARACTER_COLLISION_RADIUS * 2.0;
+        maxAlertRadius = APAGameRules.ENEMY_ALERT_RADIUS * 2.0;
+        chaseRadius = APAGameRules.CHASE_RADIUS;
     }
 
     @Override
     public void update (double timeInterval) {
         APACharacter ourCharacter = character;
 
-        if (ourCharacter.dying) {
+        if (ourCharacter.isDying()) {
             target = null;
             return;
         }
 
-        CGPoint position = ourCharacter.getPosition();
+        CGPoint position = ourCharacter.getSimulatedPosition();
         APAMultiplayerLayeredCharacterScene scene = ourCharacter.getCharacterScene();
         double closestHeroDistance = Double.MAX_VALUE;
 
         // Find the closest living hero, if any, within our alert distance.
-        for (APAHeroCharacter hero : scene.getHeroes()) {
-            CGPoint heroPosition = hero.getPosition();
-            double distance = APAUtils.getDistanceBetweenPoints(position, heroPosition);
-            if (distance < ENEMY_ALERT_RADIUS && distance < closestHeroDistance && !hero.dying) {
-                closestHeroDistance = distance;
-                target = hero;
-            }
+        APAHeroCharacter hero = scene.getHeroIndex().nearest(position.getX(), position.getY(), APAGameRules.ENEMY_ALERT_RADIUS,
+            LIVING_HEROES);
+        if (hero != null) {
+            closestHeroDistance = APAUtils.getDistanceBetweenPoints(position, hero.getSimulatedPosition());
+            target = hero;
         }
 
         // If there's no target, don't do anything.
@@ -67,12 +72,12 @@ public class APAChaseAI extends APAArtificialIntelligence {
         }
 
         // Otherwise chase or attack the target, if it's near enough.
-        CGPoint heroPosition = target.getPosition();
+        CGPoint heroPosition = target.getSimulatedPosition();
 
         if (closestHeroDistance > maxAlertRadius) {
             target = null;
         } else if (closestHeroDistance > chaseRadius) {
-            character.moveTowards(heroPosition, timeInterval);
+            character.moveTowards(scene.getWaypointTowards(target, position), timeInterval);
         } else if (closestHeroDistance < chaseRadius) {
             character.faceTo(heroPosition);
             character.performAttackAction();
@@ -20,15 +20,14 @@
 package org.robovm.samples.adventure.ai;
 
 import org.robovm.apple.coregraphics.CGPoint;
-import org.robovm.apple.spritekit.SKNode;
 import org.robovm.samples.adventure.scene.APAMultiplayerLayeredCharacterScene;
+import org.robovm.samples.adventure.sim.APAGameRules;
 import org.robovm.samples.adventure.sprites.APACave;
 import org.robovm.samples.adventure.sprites.APACharacter;
+import org.robovm.samples.adventure.sprites.APAHeroCharacter;
 import org.robovm.samples.adventure.util.APAUtils;
 
 public class APASpawnAI extends APAArtificialIntelligence {
-    private static final int MINIMUM_HERO_DISTANCE = 2048;
-
     public APASpawnAI (APACharacter character, APACharacter target) {
         super(character, target);
     }
@@ -37,40 +36,33 @@ public class APASpawnAI extends APAArtificialIntelligence {
     public void update (double timeInterval) {
         APACave cave = (APACave)character;
 
-        if (cave.health <= 0.0) {
+        if (cave.getHealth() <= 0.0) {
             return;
         }
 
         APAMultiplayerLayeredCharacterScene scene = cave.getCharacterScene();
 
-        double closestHeroDistance = MINIMUM_HERO_DISTANCE;
-        CGPoint closestHeroPosition = CGPoint.Zero();
+        double closestHeroDistance = APAGameRules.MINIMUM_HERO_DISTANCE;
 
-        CGPoint cavePosition = cave.getPosition();
+        CGPoint cavePosition = cave.getSimulatedPosition();
 
-        for (SKNode hero : scene.getHeroes()) {
-            CGPoint heroPosition = hero.getPosition();
-            double distance = APAUtils.getDistanceBetweenPoints(cavePosition, heroPosition);
-            if (distance < closestHeroDistance) {
-                closestHeroDistance = distance;
-                closestHeroPosition = heroPosition;
-            }
+        APAHeroCharacter hero = scene.getHeroIndex().nearest(cavePosition.getX(), cavePosition.getY(),
+            APAGameRules.MINIMUM_HERO_DISTANCE, null);
+        if (hero != null) {
+            closestHeroDistance = APAUtils.getDistanceBetweenPoints(cavePosition, hero.getSimulatedPosition());
         }
 
-        double distScale = closestHeroDistance / MINIMUM_HERO_DISTANCE;
-
         // Generate goblins more quickly if the closest hero is getting closer.
         cave.timeUntilNextGenerate -= timeInterval;
 
         // Either time to generate or the hero is so close we need to respond ASAP!
         int goblinCount = cave.activeGoblins.size();
-        if (goblinCount < 1 || cave.timeUntilNextGenerate <= 0.0 || (distScale < 0.35 && cave.timeUntilNextGenerate > 5.0)) {
-            if (goblinCount < 1
-                || (goblinCount < 4 && closestHeroPosition.equalsTo(CGPoint.Zero()) && scene.canSee(closestHeroPosition,
-                    cave.getPosition()))) {
+        if (APAGameRules.isTimeToGenerate(goblinCount, cave.timeUntilNextGenerate, closestHeroDistance)) {
+            if (APAGameRules.shouldGenerate(goblinCount,
+                hero != null && scene.canSee(hero.getSimulatedPosition(), cavePosition))) {
                 cave.generate();
             }
-            cave.timeUntilNextGenerate = 4.0 * distScale;
+            cave.timeUntilNextGenerate = APAGameRules.getNextGenerateDelay(closestHeroDistance);
         }
     }
 }
@@ -19,6 +19,11 @@
 
 package org.robovm.samples.adventure.scene;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.robovm.apple.coregraphics.CGPoint;
 import org.robovm.apple.coregraphics.CGRect;
 import org.robovm.apple.coregraphics.CGSize;
@@ -26,7 +31,6 @@ import org.robovm.apple.coregraphics.CGVector;
 import org.robovm.apple.foundation.NSArray;
 import org.robovm.apple.foundation.NSDate;
 import org.robovm.apple.foundation.NSMutableArray;
-import org.robovm.apple.spritekit.SKAction;
 import org.robovm.apple.spritekit.SKBlendMode;
 import org.robovm.apple.spritekit.SKEmitterNode;
 import org.robovm.apple.spritekit.SKNode;
@@ -36,6 +40,8 @@ import org.robovm.apple.spritekit.SKPhysicsContactDelegate;
 import org.robovm.apple.spritekit.SKPhysicsWorld;
 import org.robovm.apple.spritekit.SKSpriteNode;
 import org.robovm.apple.spritekit.SKTextureAtlas;
+import org.robovm.samples.adventure.sim.APACharacterSystems;
+import org.robovm.samples.adventure.sim.APAGameRules;
 import org.robovm.samples.adventure.sprites.APAArcher;
 import org.robovm.samples.adventure.sprites.APABoss;
 import org.robovm.samples.adventure.sprites.APACave;
@@ -46,9 +52,16 @@ import org.robovm.samples.adventure.sprites.APAHeroCharacter;
 import org.robovm.samples.adventure.sprites.APAParallaxSprite;
 import org.robovm.samples.adventure.sprites.APATree;
 import org.robovm.samples.adventure.sprites.APAWarrior;
+import org.robovm.samples.adventure.util.APAEffectPool;
+import org.robovm.samples.adventure.util.APAFlowField;
+import org.robovm.samples.adventure.util.APAGridRaycaster;
+import org.robovm.samples.adventure.util.APASpatialHash;
 import org.robovm.samples.adventure.util.APAUtils;
 import org.robovm.samples.adventure.util.APAUtils.APADataMap;
 import org.robovm.samples.adventure.util.APAUtils.APATreeMap;
+import org.robovm.samples.adventure.util.APAVisibilityCache;
+import org.robovm.samples.adventure.util.APAWallMesher;
+import org.robovm.samples.adventure.util.APAWallMesher.Rect;
 
 public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene implements SKPhysicsContactDelegate {
     private static final int WORLD_TILE_DIVISOR = 32; // number of tiles
@@ -59,7 +72,14 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
 
     private static final int LEVEL_MAP_SIZE = 256; // pixel size of level map
                                                    // (square)
-    private static final int LEVEL_MAP_DIVISOR = WORLD_SIZE / LEVEL_MAP_SIZE;
+    private static final int LEVEL_MAP_DIVISOR = (int) APAGameRules.CELL_SIZE;
+
+    private static final int VISIBLE_DISTANCE = 1024; // radius around the hero
+                                                      // in which scenery is
+                                                      // updated
+    private static final int SCENERY_INDEX_CELL_SIZE = 256;
+
+    private static final double ONE_SHOT_EMITTER_DURATION = 0.15;
 
     private static final boolean MOVE_NEAR_TO_BOSS = false; // Cheat to move
                                                             // near to boss.
@@ -68,8 +88,8 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
         Archer, Warrior
     }
 
-    private static SKEmitterNode sharedProjectileSparkEmitter;
-    private static SKEmitterNode sharedSpawnEmitter;
+    private static APAEffectPool<SKEmitterNode> sharedProjectileSparkEmitters;
+    private static APAEffectPool<SKEmitterNode> sharedSpawnEmitters;
     private static APATree sharedSmallTree;
     private static APATree sharedBigTree;
     private static SKEmitterNode sharedLeafEmitterA;
@@ -82,6 +102,10 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
 
     private APADataMap[] levelMap; // locations of caves/spawn points/etc
     private APATreeMap[] treeMap; // locations of trees
+    private byte[] wallGrid; // 1 for every level map pixel which is a wall
+    private APAGridRaycaster raycaster; // line-of-sight over the level walls
+    private APAVisibilityCache visibilityCache; // canSee results per cell pair
+    private APACharacterSystems goblinSystems; // chases and moves the goblins
 
     private APABoss levelBoss; // the big boss character
     private final NSArray<SKEmitterNode> particleSystems = new NSMutableArray<>();// particle
@@ -98,6 +122,19 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
                                                                    // trees in
                                                                    // the scene
 
+    // The scenery above never moves, so it is indexed by position once when
+    // the world is built.
+    private final APASpatialHash<SKEmitterNode> particleSystemIndex = new APASpatialHash<>(SCENERY_INDEX_CELL_SIZE);
+    private final APASpatialHash<APAParallaxSprite> parallaxSpriteIndex = new APASpatialHash<>(SCENERY_INDEX_CELL_SIZE);
+    private final APASpatialHash<APATree> treeIndex = new APASpatialHash<>(SCENERY_INDEX_CELL_SIZE);
+    private final List<SKEmitterNode> visibleParticleSystems = new ArrayList<>();
+    private final List<APAParallaxSprite> nearbyParallaxSprites = new ArrayList<>();
+    private final List<APATree> nearbyTrees = new ArrayList<>();
+
+    // Paths to each hero shared by all enemies chasing it.
+    private final Map<APAHeroCharacter, APAFlowField> flowFields = new IdentityHashMap<>();
+    private final List<APAFlowField> spareFlowFields = new ArrayList<>();
+
     public APAAdventureScene(CGSize size) {
         super(size);
     }
@@ -109,8 +146,15 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
         // Build level and tree maps.
         levelMap = APAUtils.createDataMap("map_level.png");
         treeMap = APAUtils.createTreeMap("map_trees.png");
+        wallGrid = createWallGrid();
+        raycaster = new APAGridRaycaster(wallGrid, LEVEL_MAP_SIZE, LEVEL_MAP_SIZE);
+        visibilityCache = new APAVisibilityCache(raycaster, APAGameRules.VISIBILITY_CACHE_SIZE);
+        // The level map's top left corner is at (-WORLD_CENTER, WORLD_CENTER).
+        goblinSystems = new APACharacterSystems(wallGrid, LEVEL_MAP_SIZE, LEVEL_MAP_SIZE, APAGameRules.CELL_SIZE,
+                -WORLD_CENTER, WORLD_CENTER, true, APAGameRules.ENEMY_ALERT_RADIUS, APAGameRules.CHASE_RADIUS,
+                APAGameRules.GOBLIN_ATTACK_INTERVAL, APAGameRules.GOBLIN_DAMAGE);
 
-        APACave.setGlobalGoblinCap(32);
+        APACave.setGlobalGoblinCap(APAGameRules.GLOBAL_GOBLIN_CAP);
 
         buildWorld();
 
@@ -157,16 +201,24 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
                 // Get the world space point for this level map pixel.
                 CGPoint worldPoint = convertLevelMapPointToWorldPoint(location);
 
-                if (spot.getBossLocation() <= 200) {
+                switch (APAGameRules.getSpawn(spot.getBossLocation(), spot.getGoblinCaveLocation(),
+                        spot.getHeroSpawnLocation())) {
+                case APAGameRules.SPAWN_BOSS:
                     levelBoss = new APABoss(worldPoint);
                     levelBoss.addToScene(this);
-                } else if (spot.getGoblinCaveLocation() >= 200) {
+                    break;
+                case APAGameRules.SPAWN_CAVE:
                     APACave cave = new APACave(worldPoint);
                     goblinCaves.add(cave);
                     parallaxSprites.add(cave);
+                    parallaxSpriteIndex.insert(cave, worldPoint.getX(), worldPoint.getY());
                     cave.addToScene(this);
-                } else if (spot.getHeroSpawnLocation() >= 200) {
+                    break;
+                case APAGameRules.SPAWN_HERO:
                     defaultSpawnPoint = worldPoint; // there's only one
+                    break;
+                default:
+                    break;
                 }
             }
         }
@@ -182,11 +234,11 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
                 APAWorldLayer treeLayer = APAWorldLayer.Top;
                 APATree tree = null;
 
-                if (spot.getSmallTreeLocation() >= 200) {
+                if (APAGameRules.isMarked(spot.getSmallTreeLocation())) {
                     // Create small tree at this location.
                     treeLayer = APAWorldLayer.AboveCharacter;
                     tree = (APATree) sharedSmallTree.copy();
-                } else if (spot.getBigTreeLocation() >= 200) {
+                } else if (APAGameRules.isMarked(spot.getBigTreeLocation())) {
                     // Create big tree with leaf emitters at this position.
                     tree = (APATree) sharedBigTree.copy();
 
@@ -202,6 +254,7 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
                     emitter.setPaused(true);
                     addNode(emitter, APAWorldLayer.Character);
                     particleSystems.add(emitter);
+                    particleSystemIndex.insert(emitter, treePos.getX(), treePos.getY());
                 } else {
                     continue;
                 }
@@ -211,111 +264,27 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
                 addNode(tree, treeLayer);
                 parallaxSprites.add(tree);
                 trees.add(tree);
+                parallaxSpriteIndex.insert(tree, treePos.getX(), treePos.getY());
+                treeIndex.insert(tree, treePos.getX(), treePos.getY());
             }
         }
     }
 
     private void addCollisionWalls() {
         NSDate startDate = new NSDate();
-        boolean[] filled = new boolean[LEVEL_MAP_SIZE * LEVEL_MAP_SIZE];
 
-        int numVolumes = 0;
+        // Merge the wall pixels of the level map into as few rectangular
+        // physics bodies as the greedy mesher finds.
+        List<Rect> rects = APAWallMesher.mesh(wallGrid, LEVEL_MAP_SIZE, LEVEL_MAP_SIZE);
         int numBlocks = 0;
-
-        // Add horizontal collision walls.
-        for (int y = 0; y < LEVEL_MAP_SIZE; y++) { // iterate in horizontal rows
-            for (int x = 0; x < LEVEL_MAP_SIZE; x++) {
-                CGPoint location = new CGPoint(x, y);
-                APADataMap spot = queryLevelMap(location);
-
-                // Get the world space point for this pixel.
-                CGPoint worldPoint = convertLevelMapPointToWorldPoint(location);
-
-                if (spot.getWall() < 200) {
-                    continue; // no wall
-                }
-
-                int horizontalDistanceFromLeft = x;
-                APADataMap nextSpot = spot;
-                while (horizontalDistanceFromLeft < LEVEL_MAP_SIZE && nextSpot.getWall() >= 200
-                        && !filled[(y * LEVEL_MAP_SIZE) + horizontalDistanceFromLeft]) {
-                    horizontalDistanceFromLeft++;
-                    nextSpot = queryLevelMap(new CGPoint(horizontalDistanceFromLeft, y));
-                }
-
-                int wallWidth = horizontalDistanceFromLeft - x;
-                int verticalDistanceFromTop = y;
-
-                if (wallWidth > 8) {
-                    nextSpot = spot;
-                    while (verticalDistanceFromTop < LEVEL_MAP_SIZE && nextSpot.getWall() >= 200) {
-                        verticalDistanceFromTop++;
-                        nextSpot = queryLevelMap(new CGPoint(x + (wallWidth / 2), verticalDistanceFromTop));
-                    }
-
-                    int wallHeight = verticalDistanceFromTop - y;
-                    for (int j = y; j < verticalDistanceFromTop; j++) {
-                        for (int i = x; i < horizontalDistanceFromLeft; i++) {
-                            filled[(j * LEVEL_MAP_SIZE) + i] = true;
-                            numBlocks++;
-                        }
-                    }
-
-                    addCollisionWall(worldPoint, LEVEL_MAP_DIVISOR * wallWidth, LEVEL_MAP_DIVISOR * wallHeight);
-                    numVolumes++;
-                }
-            }
-        }
-
-        // Add vertical collision walls.
-        for (int x = 0; x < LEVEL_MAP_SIZE; x++) { // iterate in vertical rows
-            for (int y = 0; y < LEVEL_MAP_SIZE; y++) {
-                CGPoint location = new CGPoint(x, y);
-                APADataMap spot = queryLevelMap(location);
-
-                // Get the world space point for this pixel.
-                CGPoint worldPoint = convertLevelMapPointToWorldPoint(location);
-
-                if (spot.getWall() < 200 || filled[(y * LEVEL_MAP_SIZE) + x]) {
-                    continue; // no wall, or already filled from X collision
-                              // walls
-                }
-
-                int verticalDistanceFromTop = y;
-                APADataMap nextSpot = spot;
-                while (verticalDistanceFromTop < LEVEL_MAP_SIZE && nextSpot.getWall() >= 200
-                        && !filled[(verticalDistanceFromTop * LEVEL_MAP_SIZE) + x]) {
-                    verticalDistanceFromTop++;
-                    nextSpot = queryLevelMap(new CGPoint(x, verticalDistanceFromTop));
-                }
-
-                int wallHeight = verticalDistanceFromTop - y;
-                int horizontalDistanceFromLeft = x;
-
-                if (wallHeight > 8) {
-                    nextSpot = spot;
-                    while (horizontalDistanceFromLeft < LEVEL_MAP_SIZE && nextSpot.getWall() >= 200) {
-                        horizontalDistanceFromLeft++;
-                        nextSpot = queryLevelMap(new CGPoint(horizontalDistanceFromLeft, y + (wallHeight / 2)));
-                    }
-
-                    int wallLength = horizontalDistanceFromLeft - x;
-                    for (int j = y; j < verticalDistanceFromTop; j++) {
-                        for (int i = x; i < horizontalDistanceFromLeft; i++) {
-                            filled[(j * LEVEL_MAP_SIZE) + 1] = true;
-                            numBlocks++;
-                        }
-                    }
-
-                    addCollisionWall(worldPoint, LEVEL_MAP_DIVISOR * wallLength, LEVEL_MAP_DIVISOR * wallHeight);
-                    numVolumes++;
-                }
-            }
+        for (Rect rect : rects) {
+            CGPoint worldPoint = convertLevelMapPointToWorldPoint(new CGPoint(rect.x, rect.y));
+            addCollisionWall(worldPoint, LEVEL_MAP_DIVISOR * rect.width, LEVEL_MAP_DIVISOR * rect.height);
+            numBlocks += rect.width * rect.height;
         }
 
         System.out.println(String.format("converted %d collision blocks into %d volumes in %f seconds", numBlocks,
-                numVolumes,
-                new NSDate().getTimeIntervalSince(startDate)));
+                rects.size(), new NSDate().getTimeIntervalSince(startDate)));
     }
 
     private void addCollisionWall(CGPoint worldPoint, double width, double height) {
@@ -342,7 +311,7 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
                                                             // addSpawnPoints
             bossPosition.setX(bossPosition.getX() + 128);
             bossPosition.setY(bossPosition.getY() + 512);
-            hero.setPosition(bossPosition);
+            hero.place(bossPosition);
         }
 
         centerWorldOnCharacter(hero);
@@ -361,8 +330,9 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
 
     @Override
     public void heroWasKilled(APAHeroCharacter hero) {
-        for (APACave cave : goblinCaves) {
-            cave.stopGoblinsFromTargettingHero(hero);
+        APAFlowField flowField = flowFields.remove(hero);
+        if (flowField != null) {
+            spareFlowFields.add(flowField);
         }
         super.heroWasKilled(hero);
     }
@@ -374,15 +344,72 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
             hero.update(timeSinceLast);
         }
 
+        // Keep the paths to the heroes up to date before the enemies use
+        // them.
+        updateFlowFields();
+
         // Update the level boss.
         levelBoss.update(timeSinceLast);
 
-        // Update the caves (and in turn, their goblins).
+        updateGoblins(timeSinceLast);
+
+        // Update the caves (and in turn, their goblins' sprites).
         for (APACave cave : goblinCaves) {
             cave.update(timeSinceLast);
         }
     }
 
+    private void updateFlowFields() {
+        for (APAHeroCharacter hero : heroes) {
+            APAFlowField flowField = flowFields.get(hero);
+            if (flowField == null) {
+                flowField = spareFlowFields.isEmpty() ? new APAFlowField(wallGrid, LEVEL_MAP_SIZE, LEVEL_MAP_SIZE)
+                        : spareFlowFields.remove(spareFlowFields.size() - 1);
+                flowFields.put(hero, flowField);
+            }
+            // Only changes the goal when the hero has moved to another cell.
+            CGPoint position = hero.getSimulatedPosition();
+            flowField.setGoal(convertWorldXToLevelMapCell(position.getX()),
+                    convertWorldYToLevelMapCell(position.getY()));
+            flowField.update(APAGameRules.FLOW_FIELD_CELLS_PER_STEP);
+        }
+    }
+
+    private void updateGoblins(double timeSinceLast) {
+        // The goblins chase the heroes in order, so a goblin's target is an
+        // index into heroes.
+        goblinSystems.clearTargets();
+        for (APAHeroCharacter hero : heroes) {
+            CGPoint position = hero.getSimulatedPosition();
+            goblinSystems.addTarget(position.getX(), position.getY(), !hero.isDying(), flowFields.get(hero));
+        }
+        goblinSystems.update(characterData, timeSinceLast);
+
+        for (int i = 0; i < heroes.size(); i++) {
+            APAHeroCharacter hero = heroes.get(i);
+            double damage = goblinSystems.getTargetDamage(i);
+            if (damage > 0 && !hero.isDying()) {
+                hero.takeHit(damage);
+            }
+        }
+    }
+
+    @Override
+    public CGPoint getWaypointTowards(APACharacter target, CGPoint position) {
+        APAFlowField flowField = flowFields.get(target);
+        if (flowField != null) {
+            int direction = flowField.getDirection(convertWorldXToLevelMapCell(position.getX()),
+                    convertWorldYToLevelMapCell(position.getY()));
+            if (direction != APAFlowField.NO_DIRECTION) {
+                // Level map y grows downwards, world y upwards.
+                return new CGPoint(position.getX() + APAFlowField.getDirectionX(direction) * LEVEL_MAP_DIVISOR,
+                        position.getY() - APAFlowField.getDirectionY(direction) * LEVEL_MAP_DIVISOR);
+            }
+        }
+        // Already in the target's cell, no path or not a hero.
+        return target.getSimulatedPosition();
+    }
+
     @Override
     public void didSimulatePhysics() {
         super.didSimulatePhysics();
@@ -396,37 +423,41 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
             position = defaultSpawnPoint;
         }
 
+        double x = position.getX();
+        double y = position.getY();
+
         // Update the alphas of any trees that are near the hero (center of the
-        // camera) and therefore visible or soon to be
-// visible.
-        for (APATree tree : trees) {
-            if (APAUtils.getDistanceBetweenPoints(tree.getPosition(), position) < 1024) {
-                tree.updateAlpha(this);
-            }
+        // camera) and therefore visible or soon to be visible.
+        nearbyTrees.clear();
+        treeIndex.queryRadius(x, y, VISIBLE_DISTANCE, null, nearbyTrees);
+        for (APATree tree : nearbyTrees) {
+            tree.updateAlpha(this);
         }
 
         if (!worldMovedForUpdate) {
             return;
         }
 
-        // Show any nearby hidden particle systems and hide those that are too
-        // far away to be seen.
-        for (SKEmitterNode particles : particleSystems) {
-            boolean particlesAreVisible = APAUtils.getDistanceBetweenPoints(particles.getPosition(), position) < 1024;
-
-            if (!particlesAreVisible && !particles.isPaused()) {
+        // Hide the particle systems which have gone out of range and show
+        // the ones which have come into range. Everything else is already
+        // paused.
+        for (SKEmitterNode particles : visibleParticleSystems) {
+            if (APAUtils.getDistanceBetweenPoints(particles.getPosition(), position) >= VISIBLE_DISTANCE) {
                 particles.setPaused(true);
-            } else if (particlesAreVisible && particles.isPaused()) {
+            }
+        }
+        visibleParticleSystems.clear();
+        particleSystemIndex.queryRadius(x, y, VISIBLE_DISTANCE, null, visibleParticleSystems);
+        for (SKEmitterNode particles : visibleParticleSystems) {
+            if (particles.isPaused()) {
                 particles.setPaused(false);
             }
         }
 
         // Update nearby parallax sprites.
-        for (APAParallaxSprite sprite : parallaxSprites) {
-            if (APAUtils.getDistanceBetweenPoints(sprite.getPosition(), position) >= 1024) {
-                continue;
-            }
-
+        nearbyParallaxSprites.clear();
+        parallaxSpriteIndex.queryRadius(x, y, VISIBLE_DISTANCE, null, nearbyParallaxSprites);
+        for (APAParallaxSprite sprite : nearbyParallaxSprites) {
             sprite.updateOffset();
         }
     }
@@ -436,6 +467,15 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
         return levelMap[(int) point.getY() * LEVEL_MAP_SIZE + (int) point.getX()];
     }
 
+    private byte[] createWallGrid() {
+        // The map channels are unsigned but Java bytes are signed.
+        byte[] walls = new byte[LEVEL_MAP_SIZE * LEVEL_MAP_SIZE];
+        for (int i = 0; i < walls.length; i++) {
+            walls[i] = (byte) (APAGameRules.isWall(levelMap[i].getWall()) ? 1 : 0);
+        }
+        return walls;
+    }
+
     private APATreeMap queryTreeMap(CGPoint point) {
         // Grab the tree map pixel for a given x,y (upper left).
         return treeMap[(int) point.getY() * LEVEL_MAP_SIZE + (int) point.getX()];
@@ -443,49 +483,21 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
 
     @Override
     public double getDistanceToWall(CGPoint pos0, CGPoint pos1) {
-        CGPoint a = convertWorldPointToLevelMapPoint(pos0);
-        CGPoint b = convertWorldPointToLevelMapPoint(pos1);
-
-        double deltaX = b.getX() - a.getX();
-        double deltaY = b.getY() - a.getY();
-        double dist = APAUtils.getDistanceBetweenPoints(a, b);
-        double inc = 1.0 / dist;
-        CGPoint p = CGPoint.Zero();
-
-        for (double i = 0; i <= 1; i += inc) {
-            p.setX(a.getX() + i * deltaX);
-            p.setY(a.getY() + i * deltaY);
-
-            APADataMap point = queryLevelMap(p);
-            if (point.getWall() > 200) {
-                CGPoint wpos2 = convertLevelMapPointToWorldPoint(p);
-                return APAUtils.getDistanceBetweenPoints(pos0, wpos2);
-            }
+        double dist = raycaster.cast(convertWorldXToLevelMapX(pos0.getX()), convertWorldYToLevelMapY(pos0.getY()),
+                convertWorldXToLevelMapX(pos1.getX()), convertWorldYToLevelMapY(pos1.getY()));
+        if (dist == APAGridRaycaster.NO_HIT) {
+            return Float.MAX_VALUE;
         }
-        return Float.MAX_VALUE;
+        return dist * LEVEL_MAP_DIVISOR;
     }
 
     @Override
     public boolean canSee(CGPoint pos0, CGPoint pos1) {
-        CGPoint a = convertWorldPointToLevelMapPoint(pos0);
-        CGPoint b = convertWorldPointToLevelMapPoint(pos1);
-
-        double deltaX = b.getX() - a.getX();
-        double deltaY = b.getY() - a.getY();
-        double dist = APAUtils.getDistanceBetweenPoints(a, b);
-        double inc = 1.0 / dist;
-        CGPoint p = CGPoint.Zero();
-
-        for (double i = 0; i <= 1; i += inc) {
-            p.setX(a.getX() + i * deltaX);
-            p.setY(a.getY() + i * deltaY);
-
-            APADataMap point = queryLevelMap(p);
-            if (point.getWall() > 200) {
-                return false;
-            }
-        }
-        return true;
+        // The level is static, so results are cached per pair of level map
+        // cells and only recomputed when either end moves to another cell.
+        return visibilityCache.canSee(convertWorldXToLevelMapCell(pos0.getX()),
+                convertWorldYToLevelMapCell(pos0.getY()), convertWorldXToLevelMapCell(pos1.getX()),
+                convertWorldYToLevelMapCell(pos1.getY()));
     }
 
     private CGPoint convertLevelMapPointToWorldPoint(CGPoint location) {
@@ -499,14 +511,22 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
         return location;
     }
 
-    private CGPoint convertWorldPointToLevelMapPoint(CGPoint location) {
-        // Given a world based point, resolve to a pixel location in the level
-        // map.
-        int x = (int) ((location.getX() + WORLD_CENTER) / LEVEL_MAP_DIVISOR);
-        int y = (int) ((WORLD_SIZE - (location.getY() + WORLD_CENTER)) / LEVEL_MAP_DIVISOR);
-        location.setX(x);
-        location.setY(y);
-        return location;
+    private static double convertWorldXToLevelMapX(double x) {
+        // Given a world based coordinate, resolve to a (fractional) level map
+        // coordinate.
+        return (x + WORLD_CENTER) / LEVEL_MAP_DIVISOR;
+    }
+
+    private static double convertWorldYToLevelMapY(double y) {
+        return (WORLD_SIZE - (y + WORLD_CENTER)) / LEVEL_MAP_DIVISOR;
+    }
+
+    private static int convertWorldXToLevelMapCell(double x) {
+        return (int) Math.floor(convertWorldXToLevelMapX(x));
+    }
+
+    private static int convertWorldYToLevelMapCell(double y) {
+        return (int) Math.floor(convertWorldYToLevelMapY(y));
     }
 
     @Override
@@ -514,8 +534,9 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
         SKTextureAtlas atlas = new SKTextureAtlas("Environment");
 
         // Load archived emitters and create copyable sprites.
-        sharedProjectileSparkEmitter = APAUtils.getEmitterNodeByName("ProjectileSplat");
-        sharedSpawnEmitter = APAUtils.getEmitterNodeByName("Spawn");
+        sharedProjectileSparkEmitters = APAEffectPool.forEmitter(APAUtils.getEmitterNodeByName("ProjectileSplat"),
+                ONE_SHOT_EMITTER_DURATION);
+        sharedSpawnEmitters = APAEffectPool.forEmitter(APAUtils.getEmitterNodeByName("Spawn"), ONE_SHOT_EMITTER_DURATION);
 
         sharedSmallTree = new APATree(new NSArray<SKSpriteNode>(new SKSpriteNode(atlas
                 .getTexture("small_tree_base.png")),
@@ -572,8 +593,8 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
         // Get rid of everything unique to this scene (but not the characters,
         // which might appear in other scenes).
         sharedBackgroundTiles = null;
-        sharedProjectileSparkEmitter = null;
-        sharedSpawnEmitter = null;
+        sharedProjectileSparkEmitters = null;
+        sharedSpawnEmitters = null;
         sharedLeafEmitterA = null;
         sharedLeafEmitterB = null;
     }
@@ -599,14 +620,15 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
                     .getBodyA().getNode()
                     : contact.getBodyB().getNode();
 
-            projectile.runAction(SKAction.removeFromParent());
-
             // Build up a "one shot" particle to indicate where the projectile
             // hit.
-            SKEmitterNode emitter = (SKEmitterNode) sharedProjectileSparkEmitter.copy();
-            addNode(emitter, APAWorldLayer.AboveCharacter);
-            emitter.setPosition(projectile.getPosition());
-            APAUtils.runOneShotEmitter(emitter, 0.15);
+            SKEmitterNode emitter = sharedProjectileSparkEmitters.run();
+            if (emitter != null) {
+                addNode(emitter, APAWorldLayer.AboveCharacter);
+                emitter.setPosition(projectile.getPosition());
+            }
+
+            APAHeroCharacter.recycleProjectile(projectile);
         }
     }
 
@@ -614,7 +636,7 @@ public class APAAdventureScene extends APAMultiplayerLayeredCharacterScene imple
     public void didEndContact(SKPhysicsContact contact) {}
 
     @Override
-    SKEmitterNode getSharedSpawnEmitter() {
-        return sharedSpawnEmitter;
+    APAEffectPool<SKEmitterNode> getSharedSpawnEmitters() {
+        return sharedSpawnEmitters;
     }
 }
@@ -49,11 +49,16 @@ import org.robovm.objc.Selector;
 import org.robovm.objc.annotation.Method;
 import org.robovm.objc.block.VoidBlock1;
 import org.robovm.objc.block.VoidBlock3;
+import org.robovm.samples.adventure.sim.APACharacterData;
+import org.robovm.samples.adventure.sim.APACharacterSystems;
+import org.robovm.samples.adventure.sim.APAGameRules;
 import org.robovm.samples.adventure.sprites.APACharacter;
 import org.robovm.samples.adventure.sprites.APACharacter.APAColliderType;
 import org.robovm.samples.adventure.sprites.APACharacter.APAMoveDirection;
 import org.robovm.samples.adventure.sprites.APAHeroCharacter;
-import org.robovm.samples.adventure.util.APAUtils;
+import org.robovm.samples.adventure.util.APAEffectPool;
+import org.robovm.samples.adventure.util.APAFixedTimestep;
+import org.robovm.samples.adventure.util.APASpatialHash;
 
 public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
     /** The layers in a scene. */
@@ -85,6 +90,12 @@ public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
 
     // all heroes in the game
     final NSArray<APAHeroCharacter> heroes = new NSMutableArray<>();
+    // the same heroes by position, refreshed at the start of every step
+    final APASpatialHash<APAHeroCharacter> heroIndex = new APASpatialHash<>(APAGameRules.HERO_INDEX_CELL_SIZE);
+    // the state of every character in the scene, one slot per character
+    final APACharacterData characterData = new APACharacterData(APAGameRules.GLOBAL_GOBLIN_CAP * 2);
+    // the same characters' sprites, drawn between simulation steps
+    private final List<APACharacter> characters = new ArrayList<>();
     // different layer nodes within the world
     final NSArray<SKNode> layers = new NSMutableArray<>(APAWorldLayer.values().length);
     // keep track of the various nodes for the HUD
@@ -100,6 +111,9 @@ public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
 
     // the previous update: loop time interval
     private double lastUpdateTimeInterval;
+    // turns frame times into whole simulation steps
+    private final APAFixedTimestep timestep = new APAFixedTimestep(APAGameRules.FIXED_TIME_STEP,
+            APAGameRules.MAX_STEPS_PER_FRAME);
 
     public APAMultiplayerLayeredCharacterScene(CGSize size) {
         super(size);
@@ -159,10 +173,10 @@ public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
     abstract void releaseSceneAssets();
 
     /**
-     * Overridden by subclasses to provide an emitter used to indicate when a
+     * Overridden by subclasses to provide the emitters used to indicate when a
      * new hero is spawned.
      */
-    abstract SKEmitterNode getSharedSpawnEmitter();
+    abstract APAEffectPool<SKEmitterNode> getSharedSpawnEmitters();
 
     /**
      * This method should be called when the level is loaded to set up
@@ -324,11 +338,26 @@ public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
         layerNode.addChild(node);
     }
 
+    /** Returns the state of the characters in the scene, which they only draw. */
+    public APACharacterData getCharacterData() {
+        return characterData;
+    }
+
+    /** Called by characters when they are added to the scene. */
+    public void addCharacter(APACharacter character) {
+        characters.add(character);
+    }
+
+    /** Called by characters when they are removed from the scene. */
+    public void removeCharacter(APACharacter character) {
+        characters.remove(character);
+    }
+
     public APAHeroCharacter addHeroForPlayer(APAPlayer player) {
         if (player == null)
             throw new NullPointerException("player");
 
-        if (player.hero != null && !player.hero.dying) {
+        if (player.hero != null && !player.hero.isDying()) {
             player.hero.removeFromParent();
         }
 
@@ -343,14 +372,16 @@ public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
         }
 
         if (hero != null) {
-            SKEmitterNode emitter = (SKEmitterNode) getSharedSpawnEmitter().copy();
-            emitter.setPosition(spawnPos);
-            addNode(emitter, APAWorldLayer.AboveCharacter);
-            APAUtils.runOneShotEmitter(emitter, 0.15);
+            SKEmitterNode emitter = getSharedSpawnEmitters().run();
+            if (emitter != null) {
+                emitter.setPosition(spawnPos);
+                addNode(emitter, APAWorldLayer.AboveCharacter);
+            }
 
             hero.fadeIn(2.0);
             hero.addToScene(this);
             heroes.add(hero);
+            heroIndex.insert(hero, spawnPos.getX(), spawnPos.getY());
         }
         player.hero = hero;
 
@@ -361,6 +392,7 @@ public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
         APAPlayer player = hero.getPlayer();
 
         heroes.remove(hero);
+        heroIndex.remove(hero);
 
         // Disable touch movement, otherwise new hero will try to move to
         // previously-touched location.
@@ -521,6 +553,12 @@ public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
 
     public abstract boolean canSee(CGPoint pos0, CGPoint pos1);
 
+    /**
+     * Returns the point a character at {@code position} should move towards
+     * next to reach {@code target} without walking into walls.
+     */
+    public abstract CGPoint getWaypointTowards(APACharacter target, CGPoint position);
+
     @Override
     public void update(double currentTime) {
         // Handle time delta.
@@ -534,21 +572,37 @@ public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
             worldMovedForUpdate = true;
         }
 
-        updateScene(timeSinceLast);
+        // Movement and AI only ever see the fixed step, so they behave the
+        // same at any frame rate. Characters are then drawn between their
+        // positions before and after the last step, by how far this frame is
+        // ahead of it, so they move smoothly at any frame rate too.
+        int steps = timestep.advance(timeSinceLast);
+        for (int i = 0; i < steps; i++) {
+            APACharacterSystems.storePositions(characterData);
+            updateHeroIndex();
+            updateScene(APAGameRules.FIXED_TIME_STEP);
+            updatePlayers(APAGameRules.FIXED_TIME_STEP);
+        }
+        double alpha = timestep.getAlpha();
+        for (int i = 0; i < characters.size(); i++) {
+            characters.get(i).interpolate(alpha);
+        }
+    }
 
+    private void updatePlayers(double timeSinceLast) {
         APAHeroCharacter hero = null;
         if (heroes.size() > 0) {
             hero = defaultPlayer.hero;
         }
 
-        if (!hero.dying) {
+        if (hero != null && !hero.isDying()) {
             if (!defaultPlayer.targetLocation.equalsTo(CGPoint.Zero())) {
                 if (defaultPlayer.fireAction) {
                     hero.faceTo(defaultPlayer.targetLocation);
                 }
 
                 if (defaultPlayer.moveRequested) {
-                    if (!defaultPlayer.targetLocation.equalsTo(hero.getPosition())) {
+                    if (!defaultPlayer.targetLocation.equalsTo(hero.getSimulatedPosition())) {
                         hero.moveTowards(defaultPlayer.targetLocation, timeSinceLast);
                     } else {
                         defaultPlayer.moveRequested = false;
@@ -563,7 +617,7 @@ public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
             }
 
             hero = player.hero;
-            if (hero == null || hero.dying) {
+            if (hero == null || hero.isDying()) {
                 continue;
             }
 
@@ -591,11 +645,26 @@ public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
         }
     }
 
-    /** Overridden by subclasses to update the scene - called once per frame. */
+    private void updateHeroIndex() {
+        // Heroes are moved by physics as well as by us, so just resync
+        // everyone once per step before the AI runs.
+        for (APAHeroCharacter hero : heroes) {
+            CGPoint position = hero.getSimulatedPosition();
+            heroIndex.move(hero, position.getX(), position.getY());
+        }
+    }
+
+    /** Overridden by subclasses to update the scene - called once per fixed step. */
     abstract void updateScene(double timeSinceLast);
 
     @Override
     public void didSimulatePhysics() {
+        // Collisions push characters around, which the next step has to
+        // start from.
+        for (int i = 0; i < characters.size(); i++) {
+            characters.get(i).syncFromPhysics();
+        }
+
         APAHeroCharacter defaultHero = defaultPlayer.hero;
 
         // Move the world relative to the default player position.
@@ -693,4 +762,9 @@ public abstract class APAMultiplayerLayeredCharacterScene extends SKScene {
     public NSArray<APAHeroCharacter> getHeroes() {
         return heroes;
     }
+
+    /** Returns the heroes indexed by their position at the start of this step. */
+    public APASpatialHash<APAHeroCharacter> getHeroIndex() {
+        return heroIndex;
+    }
 }
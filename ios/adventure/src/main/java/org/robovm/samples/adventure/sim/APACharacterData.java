@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.sim;
+
+import java.util.Arrays;
+
+/**
+ * Characters stored column by column: one primitive array per property,
+ * indexed by slot, so the systems in {@link APACharacterSystems} stream
+ * through exactly the properties they need instead of chasing one object per
+ * character. A slot stays the same for the life of its character, freed slots
+ * are reused, and slots at or above {@link #getSlotCount()} are all free.
+ * Nothing is allocated once the arrays have grown to fit. Both
+ * {@link APASimWorld} and the SpriteKit scene keep their characters here, the
+ * sprites of the scene only draw their slot. Not thread-safe.
+ */
+public final class APACharacterData {
+    /** AI states. */
+    public static final byte FREE = 0;
+    public static final byte IDLE = 1;
+    public static final byte CHASING = 2;
+    public static final byte ATTACKING = 3;
+    public static final byte DYING = 4;
+    /** Keeps its slot but is left alone by {@link APACharacterSystems}, e.g. a hero steered by its player. */
+    public static final byte PASSIVE = 5;
+
+    public static final int NO_TARGET = -1;
+    public static final int NO_SLOT = -1;
+
+    double[] x;
+    double[] y;
+    double[] previousX;
+    double[] previousY;
+    double[] velocityX;
+    double[] velocityY;
+    double[] speed;
+    double[] health;
+    double[] timer;
+    byte[] state;
+    int[] target;
+    int[] owner;
+    // Free slots below slotCount, chained through target[].
+    private int freeSlot = NO_TARGET;
+    private int slotCount;
+    private int size;
+
+    public APACharacterData (int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        x = new double[capacity];
+        y = new double[capacity];
+        previousX = new double[capacity];
+        previousY = new double[capacity];
+        velocityX = new double[capacity];
+        velocityY = new double[capacity];
+        speed = new double[capacity];
+        health = new double[capacity];
+        timer = new double[capacity];
+        state = new byte[capacity];
+        target = new int[capacity];
+        owner = new int[capacity];
+    }
+
+    /**
+     * Adds an idle character with full health at {@code (x, y)} and returns
+     * its slot. {@code owner} is any number the caller wants to keep with
+     * the character.
+     */
+    public int add (double x, double y, double speed, int owner) {
+        int slot;
+        if (freeSlot != NO_TARGET) {
+            slot = freeSlot;
+            freeSlot = target[slot];
+        } else {
+            if (slotCount == state.length) {
+                grow();
+            }
+            slot = slotCount++;
+        }
+        this.x[slot] = previousX[slot] = x;
+        this.y[slot] = previousY[slot] = y;
+        velocityX[slot] = 0;
+        velocityY[slot] = 0;
+        this.speed[slot] = speed;
+        health[slot] = APAGameRules.CHARACTER_HEALTH;
+        timer[slot] = 0;
+        state[slot] = IDLE;
+        target[slot] = NO_TARGET;
+        this.owner[slot] = owner;
+        size++;
+        return slot;
+    }
+
+    public void remove (int slot) {
+        if (state[slot] == FREE) {
+            throw new IllegalArgumentException("Slot " + slot + " is free");
+        }
+        state[slot] = FREE;
+        velocityX[slot] = 0;
+        velocityY[slot] = 0;
+        target[slot] = freeSlot;
+        freeSlot = slot;
+        size--;
+    }
+
+    public void clear () {
+        Arrays.fill(state, 0, slotCount, FREE);
+        slotCount = 0;
+        freeSlot = NO_TARGET;
+        size = 0;
+    }
+
+    /** Returns the number of characters. */
+    public int size () {
+        return size;
+    }
+
+    /** Returns one more than the highest slot ever used since the last clear. */
+    public int getSlotCount () {
+        return slotCount;
+    }
+
+    public byte getState (int slot) {
+        return state[slot];
+    }
+
+    public void setState (int slot, byte state) {
+        this.state[slot] = state;
+    }
+
+    public int getOwner (int slot) {
+        return owner[slot];
+    }
+
+    public double getHealth (int slot) {
+        return health[slot];
+    }
+
+    public void setHealth (int slot, double health) {
+        this.health[slot] = health;
+    }
+
+    public double getTimer (int slot) {
+        return timer[slot];
+    }
+
+    public void setTimer (int slot, double timer) {
+        this.timer[slot] = timer;
+    }
+
+    public int getTarget (int slot) {
+        return target[slot];
+    }
+
+    public double getVelocityX (int slot) {
+        return velocityX[slot];
+    }
+
+    public double getVelocityY (int slot) {
+        return velocityY[slot];
+    }
+
+    /**
+     * Kills a character, which is then {@link #DYING} for {@code dyingTime}
+     * seconds.
+     */
+    public void kill (int slot, double dyingTime) {
+        health[slot] = 0;
+        state[slot] = DYING;
+        timer[slot] = dyingTime;
+        velocityX[slot] = 0;
+        velocityY[slot] = 0;
+        target[slot] = NO_TARGET;
+    }
+
+    /** Returns x after the current step. */
+    public double getX (int slot) {
+        return x[slot];
+    }
+
+    public double getY (int slot) {
+        return y[slot];
+    }
+
+    /** Moves a character during the current step. */
+    public void setPosition (int slot, double x, double y) {
+        this.x[slot] = x;
+        this.y[slot] = y;
+    }
+
+    /** Puts a character at {@code (x, y)} at once, without moving there between steps. */
+    public void place (int slot, double x, double y) {
+        this.x[slot] = previousX[slot] = x;
+        this.y[slot] = previousY[slot] = y;
+    }
+
+    /** Shifts a character along with its previous position, e.g. when something pushed it. */
+    public void offset (int slot, double dx, double dy) {
+        x[slot] += dx;
+        y[slot] += dy;
+        previousX[slot] += dx;
+        previousY[slot] += dy;
+    }
+
+    /**
+     * Returns x between the previous ({@code alpha == 0}) and the current
+     * ({@code alpha == 1}) step.
+     */
+    public double getX (int slot, double alpha) {
+        return previousX[slot] + (x[slot] - previousX[slot]) * alpha;
+    }
+
+    public double getY (int slot, double alpha) {
+        return previousY[slot] + (y[slot] - previousY[slot]) * alpha;
+    }
+
+    private void grow () {
+        int capacity = state.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        previousX = Arrays.copyOf(previousX, capacity);
+        previousY = Arrays.copyOf(previousY, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        health = Arrays.copyOf(health, capacity);
+        timer = Arrays.copyOf(timer, capacity);
+        state = Arrays.copyOf(state, capacity);
+        target = Arrays.copyOf(target, capacity);
+        owner = Arrays.copyOf(owner, capacity);
+    }
+}
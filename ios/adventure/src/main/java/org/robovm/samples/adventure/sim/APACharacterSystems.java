@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.sim;
+
+import java.util.Arrays;
+
+import org.robovm.samples.adventure.util.APAFlowField;
+
+/**
+ * The per-step update of every character in an {@link APACharacterData},
+ * one pass over the arrays per system. Characters chase the nearest living
+ * target within the alert radius along the target's flow field, attack it at
+ * a fixed interval once within the chase radius and slide along the walls of
+ * the level grid. {@link APACharacterData#PASSIVE} characters are only
+ * moved along by {@link #storePositions(APACharacterData)}. Targets are few
+ * (the heroes) and are handed in before each step; the damage dealt to them
+ * is added up for the caller to apply. Not thread-safe.
+ */
+public final class APACharacterSystems {
+    private final byte[] walls;
+    private final int width;
+    private final int height;
+    private final double originX;
+    private final double originY;
+    private final double inverseCellSize;
+    // Negative if world y grows upwards while grid rows grow downwards.
+    private final double inverseCellSizeY;
+    private final double alertRadius;
+    private final double chaseRadius;
+    private final double attackInterval;
+    private final double attackDamage;
+
+    private double[] targetX = new double[4];
+    private double[] targetY = new double[4];
+    private boolean[] targetAlive = new boolean[4];
+    private APAFlowField[] targetFields = new APAFlowField[4];
+    private double[] targetDamage = new double[4];
+    private int targetCount;
+
+    /**
+     * Creates the systems for a level with the specified row-major wall grid
+     * of cells {@code cellSize} world units wide, whose top left corner is at
+     * the world origin and whose rows grow along world y. The grid is not
+     * copied.
+     */
+    public APACharacterSystems (byte[] walls, int width, int height, double cellSize, double alertRadius,
+        double chaseRadius, double attackInterval, double attackDamage) {
+
+        this(walls, width, height, cellSize, 0, 0, false, alertRadius, chaseRadius, attackInterval, attackDamage);
+    }
+
+    /**
+     * Creates the systems for a grid whose top left corner is at
+     * {@code (originX, originY)} in the world. If {@code yUp} world y grows
+     * upwards, against the grid rows, as in the SpriteKit scene.
+     */
+    public APACharacterSystems (byte[] walls, int width, int height, double cellSize, double originX, double originY,
+        boolean yUp, double alertRadius, double chaseRadius, double attackInterval, double attackDamage) {
+
+        this.walls = walls;
+        this.width = width;
+        this.height = height;
+        this.originX = originX;
+        this.originY = originY;
+        this.inverseCellSize = 1.0 / cellSize;
+        this.inverseCellSizeY = yUp ? -inverseCellSize : inverseCellSize;
+        this.alertRadius = alertRadius;
+        this.chaseRadius = chaseRadius;
+        this.attackInterval = attackInterval;
+        this.attackDamage = attackDamage;
+    }
+
+    public void clearTargets () {
+        targetCount = 0;
+    }
+
+    /**
+     * Adds a target for the next {@link #chase(APACharacterData)}
+     * and returns its index. {@code field} leads to the target.
+     */
+    public int addTarget (double x, double y, boolean alive, APAFlowField field) {
+        if (targetCount == targetX.length) {
+            int capacity = targetCount * 2;
+            targetX = Arrays.copyOf(targetX, capacity);
+            targetY = Arrays.copyOf(targetY, capacity);
+            targetAlive = Arrays.copyOf(targetAlive, capacity);
+            targetFields = Arrays.copyOf(targetFields, capacity);
+            targetDamage = Arrays.copyOf(targetDamage, capacity);
+        }
+        int t = targetCount++;
+        targetX[t] = x;
+        targetY[t] = y;
+        targetAlive[t] = alive;
+        targetFields[t] = field;
+        targetDamage[t] = 0;
+        return t;
+    }
+
+    /** Returns the damage dealt to a target by the last chase. */
+    public double getTargetDamage (int target) {
+        return targetDamage[target];
+    }
+
+    /** Remembers the current positions of all characters for interpolation. */
+    public static void storePositions (APACharacterData data) {
+        int n = data.getSlotCount();
+        System.arraycopy(data.x, 0, data.previousX, 0, n);
+        System.arraycopy(data.y, 0, data.previousY, 0, n);
+    }
+
+    /** Counts down the attack and death timers. */
+    public void tickTimers (APACharacterData data, double dt) {
+        double[] timer = data.timer;
+        for (int i = 0, n = data.getSlotCount(); i < n; i++) {
+            timer[i] -= dt;
+        }
+    }
+
+    /** Runs the timers, {@link #chase} and {@link #move} for one step. */
+    public void update (APACharacterData data, double dt) {
+        tickTimers(data, dt);
+        chase(data);
+        move(data, dt);
+    }
+
+    /**
+     * Picks a target for every living character and sets its velocity and
+     * state. Characters near enough attack instead of moving.
+     */
+    public void chase (APACharacterData data) {
+        double[] x = data.x;
+        double[] y = data.y;
+        double[] velocityX = data.velocityX;
+        double[] velocityY = data.velocityY;
+        double[] speed = data.speed;
+        double[] timer = data.timer;
+        byte[] state = data.state;
+        int[] target = data.target;
+        double alertRadiusSquared = alertRadius * alertRadius;
+
+        for (int i = 0, n = data.getSlotCount(); i < n; i++) {
+            byte s = state[i];
+            if (!isChasing(s)) {
+                continue;
+            }
+            double px = x[i];
+            double py = y[i];
+            int best = APACharacterData.NO_TARGET;
+            double bestDistance = alertRadiusSquared;
+            for (int t = 0; t < targetCount; t++) {
+                double dx = targetX[t] - px;
+                double dy = targetY[t] - py;
+                double d = dx * dx + dy * dy;
+                if (d < bestDistance && targetAlive[t]) {
+                    bestDistance = d;
+                    best = t;
+                }
+            }
+            target[i] = best;
+            if (best == APACharacterData.NO_TARGET) {
+                velocityX[i] = 0;
+                velocityY[i] = 0;
+                state[i] = APACharacterData.IDLE;
+                continue;
+            }
+
+            double distance = Math.sqrt(bestDistance);
+            if (distance > chaseRadius) {
+                double ux;
+                double uy;
+                int direction = targetFields[best].getDirection(cellX(px), cellY(py));
+                if (direction != APAFlowField.NO_DIRECTION) {
+                    ux = APAFlowField.getDirectionX(direction);
+                    uy = inverseCellSizeY < 0 ? -APAFlowField.getDirectionY(direction)
+                        : APAFlowField.getDirectionY(direction);
+                } else {
+                    // In the target's cell or no path, head straight for it.
+                    ux = (targetX[best] - px) / distance;
+                    uy = (targetY[best] - py) / distance;
+                }
+                velocityX[i] = ux * speed[i];
+                velocityY[i] = uy * speed[i];
+                state[i] = APACharacterData.CHASING;
+            } else {
+                velocityX[i] = 0;
+                velocityY[i] = 0;
+                state[i] = APACharacterData.ATTACKING;
+                if (timer[i] <= 0) {
+                    timer[i] = attackInterval;
+                    targetDamage[best] += attackDamage;
+                }
+            }
+        }
+    }
+
+    /** Moves every character by its velocity, sliding along walls. */
+    public void move (APACharacterData data, double dt) {
+        double[] x = data.x;
+        double[] y = data.y;
+        double[] velocityX = data.velocityX;
+        double[] velocityY = data.velocityY;
+        for (int i = 0, n = data.getSlotCount(); i < n; i++) {
+            double vx = velocityX[i];
+            double vy = velocityY[i];
+            if (vx == 0 && vy == 0) {
+                continue;
+            }
+            double px = x[i];
+            double py = y[i];
+            double nx = px + vx * dt;
+            double ny = py + vy * dt;
+            if (isOpen(nx, ny)) {
+                x[i] = nx;
+                y[i] = ny;
+            } else if (isOpen(nx, py)) {
+                x[i] = nx;
+            } else if (isOpen(px, ny)) {
+                y[i] = ny;
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of the living character nearest to {@code (x, y)}
+     * if it's closer than {@code maxDistance}, otherwise
+     * {@link APACharacterData#NO_TARGET}.
+     */
+    public static int nearest (APACharacterData data, double x, double y, double maxDistance) {
+        double[] xs = data.x;
+        double[] ys = data.y;
+        byte[] state = data.state;
+        int best = APACharacterData.NO_TARGET;
+        double bestDistance = maxDistance * maxDistance;
+        for (int i = 0, n = data.getSlotCount(); i < n; i++) {
+            double dx = xs[i] - x;
+            double dy = ys[i] - y;
+            double d = dx * dx + dy * dy;
+            if (d < bestDistance && isChasing(state[i])) {
+                bestDistance = d;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Applies damage to a character. Returns {@code true} if it killed the
+     * character, which is then {@link APACharacterData#DYING} for
+     * {@code dyingTime} seconds.
+     */
+    public static boolean applyDamage (APACharacterData data, int slot, double damage, double dyingTime) {
+        data.health[slot] -= damage;
+        if (data.health[slot] > 0) {
+            return false;
+        }
+        data.kill(slot, dyingTime);
+        return true;
+    }
+
+    private static boolean isChasing (byte state) {
+        return state == APACharacterData.IDLE || state == APACharacterData.CHASING
+            || state == APACharacterData.ATTACKING;
+    }
+
+    private int cellX (double x) {
+        return (int)Math.floor((x - originX) * inverseCellSize);
+    }
+
+    private int cellY (double y) {
+        return (int)Math.floor((y - originY) * inverseCellSizeY);
+    }
+
+    private boolean isOpen (double x, double y) {
+        int cx = cellX(x);
+        int cy = cellY(y);
+        return cx >= 0 && cy >= 0 && cx < width && cy < height && walls[cy * width + cx] == 0;
+    }
+}
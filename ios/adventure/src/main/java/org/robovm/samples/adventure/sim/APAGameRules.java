@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.sim;
+
+/**
+ * The numbers and rules of the game, shared by the SpriteKit scene and by
+ * {@link APASimWorld}, so the two can't drift apart. Distances are world
+ * units, times seconds. Has no platform dependencies.
+ */
+public final class APAGameRules {
+    /** Length of a simulation step. */
+    public static final double FIXED_TIME_STEP = 1.0 / 60.0;
+    /** Steps to catch up with per frame at most, more time is dropped. */
+    public static final int MAX_STEPS_PER_FRAME = 4;
+
+    /** World units per level map cell. */
+    public static final double CELL_SIZE = 16;
+    /** Level map channel values above this mark walls. */
+    public static final int WALL_THRESHOLD = 200;
+    /** Level and tree map channel values at or above this mark caves, the hero spawn point and trees. */
+    public static final int SPAWN_THRESHOLD = 200;
+    /** Level map alpha values at or below this mark the boss. Every other cell is opaque. */
+    public static final int BOSS_THRESHOLD = 200;
+
+    /** Level map cells which spawn nothing. */
+    public static final int SPAWN_NONE = 0;
+    /** The level map cell the boss spawns at. */
+    public static final int SPAWN_BOSS = 1;
+    /** Level map cells with a goblin cave. */
+    public static final int SPAWN_CAVE = 2;
+    /** The level map cell the heroes spawn at. */
+    public static final int SPAWN_HERO = 3;
+
+    public static final double MOVEMENT_SPEED = 200;
+    /** Radians turned per step when turning with the keyboard. */
+    public static final double ROTATION_SPEED = 0.06;
+    public static final double CHARACTER_COLLISION_RADIUS = 40;
+    public static final double CHARACTER_HEALTH = 100;
+
+    /** Time a frame of a character animation is shown. */
+    public static final double ANIMATION_FRAME_TIME = 1.0 / 28.0;
+
+    public static final int HERO_ATTACK_FRAMES = 10;
+    /** A hero shoots once per attack animation. */
+    public static final double HERO_ATTACK_INTERVAL = HERO_ATTACK_FRAMES * ANIMATION_FRAME_TIME;
+    /** Time between the end of a hero's death animation and its respawn. */
+    public static final double HERO_RESPAWN_DELAY = 4.0;
+
+    public static final double PROJECTILE_SPEED = 480;
+    public static final double PROJECTILE_LIFETIME = 1.0;
+    /** Time until a projectile starts to fade out. */
+    public static final double PROJECTILE_FADEOUT_TIME = 0.6;
+    public static final double PROJECTILE_RANGE = PROJECTILE_SPEED * PROJECTILE_LIFETIME;
+
+    /** Radius around an enemy in which it notices heroes. */
+    public static final double ENEMY_ALERT_RADIUS = CHARACTER_COLLISION_RADIUS * 500;
+    /** Distance from its target within which an enemy attacks. */
+    public static final double CHASE_RADIUS = CHARACTER_COLLISION_RADIUS * 2;
+
+    public static final int GOBLIN_ATTACK_FRAMES = 33;
+    public static final int GOBLIN_DEATH_FRAMES = 31;
+    /** A goblin hits its target once per attack animation. */
+    public static final double GOBLIN_ATTACK_INTERVAL = GOBLIN_ATTACK_FRAMES * ANIMATION_FRAME_TIME;
+    /** Damage a goblin deals to a hero per hit. */
+    public static final double GOBLIN_DAMAGE = 5;
+    /** Time a dead goblin lies on the ground before fading out. */
+    public static final double GOBLIN_CORPSE_TIME = 0.75;
+    public static final double GOBLIN_FADEOUT_TIME = 1.0;
+    /** Time from a goblin's death until it can be spawned again. */
+    public static final double GOBLIN_DEATH_TIME = GOBLIN_DEATH_FRAMES * ANIMATION_FRAME_TIME + GOBLIN_CORPSE_TIME
+        + GOBLIN_FADEOUT_TIME;
+    public static final long GOBLIN_SCORE = 10;
+
+    public static final double CAVE_HEALTH = 100;
+    /** Damage a projectile deals to a cave. */
+    public static final double CAVE_DAMAGE = 10;
+    public static final long CAVE_SCORE = 25;
+    /** Goblins a single cave can have out at once. */
+    public static final int CAVE_CAPACITY = 50;
+    /** Goblins all caves together can have out at once. */
+    public static final int GLOBAL_GOBLIN_CAP = 32;
+    /** Heroes further away from a cave than this don't speed up spawning. */
+    public static final double MINIMUM_HERO_DISTANCE = 2048;
+    /** A cave in sight of a hero spawns more goblins while it has fewer than this. */
+    public static final int GOBLINS_IN_SIGHT = 4;
+
+    /** Cap on the cells a flow field integrates per step. */
+    public static final int FLOW_FIELD_CELLS_PER_STEP = 8192;
+    /** Cached cell-to-cell line-of-sight results. */
+    public static final int VISIBILITY_CACHE_SIZE = 4096;
+    /** Cell size of the spatial hash used to find heroes near a point. */
+    public static final int HERO_INDEX_CELL_SIZE = 512;
+
+    private APAGameRules () {
+    }
+
+    /**
+     * Returns {@code true} if a level map wall channel value marks a wall.
+     * Like all map channel rules this reads the value as unsigned, so the
+     * signed {@code byte}s of the map structs can be passed as they are.
+     */
+    public static boolean isWall (int value) {
+        return (value & 0xff) > WALL_THRESHOLD;
+    }
+
+    /** Returns {@code true} if a level map alpha value marks the boss. */
+    public static boolean isBoss (int value) {
+        return (value & 0xff) <= BOSS_THRESHOLD;
+    }
+
+    /** Returns {@code true} if a cave, hero spawn or tree map channel value is set. */
+    public static boolean isMarked (int value) {
+        return (value & 0xff) >= SPAWN_THRESHOLD;
+    }
+
+    /**
+     * Returns what spawns at a level map cell, one of the {@code SPAWN_}
+     * constants, given its boss, cave and hero spawn channel values. A cell
+     * spawns one thing at most: the boss before a cave before the heroes.
+     */
+    public static int getSpawn (int boss, int cave, int hero) {
+        if (isBoss(boss)) {
+            return SPAWN_BOSS;
+        } else if (isMarked(cave)) {
+            return SPAWN_CAVE;
+        } else if (isMarked(hero)) {
+            return SPAWN_HERO;
+        }
+        return SPAWN_NONE;
+    }
+
+    /**
+     * Returns the damage a projectile deals to a goblin, either 100% or 50%
+     * for a {@code random} number in [0, 1).
+     */
+    public static double getGoblinHitDamage (double random) {
+        return random < 0.5 ? 50 : 100;
+    }
+
+    /** Returns the time until a new cave first spawns for a {@code random} number in [0, 1). */
+    public static double getFirstGenerateDelay (double random) {
+        return 5.0 + random * 5.0;
+    }
+
+    /**
+     * Returns {@code true} if a cave whose spawn timer has run down to
+     * {@code timeUntilNextGenerate} should decide whether to spawn, either
+     * because the time has come or because the closest hero is so close it
+     * needs to respond at once. {@code closestHeroDistance} is at most
+     * {@link #MINIMUM_HERO_DISTANCE}.
+     */
+    public static boolean isTimeToGenerate (int goblinCount, double timeUntilNextGenerate,
+        double closestHeroDistance) {
+
+        double distScale = closestHeroDistance / MINIMUM_HERO_DISTANCE;
+        return goblinCount < 1 || timeUntilNextGenerate <= 0.0 || (distScale < 0.35 && timeUntilNextGenerate > 5.0);
+    }
+
+    /**
+     * Returns {@code true} if a cave which {@link #isTimeToGenerate} should
+     * spawn a goblin. {@code heroInSight} is whether the closest hero within
+     * {@link #MINIMUM_HERO_DISTANCE} can see the cave.
+     */
+    public static boolean shouldGenerate (int goblinCount, boolean heroInSight) {
+        return goblinCount < 1 || (goblinCount < GOBLINS_IN_SIGHT && heroInSight);
+    }
+
+    /** Returns the next spawn delay of a cave: the closer the closest hero, the sooner. */
+    public static double getNextGenerateDelay (double closestHeroDistance) {
+        return 4.0 * closestHeroDistance / MINIMUM_HERO_DISTANCE;
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.sim;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.robovm.samples.adventure.util.APAFlowField;
+import org.robovm.samples.adventure.util.APAGridRaycaster;
+import org.robovm.samples.adventure.util.APAPngDecoder;
+import org.robovm.samples.adventure.util.APASpatialHash;
+import org.robovm.samples.adventure.util.APAVisibilityCache;
+
+/**
+ * Platform-neutral model of an Adventure level. Computer controlled heroes
+ * walk to the nearest goblin cave and shoot at goblins and caves on the way,
+ * while the caves spawn goblins which chase and hit the heroes. The numbers
+ * and rules all come from {@link APAGameRules}, which the sprites and their
+ * AI use as well. No SpriteKit is involved, so it runs on a plain JVM much
+ * faster than real time.
+ * <p>
+ * The world only changes in {@link #step(double)}. Characters remember where
+ * they were before the last step, so a renderer can interpolate between two
+ * steps. The few heroes and caves are objects; the goblins, which can be many,
+ * live in an {@link APACharacterData} updated by {@link APACharacterSystems}.
+ * Coordinates are world units with the origin at the top left of the level
+ * map and y growing downwards. Given the same map and seed the world
+ * always evolves the same way. Not thread-safe.
+ */
+public final class APASimWorld {
+    /** Anything with a position and health. */
+    public static class Character {
+        double x;
+        double y;
+        double previousX;
+        double previousY;
+        double health = APAGameRules.CHARACTER_HEALTH;
+        boolean dying;
+        double timer;
+
+        Character (double x, double y) {
+            place(x, y);
+        }
+
+        void place (double x, double y) {
+            this.x = previousX = x;
+            this.y = previousY = y;
+        }
+
+        /**
+         * Returns x between the previous ({@code alpha == 0}) and the
+         * current ({@code alpha == 1}) step.
+         */
+        public double getX (double alpha) {
+            return previousX + (x - previousX) * alpha;
+        }
+
+        public double getY (double alpha) {
+            return previousY + (y - previousY) * alpha;
+        }
+
+        public double getHealth () {
+            return health;
+        }
+
+        public boolean isDying () {
+            return dying;
+        }
+    }
+
+    public static final class Hero extends Character {
+        // Paths for the goblins chasing this hero and for the hero itself.
+        final APAFlowField chaseField;
+        final APAFlowField routeField;
+        Cave targetCave;
+
+        Hero (double x, double y, APAFlowField chaseField, APAFlowField routeField) {
+            super(x, y);
+            this.chaseField = chaseField;
+            this.routeField = routeField;
+        }
+    }
+
+    public static final class Cave extends Character {
+        final int index;
+        int goblinCount;
+        double timeUntilNextGenerate;
+
+        Cave (double x, double y, int index) {
+            super(x, y);
+            this.index = index;
+        }
+    }
+
+    private final byte[] walls;
+    private final int width;
+    private final int height;
+    private final APAVisibilityCache visibilityCache;
+    private final Random random;
+    private final double spawnX;
+    private final double spawnY;
+
+    private final List<Hero> heroes = new ArrayList<>();
+    private final List<Cave> caves = new ArrayList<>();
+    private final APASpatialHash<Hero> heroIndex = new APASpatialHash<>(APAGameRules.HERO_INDEX_CELL_SIZE);
+    private final APACharacterData goblins = new APACharacterData(APAGameRules.GLOBAL_GOBLIN_CAP);
+    private final APACharacterSystems goblinSystems;
+
+    private double time;
+    private long stepCount;
+    private long goblinsSpawned;
+    private long goblinsKilled;
+    private long heroDeaths;
+    private long cavesDestroyed;
+    private long levelsCleared;
+
+    /**
+     * Creates a world on a row-major wall grid with caves at the specified
+     * cells and heroes starting at the spawn cell. The wall grid is not
+     * copied.
+     */
+    public APASimWorld (byte[] walls, int width, int height, int[] caveCells, int spawnCell, int heroCount, long seed) {
+        this.walls = walls;
+        this.width = width;
+        this.height = height;
+        this.visibilityCache = new APAVisibilityCache(new APAGridRaycaster(walls, width, height),
+            APAGameRules.VISIBILITY_CACHE_SIZE);
+        this.random = new Random(seed);
+        this.spawnX = cellCenter(spawnCell % width);
+        this.spawnY = cellCenter(spawnCell / width);
+        this.goblinSystems = new APACharacterSystems(walls, width, height, APAGameRules.CELL_SIZE,
+            APAGameRules.ENEMY_ALERT_RADIUS, APAGameRules.CHASE_RADIUS, APAGameRules.GOBLIN_ATTACK_INTERVAL,
+            APAGameRules.GOBLIN_DAMAGE);
+
+        for (int cell : caveCells) {
+            caves.add(new Cave(cellCenter(cell % width), cellCenter(cell / width), caves.size()));
+        }
+        resetCaves();
+
+        for (int i = 0; i < heroCount; i++) {
+            Hero hero = new Hero(spawnX, spawnY, new APAFlowField(walls, width, height), new APAFlowField(walls,
+                width, height));
+            heroes.add(hero);
+            heroIndex.insert(hero, hero.x, hero.y);
+        }
+    }
+
+    /**
+     * Creates a world from a decoded level map: walls in red, caves in green
+     * and the hero spawn point in blue, the same channels and
+     * {@link APAGameRules} the game reads them with. The boss, marked in
+     * alpha, isn't simulated but its cell spawns nothing else.
+     */
+    public static APASimWorld fromLevelMap (APAPngDecoder.Image map, int heroCount, long seed) {
+        int cells = map.width * map.height;
+        byte[] walls = new byte[cells];
+        List<Integer> caveCells = new ArrayList<>();
+        int spawnCell = -1;
+        for (int i = 0; i < cells; i++) {
+            walls[i] = (byte)(APAGameRules.isWall(map.argb[i * 4 + 1]) ? 1 : 0);
+            switch (APAGameRules.getSpawn(map.argb[i * 4], map.argb[i * 4 + 2], map.argb[i * 4 + 3])) {
+            case APAGameRules.SPAWN_CAVE:
+                caveCells.add(i);
+                break;
+            case APAGameRules.SPAWN_HERO:
+                spawnCell = i;
+                break;
+            default:
+                break;
+            }
+        }
+        if (spawnCell == -1) {
+            throw new IllegalArgumentException("Level map has no hero spawn point");
+        }
+        int[] caves = new int[caveCells.size()];
+        for (int i = 0; i < caves.length; i++) {
+            caves[i] = caveCells.get(i);
+        }
+        return new APASimWorld(walls, map.width, map.height, caves, spawnCell, heroCount, seed);
+    }
+
+    /** Advances the world by {@code dt} seconds. */
+    public void step (double dt) {
+        for (Hero hero : heroes) {
+            hero.previousX = hero.x;
+            hero.previousY = hero.y;
+        }
+        APACharacterSystems.storePositions(goblins);
+
+        for (Hero hero : heroes) {
+            updateHero(hero, dt);
+        }
+        // Keep the paths to the heroes up to date before the goblins use
+        // them.
+        for (Hero hero : heroes) {
+            hero.chaseField.setGoal(cell(hero.x), cell(hero.y));
+            hero.chaseField.update(APAGameRules.FLOW_FIELD_CELLS_PER_STEP);
+        }
+        for (Cave cave : caves) {
+            updateCave(cave, dt);
+        }
+        updateGoblins(dt);
+
+        if (!caves.isEmpty() && allCavesDestroyed()) {
+            levelsCleared++;
+            resetCaves();
+        }
+        time += dt;
+        stepCount++;
+    }
+
+    private void updateHero (Hero hero, double dt) {
+        if (hero.dying) {
+            hero.timer -= dt;
+            if (hero.timer <= 0) {
+                hero.dying = false;
+                hero.health = APAGameRules.CHARACTER_HEALTH;
+                hero.place(spawnX, spawnY);
+                heroIndex.move(hero, hero.x, hero.y);
+            }
+            return;
+        }
+
+        Cave cave = nearestLivingCave(hero.x, hero.y);
+        if (cave != hero.targetCave) {
+            hero.targetCave = cave;
+            if (cave != null) {
+                hero.routeField.setGoal(cell(cave.x), cell(cave.y));
+            }
+        }
+        hero.routeField.update(APAGameRules.FLOW_FIELD_CELLS_PER_STEP);
+
+        hero.timer -= dt;
+        if (hero.timer <= 0 && attack(hero)) {
+            hero.timer = APAGameRules.HERO_ATTACK_INTERVAL;
+            return; // standing still while attacking
+        }
+        // Walk up to the cave until it can be shot at from close enough.
+        if (cave != null && (distance(hero, cave) > APAGameRules.PROJECTILE_RANGE * 0.5 || !canSee(hero, cave))) {
+            moveAlong(hero, hero.routeField, cave.x, cave.y, APAGameRules.MOVEMENT_SPEED * dt);
+            heroIndex.move(hero, hero.x, hero.y);
+        }
+    }
+
+    /** Shoots at the nearest goblin, or else the target cave, in range. */
+    private boolean attack (Hero hero) {
+        int goblin = APACharacterSystems.nearest(goblins, hero.x, hero.y, APAGameRules.PROJECTILE_RANGE);
+        if (goblin != APACharacterData.NO_TARGET
+            && visibilityCache.canSee(cell(hero.x), cell(hero.y), cell(goblins.x[goblin]), cell(goblins.y[goblin]))) {
+            if (APACharacterSystems.applyDamage(goblins, goblin, APAGameRules.getGoblinHitDamage(random.nextDouble()),
+                APAGameRules.GOBLIN_DEATH_TIME)) {
+                goblinsKilled++;
+            }
+            return true;
+        }
+        Cave cave = hero.targetCave;
+        if (cave != null && distance(hero, cave) < APAGameRules.PROJECTILE_RANGE && canSee(hero, cave)) {
+            if (applyDamage(cave, APAGameRules.CAVE_DAMAGE)) {
+                cavesDestroyed++;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void updateCave (Cave cave, double dt) {
+        if (cave.dying) {
+            return;
+        }
+        double closestHeroDistance = APAGameRules.MINIMUM_HERO_DISTANCE;
+        Hero hero = heroIndex.nearest(cave.x, cave.y, APAGameRules.MINIMUM_HERO_DISTANCE, null);
+        if (hero != null) {
+            closestHeroDistance = distance(hero, cave);
+        }
+
+        cave.timeUntilNextGenerate -= dt;
+        if (APAGameRules.isTimeToGenerate(cave.goblinCount, cave.timeUntilNextGenerate, closestHeroDistance)) {
+            if (APAGameRules.shouldGenerate(cave.goblinCount, hero != null && canSee(hero, cave))) {
+                generate(cave);
+            }
+            cave.timeUntilNextGenerate = APAGameRules.getNextGenerateDelay(closestHeroDistance);
+        }
+    }
+
+    private void generate (Cave cave) {
+        if (goblins.size() >= APAGameRules.GLOBAL_GOBLIN_CAP || cave.goblinCount >= APAGameRules.CAVE_CAPACITY) {
+            return;
+        }
+        goblins.add(cave.x, cave.y, APAGameRules.MOVEMENT_SPEED * random.nextDouble(), cave.index);
+        cave.goblinCount++;
+        goblinsSpawned++;
+    }
+
+    private void updateGoblins (double dt) {
+        goblinSystems.clearTargets();
+        for (Hero hero : heroes) {
+            goblinSystems.addTarget(hero.x, hero.y, !hero.dying, hero.chaseField);
+        }
+        goblinSystems.update(goblins, dt);
+
+        for (int i = 0; i < heroes.size(); i++) {
+            Hero hero = heroes.get(i);
+            double damage = goblinSystems.getTargetDamage(i);
+            if (damage > 0 && !hero.dying && applyDamage(hero, damage)) {
+                hero.timer = APAGameRules.HERO_RESPAWN_DELAY;
+                hero.targetCave = null;
+                heroDeaths++;
+            }
+        }
+
+        // Recycle the goblins whose death has played out.
+        for (int i = 0, n = goblins.getSlotCount(); i < n; i++) {
+            if (goblins.state[i] == APACharacterData.DYING && goblins.timer[i] <= 0) {
+                caves.get(goblins.owner[i]).goblinCount--;
+                goblins.remove(i);
+            }
+        }
+    }
+
+    /** Returns {@code true} if the damage killed the character. */
+    private static boolean applyDamage (Character character, double damage) {
+        character.health -= damage;
+        if (character.health > 0) {
+            return false;
+        }
+        character.health = 0;
+        character.dying = true;
+        return true;
+    }
+
+    /**
+     * Moves a character by {@code distance} along the flow field, or straight
+     * towards {@code (goalX, goalY)} once in the goal's cell, sliding along
+     * walls instead of entering them.
+     */
+    private void moveAlong (Character c, APAFlowField field, double goalX, double goalY, double distance) {
+        double dx;
+        double dy;
+        int direction = field.getDirection(cell(c.x), cell(c.y));
+        if (direction != APAFlowField.NO_DIRECTION) {
+            dx = APAFlowField.getDirectionX(direction);
+            dy = APAFlowField.getDirectionY(direction);
+        } else {
+            double length = Math.hypot(goalX - c.x, goalY - c.y);
+            if (length < 1e-9) {
+                return;
+            }
+            distance = Math.min(distance, length);
+            dx = (goalX - c.x) / length;
+            dy = (goalY - c.y) / length;
+        }
+        double x = c.x + dx * distance;
+        double y = c.y + dy * distance;
+        if (isOpen(x, y)) {
+            c.x = x;
+            c.y = y;
+        } else if (isOpen(x, c.y)) {
+            c.x = x;
+        } else if (isOpen(c.x, y)) {
+            c.y = y;
+        }
+    }
+
+    private Cave nearestLivingCave (double x, double y) {
+        Cave nearest = null;
+        double best = Double.MAX_VALUE;
+        for (Cave cave : caves) {
+            double d = (cave.x - x) * (cave.x - x) + (cave.y - y) * (cave.y - y);
+            if (!cave.dying && d < best) {
+                best = d;
+                nearest = cave;
+            }
+        }
+        return nearest;
+    }
+
+    private boolean allCavesDestroyed () {
+        for (Cave cave : caves) {
+            if (!cave.dying) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void resetCaves () {
+        for (Cave cave : caves) {
+            cave.health = APAGameRules.CAVE_HEALTH;
+            cave.dying = false;
+            cave.timeUntilNextGenerate = APAGameRules.getFirstGenerateDelay(random.nextDouble());
+        }
+    }
+
+    private boolean canSee (Character a, Character b) {
+        return visibilityCache.canSee(cell(a.x), cell(a.y), cell(b.x), cell(b.y));
+    }
+
+    private boolean isOpen (double x, double y) {
+        int cx = cell(x);
+        int cy = cell(y);
+        return cx >= 0 && cy >= 0 && cx < width && cy < height && walls[cy * width + cx] == 0;
+    }
+
+    private static int cell (double v) {
+        return (int)Math.floor(v / APAGameRules.CELL_SIZE);
+    }
+
+    private static double cellCenter (int cell) {
+        return (cell + 0.5) * APAGameRules.CELL_SIZE;
+    }
+
+    private static double distance (Character a, Character b) {
+        return Math.hypot(a.x - b.x, a.y - b.y);
+    }
+
+    public List<Hero> getHeroes () {
+        return Collections.unmodifiableList(heroes);
+    }
+
+    /**
+     * Returns the goblins currently out of their caves, dying ones included.
+     * Callers must not modify them.
+     */
+    public APACharacterData getGoblins () {
+        return goblins;
+    }
+
+    public List<Cave> getCaves () {
+        return Collections.unmodifiableList(caves);
+    }
+
+    /** Returns the simulated time in seconds. */
+    public double getTime () {
+        return time;
+    }
+
+    public long getStepCount () {
+        return stepCount;
+    }
+
+    public long getGoblinsSpawned () {
+        return goblinsSpawned;
+    }
+
+    public long getGoblinsKilled () {
+        return goblinsKilled;
+    }
+
+    public long getHeroDeaths () {
+        return heroDeaths;
+    }
+
+    public long getCavesDestroyed () {
+        return cavesDestroyed;
+    }
+
+    public long getLevelsCleared () {
+        return levelsCleared;
+    }
+
+    /**
+     * Returns a hash of every character's position and health, for checking
+     * that two runs with the same seed stayed in lockstep.
+     */
+    public long getChecksum () {
+        long h = stepCount;
+        for (Hero hero : heroes) {
+            h = mix(h, hero);
+        }
+        for (int i = 0, n = goblins.getSlotCount(); i < n; i++) {
+            if (goblins.state[i] != APACharacterData.FREE) {
+                h = mix(h, goblins.x[i], goblins.y[i], goblins.health[i]);
+            }
+        }
+        for (Cave cave : caves) {
+            h = mix(h, cave);
+        }
+        return h;
+    }
+
+    private static long mix (long h, Character c) {
+        return mix(h, c.x, c.y, c.health);
+    }
+
+    private static long mix (long h, double x, double y, double health) {
+        h = h * 31 + Double.doubleToLongBits(x);
+        h = h * 31 + Double.doubleToLongBits(y);
+        return h * 31 + Double.doubleToLongBits(health);
+    }
+}
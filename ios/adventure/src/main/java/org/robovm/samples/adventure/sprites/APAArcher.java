@@ -30,10 +30,10 @@ import org.robovm.apple.spritekit.SKTexture;
 import org.robovm.apple.spritekit.SKTextureAtlas;
 import org.robovm.apple.uikit.UIColor;
 import org.robovm.samples.adventure.scene.APAPlayer;
+import org.robovm.samples.adventure.sim.APAGameRules;
 import org.robovm.samples.adventure.util.APAUtils;
 
 public class APAArcher extends APAHeroCharacter {
-    private static final int ATTACK_FRAMES = 10;
     private static final int GET_HIT_FRAMES = 18;
     private static final int DEATH_FRAMES = 42;
     private static final double PROJECTILE_SPEED = 8.0;
@@ -68,7 +68,7 @@ public class APAArcher extends APAHeroCharacter {
             sharedWalkAnimationFrames = APAUtils
                     .loadFramesFromAtlas("Archer/Archer_Walk", "archer_walk_", DEFAULT_NUMBER_OF_WALK_FRAMES);
             sharedAttackAnimationFrames = APAUtils
-                    .loadFramesFromAtlas("Archer/Archer_Attack", "archer_attack_", ATTACK_FRAMES);
+                    .loadFramesFromAtlas("Archer/Archer_Attack", "archer_attack_", APAGameRules.HERO_ATTACK_FRAMES);
             sharedGetHitAnimationFrames = APAUtils.loadFramesFromAtlas("Archer/Archer_GetHit", "archer_getHit_",
                     GET_HIT_FRAMES);
             sharedDeathAnimationFrames = APAUtils.loadFramesFromAtlas("Archer/Archer_Death", "archer_death_",
@@ -28,6 +28,8 @@ import org.robovm.apple.spritekit.SKTexture;
 import org.robovm.apple.spritekit.SKTextureAtlas;
 import org.robovm.apple.uikit.UIColor;
 import org.robovm.samples.adventure.ai.APAChaseAI;
+import org.robovm.samples.adventure.sim.APAGameRules;
+import org.robovm.samples.adventure.util.APAEffectPool;
 import org.robovm.samples.adventure.util.APAUtils;
 
 public class APABoss extends APAEnemyCharacter {
@@ -40,7 +42,7 @@ public class APABoss extends APAEnemyCharacter {
     private static final int COLLISION_RADIUS = 40;
     private static final int CHASE_RADIUS = COLLISION_RADIUS * 4;
 
-    private static SKEmitterNode sharedDamageEmitter;
+    private static APAEffectPool<SKEmitterNode> sharedDamageEmitters;
     private static SKAction sharedDamageAction;
     private static NSArray<SKTexture> sharedIdleAnimationFrames;
     private static NSArray<SKTexture> sharedWalkAnimationFrames;
@@ -51,7 +53,7 @@ public class APABoss extends APAEnemyCharacter {
     public APABoss(CGPoint position) {
         super(new SKTextureAtlas("Boss/Boss_Idle").getTexture("boss_idle_0001.png"), position);
 
-        movementSpeed = MOVEMENT_SPEED * 0.35f;
+        movementSpeed = APAGameRules.MOVEMENT_SPEED * 0.35f;
         animationSpeed = 1.0 / 35.0;
 
         setZPosition(-0.25);
@@ -105,7 +107,7 @@ public class APABoss extends APAEnemyCharacter {
 
     @Override
     public void collidedWith(SKPhysicsBody other) {
-        if (dying) {
+        if (isDying()) {
             return;
         }
 
@@ -128,7 +130,7 @@ public class APABoss extends APAEnemyCharacter {
 
     public static void loadSharedAssets() {
         // Load only once.
-        if (sharedDamageEmitter == null) {
+        if (sharedDamageEmitters == null) {
             sharedIdleAnimationFrames = APAUtils.loadFramesFromAtlas("Boss/Boss_Idle", "boss_idle_", IDLE_FRAMES);
             sharedWalkAnimationFrames = APAUtils.loadFramesFromAtlas("Boss/Boss_Walk", "boss_walk_", WALK_FRAMES);
             sharedAttackAnimationFrames = APAUtils.loadFramesFromAtlas("Boss/Boss_Attack", "boss_attack_",
@@ -137,7 +139,8 @@ public class APABoss extends APAEnemyCharacter {
                     GET_HIT_FRAMES);
             sharedDeathAnimationFrames = APAUtils.loadFramesFromAtlas("Boss/Boss_Death", "boss_death_", DEATH_FRAMES);
 
-            sharedDamageEmitter = APAUtils.getEmitterNodeByName("BossDamage");
+            sharedDamageEmitters = APAEffectPool.forEmitter(APAUtils.getEmitterNodeByName("BossDamage"),
+                    DAMAGE_EMITTER_DURATION);
             sharedDamageAction = SKAction.sequence(new NSArray<SKAction>(SKAction.colorize(UIColor.white(), 1.0, 0.0),
                     SKAction
                             .wait(0.5), SKAction.colorize(0.0, 0.1)));
@@ -170,8 +173,8 @@ public class APABoss extends APAEnemyCharacter {
     }
 
     @Override
-    SKEmitterNode getDamageEmitter() {
-        return sharedDamageEmitter;
+    APAEffectPool<SKEmitterNode> getDamageEmitters() {
+        return sharedDamageEmitters;
     }
 
     @Override
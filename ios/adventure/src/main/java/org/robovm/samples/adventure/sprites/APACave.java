@@ -33,34 +33,42 @@ import org.robovm.apple.uikit.UIColor;
 import org.robovm.samples.adventure.ai.APASpawnAI;
 import org.robovm.samples.adventure.scene.APAMultiplayerLayeredCharacterScene;
 import org.robovm.samples.adventure.scene.APAMultiplayerLayeredCharacterScene.APAWorldLayer;
+import org.robovm.samples.adventure.sim.APAGameRules;
+import org.robovm.samples.adventure.util.APAEffectPool;
+import org.robovm.samples.adventure.util.APAObjectPool;
 import org.robovm.samples.adventure.util.APAUtils;
 
 public class APACave extends APAEnemyCharacter {
     private static final int COLLISION_RADIUS = 90;
-    private static final int CAVE_CAPACITY = 50;
 
     private static SKNode sharedCaveBase;
     private static SKNode sharedCaveTop;
     private static SKSpriteNode sharedDeathSplort;
-    private static SKEmitterNode sharedDamageEmitter;
+    private static APAEffectPool<SKEmitterNode> sharedDamageEmitters;
     private static SKEmitterNode sharedDeathEmitter;
     private static SKAction sharedDamageAction;
 
+    // Goblins are shared by all caves and reused once they have died.
+    private static final APAObjectPool<APAGoblin> goblinPool = new APAObjectPool<>(new APAObjectPool.Factory<APAGoblin>() {
+        @Override
+        public APAGoblin create () {
+            return new APAGoblin(CGPoint.Zero());
+        }
+
+        @Override
+        public void reset (APAGoblin goblin) {
+            goblin.reset();
+        }
+    }, 0);
+
     public NSArray<APAGoblin> activeGoblins = new NSMutableArray<>();
-    public NSArray<APAGoblin> inactiveGoblins = new NSMutableArray<>();
     private SKEmitterNode smokeEmitter;
 
     public double timeUntilNextGenerate;
 
     public APACave (CGPoint position) {
         super(new NSArray<SKSpriteNode>((SKSpriteNode)sharedCaveBase.copy(), (SKSpriteNode)sharedCaveTop.copy()), position, 50.0);
-        timeUntilNextGenerate = 5.0 + Math.random() * 5.0;
-
-        for (int i = 0; i < CAVE_CAPACITY; i++) {
-            APAGoblin goblin = new APAGoblin(getPosition());
-            goblin.setCave(this);
-            inactiveGoblins.add(goblin);
-        }
+        timeUntilNextGenerate = APAGameRules.getFirstGenerateDelay(Math.random());
 
         movementSpeed = 0.0;
 
@@ -120,12 +128,11 @@ public class APACave extends APAEnemyCharacter {
 
     @Override
     public void collidedWith (SKPhysicsBody other) {
-        if (health > 0.0) {
+        if (getHealth() > 0.0) {
             if ((other.getCategoryBitMask() & APAColliderType.Projectile) == APAColliderType.Projectile) {
-                double damage = 10.0;
-                boolean killed = applyDamage(damage, other.getNode());
+                boolean killed = applyDamage(APAGameRules.CAVE_DAMAGE, other.getNode());
                 if (killed) {
-                    getCharacterScene().addToScore(25, other.getNode());
+                    getCharacterScene().addToScore(APAGameRules.CAVE_SCORE, other.getNode());
                 }
             }
         }
@@ -177,12 +184,11 @@ public class APACave extends APAEnemyCharacter {
                 smokeEmitter.setParticleBirthRate(0.0);
             }
         }), SKAction.wait(10.0), SKAction.fadeAlphaTo(0.0, 0.5), SKAction.removeFromParent())));
-        inactiveGoblins.clear();
     }
 
     private void updateSmoke () {
         // Add smoke if health is < 75.
-        if (health > 75.0 || smokeEmitter != null) {
+        if (getHealth() > 75.0 || smokeEmitter != null) {
             return;
         }
 
@@ -197,38 +203,41 @@ public class APACave extends APAEnemyCharacter {
     public void update (double interval) {
         super.update(interval);// this will update the SpawnAI
 
-        // Update our goblins.
-        for (APAGoblin goblin : activeGoblins) {
-            goblin.update(interval);
+        // Update our goblins and take back the ones whose death has played out.
+        for (int i = activeGoblins.size() - 1; i >= 0; i--) {
+            APAGoblin goblin = activeGoblins.get(i);
+            if (goblin.isDeathOver()) {
+                goblin.removeFromParent();
+                recycle(goblin);
+            } else {
+                goblin.update(interval);
+            }
         }
     }
 
-    public void stopGoblinsFromTargettingHero (APACharacter target) {
-        for (APAGoblin goblin : activeGoblins) {
-            goblin.intelligence.clearTarget(target);
-        }
+    /** Limits the goblins alive across all caves and creates them all up front. */
+    public static void setGlobalGoblinCap (int globalCap) {
+        goblinPool.setCap(globalCap);
+        goblinPool.prefill(globalCap);
     }
 
-    private static int globalCap;
-    private static int globalAllocation;
-
-    public static void setGlobalGoblinCap (int globalCap) {
-        APACave.globalCap = globalCap;
+    public static APAObjectPool<APAGoblin> getGoblinPool () {
+        return goblinPool;
     }
 
     public void generate () {
-        if (globalCap > 0 && globalAllocation >= globalCap) {
+        if (activeGoblins.size() >= APAGameRules.CAVE_CAPACITY) {
             return;
         }
 
-        APACharacter object = inactiveGoblins.last();
+        APAGoblin object = goblinPool.acquire();
         if (object == null) {
             return;
         }
 
         double offset = COLLISION_RADIUS * 0.75;
         double rot = APAUtils.polarAdjust(getVirtualZRotation());
-        object.setPosition(APAUtils.getPointByAddingPoints(getPosition(), new CGPoint(Math.cos(rot) * offset, Math.sin(rot)
+        object.place(APAUtils.getPointByAddingPoints(getSimulatedPosition(), new CGPoint(Math.cos(rot) * offset, Math.sin(rot)
             * offset)));
 
         APAMultiplayerLayeredCharacterScene scene = getCharacterScene();
@@ -238,17 +247,12 @@ public class APACave extends APAEnemyCharacter {
 
         object.fadeIn(0.5);
 
-        inactiveGoblins.remove(object);
-        activeGoblins.add((APAGoblin)object);
-        globalAllocation++;
+        activeGoblins.add(object);
     }
 
     public void recycle (APAGoblin goblin) {
-        goblin.reset();
         activeGoblins.remove(goblin);
-        inactiveGoblins.add(goblin);
-
-        globalAllocation--;
+        goblinPool.release(goblin);
     }
 
     public static void loadSharedAssets () {
@@ -278,7 +282,7 @@ public class APACave extends APAEnemyCharacter {
 
             sharedDeathSplort = new SKSpriteNode(atlas.getTexture("cave_destroyed.png"));
 
-            sharedDamageEmitter = APAUtils.getEmitterNodeByName("CaveDamage");
+            sharedDamageEmitters = APAEffectPool.forEmitter(APAUtils.getEmitterNodeByName("CaveDamage"), DAMAGE_EMITTER_DURATION);
             sharedDeathEmitter = APAUtils.getEmitterNodeByName("CaveDeathSmoke");
 
             sharedDamageAction = SKAction.sequence(new NSArray<SKAction>(SKAction.colorize(UIColor.red(), 1.0, 0.0), SKAction
@@ -312,8 +316,8 @@ public class APACave extends APAEnemyCharacter {
     }
 
     @Override
-    SKEmitterNode getDamageEmitter () {
-        return sharedDamageEmitter;
+    APAEffectPool<SKEmitterNode> getDamageEmitters () {
+        return sharedDamageEmitters;
     }
 
     @Override
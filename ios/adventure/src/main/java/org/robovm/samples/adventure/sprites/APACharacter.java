@@ -30,8 +30,17 @@ import org.robovm.apple.spritekit.SKTexture;
 import org.robovm.apple.spritekit.SKTextureAtlas;
 import org.robovm.samples.adventure.scene.APAMultiplayerLayeredCharacterScene;
 import org.robovm.samples.adventure.scene.APAMultiplayerLayeredCharacterScene.APAWorldLayer;
+import org.robovm.samples.adventure.sim.APACharacterData;
+import org.robovm.samples.adventure.sim.APAGameRules;
+import org.robovm.samples.adventure.util.APAEffectPool;
 import org.robovm.samples.adventure.util.APAUtils;
 
+/**
+ * Draws a character whose state lives in a slot of the scene's
+ * {@link APACharacterData}. The slot is taken when the character is added to
+ * the scene and freed when it's removed from it; out of the scene a character
+ * counts as dead.
+ */
 public abstract class APACharacter extends APAParallaxSprite {
 
     /** Used by the move method to move a character in a given direction. */
@@ -53,18 +62,15 @@ public abstract class APACharacter extends APAParallaxSprite {
         public static final int Cave = 16;
     }
 
-    public static final double MOVEMENT_SPEED = 200;
-    public static final double ROTATION_SPEED = 0.06;
-
-    public static final int CHARACTER_COLLISION_RADIUS = 40;
     public static final int PROJECTILE_COLLISION_RADIUS = 15;
 
     static final int DEFAULT_NUMBER_OF_WALK_FRAMES = 28;
     static final int DEFAULT_NUMBER_OF_IDLE_FRAMES = 28;
+    static final double DAMAGE_EMITTER_DURATION = 0.15;
+    // Smaller physics displacements than this are rounding noise.
+    private static final double PHYSICS_EPSILON = 0.01;
 
-    public boolean dying;
     boolean attacking;
-    public double health;
     boolean animated;
     double animationSpeed;
     double movementSpeed;
@@ -74,6 +80,15 @@ public abstract class APACharacter extends APAParallaxSprite {
 
     private SKSpriteNode shadowBlob;
 
+    // The simulation only moves the slot in fixed steps, the node is drawn
+    // in between.
+    private APAMultiplayerLayeredCharacterScene characterScene;
+    APACharacterData data;
+    int slot = APACharacterData.NO_SLOT;
+    // Where the node was last drawn, to tell how far physics pushed it.
+    private double drawnX;
+    private double drawnY;
+
     public APACharacter (SKTexture texture, CGPoint position) {
         super(texture);
         usesParallaxEffect = false; // standard sprite - there's no parallax
@@ -91,20 +106,17 @@ public abstract class APACharacter extends APAParallaxSprite {
         shadowBlob = new SKSpriteNode(atlas.getTexture("blobShadow.png"));
         shadowBlob.setZPosition(-1.0);
 
-        setPosition(position);
+        place(position);
 
-        health = 100.0;
-        movementSpeed = MOVEMENT_SPEED;
+        movementSpeed = APAGameRules.MOVEMENT_SPEED;
         animated = true;
-        animationSpeed = 1 / 28.0;
+        animationSpeed = APAGameRules.ANIMATION_FRAME_TIME;
 
         configurePhysicsBody();
     }
 
     void reset () {
         // Reset some base states (used when recycling character instances).
-        health = 100;
-        dying = false;
         attacking = false;
         animated = true;
         requestedAnimation = APAAnimationState.Idle;
@@ -131,8 +143,7 @@ public abstract class APACharacter extends APAParallaxSprite {
     public abstract void collidedWith (SKPhysicsBody other);
 
     public void performDeath () {
-        health = 0.0;
-        dying = true;
+        data.kill(slot, 0);
         requestedAnimation = APAAnimationState.Death;
     }
 
@@ -144,19 +155,19 @@ public abstract class APACharacter extends APAParallaxSprite {
      * @param damage
      * @return */
     public boolean applyDamage (double damage) {
-        health -= damage;
+        double health = getHealth() - damage;
+        data.setHealth(slot, health);
 
         if (health > 0) {
             APAMultiplayerLayeredCharacterScene scene = getCharacterScene();
 
             // Build up "one shot" particle.
-            SKEmitterNode emitter = getDamageEmitter();
+            APAEffectPool<SKEmitterNode> emitters = getDamageEmitters();
+            SKEmitterNode emitter = emitters != null ? emitters.run() : null;
             if (emitter != null) {
-                emitter = (SKEmitterNode)emitter.copy();
                 scene.addNode(emitter, APAWorldLayer.AboveCharacter);
 
                 emitter.setPosition(getPosition());
-                APAUtils.runOneShotEmitter(emitter, 0.15);
             }
 
             // Show the damage.
@@ -187,9 +198,6 @@ public abstract class APACharacter extends APAParallaxSprite {
     }
 
     public void update (double interval) {
-        // Shadow always follows our main sprite.
-        shadowBlob.setPosition(getPosition());
-
         if (animated) {
             resolveRequestedAnimation();
         }
@@ -229,7 +237,7 @@ public abstract class APACharacter extends APAParallaxSprite {
             fireAnimation(animationState, animationFrames, animationKey);
         }
 
-        requestedAnimation = dying ? APAAnimationState.Death : APAAnimationState.Idle;
+        requestedAnimation = isDying() ? APAAnimationState.Death : APAAnimationState.Idle;
     }
 
     private void fireAnimation (final APAAnimationState animationState, NSArray<SKTexture> frames, String key) {
@@ -261,7 +269,7 @@ public abstract class APACharacter extends APAParallaxSprite {
     }
 
     private void animationHasCompleted (APAAnimationState animationState) {
-        if (dying) {
+        if (isDying()) {
             animated = false;
             shadowBlob.runAction(SKAction.fadeOut(1.5));
         }
@@ -278,14 +286,91 @@ public abstract class APACharacter extends APAParallaxSprite {
     public void addToScene (APAMultiplayerLayeredCharacterScene scene) {
         scene.addNode(this, APAWorldLayer.Character);
         scene.addNode(shadowBlob, APAWorldLayer.BelowCharacter);
+        characterScene = scene;
+        data = scene.getCharacterData();
+        CGPoint position = getPosition();
+        drawnX = position.getX();
+        drawnY = position.getY();
+        // Only goblins are moved by the scene's systems.
+        slot = data.add(drawnX, drawnY, movementSpeed, 0);
+        data.setState(slot, APACharacterData.PASSIVE);
+        scene.addCharacter(this);
     }
 
     @Override
     public void removeFromParent () {
+        if (characterScene != null) {
+            characterScene.removeCharacter(this);
+            characterScene = null;
+            data.remove(slot);
+            data = null;
+            slot = APACharacterData.NO_SLOT;
+        }
         shadowBlob.removeFromParent();
         super.removeFromParent();
     }
 
+    /** Returns {@code true} if the character is dying or not in a scene. */
+    public boolean isDying () {
+        return slot == APACharacterData.NO_SLOT || data.getState(slot) == APACharacterData.DYING;
+    }
+
+    /** Returns the health left, 0 if the character is not in a scene. */
+    public double getHealth () {
+        return slot != APACharacterData.NO_SLOT ? data.getHealth(slot) : 0.0;
+    }
+
+    /** Puts the character at {@code position} at once, without moving there between steps. */
+    public void place (CGPoint position) {
+        drawnX = position.getX();
+        drawnY = position.getY();
+        if (slot != APACharacterData.NO_SLOT) {
+            data.place(slot, drawnX, drawnY);
+        }
+        setPosition(position);
+        shadowBlob.setPosition(position);
+    }
+
+    /**
+     * Returns the position after the last step. Movement and AI work with
+     * this rather than {@link #getPosition()}, which is in between steps.
+     */
+    public CGPoint getSimulatedPosition () {
+        if (slot == APACharacterData.NO_SLOT) {
+            return new CGPoint(drawnX, drawnY);
+        }
+        return new CGPoint(data.getX(slot), data.getY(slot));
+    }
+
+    /**
+     * Draws the character between its position before ({@code alpha == 0})
+     * and after ({@code alpha == 1}) the last step.
+     */
+    public void interpolate (double alpha) {
+        drawnX = data.getX(slot, alpha);
+        drawnY = data.getY(slot, alpha);
+        CGPoint position = new CGPoint(drawnX, drawnY);
+        setPosition(position);
+        // Shadow always follows our main sprite.
+        shadowBlob.setPosition(position);
+    }
+
+    /**
+     * Takes over where physics pushed the node since it was drawn, so the
+     * simulation doesn't walk it back into walls and other characters.
+     */
+    public void syncFromPhysics () {
+        CGPoint position = getPosition();
+        double dx = position.getX() - drawnX;
+        double dy = position.getY() - drawnY;
+        if (Math.abs(dx) > PHYSICS_EPSILON || Math.abs(dy) > PHYSICS_EPSILON) {
+            data.offset(slot, dx, dy);
+            drawnX = position.getX();
+            drawnY = position.getY();
+            shadowBlob.setPosition(position);
+        }
+    }
+
     public APAMultiplayerLayeredCharacterScene getCharacterScene () {
         if (getScene() instanceof APAMultiplayerLayeredCharacterScene) {
             return (APAMultiplayerLayeredCharacterScene)getScene();
@@ -295,42 +380,37 @@ public abstract class APACharacter extends APAParallaxSprite {
 
     public void move (APAMoveDirection direction, double timeInternal) {
         double rot = getZRotation();
+        double x = data.getX(slot);
+        double y = data.getY(slot);
 
-        SKAction action = null;
-        // Build up the movement action.
         switch (direction) {
         case Forward:
-            action = SKAction.moveBy(-Math.sin(rot) * movementSpeed * timeInternal, Math.cos(rot) * movementSpeed * timeInternal,
-                timeInternal);
+            data.setPosition(slot, x - Math.sin(rot) * movementSpeed * timeInternal, y + Math.cos(rot) * movementSpeed
+                * timeInternal);
             break;
         case Back:
-            action = SKAction.moveBy(Math.sin(rot) * movementSpeed * timeInternal, -Math.cos(rot) * movementSpeed * timeInternal,
-                timeInternal);
+            data.setPosition(slot, x + Math.sin(rot) * movementSpeed * timeInternal, y - Math.cos(rot) * movementSpeed
+                * timeInternal);
             break;
         case Left:
-            action = SKAction.rotateBy(ROTATION_SPEED, timeInternal);
+            setZRotation(rot + APAGameRules.ROTATION_SPEED);
             break;
         case Right:
-            action = SKAction.rotateBy(-ROTATION_SPEED, timeInternal);
+            setZRotation(rot - APAGameRules.ROTATION_SPEED);
             break;
         }
-
-        // Play the resulting action.
-        if (action != null) {
-            requestedAnimation = APAAnimationState.Walk;
-            runAction(action);
-        }
+        requestedAnimation = APAAnimationState.Walk;
     }
 
     public double faceTo (CGPoint position) {
-        double ang = APAUtils.polarAdjust(APAUtils.getRadiansBetweenPoints(position, getPosition()));
+        double ang = APAUtils.polarAdjust(APAUtils.getRadiansBetweenPoints(position, getSimulatedPosition()));
         SKAction action = SKAction.rotateTo(ang, 0);
         runAction(action);
         return ang;
     }
 
     public void moveTowards (CGPoint position, double timeInterval) {
-        CGPoint curPosition = getPosition();
+        CGPoint curPosition = getSimulatedPosition();
         double dx = position.getX() - curPosition.getX();
         double dy = position.getY() - curPosition.getY();
         double dt = movementSpeed * timeInterval;
@@ -340,16 +420,16 @@ public abstract class APACharacter extends APAParallaxSprite {
 
         double distRemaining = Math.hypot(dx, dy);
         if (distRemaining < dt) {
-            setPosition(position);
+            data.setPosition(slot, position.getX(), position.getY());
         } else {
-            setPosition(new CGPoint(curPosition.getX() - Math.sin(ang) * dt, curPosition.getY() + Math.cos(ang) * dt));
+            data.setPosition(slot, curPosition.getX() - Math.sin(ang) * dt, curPosition.getY() + Math.cos(ang) * dt);
         }
 
         requestedAnimation = APAAnimationState.Walk;
     }
 
     public void moveInDirection (CGPoint direction, double timeInterval) {
-        CGPoint curPosition = getPosition();
+        CGPoint curPosition = getSimulatedPosition();
         double dx = movementSpeed * direction.getX();
         double dy = movementSpeed * direction.getY();
         double dt = movementSpeed * timeInterval;
@@ -361,9 +441,9 @@ public abstract class APACharacter extends APAParallaxSprite {
 
         double distRemaining = Math.hypot(dx, dy);
         if (distRemaining < dt) {
-            setPosition(targetPosition);
+            data.setPosition(slot, targetPosition.getX(), targetPosition.getY());
         } else {
-            setPosition(new CGPoint(curPosition.getX() - Math.sin(ang) * dt, curPosition.getY() + Math.cos(ang) * dt));
+            data.setPosition(slot, curPosition.getX() - Math.sin(ang) * dt, curPosition.getY() + Math.cos(ang) * dt);
         }
 
         // Don't change to a walk animation if we planning an attack.
@@ -382,7 +462,7 @@ public abstract class APACharacter extends APAParallaxSprite {
 
     abstract NSArray<SKTexture> getDeathAnimationFrames ();
 
-    abstract SKEmitterNode getDamageEmitter ();
+    abstract APAEffectPool<SKEmitterNode> getDamageEmitters ();
 
     abstract SKAction getDamageAction ();
 }
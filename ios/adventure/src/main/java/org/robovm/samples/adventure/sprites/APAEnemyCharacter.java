@@ -26,6 +26,7 @@ import org.robovm.apple.spritekit.SKTexture;
 import org.robovm.samples.adventure.ai.APAArtificialIntelligence;
 
 public abstract class APAEnemyCharacter extends APACharacter {
+    // Null for enemies driven by the scene's systems instead.
     APAArtificialIntelligence intelligence;
 
     public APAEnemyCharacter (NSArray<SKSpriteNode> sprites, CGPoint position, double offset) {
@@ -39,12 +40,14 @@ public abstract class APAEnemyCharacter extends APACharacter {
     @Override
     public void update (double interval) {
         super.update(interval);
-        intelligence.update(interval);
+        if (intelligence != null) {
+            intelligence.update(interval);
+        }
     }
 
     @Override
     void animationDidComplete (APAAnimationState animationState) {
-        if (animationState == APAAnimationState.Attack) {
+        if (animationState == APAAnimationState.Attack && intelligence != null && intelligence.getTarget() != null) {
             // Attacking hero should apply same damage as collision with hero, so simply
             // tell the target that we collided with it.
             intelligence.getTarget().collidedWith(getPhysicsBody());
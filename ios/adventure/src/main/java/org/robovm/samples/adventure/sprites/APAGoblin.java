@@ -28,42 +28,44 @@ import org.robovm.apple.spritekit.SKSpriteNode;
 import org.robovm.apple.spritekit.SKTexture;
 import org.robovm.apple.spritekit.SKTextureAtlas;
 import org.robovm.apple.uikit.UIColor;
-import org.robovm.samples.adventure.ai.APAChaseAI;
+import org.robovm.samples.adventure.scene.APAMultiplayerLayeredCharacterScene;
 import org.robovm.samples.adventure.scene.APAMultiplayerLayeredCharacterScene.APAWorldLayer;
+import org.robovm.samples.adventure.sim.APACharacterData;
+import org.robovm.samples.adventure.sim.APACharacterSystems;
+import org.robovm.samples.adventure.sim.APAGameRules;
+import org.robovm.samples.adventure.util.APAEffectPool;
 import org.robovm.samples.adventure.util.APAUtils;
 
+/**
+ * A goblin chased, moved and killed by the scene's
+ * {@link APACharacterSystems}, which the goblin follows with its facing and
+ * animations.
+ */
 public class APAGoblin extends APAEnemyCharacter {
     private static final double MINIMUM_SIZE = 0.5;
     private static final double SIZE_VARIANCE = 0.35;
     private static final double COLLISION_RADIUS = 10;
-    private static final int ATTACK_FRAMES = 33;
-    private static final int DEATH_FRAMES = 31;
     private static final int GET_HIT_FRAMES = 25;
 
-    private static SKEmitterNode sharedDamageEmitter;
+    private static APAEffectPool<SKEmitterNode> sharedDamageEmitters;
     private static SKAction sharedDamageAction;
     private static NSArray<SKTexture> sharedIdleAnimationFrames;
     private static NSArray<SKTexture> sharedWalkAnimationFrames;
     private static NSArray<SKTexture> sharedAttackAnimationFrames;
     private static NSArray<SKTexture> sharedGetHitAnimationFrames;
     private static NSArray<SKTexture> sharedDeathAnimationFrames;
-    private static SKSpriteNode sharedDeathSplort;
-
-    private APACave cave;
+    private static APAEffectPool<SKSpriteNode> sharedDeathSplorts;
 
     public APAGoblin(CGPoint position) {
         super(new SKTextureAtlas("Goblin/Goblin_Idle").getTexture("goblin_idle_0001.png"), position);
 
-        movementSpeed = MOVEMENT_SPEED * Math.random(); // set a random movement
+        movementSpeed = APAGameRules.MOVEMENT_SPEED * Math.random(); // set a random movement
                                                         // speed
         setScale(MINIMUM_SIZE + (Math.random() * SIZE_VARIANCE)); // and a
                                                                   // random
                                                                   // goblin size
         setZPosition(-0.25);
         setName("Enemy");
-
-        // Make it AWARE!
-        intelligence = new APAChaseAI(this, null);
     }
 
     @Override
@@ -94,21 +96,51 @@ public class APAGoblin extends APAEnemyCharacter {
         configurePhysicsBody();
     }
 
+    @Override
+    public void addToScene(APAMultiplayerLayeredCharacterScene scene) {
+        super.addToScene(scene);
+
+        data.setState(slot, APACharacterData.IDLE);
+    }
+
+    @Override
+    public void update(double interval) {
+        switch (data.getState(slot)) {
+        case APACharacterData.CHASING:
+            setZRotation(APAUtils.polarAdjust(Math.atan2(-data.getVelocityY(slot), -data.getVelocityX(slot))));
+            if (!attacking) {
+                requestedAnimation = APAAnimationState.Walk;
+            }
+            break;
+        case APACharacterData.ATTACKING:
+            // The scene's heroes are the targets, in order. The damage is
+            // dealt by the systems, the animation only shows it.
+            APAHeroCharacter target = getCharacterScene().getHeroes().get(data.getTarget(slot));
+            faceTo(target.getSimulatedPosition());
+            performAttackAction();
+            break;
+        default:
+            break;
+        }
+
+        super.update(interval);
+    }
+
+    /** Returns {@code true} once the goblin has been dead long enough to go back to the pool. */
+    boolean isDeathOver() {
+        return data.getState(slot) == APACharacterData.DYING && data.getTimer(slot) <= 0;
+    }
+
     @Override
     void animationDidComplete(APAAnimationState animationState) {
         super.animationDidComplete(animationState);
 
         switch (animationState) {
         case Death:
+            // The cave recycles the goblin once the systems are done with it.
             removeAllActions();
-            runAction(SKAction.sequence(new NSArray<SKAction>(SKAction.wait(0.75), SKAction.fadeOut(1.0), SKAction
-                    .run(new Runnable() {
-                        @Override
-                        public void run() {
-                            removeFromParent();
-                            cave.recycle(APAGoblin.this);
-                        }
-                    }))));
+            runAction(SKAction.sequence(new NSArray<SKAction>(SKAction.wait(APAGameRules.GOBLIN_CORPSE_TIME),
+                    SKAction.fadeOut(APAGameRules.GOBLIN_FADEOUT_TIME))));
             break;
         default:
             break;
@@ -117,21 +149,17 @@ public class APAGoblin extends APAEnemyCharacter {
 
     @Override
     public void collidedWith(SKPhysicsBody other) {
-        if (dying) {
+        if (isDying()) {
             return;
         }
 
         if ((other.getCategoryBitMask() & APAColliderType.Projectile) == APAColliderType.Projectile) {
-            // Apply random damage of either 100% or 50%.
             requestedAnimation = APAAnimationState.GetHit;
-            double damage = 100.0;
-            if (Math.random() < 0.5) {
-                damage = 50.0;
-            }
+            double damage = APAGameRules.getGoblinHitDamage(Math.random());
 
             boolean killed = applyDamage(damage, other.getNode());
             if (killed) {
-                getCharacterScene().addToScore(10, other.getNode());
+                getCharacterScene().addToScore(APAGameRules.GOBLIN_SCORE, other.getNode());
             }
         }
     }
@@ -140,15 +168,17 @@ public class APAGoblin extends APAEnemyCharacter {
     public void performDeath() {
         removeAllActions();
 
-        SKSpriteNode splort = (SKSpriteNode) sharedDeathSplort.copy();
-        splort.setZPosition(-1.0);
-        splort.setZRotation(Math.random() * Math.PI);
-        splort.setPosition(getPosition());
-        splort.setAlpha(0.5);
-        getCharacterScene().addNode(splort, APAWorldLayer.Ground);
-        splort.runAction(SKAction.fadeOut(10.0));
+        SKSpriteNode splort = sharedDeathSplorts.run();
+        if (splort != null) {
+            splort.setZPosition(-1.0);
+            splort.setZRotation(Math.random() * Math.PI);
+            splort.setPosition(getPosition());
+            splort.setAlpha(0.5);
+            getCharacterScene().addNode(splort, APAWorldLayer.Ground);
+        }
 
         super.performDeath();
+        data.setTimer(slot, APAGameRules.GOBLIN_DEATH_TIME);
 
         SKPhysicsBody physicsBody = getPhysicsBody();
         physicsBody.setCollisionBitMask(0);
@@ -159,7 +189,7 @@ public class APAGoblin extends APAEnemyCharacter {
 
     public static void loadSharedAssets() {
         // Load only once
-        if (sharedDamageEmitter == null) {
+        if (sharedDamageEmitters == null) {
             SKTextureAtlas atlas = new SKTextureAtlas("Environment");
 
             sharedIdleAnimationFrames = APAUtils
@@ -167,13 +197,23 @@ public class APAGoblin extends APAEnemyCharacter {
             sharedWalkAnimationFrames = APAUtils
                     .loadFramesFromAtlas("Goblin/Goblin_Walk", "goblin_walk_", DEFAULT_NUMBER_OF_WALK_FRAMES);
             sharedAttackAnimationFrames = APAUtils.loadFramesFromAtlas("Goblin/Goblin_Attack", "goblin_attack_",
-                    ATTACK_FRAMES);
+                    APAGameRules.GOBLIN_ATTACK_FRAMES);
             sharedGetHitAnimationFrames = APAUtils.loadFramesFromAtlas("Goblin/Goblin_GetHit", "goblin_getHit_",
                     GET_HIT_FRAMES);
             sharedDeathAnimationFrames = APAUtils.loadFramesFromAtlas("Goblin/Goblin_Death", "goblin_death_",
-                    DEATH_FRAMES);
-            sharedDamageEmitter = APAUtils.getEmitterNodeByName("Damage");
-            sharedDeathSplort = new SKSpriteNode(atlas.getTexture("minionSplort.png"));
+                    APAGameRules.GOBLIN_DEATH_FRAMES);
+            sharedDamageEmitters = APAEffectPool.forEmitter(APAUtils.getEmitterNodeByName("Damage"),
+                    DAMAGE_EMITTER_DURATION);
+            sharedDeathSplorts = new APAEffectPool<>(new SKSpriteNode(atlas.getTexture("minionSplort.png")),
+                    new APAEffectPool.Effect<SKSpriteNode>() {
+                        @Override
+                        public SKAction createAction(SKSpriteNode splort) {
+                            return SKAction.fadeOut(10.0);
+                        }
+
+                        @Override
+                        public void reset(SKSpriteNode splort) {}
+                    });
             sharedDamageAction = SKAction.sequence(new NSArray<SKAction>(SKAction.colorize(UIColor.white(), 1.0, 0.0),
                     SKAction
                             .wait(0.75), SKAction.colorize(0.0, 0.1)));
@@ -181,10 +221,6 @@ public class APAGoblin extends APAEnemyCharacter {
         }
     }
 
-    public void setCave(APACave cave) {
-        this.cave = cave;
-    }
-
     @Override
     NSArray<SKTexture> getIdleAnimationFrames() {
         return sharedIdleAnimationFrames;
@@ -211,8 +247,8 @@ public class APAGoblin extends APAEnemyCharacter {
     }
 
     @Override
-    SKEmitterNode getDamageEmitter() {
-        return sharedDamageEmitter;
+    APAEffectPool<SKEmitterNode> getDamageEmitters() {
+        return sharedDamageEmitters;
     }
 
     @Override
@@ -19,6 +19,10 @@
 
 package org.robovm.samples.adventure.sprites;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
 import org.robovm.apple.coregraphics.CGPoint;
 import org.robovm.apple.foundation.NSArray;
 import org.robovm.apple.foundation.NSMutableDictionary;
@@ -26,23 +30,31 @@ import org.robovm.apple.foundation.NSObject;
 import org.robovm.apple.foundation.NSString;
 import org.robovm.apple.spritekit.SKAction;
 import org.robovm.apple.spritekit.SKEmitterNode;
+import org.robovm.apple.spritekit.SKNode;
 import org.robovm.apple.spritekit.SKPhysicsBody;
 import org.robovm.apple.spritekit.SKSpriteNode;
 import org.robovm.apple.spritekit.SKTexture;
 import org.robovm.samples.adventure.scene.APAMultiplayerLayeredCharacterScene;
 import org.robovm.samples.adventure.scene.APAMultiplayerLayeredCharacterScene.APAWorldLayer;
 import org.robovm.samples.adventure.scene.APAPlayer;
+import org.robovm.samples.adventure.sim.APAGameRules;
+import org.robovm.samples.adventure.util.APAEffectPool;
+import org.robovm.samples.adventure.util.APAObjectPool;
 import org.robovm.samples.adventure.util.APAUtils;
 
 public abstract class APAHeroCharacter extends APACharacter {
     public static final NSString PLAYER_KEY = new NSString("kPlayer");
-    private static final double HERO_PROJECTILE_SPEED = 480;
-    private static final double HERO_PROJECTILE_LIFETIME = 1.0; // 1.0 seconds until the projectile disappears
-    private static final double HERO_PROJECTILE_FADEOUT_TIME = 0.6; // 0.6 seconds until the projectile starts to fade out
+    private static final double DEATH_EMITTER_DURATION = 4.5;
 
     static SKAction sharedProjectileSoundAction;
-    static SKEmitterNode sharedDeathEmitter;
-    static SKEmitterNode sharedDamageEmitter;
+    static APAEffectPool<SKEmitterNode> sharedDeathEmitters;
+    static APAEffectPool<SKEmitterNode> sharedDamageEmitters;
+
+    // Pools of projectiles, one per projectile template, and the lifetime action and trail of every projectile.
+    private static final List<SKSpriteNode> projectileTemplates = new ArrayList<>();
+    private static final List<APAObjectPool<SKSpriteNode>> projectilePools = new ArrayList<>();
+    private static final IdentityHashMap<SKSpriteNode, SKAction> projectileLifetimeActions = new IdentityHashMap<>();
+    private static final IdentityHashMap<SKSpriteNode, SKEmitterNode> projectileEmitters = new IdentityHashMap<>();
 
     private final APAPlayer player;
 
@@ -63,7 +75,7 @@ public abstract class APAHeroCharacter extends APACharacter {
 
     @Override
     void configurePhysicsBody () {
-        SKPhysicsBody physicsBody = SKPhysicsBody.createCircle(CHARACTER_COLLISION_RADIUS);
+        SKPhysicsBody physicsBody = SKPhysicsBody.createCircle(APAGameRules.CHARACTER_COLLISION_RADIUS);
 
         // Our object type for collisions.
         physicsBody.setCategoryBitMask(APAColliderType.Hero);
@@ -82,25 +94,33 @@ public abstract class APAHeroCharacter extends APACharacter {
     public void collidedWith (SKPhysicsBody other) {
         if ((other.getCategoryBitMask() & APAColliderType.GoblinOrBoss) == APAColliderType.GoblinOrBoss) {
             APACharacter enemy = (APACharacter)other.getNode();
-            if (!enemy.dying) {
-                applyDamage(5.0);
-                requestedAnimation = APAAnimationState.GetHit;
+            if (!enemy.isDying()) {
+                takeHit(APAGameRules.GOBLIN_DAMAGE);
             }
         }
     }
 
+    /** Called when an enemy hits the hero. */
+    public void takeHit (double damage) {
+        applyDamage(damage);
+        requestedAnimation = APAAnimationState.GetHit;
+    }
+
     @Override
     void animationDidComplete (APAAnimationState animationState) {
         switch (animationState) {
         case Death:
             final APAMultiplayerLayeredCharacterScene scene = getCharacterScene();
 
-            SKEmitterNode emitter = (SKEmitterNode)sharedDeathEmitter.copy();
-            emitter.setZPosition(-0.8);
-            addChild(emitter);
-            APAUtils.runOneShotEmitter(emitter, 4.5);
+            // Added to the scene rather than the hero, which is removed before the emitter is done.
+            SKEmitterNode emitter = sharedDeathEmitters.run();
+            if (emitter != null) {
+                emitter.setZPosition(-0.8);
+                emitter.setPosition(getPosition());
+                scene.addNode(emitter, APAWorldLayer.Character);
+            }
 
-            runAction(SKAction.sequence(new NSArray<SKAction>(SKAction.wait(4.0), SKAction.run(new Runnable() {
+            runAction(SKAction.sequence(new NSArray<SKAction>(SKAction.wait(APAGameRules.HERO_RESPAWN_DELAY), SKAction.run(new Runnable() {
                 @Override
                 public void run () {
                     scene.heroWasKilled(APAHeroCharacter.this);
@@ -118,27 +138,81 @@ public abstract class APAHeroCharacter extends APACharacter {
     private void fireProjectile () {
         APAMultiplayerLayeredCharacterScene scene = getCharacterScene();
 
-        SKSpriteNode projectile = (SKSpriteNode)getProjectile().copy();
+        SKSpriteNode projectile = getProjectilePool().acquire();
         projectile.setPosition(getPosition());
         projectile.setZRotation(getZRotation());
 
-        SKEmitterNode emitter = (SKEmitterNode)getProjectileEmitter().copy();
+        SKEmitterNode emitter = projectileEmitters.get(projectile);
         emitter.setTargetNode(scene.getChild("world"));
-        projectile.addChild(emitter);
 
         scene.addNode(projectile, APAWorldLayer.Character);
 
         double rot = getZRotation();
 
-        projectile.runAction(SKAction.moveBy(-Math.sin(rot) * HERO_PROJECTILE_SPEED * HERO_PROJECTILE_LIFETIME, Math.cos(rot)
-            * HERO_PROJECTILE_SPEED * HERO_PROJECTILE_LIFETIME, HERO_PROJECTILE_LIFETIME));
-        projectile.runAction(SKAction.sequence(new NSArray<SKAction>(SKAction.wait(HERO_PROJECTILE_FADEOUT_TIME), SKAction
-            .fadeOut(HERO_PROJECTILE_LIFETIME - HERO_PROJECTILE_FADEOUT_TIME), SKAction.removeFromParent())));
+        projectile.runAction(SKAction.moveBy(-Math.sin(rot) * APAGameRules.PROJECTILE_RANGE, Math.cos(rot)
+            * APAGameRules.PROJECTILE_RANGE, APAGameRules.PROJECTILE_LIFETIME));
+        projectile.runAction(projectileLifetimeActions.get(projectile));
         projectile.runAction(sharedProjectileSoundAction);
 
-        NSMutableDictionary<NSString, NSObject> userData = new NSMutableDictionary<>();
+        @SuppressWarnings("unchecked")
+        NSMutableDictionary<NSString, NSObject> userData = (NSMutableDictionary<NSString, NSObject>)projectile.getUserData();
         userData.put(PLAYER_KEY, player);
-        projectile.setUserData(userData);
+    }
+
+    private APAObjectPool<SKSpriteNode> getProjectilePool () {
+        SKSpriteNode template = getProjectile();
+        for (int i = 0; i < projectileTemplates.size(); i++) {
+            if (projectileTemplates.get(i) == template) {
+                return projectilePools.get(i);
+            }
+        }
+
+        final SKSpriteNode projectileTemplate = template;
+        final SKEmitterNode emitterTemplate = getProjectileEmitter();
+        APAObjectPool<SKSpriteNode> pool = new APAObjectPool<>(new APAObjectPool.Factory<SKSpriteNode>() {
+            @Override
+            public SKSpriteNode create () {
+                final SKSpriteNode projectile = (SKSpriteNode)projectileTemplate.copy();
+                SKEmitterNode emitter = (SKEmitterNode)emitterTemplate.copy();
+                projectile.addChild(emitter);
+                projectileEmitters.put(projectile, emitter);
+                projectile.setUserData(new NSMutableDictionary<NSString, NSObject>());
+                projectileLifetimeActions.put(projectile, SKAction.sequence(new NSArray<SKAction>(SKAction
+                    .wait(APAGameRules.PROJECTILE_FADEOUT_TIME), SKAction.fadeOut(APAGameRules.PROJECTILE_LIFETIME
+                    - APAGameRules.PROJECTILE_FADEOUT_TIME), SKAction.run(new Runnable() {
+                    @Override
+                    public void run () {
+                        recycleProjectile(projectile);
+                    }
+                }))));
+                return projectile;
+            }
+
+            @Override
+            public void reset (SKSpriteNode projectile) {
+                projectile.removeAllActions();
+                projectile.removeFromParent();
+                projectile.setAlpha(1.0);
+                APAUtils.resetSimulation(projectileEmitters.get(projectile));
+            }
+        }, 0);
+        projectileTemplates.add(template);
+        projectilePools.add(pool);
+        return pool;
+    }
+
+    /**
+     * Takes a projectile off the scene and back to its pool once it has hit
+     * something or flown its full distance. Does nothing if it's already back.
+     */
+    public static void recycleProjectile (SKNode projectile) {
+        for (int i = 0; i < projectilePools.size(); i++) {
+            APAObjectPool<SKSpriteNode> pool = projectilePools.get(i);
+            if (pool.isInUse((SKSpriteNode)projectile)) {
+                pool.release((SKSpriteNode)projectile);
+                return;
+            }
+        }
     }
 
     /** Overridden by subclasses to return a suitable projectile.
@@ -153,8 +227,8 @@ public abstract class APAHeroCharacter extends APACharacter {
         // Load only once.
         if (sharedProjectileSoundAction == null) {
             sharedProjectileSoundAction = SKAction.playSound("magicmissile.caf", false);
-            sharedDeathEmitter = APAUtils.getEmitterNodeByName("Death");
-            sharedDamageEmitter = APAUtils.getEmitterNodeByName("Damage");
+            sharedDeathEmitters = APAEffectPool.forEmitter(APAUtils.getEmitterNodeByName("Death"), DEATH_EMITTER_DURATION);
+            sharedDamageEmitters = APAEffectPool.forEmitter(APAUtils.getEmitterNodeByName("Damage"), DAMAGE_EMITTER_DURATION);
         }
     }
 
@@ -163,7 +237,7 @@ public abstract class APAHeroCharacter extends APACharacter {
     }
 
     @Override
-    SKEmitterNode getDamageEmitter () {
-        return sharedDamageEmitter;
+    APAEffectPool<SKEmitterNode> getDamageEmitters () {
+        return sharedDamageEmitters;
     }
 }
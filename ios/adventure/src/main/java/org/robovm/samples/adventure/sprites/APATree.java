@@ -51,13 +51,9 @@ public class APATree extends APAParallaxSprite {
         double closestHeroDistance = Float.MAX_VALUE;
         // See if there are any heroes nearby.
         CGPoint ourPosition = getPosition();
-        for (SKNode hero : scene.getHeroes()) {
-            CGPoint theirPos = hero.getPosition();
-            double distance = APAUtils.getDistanceBetweenPoints(ourPosition, theirPos);
-
-            if (distance < closestHeroDistance) {
-                closestHeroDistance = distance;
-            }
+        SKNode hero = scene.getHeroIndex().nearest(ourPosition.getX(), ourPosition.getY(), OPAQUE_DISTANCE, null);
+        if (hero != null) {
+            closestHeroDistance = APAUtils.getDistanceBetweenPoints(ourPosition, hero.getPosition());
         }
 
         if (closestHeroDistance > OPAQUE_DISTANCE) {
@@ -29,11 +29,11 @@ import org.robovm.apple.spritekit.SKTexture;
 import org.robovm.apple.spritekit.SKTextureAtlas;
 import org.robovm.apple.uikit.UIColor;
 import org.robovm.samples.adventure.scene.APAPlayer;
+import org.robovm.samples.adventure.sim.APAGameRules;
 import org.robovm.samples.adventure.util.APAUtils;
 
 public class APAWarrior extends APAHeroCharacter {
     private static final int IDLE_FRAMES = 29;
-    private static final int THROW_FRAMES = 10;
     private static final int GET_HIT_FRAMES = 20;
     private static final int DEATH_FRAMES = 90;
 
@@ -69,7 +69,7 @@ public class APAWarrior extends APAHeroCharacter {
             sharedWalkAnimationFrames = APAUtils.loadFramesFromAtlas("Warrior/Warrior_Walk", "warrior_walk_",
                     DEFAULT_NUMBER_OF_WALK_FRAMES);
             sharedAttackAnimationFrames = APAUtils.loadFramesFromAtlas("Warrior/Warrior_Attack", "warrior_attack_",
-                    THROW_FRAMES);
+                    APAGameRules.HERO_ATTACK_FRAMES);
             sharedGetHitAnimationFrames = APAUtils.loadFramesFromAtlas("Warrior/Warrior_GetHit", "warrior_getHit_",
                     GET_HIT_FRAMES);
             sharedDeathAnimationFrames = APAUtils.loadFramesFromAtlas("Warrior/Warrior_Death", "warrior_death_",
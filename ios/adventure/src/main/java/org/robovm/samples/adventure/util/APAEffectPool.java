@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import java.util.IdentityHashMap;
+
+import org.robovm.apple.foundation.NSArray;
+import org.robovm.apple.spritekit.SKAction;
+import org.robovm.apple.spritekit.SKEmitterNode;
+import org.robovm.apple.spritekit.SKNode;
+
+/**
+ * Copies of a template node for short-lived effects like sparks, damage
+ * particles and splats. A node taken with {@link #run()} plays the effect's
+ * action and then removes itself from its parent and goes back to the pool,
+ * so the action of every node is built only once. Backed by an
+ * {@link APAObjectPool} and confined to the thread running the scene.
+ */
+public final class APAEffectPool<T extends SKNode> {
+    /** The action every node of a pool plays. */
+    public interface Effect<T> {
+        /**
+         * Returns the action for a new node. The pool takes the node back when
+         * the action has completed.
+         */
+        SKAction createAction (T node);
+
+        /** Puts a node which has played the action back into its initial state. */
+        void reset (T node);
+    }
+
+    private final APAObjectPool<T> pool;
+    private final IdentityHashMap<T, SKAction> actions = new IdentityHashMap<>();
+
+    public APAEffectPool (final T template, final Effect<T> effect) {
+        pool = new APAObjectPool<>(new APAObjectPool.Factory<T>() {
+            @SuppressWarnings("unchecked")
+            @Override
+            public T create () {
+                final T node = (T)template.copy();
+                actions.put(node, SKAction.sequence(new NSArray<SKAction>(effect.createAction(node), SKAction.run(new Runnable() {
+                    @Override
+                    public void run () {
+                        pool.release(node);
+                    }
+                }))));
+                return node;
+            }
+
+            @Override
+            public void reset (T node) {
+                node.removeAllActions();
+                node.removeFromParent();
+                effect.reset(node);
+            }
+        }, 0);
+    }
+
+    /**
+     * Returns a node which plays the effect once it's added to a parent, or
+     * {@code null} if the cap of {@link #getPool()} has been reached.
+     */
+    public T run () {
+        T node = pool.acquire();
+        if (node != null) {
+            node.runAction(actions.get(node));
+        }
+        return node;
+    }
+
+    public APAObjectPool<T> getPool () {
+        return pool;
+    }
+
+    /**
+     * Returns a pool of one-shot emitters, which emit for {@code duration}
+     * seconds and are taken back once their last particles have died.
+     */
+    public static APAEffectPool<SKEmitterNode> forEmitter (final SKEmitterNode template, final double duration) {
+        return new APAEffectPool<>(template, new Effect<SKEmitterNode>() {
+            @Override
+            public SKAction createAction (final SKEmitterNode emitter) {
+                return SKAction.sequence(new NSArray<SKAction>(SKAction.wait(duration), SKAction.run(new Runnable() {
+                    @Override
+                    public void run () {
+                        emitter.setParticleBirthRate(0);
+                    }
+                }), SKAction.wait(template.getParticleLifetime() + template.getParticleLifetimeRange())));
+            }
+
+            @Override
+            public void reset (SKEmitterNode emitter) {
+                emitter.setParticleBirthRate(template.getParticleBirthRate());
+                APAUtils.resetSimulation(emitter);
+            }
+        });
+    }
+}
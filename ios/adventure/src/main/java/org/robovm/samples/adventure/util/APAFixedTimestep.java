@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+/**
+ * Accumulator which turns variable frame times into a whole number of
+ * fixed-length simulation steps, so the simulation behaves the same at any
+ * frame rate. The time left over after the last step is kept for the next
+ * frame and {@link #getAlpha()} tells a renderer how far it is between the
+ * previous and the current step. At most a given number of steps run per
+ * frame; time beyond that is dropped so a long stall can't make every
+ * following frame slower. Has no platform dependencies. Not thread-safe.
+ */
+public final class APAFixedTimestep {
+    private final double step;
+    private final int maxStepsPerFrame;
+    private double accumulator;
+    private long stepCount;
+    private double droppedTime;
+
+    public APAFixedTimestep (double step, int maxStepsPerFrame) {
+        if (!(step > 0) || maxStepsPerFrame <= 0) {
+            throw new IllegalArgumentException("step must be > 0 and maxStepsPerFrame > 0");
+        }
+        this.step = step;
+        this.maxStepsPerFrame = maxStepsPerFrame;
+    }
+
+    /**
+     * Adds the time elapsed since the last frame and returns how many steps
+     * to run for this frame. Negative or invalid times are ignored.
+     */
+    public int advance (double elapsed) {
+        if (elapsed > 0 && !Double.isInfinite(elapsed)) {
+            accumulator += elapsed;
+        }
+        long steps = (long)(accumulator / step);
+        // Never let rounding take the remainder below zero.
+        accumulator = Math.max(0, accumulator - steps * step);
+        if (steps > maxStepsPerFrame) {
+            droppedTime += (steps - maxStepsPerFrame) * step;
+            steps = maxStepsPerFrame;
+        }
+        stepCount += steps;
+        return (int)steps;
+    }
+
+    /**
+     * Returns the fraction of a step, in [0, 1], by which the frame is ahead
+     * of the last step.
+     */
+    public double getAlpha () {
+        return Math.min(accumulator / step, 1.0);
+    }
+
+    public double getStep () {
+        return step;
+    }
+
+    /** Returns the total number of steps handed out. */
+    public long getStepCount () {
+        return stepCount;
+    }
+
+    /** Returns the total time dropped because a frame needed too many steps. */
+    public double getDroppedTime () {
+        return droppedTime;
+    }
+
+    public void reset () {
+        accumulator = 0;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import java.util.Arrays;
+
+/**
+ * Shortest path distances from every cell of a wall grid to a single goal
+ * cell, used to steer any number of agents towards the goal with a constant
+ * time lookup per agent. Moves go to any of the 8 neighbours, diagonals cost
+ * 7 and straight moves 5 (about 1.4 : 1), and a diagonal move may not cut the
+ * corner of a wall. A cell is a wall if its value in the grid is non-zero.
+ * <p>
+ * Changing the goal doesn't stall the caller. The new field is integrated
+ * into a back buffer by {@link #update(int)}, at most a given number of cells
+ * per call, while lookups keep using the last complete field. A field which
+ * is being integrated is always finished and swapped in, even if the goal
+ * has moved on in the meantime; the field for the latest goal is started
+ * right after. So a goal which moves to another cell every frame still gets
+ * a fresh field every few frames instead of restarting forever. The direction
+ * out of a cell is worked out on its first lookup and remembered until the
+ * next field is swapped in, so many agents in the same cells share the work.
+ * Has no platform dependencies. Not thread-safe.
+ */
+public final class APAFlowField {
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    /** Returned by {@link #getDirection(int, int)} when there's no way to go. */
+    public static final int NO_DIRECTION = -1;
+
+    private static final int STRAIGHT = 5;
+    private static final int DIAGONAL = 7;
+    private static final int[] DX = {1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] DY = {0, 1, 1, 1, 0, -1, -1, -1};
+    private static final byte UNKNOWN = -2;
+    private static final double[] UNIT_X = new double[8];
+    private static final double[] UNIT_Y = new double[8];
+    static {
+        for (int i = 0; i < 8; i++) {
+            double length = Math.hypot(DX[i], DY[i]);
+            UNIT_X[i] = DX[i] / length;
+            UNIT_Y[i] = DY[i] / length;
+        }
+    }
+
+    private final byte[] walls;
+    private final int width;
+    private final int height;
+
+    // The last complete field and the one being integrated.
+    private int[] front;
+    private int[] back;
+    // Direction per cell of the current field, worked out on first lookup.
+    private final byte[] directions;
+    private int frontGoal = -1;
+    private int backGoal = -1;
+    // The goal of the last setGoal() call, started once the back is done.
+    private int latestGoal = -1;
+    private boolean integrating;
+
+    // Dial's algorithm: one queue per distance modulo (DIAGONAL + 1).
+    private final int[][] buckets = new int[DIAGONAL + 1][];
+    private final int[] bucketSizes = new int[DIAGONAL + 1];
+    private int queued;
+    private int distance;
+
+    /**
+     * Creates a flow field over the specified row-major grid. The array is
+     * not copied.
+     */
+    public APAFlowField (byte[] walls, int width, int height) {
+        if (width <= 0 || height <= 0 || walls.length < width * height) {
+            throw new IllegalArgumentException("Grid of " + walls.length + " cells is not " + width + "x" + height);
+        }
+        this.walls = walls;
+        this.width = width;
+        this.height = height;
+        this.front = new int[width * height];
+        this.back = new int[width * height];
+        this.directions = new byte[width * height];
+        Arrays.fill(front, UNREACHABLE);
+        Arrays.fill(directions, UNKNOWN);
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new int[64];
+        }
+    }
+
+    /**
+     * Sets the goal cell. Does nothing if it's already the latest goal.
+     * Otherwise the new goal is integrated by {@link #update(int)} as soon as
+     * any field still being integrated has been finished and swapped in.
+     * Returns {@code true} if the goal has changed.
+     */
+    public boolean setGoal (int x, int y) {
+        int goal = contains(x, y) ? y * width + x : -1;
+        if (goal == latestGoal) {
+            return false;
+        }
+        latestGoal = goal;
+        if (!integrating) {
+            start(goal);
+        } else if (goal == frontGoal) {
+            // Back to the goal of the complete field, nothing to wait for.
+            integrating = false;
+        }
+        return true;
+    }
+
+    private void start (int goal) {
+        backGoal = goal;
+        Arrays.fill(back, UNREACHABLE);
+        Arrays.fill(bucketSizes, 0);
+        queued = 0;
+        distance = 0;
+        if (goal != -1 && walls[goal] == 0) {
+            back[goal] = 0;
+            push(goal, 0);
+        }
+        integrating = true;
+    }
+
+    /**
+     * Integrates at most {@code maxCells} more cells of pending fields,
+     * swapping each in once it's complete and going on with the field for
+     * the latest goal. Returns {@code true} if the current field is for the
+     * latest goal.
+     */
+    public boolean update (int maxCells) {
+        int budget = maxCells;
+        while (integrating && budget > 0) {
+            budget -= integrate(budget);
+            if (queued > 0) {
+                return false;
+            }
+            int[] dist = back;
+            back = front;
+            front = dist;
+            frontGoal = backGoal;
+            integrating = false;
+            Arrays.fill(directions, UNKNOWN);
+            if (latestGoal != frontGoal) {
+                start(latestGoal);
+            }
+        }
+        return !integrating;
+    }
+
+    /**
+     * Settles at most {@code maxCells} cells of the back field and returns the
+     * number settled.
+     */
+    private int integrate (int maxCells) {
+        int[] dist = back;
+        int processed = 0;
+        while (queued > 0 && processed < maxCells) {
+            int b = distance % buckets.length;
+            if (bucketSizes[b] == 0) {
+                distance++;
+                continue;
+            }
+            int cell = buckets[b][--bucketSizes[b]];
+            queued--;
+            if (dist[cell] != distance) {
+                continue; // stale entry, already reached more cheaply
+            }
+            processed++;
+            int x = cell % width;
+            int y = cell / width;
+            for (int dir = 0; dir < 8; dir++) {
+                int nx = x + DX[dir];
+                int ny = y + DY[dir];
+                if (!isOpen(nx, ny)) {
+                    continue;
+                }
+                int cost;
+                if ((dir & 1) == 0) {
+                    cost = STRAIGHT;
+                } else if (isOpen(nx, y) && isOpen(x, ny)) {
+                    cost = DIAGONAL;
+                } else {
+                    continue; // would cut a wall corner
+                }
+                int n = ny * width + nx;
+                int d = distance + cost;
+                if (d < dist[n]) {
+                    dist[n] = d;
+                    push(n, d);
+                }
+            }
+        }
+        return processed;
+    }
+
+    public boolean isIntegrating () {
+        return integrating;
+    }
+
+    /**
+     * Returns the goal cell index ({@code y * width + x}) of the current
+     * field or -1 if there is none.
+     */
+    public int getGoal () {
+        return frontGoal;
+    }
+
+    /**
+     * Returns the path cost from cell {@code (x, y)} to the goal in the
+     * current field, 5 per straight step, or {@link #UNREACHABLE}.
+     */
+    public int getDistance (int x, int y) {
+        return contains(x, y) ? front[y * width + x] : UNREACHABLE;
+    }
+
+    /**
+     * Returns the direction (0-7, counter-clockwise from +x in grid
+     * coordinates) of the neighbour of cell {@code (x, y)} which is closest to
+     * the goal, or {@link #NO_DIRECTION} if the cell is the goal, a wall or
+     * can't reach the goal.
+     */
+    public int getDirection (int x, int y) {
+        if (!contains(x, y)) {
+            return NO_DIRECTION;
+        }
+        int cell = y * width + x;
+        int direction = directions[cell];
+        if (direction == UNKNOWN) {
+            direction = computeDirection(x, y);
+            directions[cell] = (byte)direction;
+        }
+        return direction;
+    }
+
+    private int computeDirection (int x, int y) {
+        int[] dist = front;
+        int best = dist[y * width + x];
+        int bestDir = NO_DIRECTION;
+        for (int dir = 0; dir < 8; dir++) {
+            int nx = x + DX[dir];
+            int ny = y + DY[dir];
+            if (!contains(nx, ny)) {
+                continue;
+            }
+            int d = dist[ny * width + nx];
+            if (d < best && ((dir & 1) == 0 || (isOpen(nx, y) && isOpen(x, ny)))) {
+                best = d;
+                bestDir = dir;
+            }
+        }
+        return bestDir;
+    }
+
+    /** Returns the x component of the unit vector of a direction. */
+    public static double getDirectionX (int direction) {
+        return UNIT_X[direction];
+    }
+
+    /** Returns the y component of the unit vector of a direction. */
+    public static double getDirectionY (int direction) {
+        return UNIT_Y[direction];
+    }
+
+    private boolean contains (int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    private boolean isOpen (int x, int y) {
+        return contains(x, y) && walls[y * width + x] == 0;
+    }
+
+    private void push (int cell, int d) {
+        int b = d % buckets.length;
+        int[] bucket = buckets[b];
+        if (bucketSizes[b] == bucket.length) {
+            buckets[b] = bucket = Arrays.copyOf(bucket, bucket.length * 2);
+        }
+        bucket[bucketSizes[b]++] = cell;
+        queued++;
+    }
+}
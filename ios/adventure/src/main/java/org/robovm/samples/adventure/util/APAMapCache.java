@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Decodes map PNGs with {@link APAPngDecoder} once and keeps the raw pixels
+ * in a cache file next to a header identifying the source. Later loads of an
+ * unchanged PNG memory-map the cached pixels instead of decoding again, so
+ * the returned buffer can be handed to native code without copying. Has no
+ * platform dependencies.
+ * <p>
+ * A PNG with the size and modification time recorded in the header is taken
+ * to be unchanged without reading it. Only if either differs, e.g. after the
+ * app has been updated, the PNG is read and compared by its SHA-1; if only
+ * the file attributes have changed, they are updated in the header and the
+ * pixels are reused.
+ * <p>
+ * Cache file layout (big-endian): magic {@code "APAM"}, version, width,
+ * height, 20 byte SHA-1 of the PNG, PNG size and modification time as longs,
+ * zero padding up to {@link #HEADER_SIZE} bytes, then
+ * {@code width * height * 4} bytes of pixels as returned by
+ * {@link APAPngDecoder}.
+ */
+public final class APAMapCache {
+    private static final int MAGIC = 0x4150414d; // "APAM"
+    private static final int VERSION = 2;
+    static final int HEADER_SIZE = 64;
+    private static final int HASH_SIZE = 20;
+    private static final int ATTRIBUTES_OFFSET = 16 + HASH_SIZE;
+
+    /** Pixels of a map with its dimensions. */
+    public static final class Bitmap {
+        public final int width;
+        public final int height;
+        /** Read-only direct buffer of premultiplied A, R, G, B bytes. */
+        public final ByteBuffer pixels;
+
+        Bitmap (int width, int height, ByteBuffer pixels) {
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+    }
+
+    private final File directory;
+
+    public APAMapCache (File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the pixels of the specified PNG, decoding it and writing the
+     * cache file first if there is no valid cache file for its current
+     * contents. The returned buffer stays valid as long as it is reachable.
+     */
+    public Bitmap load (File png) throws IOException {
+        long length = png.length();
+        long lastModified = png.lastModified();
+        File cacheFile = new File(directory, png.getName() + ".map");
+
+        Header header = readHeader(cacheFile);
+        if (header != null && header.pngLength == length && header.pngLastModified == lastModified) {
+            return map(cacheFile, header);
+        }
+
+        byte[] source = readFully(png);
+        byte[] hash = sha1(source);
+        if (header != null && Arrays.equals(hash, header.hash)) {
+            writeAttributes(cacheFile, length, lastModified);
+            return map(cacheFile, header);
+        }
+        write(cacheFile, hash, length, lastModified, APAPngDecoder.decode(source));
+        header = readHeader(cacheFile);
+        if (header == null) {
+            throw new IOException("Failed to read back " + cacheFile);
+        }
+        return map(cacheFile, header);
+    }
+
+    /** The header of a valid cache file. */
+    private static final class Header {
+        final int width;
+        final int height;
+        final byte[] hash;
+        final long pngLength;
+        final long pngLastModified;
+
+        Header (int width, int height, byte[] hash, long pngLength, long pngLastModified) {
+            this.width = width;
+            this.height = height;
+            this.hash = hash;
+            this.pngLength = pngLength;
+            this.pngLastModified = pngLastModified;
+        }
+    }
+
+    /**
+     * Reads the header of the cache file if it exists, was written by this
+     * version of the code and is followed by all the pixels. Returns
+     * {@code null} otherwise.
+     */
+    private static Header readHeader (File cacheFile) throws IOException {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r")) {
+            if (file.length() < HEADER_SIZE) {
+                return null;
+            }
+            byte[] headerBytes = new byte[HEADER_SIZE];
+            file.readFully(headerBytes);
+            ByteBuffer header = ByteBuffer.wrap(headerBytes);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            byte[] hash = new byte[HASH_SIZE];
+            header.get(hash);
+            long pngLength = header.getLong();
+            long pngLastModified = header.getLong();
+            if (width <= 0 || height <= 0 || file.length() != HEADER_SIZE + (long)width * height * 4) {
+                return null;
+            }
+            return new Header(width, height, hash, pngLength, pngLastModified);
+        }
+    }
+
+    private static Bitmap map (File cacheFile, Header header) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "r")) {
+            // The mapping outlives the channel.
+            ByteBuffer pixels = file.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                (long)header.width * header.height * 4);
+            return new Bitmap(header.width, header.height, pixels);
+        }
+    }
+
+    /**
+     * Records new PNG file attributes for unchanged contents. A torn write
+     * only means the PNG is hashed again next time.
+     */
+    private static void writeAttributes (File cacheFile, long length, long lastModified) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.seek(ATTRIBUTES_OFFSET);
+            file.writeLong(length);
+            file.writeLong(lastModified);
+        }
+    }
+
+    private static void write (File cacheFile, byte[] hash, long length, long lastModified, APAPngDecoder.Image image)
+        throws IOException {
+        File dir = cacheFile.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(image.width).putInt(image.height).put(hash).putLong(length)
+            .putLong(lastModified);
+        header.rewind();
+
+        // Write to a temporary file first so a crash never leaves a
+        // truncated cache file behind.
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        try (RandomAccessFile file = new RandomAccessFile(tmp, "rw")) {
+            file.setLength(0);
+            FileChannel channel = file.getChannel();
+            ByteBuffer pixels = ByteBuffer.wrap(image.argb);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (pixels.hasRemaining()) {
+                channel.write(pixels);
+            }
+        }
+        if (!tmp.renameTo(cacheFile)) {
+            tmp.delete();
+            throw new IOException("Failed to rename " + tmp + " to " + cacheFile);
+        }
+    }
+
+    private static byte[] readFully (File f) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(f, "r")) {
+            long length = file.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(f + " is too large");
+            }
+            byte[] data = new byte[(int)length];
+            file.readFully(data);
+            return data;
+        }
+    }
+
+    private static byte[] sha1 (byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Keeps released objects for reuse so that objects which come and go all the
+ * time, like goblins, projectiles and particle effects, are only created
+ * until enough of them exist. Objects are compared by identity. The
+ * {@link Factory} creates new objects and resets released ones, so every
+ * acquired object starts out the same.
+ * <p>
+ * The number of objects in use at once can be capped, in which case
+ * {@link #acquire()} returns {@code null} at the cap. Neither acquiring nor
+ * releasing allocates once the pool has grown to fit. A pool belongs to the
+ * thread which first uses it and fails fast on any other thread. Has no
+ * platform dependencies.
+ */
+public final class APAObjectPool<T> {
+    /** Creates and resets the objects of a pool. */
+    public interface Factory<T> {
+        T create ();
+
+        /** Called on every released object before it's kept for reuse. */
+        void reset (T object);
+    }
+
+    private final Factory<T> factory;
+    private int cap;
+    private Thread owner;
+
+    private Object[] free = new Object[16];
+    private int freeCount;
+    private final IdentityHashMap<T, Boolean> inUse = new IdentityHashMap<>();
+
+    private int highWater;
+    private long created;
+    private long acquired;
+    private long refused;
+
+    /**
+     * Creates a pool which lets at most {@code cap} objects be in use at
+     * once, or any number if {@code cap} is 0.
+     */
+    public APAObjectPool (Factory<T> factory, int cap) {
+        if (factory == null || cap < 0) {
+            throw new IllegalArgumentException("factory must not be null and cap must be >= 0");
+        }
+        this.factory = factory;
+        this.cap = cap;
+    }
+
+    /**
+     * Returns a free object, creating one if there is none, or {@code null} if
+     * the cap has been reached.
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire () {
+        checkThread();
+        if (cap > 0 && inUse.size() >= cap) {
+            refused++;
+            return null;
+        }
+        T object;
+        if (freeCount > 0) {
+            object = (T)free[--freeCount];
+            free[freeCount] = null;
+        } else {
+            object = factory.create();
+            created++;
+        }
+        inUse.put(object, Boolean.TRUE);
+        acquired++;
+        highWater = Math.max(highWater, inUse.size());
+        return object;
+    }
+
+    /**
+     * Resets the object and keeps it for reuse. Returns {@code false}, and
+     * does nothing else, if the object isn't in use, e.g. when it has been
+     * released already.
+     */
+    public boolean release (T object) {
+        checkThread();
+        if (inUse.remove(object) == null) {
+            return false;
+        }
+        factory.reset(object);
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = object;
+        return true;
+    }
+
+    /** Creates free objects until there are at least {@code count}. */
+    public void prefill (int count) {
+        checkThread();
+        while (freeCount < count) {
+            T object = factory.create();
+            created++;
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, free.length * 2);
+            }
+            free[freeCount++] = object;
+        }
+    }
+
+    /** Forgets all free objects. Objects in use can still be released. */
+    public void clear () {
+        checkThread();
+        Arrays.fill(free, 0, freeCount, null);
+        freeCount = 0;
+    }
+
+    public boolean isInUse (T object) {
+        return inUse.containsKey(object);
+    }
+
+    /** Returns the cap on objects in use, 0 if there is none. */
+    public int getCap () {
+        return cap;
+    }
+
+    /**
+     * Sets the cap on objects in use, 0 for none. Objects already in use
+     * above a lowered cap stay in use.
+     */
+    public void setCap (int cap) {
+        if (cap < 0) {
+            throw new IllegalArgumentException("cap must be >= 0");
+        }
+        this.cap = cap;
+    }
+
+    public int getInUseCount () {
+        return inUse.size();
+    }
+
+    public int getFreeCount () {
+        return freeCount;
+    }
+
+    /** Returns the most objects ever in use at once. */
+    public int getHighWater () {
+        return highWater;
+    }
+
+    /** Returns the number of objects the factory has created. */
+    public long getCreatedCount () {
+        return created;
+    }
+
+    public long getAcquiredCount () {
+        return acquired;
+    }
+
+    /** Returns the number of acquires which failed because of the cap. */
+    public long getRefusedCount () {
+        return refused;
+    }
+
+    private void checkThread () {
+        Thread current = Thread.currentThread();
+        if (owner == null) {
+            owner = current;
+        } else if (owner != current) {
+            throw new IllegalStateException("Pool used by " + current.getName() + " but owned by " + owner.getName());
+        }
+    }
+
+    @Override
+    public String toString () {
+        return String.format("APAObjectPool [inUse=%d, free=%d, highWater=%d, created=%d, acquired=%d, refused=%d]",
+            inUse.size(), freeCount, highWater, created, acquired, refused);
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Minimal PNG decoder for the level maps. Supports non-interlaced images with
+ * 8 bits per sample of every color type (grayscale, RGB, palette, grayscale
+ * with alpha and RGBA). Pixels are returned as 4 bytes each in A, R, G, B
+ * order with the color premultiplied by alpha, the same layout a
+ * {@code CGBitmapContext} with {@code PremultipliedFirst} produces. Color
+ * profiles are ignored. Has no platform dependencies.
+ */
+public final class APAPngDecoder {
+    private static final long SIGNATURE = 0x89504e470d0a1a0aL;
+
+    private static final int GRAY = 0;
+    private static final int RGB = 2;
+    private static final int PALETTE = 3;
+    private static final int GRAY_ALPHA = 4;
+    private static final int RGBA = 6;
+
+    /** A decoded image. */
+    public static final class Image {
+        public final int width;
+        public final int height;
+        /** {@code width * height * 4} bytes, premultiplied A, R, G, B. */
+        public final byte[] argb;
+
+        Image (int width, int height, byte[] argb) {
+            this.width = width;
+            this.height = height;
+            this.argb = argb;
+        }
+    }
+
+    private APAPngDecoder () {
+    }
+
+    public static Image decode (byte[] png) throws IOException {
+        if (png.length < 8 || readLong(png, 0) != SIGNATURE) {
+            throw new IOException("Not a PNG");
+        }
+        int width = 0;
+        int height = 0;
+        int colorType = -1;
+        byte[] palette = null;
+        byte[] transparency = null;
+        ByteArrayOutputStream idat = new ByteArrayOutputStream(png.length);
+
+        int pos = 8;
+        while (pos + 8 <= png.length) {
+            int length = readInt(png, pos);
+            int type = readInt(png, pos + 4);
+            int data = pos + 8;
+            if (length < 0 || data + length + 4 > png.length) {
+                throw new IOException("Truncated PNG chunk");
+            }
+            if (type == 0x49484452) { // IHDR
+                width = readInt(png, data);
+                height = readInt(png, data + 4);
+                int bitDepth = png[data + 8];
+                colorType = png[data + 9];
+                int interlace = png[data + 12];
+                if (bitDepth != 8 || interlace != 0 || width <= 0 || height <= 0) {
+                    throw new IOException("Unsupported PNG: bit depth " + bitDepth + ", interlace " + interlace);
+                }
+            } else if (type == 0x504c5445) { // PLTE
+                palette = copy(png, data, length);
+            } else if (type == 0x74524e53) { // tRNS
+                transparency = copy(png, data, length);
+            } else if (type == 0x49444154) { // IDAT
+                idat.write(png, data, length);
+            } else if (type == 0x49454e44) { // IEND
+                break;
+            }
+            pos = data + length + 4; // skip CRC
+        }
+
+        int channels;
+        switch (colorType) {
+        case GRAY:
+        case PALETTE:
+            channels = 1;
+            break;
+        case GRAY_ALPHA:
+            channels = 2;
+            break;
+        case RGB:
+            channels = 3;
+            break;
+        case RGBA:
+            channels = 4;
+            break;
+        default:
+            throw new IOException("Unsupported PNG color type " + colorType);
+        }
+        if (colorType == PALETTE && palette == null) {
+            throw new IOException("PNG palette missing");
+        }
+
+        int stride = width * channels;
+        byte[] raw = inflate(idat.toByteArray(), (stride + 1) * height);
+        byte[] argb = new byte[width * height * 4];
+        byte[] previous = new byte[stride];
+        byte[] row = new byte[stride];
+        for (int y = 0; y < height; y++) {
+            int in = y * (stride + 1);
+            unfilter(raw[in], raw, in + 1, row, previous, channels);
+            int out = y * width * 4;
+            for (int x = 0; x < width; x++, out += 4) {
+                int r, g, b, a;
+                switch (colorType) {
+                case GRAY:
+                    r = g = b = row[x] & 0xff;
+                    a = 0xff;
+                    break;
+                case GRAY_ALPHA:
+                    r = g = b = row[x * 2] & 0xff;
+                    a = row[x * 2 + 1] & 0xff;
+                    break;
+                case PALETTE:
+                    int index = row[x] & 0xff;
+                    if (index * 3 + 2 >= palette.length) {
+                        throw new IOException("PNG palette index out of range");
+                    }
+                    r = palette[index * 3] & 0xff;
+                    g = palette[index * 3 + 1] & 0xff;
+                    b = palette[index * 3 + 2] & 0xff;
+                    a = transparency != null && index < transparency.length ? transparency[index] & 0xff : 0xff;
+                    break;
+                case RGB:
+                    r = row[x * 3] & 0xff;
+                    g = row[x * 3 + 1] & 0xff;
+                    b = row[x * 3 + 2] & 0xff;
+                    a = 0xff;
+                    break;
+                default:
+                    r = row[x * 4] & 0xff;
+                    g = row[x * 4 + 1] & 0xff;
+                    b = row[x * 4 + 2] & 0xff;
+                    a = row[x * 4 + 3] & 0xff;
+                    break;
+                }
+                argb[out] = (byte)a;
+                argb[out + 1] = (byte)premultiply(r, a);
+                argb[out + 2] = (byte)premultiply(g, a);
+                argb[out + 3] = (byte)premultiply(b, a);
+            }
+            byte[] t = previous;
+            previous = row;
+            row = t;
+        }
+        return new Image(width, height, argb);
+    }
+
+    private static int premultiply (int c, int a) {
+        return a == 0xff ? c : (c * a + 127) / 255;
+    }
+
+    private static void unfilter (int filter, byte[] raw, int in, byte[] row, byte[] previous, int bpp)
+        throws IOException {
+
+        int n = row.length;
+        switch (filter) {
+        case 0: // None
+            System.arraycopy(raw, in, row, 0, n);
+            break;
+        case 1: // Sub
+            for (int i = 0; i < n; i++) {
+                int left = i >= bpp ? row[i - bpp] & 0xff : 0;
+                row[i] = (byte)(raw[in + i] + left);
+            }
+            break;
+        case 2: // Up
+            for (int i = 0; i < n; i++) {
+                row[i] = (byte)(raw[in + i] + previous[i]);
+            }
+            break;
+        case 3: // Average
+            for (int i = 0; i < n; i++) {
+                int left = i >= bpp ? row[i - bpp] & 0xff : 0;
+                row[i] = (byte)(raw[in + i] + ((left + (previous[i] & 0xff)) >>> 1));
+            }
+            break;
+        case 4: // Paeth
+            for (int i = 0; i < n; i++) {
+                int a = i >= bpp ? row[i - bpp] & 0xff : 0;
+                int b = previous[i] & 0xff;
+                int c = i >= bpp ? previous[i - bpp] & 0xff : 0;
+                int p = a + b - c;
+                int pa = Math.abs(p - a);
+                int pb = Math.abs(p - b);
+                int pc = Math.abs(p - c);
+                int predictor = pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+                row[i] = (byte)(raw[in + i] + predictor);
+            }
+            break;
+        default:
+            throw new IOException("Invalid PNG filter type " + filter);
+        }
+    }
+
+    private static byte[] inflate (byte[] data, int size) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] out = new byte[size];
+            int n = 0;
+            while (n < size && !inflater.finished()) {
+                int count = inflater.inflate(out, n, size - n);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += count;
+            }
+            if (n < size) {
+                throw new IOException("Truncated PNG image data");
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt PNG image data", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] copy (byte[] b, int offset, int length) {
+        byte[] result = new byte[length];
+        System.arraycopy(b, offset, result, 0, length);
+        return result;
+    }
+
+    private static int readInt (byte[] b, int offset) {
+        return ((b[offset] & 0xff) << 24) | ((b[offset + 1] & 0xff) << 16) | ((b[offset + 2] & 0xff) << 8)
+            | (b[offset + 3] & 0xff);
+    }
+
+    private static long readLong (byte[] b, int offset) {
+        return ((long)readInt(b, offset) << 32) | (readInt(b, offset + 4) & 0xffffffffL);
+    }
+}
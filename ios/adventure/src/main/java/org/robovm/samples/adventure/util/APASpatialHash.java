@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Uniform grid of square cells used to find the items near a point without
+ * looking at every item. Items are compared by identity. Each cell holds an
+ * intrusive linked list of entries stored in parallel arrays, so moving an
+ * item within its cell only updates its coordinates and moving it to another
+ * cell relinks it. Neither allocates once the arrays have grown to fit.
+ * <p>
+ * Pick a cell size close to the typical query radius. Cells are never freed,
+ * which is fine for a bounded world. Has no platform dependencies. Not
+ * thread-safe.
+ */
+public final class APASpatialHash<T> {
+    private static final long NO_CELL = Long.MIN_VALUE;
+    private static final int NONE = -1;
+
+    /** Decides which items a query may return. */
+    public interface Filter<T> {
+        boolean accept (T item);
+    }
+
+    private final double cellSize;
+    private final double inverseCellSize;
+    private final IdentityHashMap<T, Integer> entries = new IdentityHashMap<>();
+
+    // Entries. Free slots are chained through next[].
+    private Object[] items = new Object[16];
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private long[] cellKeys = new long[16];
+    private int[] next = new int[16];
+    private int[] prev = new int[16];
+    private int slotsUsed;
+    private int freeSlot = NONE;
+
+    // Open addressing table from cell key to the first entry in that cell.
+    private long[] tableKeys;
+    private int[] tableHeads;
+    private int tableCount;
+
+    // Scratch space for k-nearest queries.
+    private int[] bestSlots = new int[4];
+    private double[] bestDistances = new double[4];
+
+    public APASpatialHash (double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("cellSize must be > 0");
+        }
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1.0 / cellSize;
+        this.tableKeys = new long[64];
+        this.tableHeads = new int[64];
+        Arrays.fill(tableKeys, NO_CELL);
+    }
+
+    public double getCellSize () {
+        return cellSize;
+    }
+
+    public int size () {
+        return entries.size();
+    }
+
+    public boolean contains (T item) {
+        return entries.containsKey(item);
+    }
+
+    public void insert (T item, double x, double y) {
+        if (entries.containsKey(item)) {
+            throw new IllegalArgumentException("Already inserted: " + item);
+        }
+        int slot = allocate();
+        items[slot] = item;
+        xs[slot] = x;
+        ys[slot] = y;
+        link(slot, cellKey(x, y));
+        entries.put(item, slot);
+    }
+
+    public void move (T item, double x, double y) {
+        Integer slot = entries.get(item);
+        if (slot == null) {
+            throw new IllegalArgumentException("Not inserted: " + item);
+        }
+        int s = slot;
+        xs[s] = x;
+        ys[s] = y;
+        long key = cellKey(x, y);
+        if (key != cellKeys[s]) {
+            unlink(s);
+            link(s, key);
+        }
+    }
+
+    /**
+     * Removes the item. Returns {@code false} if it wasn't inserted.
+     */
+    public boolean remove (T item) {
+        Integer slot = entries.remove(item);
+        if (slot == null) {
+            return false;
+        }
+        int s = slot;
+        unlink(s);
+        items[s] = null;
+        next[s] = freeSlot;
+        freeSlot = s;
+        return true;
+    }
+
+    public void clear () {
+        entries.clear();
+        Arrays.fill(items, 0, slotsUsed, null);
+        slotsUsed = 0;
+        freeSlot = NONE;
+        Arrays.fill(tableKeys, NO_CELL);
+        tableCount = 0;
+    }
+
+    /**
+     * Adds every accepted item closer than {@code radius} to
+     * {@code (x, y)} to {@code out} in no particular order. {@code filter}
+     * may be {@code null}. Returns the number of added items.
+     */
+    @SuppressWarnings("unchecked")
+    public int queryRadius (double x, double y, double radius, Filter<? super T> filter, List<? super T> out) {
+        double radiusSquared = radius * radius;
+        int minX = cell(x - radius);
+        int maxX = cell(x + radius);
+        int minY = cell(y - radius);
+        int maxY = cell(y + radius);
+        int found = 0;
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                for (int s = head(key(cx, cy)); s != NONE; s = next[s]) {
+                    double dx = xs[s] - x;
+                    double dy = ys[s] - y;
+                    if (dx * dx + dy * dy < radiusSquared) {
+                        T item = (T)items[s];
+                        if (filter == null || filter.accept(item)) {
+                            out.add(item);
+                            found++;
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns the accepted item closest to {@code (x, y)} if it's closer than
+     * {@code maxDistance}, otherwise {@code null}. {@code filter} may be
+     * {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    public T nearest (double x, double y, double maxDistance, Filter<? super T> filter) {
+        int n = search(x, y, 1, maxDistance, filter);
+        return n > 0 ? (T)items[bestSlots[0]] : null;
+    }
+
+    /**
+     * Adds up to {@code k} accepted items closer than {@code maxDistance} to
+     * {@code (x, y)} to {@code out}, nearest first. {@code filter} may be
+     * {@code null}. Returns the number of added items.
+     */
+    @SuppressWarnings("unchecked")
+    public int nearest (double x, double y, int k, double maxDistance, Filter<? super T> filter, List<? super T> out) {
+        int n = search(x, y, k, maxDistance, filter);
+        for (int i = 0; i < n; i++) {
+            out.add((T)items[bestSlots[i]]);
+        }
+        return n;
+    }
+
+    /**
+     * Visits rings of cells around the query point until the k best
+     * candidates can't be beaten by anything further out, every item has
+     * been seen or the rings are beyond {@code maxDistance}. Leaves the
+     * result in bestSlots[0..n) sorted by distance and returns n.
+     */
+    @SuppressWarnings("unchecked")
+    private int search (double x, double y, int k, double maxDistance, Filter<? super T> filter) {
+        if (k <= 0) {
+            return 0;
+        }
+        if (bestSlots.length < k) {
+            bestSlots = new int[k];
+            bestDistances = new double[k];
+        }
+        double maxDistanceSquared = maxDistance * maxDistance;
+        int centerX = cell(x);
+        int centerY = cell(y);
+        int maxRing = (int)Math.min(Integer.MAX_VALUE / 2, Math.ceil(maxDistance * inverseCellSize) + 1);
+        int total = entries.size();
+        int seen = 0;
+        int n = 0;
+        for (int ring = 0; ring <= maxRing && seen < total; ring++) {
+            for (int cy = centerY - ring; cy <= centerY + ring; cy++) {
+                // Only the outline of the ring; the inside was visited before.
+                int step = cy == centerY - ring || cy == centerY + ring ? 1 : Math.max(1, 2 * ring);
+                for (int cx = centerX - ring; cx <= centerX + ring; cx += step) {
+                    for (int s = head(key(cx, cy)); s != NONE; s = next[s]) {
+                        seen++;
+                        double dx = xs[s] - x;
+                        double dy = ys[s] - y;
+                        double d = dx * dx + dy * dy;
+                        if (d >= maxDistanceSquared || (n == k && d >= bestDistances[n - 1])) {
+                            continue;
+                        }
+                        if (filter != null && !filter.accept((T)items[s])) {
+                            continue;
+                        }
+                        int i = n < k ? n++ : n - 1;
+                        while (i > 0 && bestDistances[i - 1] > d) {
+                            bestDistances[i] = bestDistances[i - 1];
+                            bestSlots[i] = bestSlots[i - 1];
+                            i--;
+                        }
+                        bestDistances[i] = d;
+                        bestSlots[i] = s;
+                    }
+                }
+            }
+            // Anything in the next ring is at least ring * cellSize away.
+            double reach = ring * cellSize;
+            if (n == k && bestDistances[n - 1] <= reach * reach) {
+                break;
+            }
+        }
+        return n;
+    }
+
+    private int cell (double v) {
+        return (int)Math.floor(v * inverseCellSize);
+    }
+
+    private long cellKey (double x, double y) {
+        return key(cell(x), cell(y));
+    }
+
+    private static long key (int cx, int cy) {
+        return ((long)cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static int hash (long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int)key;
+    }
+
+    private int head (long key) {
+        int mask = tableKeys.length - 1;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            long k = tableKeys[i];
+            if (k == key) {
+                return tableHeads[i];
+            }
+            if (k == NO_CELL) {
+                return NONE;
+            }
+        }
+    }
+
+    /** Returns the table index of the cell, adding it if needed. */
+    private int tableIndex (long key) {
+        int mask = tableKeys.length - 1;
+        int i = hash(key) & mask;
+        while (tableKeys[i] != NO_CELL) {
+            if (tableKeys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        if ((tableCount + 1) * 2 > tableKeys.length) {
+            growTable();
+            return tableIndex(key);
+        }
+        tableKeys[i] = key;
+        tableHeads[i] = NONE;
+        tableCount++;
+        return i;
+    }
+
+    private void growTable () {
+        long[] oldKeys = tableKeys;
+        int[] oldHeads = tableHeads;
+        tableKeys = new long[oldKeys.length * 2];
+        tableHeads = new int[oldKeys.length * 2];
+        Arrays.fill(tableKeys, NO_CELL);
+        int mask = tableKeys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != NO_CELL) {
+                int i = hash(oldKeys[j]) & mask;
+                while (tableKeys[i] != NO_CELL) {
+                    i = (i + 1) & mask;
+                }
+                tableKeys[i] = oldKeys[j];
+                tableHeads[i] = oldHeads[j];
+            }
+        }
+    }
+
+    private void link (int slot, long key) {
+        int t = tableIndex(key);
+        int first = tableHeads[t];
+        cellKeys[slot] = key;
+        prev[slot] = NONE;
+        next[slot] = first;
+        if (first != NONE) {
+            prev[first] = slot;
+        }
+        tableHeads[t] = slot;
+    }
+
+    private void unlink (int slot) {
+        int p = prev[slot];
+        int n = next[slot];
+        if (p != NONE) {
+            next[p] = n;
+        } else {
+            tableHeads[tableIndex(cellKeys[slot])] = n;
+        }
+        if (n != NONE) {
+            prev[n] = p;
+        }
+    }
+
+    private int allocate () {
+        if (freeSlot != NONE) {
+            int slot = freeSlot;
+            freeSlot = next[slot];
+            return slot;
+        }
+        if (slotsUsed == items.length) {
+            int capacity = items.length * 2;
+            items = Arrays.copyOf(items, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            cellKeys = Arrays.copyOf(cellKeys, capacity);
+            next = Arrays.copyOf(next, capacity);
+            prev = Arrays.copyOf(prev, capacity);
+        }
+        return slotsUsed++;
+    }
+}
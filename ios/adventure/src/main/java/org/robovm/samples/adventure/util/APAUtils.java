@@ -20,28 +20,26 @@
 package org.robovm.samples.adventure.util;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.robovm.apple.coregraphics.CGBitmapContext;
-import org.robovm.apple.coregraphics.CGBitmapInfo;
-import org.robovm.apple.coregraphics.CGColorSpace;
-import org.robovm.apple.coregraphics.CGImage;
-import org.robovm.apple.coregraphics.CGImageAlphaInfo;
 import org.robovm.apple.coregraphics.CGPoint;
-import org.robovm.apple.coregraphics.CGRect;
 import org.robovm.apple.foundation.NSArray;
 import org.robovm.apple.foundation.NSBundle;
 import org.robovm.apple.foundation.NSKeyedUnarchiver;
 import org.robovm.apple.foundation.NSMutableArray;
-import org.robovm.apple.spritekit.SKAction;
 import org.robovm.apple.spritekit.SKEmitterNode;
 import org.robovm.apple.spritekit.SKTexture;
 import org.robovm.apple.spritekit.SKTextureAtlas;
-import org.robovm.apple.uikit.UIImage;
+import org.robovm.objc.Selector;
+import org.robovm.rt.VM;
 import org.robovm.rt.bro.Struct;
 import org.robovm.rt.bro.annotation.StructMember;
-import org.robovm.rt.bro.ptr.IntPtr;
 
 public class APAUtils {
+    private static final Selector RESET_SIMULATION = Selector.register("resetSimulation");
 
     public final class APADataMap extends Struct<APADataMap> {
         public APADataMap () {
@@ -101,109 +99,56 @@ public class APAUtils {
         public native APATreeMap setUnusedB (byte unusedB);
     }
 
-    private static CGImage getCGImage (String name) {
-        int ix = name.lastIndexOf('/');
-        if (ix != -1) name = name.substring(ix);
-        UIImage uiImage = UIImage.getImage(name);
-        return uiImage.getCGImage();
-    }
-
-    private static CGBitmapContext createARGBBitmapContext (CGImage inImage) {
-        CGBitmapContext context = null;
-        CGColorSpace colorSpace = null;
-
-        int bitmapBytesPerRow = 0;
-
-        // Get image width, height. We'll use the entire image.
-        long pixelsWide = inImage.getWidth();
-        long pixelsHigh = inImage.getHeight();
-
-        // Declare the number of bytes per row. Each pixel in the bitmap in this
-        // example is represented by 4 bytes; 8 bits each of red, green, blue, and
-        // alpha.
-        bitmapBytesPerRow = (int)(pixelsWide * 4);
-
-        // Use the generic RGB color space.
-        colorSpace = CGColorSpace.createDeviceRGB();
-        if (colorSpace == null) {
-            System.err.println("Error allocating color space");
-            return null;
+    // Keeps the mapped map pixels alive for as long as structs point into
+    // them.
+    private static final Map<String, ByteBuffer> loadedMaps = new HashMap<>();
+
+    /** Returns the pixels of the named map PNG, decoded through the map cache
+     * in Library/Caches. Repeated loads of the same map share one buffer. */
+    private static synchronized ByteBuffer loadMap (String mapName) {
+        int ix = mapName.lastIndexOf('/');
+        if (ix != -1) mapName = mapName.substring(ix + 1);
+        ByteBuffer pixels = loadedMaps.get(mapName);
+        if (pixels != null) {
+            return pixels;
         }
 
-        // Allocate memory for image data. This is the destination in memory
-        // where any drawing to the bitmap context will be rendered.
-        IntPtr bitmapData = Struct.malloc(IntPtr.class, (int)(bitmapBytesPerRow * pixelsHigh));
-        if (bitmapData == null) {
-            System.err.println("Memory not allocated!");
+        int dot = mapName.lastIndexOf('.');
+        String path = NSBundle.getMainBundle().findResourcePath(dot != -1 ? mapName.substring(0, dot) : mapName,
+            dot != -1 ? mapName.substring(dot + 1) : null);
+        if (path == null) {
+            System.err.println("Map not found: " + mapName);
             return null;
         }
-
-        // Create the bitmap context. We want pre-multiplied ARGB, 8-bits
-        // per component. Regardless of what the source image format is
-        // (CMYK, Grayscale, and so on) it will be converted over to the format
-        // specified here by CGBitmapContextCreate.
-        context = CGBitmapContext.create(bitmapData, pixelsWide, pixelsHigh, 8, bitmapBytesPerRow, colorSpace, new CGBitmapInfo(
-            CGImageAlphaInfo.PremultipliedFirst.value()));
-        if (context == null) {
-            System.err.println("Context not created!");
+        try {
+            APAMapCache cache = new APAMapCache(new File(System.getenv("HOME"), "Library/Caches/maps"));
+            pixels = cache.load(new File(path)).pixels;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
-
-        return context;
+        loadedMaps.put(mapName, pixels);
+        return pixels;
     }
 
     public static APADataMap[] createDataMap (String mapName) {
-        CGImage inImage = getCGImage(mapName);
-        // Create the bitmap context.
-        CGBitmapContext context = createARGBBitmapContext(inImage);
-
-        if (context == null) {
+        ByteBuffer pixels = loadMap(mapName);
+        if (pixels == null) {
             return null;
         }
 
-        // Get image width, height. We'll use the entire image.
-        long w = inImage.getWidth();
-        long h = inImage.getHeight();
-        CGRect rect = new CGRect(0, 0, w, h);
-
-        // Draw the image to the bitmap context. Once we draw, the memory
-        // allocated for the context for rendering will then contain the
-        // raw image data in the specified color space.
-        context.drawImage(rect, inImage);
-
-        // Now we can get a pointer to the image data associated with the bitmap context.
-        IntPtr data = context.getData();
-
-        APADataMap map = data.as(APADataMap.class);
-        return map.toArray((int)(w * h));
+        // Point the structs straight at the mapped pixels, no copying.
+        APADataMap map = Struct.toStruct(APADataMap.class, VM.getDirectBufferAddress(pixels));
+        return map.toArray(pixels.capacity() / 4);
     }
 
     public static APATreeMap[] createTreeMap (String mapName) {
-        CGImage inImage = getCGImage(mapName);
-        // Create the bitmap context.
-        CGBitmapContext context = createARGBBitmapContext(inImage);
-
-        if (context == null) {
+        ByteBuffer pixels = loadMap(mapName);
+        if (pixels == null) {
             return null;
         }
 
-        // Get image width, height. We'll use the entire image.
-        long w = inImage.getWidth();
-        long h = inImage.getHeight();
-        CGRect rect = new CGRect(0, 0, w, h);
-
-        // Draw the image to the bitmap context. Once we draw, the memory
-        // allocated for the context for rendering will then contain the
-        // raw image data in the specified color space.
-        context.drawImage(rect, inImage);
-
-        // Now we can get a pointer to the image data associated with the bitmap context.
-        IntPtr data = context.getData();
-
-        // When finished, release the context.
-        context.release();
-
-        APATreeMap map = data.as(APATreeMap.class);
-        return map.toArray((int)(w * h));
+        APATreeMap map = Struct.toStruct(APATreeMap.class, VM.getDirectBufferAddress(pixels));
+        return map.toArray(pixels.capacity() / 4);
     }
 
     public static double polarAdjust (double x) {
@@ -237,17 +182,19 @@ public class APAUtils {
         return frames;
     }
 
-    public static void runOneShotEmitter (final SKEmitterNode emitter, double duration) {
-        emitter.runAction(SKAction.sequence(new NSArray<SKAction>(SKAction.wait(duration), SKAction.run(new Runnable() {
-            @Override
-            public void run () {
-                emitter.setParticleBirthRate(0);
-            }
-        }), SKAction.wait(emitter.getParticleLifetime() + emitter.getParticleLifetimeRange()), SKAction.removeFromParent())));
-    }
-
     public static SKEmitterNode getEmitterNodeByName (String emitterFileName) {
         return (SKEmitterNode)NSKeyedUnarchiver.unarchive(new File(NSBundle.getMainBundle().findResourcePath(emitterFileName,
             "sks")));
     }
+
+    /**
+     * Removes all particles of an emitter so it starts over. Does nothing
+     * where SpriteKit lacks resetSimulation (before iOS 8), the particles then
+     * just die off.
+     */
+    public static void resetSimulation (SKEmitterNode emitter) {
+        if (emitter.respondsToSelector(RESET_SIMULATION)) {
+            emitter.resetSimulation();
+        }
+    }
 }
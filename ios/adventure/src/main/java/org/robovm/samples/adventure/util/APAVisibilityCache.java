@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import java.util.Arrays;
+
+/**
+ * Caches cell-to-cell line-of-sight results of an {@link APAGridRaycaster}.
+ * Rays are cast between cell centers and results are stored in a fixed size
+ * direct-mapped table, so lookups never allocate and a colliding entry simply
+ * replaces the old one. Visibility is symmetric, so {@code (a, b)} and
+ * {@code (b, a)} share an entry.
+ * <p>
+ * When the wall grid changes call {@link #invalidateCell(int, int)} for every
+ * changed cell, or {@link #invalidateAll()}. Not thread-safe.
+ */
+public final class APAVisibilityCache {
+    private static final long EMPTY = -1L;
+
+    private final APAGridRaycaster raycaster;
+    private final long[] keys;
+    private final boolean[] visible;
+    private final int mask;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates a cache holding at most {@code maxEntries} results, rounded up
+     * to a power of two.
+     */
+    public APAVisibilityCache (APAGridRaycaster raycaster, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries <= 0");
+        }
+        int capacity = Integer.highestOneBit(Math.max(1, maxEntries - 1)) << 1;
+        this.raycaster = raycaster;
+        this.keys = new long[capacity];
+        this.visible = new boolean[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Returns {@code true} if the center of cell {@code (toX, toY)} can be
+     * seen from the center of cell {@code (fromX, fromY)}.
+     */
+    public boolean canSee (int fromX, int fromY, int toX, int toY) {
+        int width = raycaster.getWidth();
+        if (!contains(fromX, fromY) || !contains(toX, toY)) {
+            return false;
+        }
+        int a = fromY * width + fromX;
+        int b = toY * width + toX;
+        long key = a < b ? ((long)a << 32) | b : ((long)b << 32) | a;
+        int slot = slot(key);
+        if (keys[slot] == key) {
+            hits++;
+            return visible[slot];
+        }
+        misses++;
+        boolean result = raycaster.canSee(fromX + 0.5, fromY + 0.5, toX + 0.5, toY + 0.5);
+        keys[slot] = key;
+        visible[slot] = result;
+        return result;
+    }
+
+    /**
+     * Drops every cached result whose ray touches cell {@code (x, y)}.
+     */
+    public void invalidateCell (int x, int y) {
+        int width = raycaster.getWidth();
+        for (int i = 0; i < keys.length; i++) {
+            long key = keys[i];
+            if (key == EMPTY) {
+                continue;
+            }
+            int a = (int)(key >>> 32);
+            int b = (int)key;
+            if (touches(a % width + 0.5, a / width + 0.5, b % width + 0.5, b / width + 0.5, x, y)) {
+                keys[i] = EMPTY;
+            }
+        }
+    }
+
+    public void invalidateAll () {
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public int getCapacity () {
+        return keys.length;
+    }
+
+    public long getHitCount () {
+        return hits;
+    }
+
+    public long getMissCount () {
+        return misses;
+    }
+
+    private boolean contains (int x, int y) {
+        return x >= 0 && y >= 0 && x < raycaster.getWidth() && y < raycaster.getHeight();
+    }
+
+    private int slot (long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int)key & mask;
+    }
+
+    /**
+     * Liang-Barsky clip of the segment against the closed box of the cell.
+     */
+    private static boolean touches (double x0, double y0, double x1, double y1, int cellX, int cellY) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {x0 - cellX, cellX + 1 - x0, y0 - cellY, cellY + 1 - y0};
+        double tMin = 0.0;
+        double tMax = 1.0;
+        for (int i = 0; i < 4; i++) {
+            if (p[i] == 0) {
+                if (q[i] < 0) {
+                    return false;
+                }
+            } else {
+                double t = q[i] / p[i];
+                if (p[i] < 0) {
+                    tMin = Math.max(tMin, t);
+                } else {
+                    tMax = Math.min(tMax, t);
+                }
+            }
+        }
+        return tMin <= tMax;
+    }
+}
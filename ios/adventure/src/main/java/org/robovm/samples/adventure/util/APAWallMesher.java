@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the wall cells of a grid into a small set of non-overlapping
+ * rectangles, one physics body each. Greedy meshing: the first uncovered wall
+ * cell in row-major order starts a rectangle which is grown as far right as
+ * possible and then down as long as every cell of the next row is an
+ * uncovered wall. A cell is a wall if its value in the grid is non-zero. Has
+ * no platform dependencies.
+ */
+public final class APAWallMesher {
+
+    /** A rectangle of cells with its top left corner at {@code (x, y)}. */
+    public static final class Rect {
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+
+        Rect (int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public String toString () {
+            return String.format("Rect [x=%d, y=%d, width=%d, height=%d]", x, y, width, height);
+        }
+    }
+
+    private APAWallMesher () {
+    }
+
+    /**
+     * Returns rectangles which together cover every wall cell of the
+     * row-major grid exactly once and nothing else.
+     */
+    public static List<Rect> mesh (byte[] walls, int width, int height) {
+        if (width <= 0 || height <= 0 || walls.length < width * height) {
+            throw new IllegalArgumentException("Grid of " + walls.length + " cells is not " + width + "x" + height);
+        }
+        List<Rect> rects = new ArrayList<>();
+        boolean[] covered = new boolean[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!isFree(walls, covered, y * width + x)) {
+                    continue;
+                }
+                int row = y * width;
+                int w = 1;
+                while (x + w < width && isFree(walls, covered, row + x + w)) {
+                    w++;
+                }
+                int h = 1;
+                grow:
+                while (y + h < height) {
+                    int next = (y + h) * width + x;
+                    for (int i = 0; i < w; i++) {
+                        if (!isFree(walls, covered, next + i)) {
+                            break grow;
+                        }
+                    }
+                    h++;
+                }
+                for (int j = y; j < y + h; j++) {
+                    for (int i = x; i < x + w; i++) {
+                        covered[j * width + i] = true;
+                    }
+                }
+                rects.add(new Rect(x, y, w, h));
+                x += w - 1;
+            }
+        }
+        return rects;
+    }
+
+    /**
+     * Returns {@code true} if the rectangles are inside the grid, don't
+     * overlap and cover exactly its wall cells.
+     */
+    public static boolean coversExactly (byte[] walls, int width, int height, List<Rect> rects) {
+        byte[] count = new byte[width * height];
+        for (Rect r : rects) {
+            if (r.x < 0 || r.y < 0 || r.width <= 0 || r.height <= 0 || r.x + r.width > width
+                || r.y + r.height > height) {
+                return false;
+            }
+            for (int j = r.y; j < r.y + r.height; j++) {
+                for (int i = r.x; i < r.x + r.width; i++) {
+                    if (count[j * width + i]++ != 0) {
+                        return false;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < width * height; i++) {
+            if ((walls[i] != 0) != (count[i] != 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isFree (byte[] walls, boolean[] covered, int index) {
+        return walls[index] != 0 && !covered[index];
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.sim;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class APACharacterDataTest {
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void testAdd () {
+        APACharacterData data = new APACharacterData(4);
+        int slot = data.add(10, 20, 3, 42);
+        assertEquals(0, slot);
+        assertEquals(1, data.size());
+        assertEquals(1, data.getSlotCount());
+        assertEquals(APACharacterData.IDLE, data.getState(slot));
+        assertEquals(APAGameRules.CHARACTER_HEALTH, data.getHealth(slot), 0.0);
+        assertEquals(APACharacterData.NO_TARGET, data.getTarget(slot));
+        assertEquals(42, data.getOwner(slot));
+        assertEquals(10, data.getX(slot), 0.0);
+        assertEquals(20, data.getY(slot), 0.0);
+        assertEquals(10, data.getX(slot, 0), 0.0);
+        assertEquals(20, data.getY(slot, 0), 0.0);
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity () {
+        APACharacterData data = new APACharacterData(1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, data.add(i, -i, 1, i));
+        }
+        assertEquals(100, data.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, data.getX(i), 0.0);
+            assertEquals(-i, data.getY(i), 0.0);
+            assertEquals(i, data.getOwner(i));
+        }
+    }
+
+    @Test
+    public void testFreeSlotsAreReused () {
+        APACharacterData data = new APACharacterData(4);
+        for (int i = 0; i < 4; i++) {
+            data.add(0, 0, 1, i);
+        }
+        data.remove(1);
+        data.remove(3);
+        assertEquals(2, data.size());
+        assertEquals(4, data.getSlotCount());
+        assertEquals(APACharacterData.FREE, data.getState(1));
+        assertEquals(APACharacterData.FREE, data.getState(3));
+
+        // The last freed slot goes first, then the slots above the count
+        assertEquals(3, data.add(0, 0, 1, 5));
+        assertEquals(1, data.add(0, 0, 1, 6));
+        assertEquals(4, data.add(0, 0, 1, 7));
+        assertEquals(5, data.size());
+        assertEquals(5, data.getSlotCount());
+
+        // A reused slot starts over
+        assertEquals(APACharacterData.IDLE, data.getState(1));
+        assertEquals(APACharacterData.NO_TARGET, data.getTarget(1));
+        assertEquals(6, data.getOwner(1));
+    }
+
+    @Test
+    public void testKilledSlotIsReusedOnceRemoved () {
+        APACharacterData data = new APACharacterData(4);
+        int slot = data.add(0, 0, 1, 0);
+        data.setTimer(slot, -1);
+        data.kill(slot, 2);
+        assertEquals(APACharacterData.DYING, data.getState(slot));
+        assertEquals(0.0, data.getHealth(slot), 0.0);
+        assertEquals(2.0, data.getTimer(slot), 0.0);
+        // Dying characters keep their slot
+        assertEquals(1, data.add(0, 0, 1, 1));
+
+        data.remove(slot);
+        int reused = data.add(0, 0, 1, 2);
+        assertEquals(slot, reused);
+        assertEquals(APAGameRules.CHARACTER_HEALTH, data.getHealth(reused), 0.0);
+        assertEquals(0.0, data.getTimer(reused), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRemoveFreeSlot () {
+        APACharacterData data = new APACharacterData(4);
+        data.remove(data.add(0, 0, 1, 0));
+        data.remove(0);
+    }
+
+    @Test
+    public void testClear () {
+        APACharacterData data = new APACharacterData(4);
+        data.add(0, 0, 1, 0);
+        data.remove(data.add(0, 0, 1, 1));
+        data.clear();
+        assertEquals(0, data.size());
+        assertEquals(0, data.getSlotCount());
+        assertEquals(APACharacterData.FREE, data.getState(0));
+        assertEquals(0, data.add(0, 0, 1, 2));
+        assertEquals(1, data.add(0, 0, 1, 3));
+    }
+
+    @Test
+    public void testInterpolation () {
+        APACharacterData data = new APACharacterData(4);
+        int slot = data.add(0, 0, 1, 0);
+        data.setPosition(slot, 10, -20);
+        assertEquals(5, data.getX(slot, 0.5), EPSILON);
+        assertEquals(-10, data.getY(slot, 0.5), EPSILON);
+        assertEquals(10, data.getX(slot, 1), EPSILON);
+
+        // Pushing moves the whole step along
+        data.offset(slot, 1, 1);
+        assertEquals(6, data.getX(slot, 0.5), EPSILON);
+        assertEquals(-9, data.getY(slot, 0.5), EPSILON);
+
+        // Placing doesn't move between steps
+        data.place(slot, 100, 100);
+        assertEquals(100, data.getX(slot, 0), 0.0);
+        assertEquals(100, data.getY(slot, 0.5), 0.0);
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.sim;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.robovm.samples.adventure.util.APAFlowField;
+
+public class APACharacterSystemsTest {
+    private static final int SIZE = 10;
+    private static final double CELL = 10;
+    private static final double ALERT_RADIUS = 60;
+    private static final double CHASE_RADIUS = 15;
+    private static final double ATTACK_INTERVAL = 1;
+    private static final double ATTACK_DAMAGE = 10;
+    private static final double EPSILON = 1e-9;
+
+    private static APACharacterSystems systems (byte[] walls) {
+        return new APACharacterSystems(walls, SIZE, SIZE, CELL, ALERT_RADIUS, CHASE_RADIUS, ATTACK_INTERVAL,
+            ATTACK_DAMAGE);
+    }
+
+    /** A grid with y growing upwards from {@code (0, SIZE * CELL)}, as in the scene. */
+    private static APACharacterSystems systemsYUp (byte[] walls) {
+        return new APACharacterSystems(walls, SIZE, SIZE, CELL, 0, SIZE * CELL, true, ALERT_RADIUS, CHASE_RADIUS,
+            ATTACK_INTERVAL, ATTACK_DAMAGE);
+    }
+
+    private static APAFlowField field (byte[] walls, int goalX, int goalY) {
+        APAFlowField field = new APAFlowField(walls, SIZE, SIZE);
+        field.setGoal(goalX, goalY);
+        assertTrue(field.update(Integer.MAX_VALUE));
+        return field;
+    }
+
+    private static double center (int cell) {
+        return (cell + 0.5) * CELL;
+    }
+
+    @Test
+    public void testChasesNearestLivingTarget () {
+        byte[] walls = new byte[SIZE * SIZE];
+        APACharacterSystems systems = systems(walls);
+        APACharacterData data = new APACharacterData(4);
+        int slot = data.add(center(4), center(4), 5, 0);
+
+        // A dead target next to it, a living one farther right and another
+        // living one beyond the alert radius
+        systems.addTarget(center(6), center(4), false, field(walls, 6, 4));
+        int right = systems.addTarget(center(8), center(4), true, field(walls, 8, 4));
+        systems.addTarget(center(0), center(9), true, field(walls, 0, 9));
+        systems.chase(data);
+
+        assertEquals(right, data.getTarget(slot));
+        assertEquals(APACharacterData.CHASING, data.getState(slot));
+        assertEquals(5, data.getVelocityX(slot), EPSILON);
+        assertEquals(0, data.getVelocityY(slot), EPSILON);
+    }
+
+    @Test
+    public void testIdlesWithoutTargetInRange () {
+        byte[] walls = new byte[SIZE * SIZE];
+        APACharacterSystems systems = systems(walls);
+        APACharacterData data = new APACharacterData(4);
+        int slot = data.add(center(0), center(0), 5, 0);
+        systems.addTarget(center(9), center(0), true, field(walls, 9, 0));
+        systems.chase(data);
+        assertEquals(APACharacterData.IDLE, data.getState(slot));
+        assertEquals(APACharacterData.NO_TARGET, data.getTarget(slot));
+        assertEquals(0, data.getVelocityX(slot), 0.0);
+
+        // Chasing characters stop once the target moves away
+        systems.clearTargets();
+        systems.addTarget(center(3), center(0), true, field(walls, 3, 0));
+        systems.chase(data);
+        assertEquals(APACharacterData.CHASING, data.getState(slot));
+        systems.clearTargets();
+        systems.addTarget(center(9), center(0), true, field(walls, 9, 0));
+        systems.chase(data);
+        assertEquals(APACharacterData.IDLE, data.getState(slot));
+        assertEquals(0, data.getVelocityX(slot), 0.0);
+        assertEquals(0, data.getVelocityY(slot), 0.0);
+    }
+
+    @Test
+    public void testLeavesOtherStatesAlone () {
+        byte[] walls = new byte[SIZE * SIZE];
+        APACharacterSystems systems = systems(walls);
+        APACharacterData data = new APACharacterData(4);
+        int passive = data.add(center(4), center(4), 5, 0);
+        data.setState(passive, APACharacterData.PASSIVE);
+        int dying = data.add(center(4), center(4), 5, 0);
+        data.kill(dying, 1);
+        systems.addTarget(center(6), center(4), true, field(walls, 6, 4));
+        systems.chase(data);
+        assertEquals(APACharacterData.PASSIVE, data.getState(passive));
+        assertEquals(APACharacterData.NO_TARGET, data.getTarget(passive));
+        assertEquals(APACharacterData.DYING, data.getState(dying));
+    }
+
+    @Test
+    public void testFollowsFlowFieldWithYUp () {
+        byte[] walls = new byte[SIZE * SIZE];
+        APACharacterSystems systems = systemsYUp(walls);
+        APACharacterData data = new APACharacterData(4);
+        // Cell (4, 2), the target is three rows further down the grid, which
+        // is lower in the world
+        int slot = data.add(center(4), SIZE * CELL - center(2), 5, 0);
+        systems.addTarget(center(4), SIZE * CELL - center(5), true, field(walls, 4, 5));
+        systems.chase(data);
+        assertEquals(APACharacterData.CHASING, data.getState(slot));
+        assertEquals(0, data.getVelocityX(slot), EPSILON);
+        assertEquals(-5, data.getVelocityY(slot), EPSILON);
+    }
+
+    @Test
+    public void testAttacksOncePerInterval () {
+        byte[] walls = new byte[SIZE * SIZE];
+        APACharacterSystems systems = systems(walls);
+        APACharacterData data = new APACharacterData(4);
+        int slot = data.add(center(4), center(4), 5, 0);
+        int target = systems.addTarget(center(4) + 10, center(4), true, field(walls, 5, 4));
+
+        // The first attack is at once, then one per second
+        double[] expected = {10, 10, 10, 10, 20, 20, 20, 20, 30};
+        for (int step = 0; step < expected.length; step++) {
+            systems.update(data, 0.25);
+            assertEquals(APACharacterData.ATTACKING, data.getState(slot));
+            assertEquals("step " + step, expected[step], systems.getTargetDamage(target), 0.0);
+        }
+        assertEquals(0, data.getVelocityX(slot), 0.0);
+        assertEquals(center(4), data.getX(slot), 0.0);
+    }
+
+    @Test
+    public void testSlidesAlongWalls () {
+        // A wall down column 5
+        byte[] walls = new byte[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            walls[y * SIZE + 5] = 1;
+        }
+        APACharacterData data = new APACharacterData(4);
+        int slot = data.add(45, 45, 0, 0);
+        data.velocityX[slot] = 10;
+        data.velocityY[slot] = 10;
+        systems(walls).move(data, 1);
+        assertEquals(45, data.getX(slot), 0.0);
+        assertEquals(55, data.getY(slot), 0.0);
+
+        // A wall along row 5
+        walls = new byte[SIZE * SIZE];
+        for (int x = 0; x < SIZE; x++) {
+            walls[5 * SIZE + x] = 1;
+        }
+        data.place(slot, 45, 45);
+        systems(walls).move(data, 1);
+        assertEquals(55, data.getX(slot), 0.0);
+        assertEquals(45, data.getY(slot), 0.0);
+
+        // Into a corner, and off the grid
+        walls[4 * SIZE + 5] = 1;
+        data.place(slot, 45, 45);
+        systems(walls).move(data, 1);
+        assertEquals(45, data.getX(slot), 0.0);
+        assertEquals(45, data.getY(slot), 0.0);
+        data.place(slot, 5, 5);
+        data.velocityX[slot] = -10;
+        data.velocityY[slot] = -10;
+        systems(walls).move(data, 1);
+        assertEquals(5, data.getX(slot), 0.0);
+        assertEquals(5, data.getY(slot), 0.0);
+    }
+
+    @Test
+    public void testSlidesAlongWallsWithYUp () {
+        // A wall down column 5, world y 55 is in grid row 4
+        byte[] walls = new byte[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            walls[y * SIZE + 5] = 1;
+        }
+        APACharacterData data = new APACharacterData(4);
+        int slot = data.add(45, 55, 0, 0);
+        data.velocityX[slot] = 10;
+        data.velocityY[slot] = -10;
+        systemsYUp(walls).move(data, 1);
+        assertEquals(45, data.getX(slot), 0.0);
+        assertEquals(45, data.getY(slot), 0.0);
+
+        // A wall along grid row 5, which is world y 40 to 50
+        walls = new byte[SIZE * SIZE];
+        for (int x = 0; x < SIZE; x++) {
+            walls[5 * SIZE + x] = 1;
+        }
+        data.place(slot, 45, 55);
+        systemsYUp(walls).move(data, 1);
+        assertEquals(55, data.getX(slot), 0.0);
+        assertEquals(55, data.getY(slot), 0.0);
+    }
+
+    @Test
+    public void testNearest () {
+        APACharacterData data = new APACharacterData(4);
+        int far = data.add(30, 0, 1, 0);
+        int dying = data.add(5, 0, 1, 0);
+        data.kill(dying, 1);
+        int passive = data.add(0, 5, 1, 0);
+        data.setState(passive, APACharacterData.PASSIVE);
+        int near = data.add(0, -10, 1, 0);
+        data.remove(data.add(0, 0, 1, 0));
+
+        assertEquals(near, APACharacterSystems.nearest(data, 0, 0, 50));
+        assertEquals(far, APACharacterSystems.nearest(data, 25, 0, 50));
+        assertEquals(APACharacterData.NO_TARGET, APACharacterSystems.nearest(data, 0, 0, 10));
+        assertEquals(APACharacterData.NO_TARGET, APACharacterSystems.nearest(data, 100, 100, 50));
+    }
+
+    @Test
+    public void testApplyDamage () {
+        APACharacterData data = new APACharacterData(4);
+        int slot = data.add(0, 0, 1, 0);
+        data.velocityX[slot] = 3;
+        assertFalse(APACharacterSystems.applyDamage(data, slot, 60, 2));
+        assertEquals(40, data.getHealth(slot), 0.0);
+        assertEquals(APACharacterData.IDLE, data.getState(slot));
+        assertTrue(APACharacterSystems.applyDamage(data, slot, 40, 2));
+        assertEquals(APACharacterData.DYING, data.getState(slot));
+        assertEquals(2, data.getTimer(slot), 0.0);
+        assertEquals(0, data.getVelocityX(slot), 0.0);
+        assertEquals(APACharacterData.NO_TARGET, APACharacterSystems.nearest(data, 0, 0, 10));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.sim;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.robovm.samples.adventure.util.APAPngDecoder;
+
+public class APAGameRulesTest {
+    static final File ENVIRONMENT = new File("resources/Environment");
+
+    private static APAPngDecoder.Image decode (String name) throws IOException {
+        return APAPngDecoder.decode(Files.readAllBytes(new File(ENVIRONMENT, name).toPath()));
+    }
+
+    @Test
+    public void testChannelsAreUnsigned () {
+        // The map structs return signed bytes, 255 is -1
+        assertFalse(APAGameRules.isBoss((byte)255));
+        assertFalse(APAGameRules.isBoss((byte)201));
+        assertTrue(APAGameRules.isBoss((byte)200));
+        assertTrue(APAGameRules.isBoss((byte)0));
+
+        assertTrue(APAGameRules.isMarked((byte)255));
+        assertTrue(APAGameRules.isMarked((byte)200));
+        assertFalse(APAGameRules.isMarked((byte)199));
+        assertFalse(APAGameRules.isMarked((byte)0));
+
+        assertTrue(APAGameRules.isWall((byte)255));
+        assertTrue(APAGameRules.isWall((byte)201));
+        assertFalse(APAGameRules.isWall((byte)200));
+    }
+
+    @Test
+    public void testSpawnPrecedence () {
+        byte opaque = (byte)255;
+        byte set = (byte)255;
+        byte unset = 0;
+        assertEquals(APAGameRules.SPAWN_NONE, APAGameRules.getSpawn(opaque, unset, unset));
+        assertEquals(APAGameRules.SPAWN_HERO, APAGameRules.getSpawn(opaque, unset, set));
+        assertEquals(APAGameRules.SPAWN_CAVE, APAGameRules.getSpawn(opaque, set, set));
+        assertEquals(APAGameRules.SPAWN_BOSS, APAGameRules.getSpawn((byte)128, set, set));
+    }
+
+    @Test
+    public void testShippedLevelMapSpawns () throws IOException {
+        APAPngDecoder.Image map = decode("map_level.png");
+        // Scan the map like APAAdventureScene.addSpawnPoints() does
+        int bosses = 0;
+        int heroSpawns = 0;
+        int heroCell = -1;
+        List<Integer> caveCells = new ArrayList<>();
+        for (int i = 0; i < map.width * map.height; i++) {
+            switch (APAGameRules.getSpawn(map.argb[i * 4], map.argb[i * 4 + 2], map.argb[i * 4 + 3])) {
+            case APAGameRules.SPAWN_BOSS:
+                bosses++;
+                break;
+            case APAGameRules.SPAWN_CAVE:
+                caveCells.add(i);
+                break;
+            case APAGameRules.SPAWN_HERO:
+                heroSpawns++;
+                heroCell = i;
+                break;
+            default:
+                break;
+            }
+        }
+        assertEquals(1, bosses);
+        assertEquals(13, caveCells.size());
+        assertEquals(1, heroSpawns);
+
+        // The simulation finds the same caves and spawn point
+        APASimWorld world = APASimWorld.fromLevelMap(map, 1, 1);
+        assertEquals(caveCells.size(), world.getCaves().size());
+        for (int i = 0; i < caveCells.size(); i++) {
+            APASimWorld.Cave cave = world.getCaves().get(i);
+            assertEquals(cellCenter(caveCells.get(i) % map.width), cave.getX(1), 0.0);
+            assertEquals(cellCenter(caveCells.get(i) / map.width), cave.getY(1), 0.0);
+        }
+        APASimWorld.Hero hero = world.getHeroes().get(0);
+        assertEquals(cellCenter(heroCell % map.width), hero.getX(1), 0.0);
+        assertEquals(cellCenter(heroCell / map.width), hero.getY(1), 0.0);
+    }
+
+    @Test
+    public void testShippedTreeMap () throws IOException {
+        APAPngDecoder.Image map = decode("map_trees.png");
+        // Scan the map like APAAdventureScene.addTrees() does
+        int small = 0;
+        int big = 0;
+        for (int i = 0; i < map.width * map.height; i++) {
+            if (APAGameRules.isMarked(map.argb[i * 4 + 2])) {
+                small++;
+            } else if (APAGameRules.isMarked(map.argb[i * 4 + 1])) {
+                big++;
+            }
+        }
+        assertEquals(160, small);
+        assertEquals(51, big);
+    }
+
+    private static double cellCenter (int cell) {
+        return (cell + 0.5) * APAGameRules.CELL_SIZE;
+    }
+}
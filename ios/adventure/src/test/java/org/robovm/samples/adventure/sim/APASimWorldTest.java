@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.sim;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.robovm.samples.adventure.util.APAPngDecoder;
+
+public class APASimWorldTest {
+    /** 30 simulated seconds. */
+    private static final int STEPS = 1800;
+
+    private static APAPngDecoder.Image map;
+
+    @BeforeClass
+    public static void decodeMap () throws IOException {
+        map = APAPngDecoder.decode(Files.readAllBytes(new File("resources/Environment/map_level.png").toPath()));
+    }
+
+    private static APASimWorld run (long seed, int steps) {
+        APASimWorld world = APASimWorld.fromLevelMap(map, 2, seed);
+        for (int i = 0; i < steps; i++) {
+            world.step(APAGameRules.FIXED_TIME_STEP);
+        }
+        return world;
+    }
+
+    @Test
+    public void testSameSeedStaysInLockstep () {
+        APASimWorld a = APASimWorld.fromLevelMap(map, 2, 7);
+        APASimWorld b = APASimWorld.fromLevelMap(map, 2, 7);
+        for (int i = 0; i < 600; i++) {
+            a.step(APAGameRules.FIXED_TIME_STEP);
+            b.step(APAGameRules.FIXED_TIME_STEP);
+            assertEquals("step " + i, a.getChecksum(), b.getChecksum());
+        }
+        assertEquals(a.getGoblinsSpawned(), b.getGoblinsSpawned());
+        assertEquals(a.getGoblinsKilled(), b.getGoblinsKilled());
+    }
+
+    @Test
+    public void testChecksumForFixedSeed () {
+        // Changes whenever the rules or the systems change behaviour. Update
+        // it deliberately, together with the headless runner's reference.
+        APASimWorld world = run(1, STEPS);
+        assertEquals(0x92ebaae8c5b30fccL, world.getChecksum());
+        assertEquals(35, world.getGoblinsSpawned());
+        assertEquals(26, world.getGoblinsKilled());
+        assertEquals(4, world.getCavesDestroyed());
+        assertEquals(STEPS, world.getStepCount());
+        assertEquals(STEPS * APAGameRules.FIXED_TIME_STEP, world.getTime(), 1e-9);
+    }
+
+    @Test
+    public void testSeedsDiverge () {
+        assertTrue(run(1, STEPS).getChecksum() != run(2, STEPS).getChecksum());
+    }
+}
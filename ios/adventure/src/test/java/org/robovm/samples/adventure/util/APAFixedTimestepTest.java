@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class APAFixedTimestepTest {
+    private static final double STEP = 1.0 / 60.0;
+    private static final double EPSILON = 1e-9;
+
+    private static APAFixedTimestep timestep () {
+        return new APAFixedTimestep(STEP, 4);
+    }
+
+    @Test
+    public void test60Fps () {
+        APAFixedTimestep timestep = timestep();
+        for (int frame = 0; frame < 600; frame++) {
+            assertEquals("frame " + frame, 1, timestep.advance(1.0 / 60.0));
+            assertEquals(0.0, timestep.getAlpha(), EPSILON);
+        }
+        assertEquals(600, timestep.getStepCount());
+        assertEquals(0.0, timestep.getDroppedTime(), 0.0);
+    }
+
+    @Test
+    public void test30Fps () {
+        APAFixedTimestep timestep = timestep();
+        for (int frame = 0; frame < 300; frame++) {
+            assertEquals("frame " + frame, 2, timestep.advance(1.0 / 30.0));
+            assertEquals(0.0, timestep.getAlpha(), EPSILON);
+        }
+        assertEquals(600, timestep.getStepCount());
+    }
+
+    @Test
+    public void test120Fps () {
+        APAFixedTimestep timestep = timestep();
+        for (int frame = 0; frame < 1200; frame++) {
+            int steps = timestep.advance(1.0 / 120.0);
+            if (frame % 2 == 0) {
+                assertEquals("frame " + frame, 0, steps);
+                assertEquals(0.5, timestep.getAlpha(), EPSILON);
+            } else {
+                assertEquals("frame " + frame, 1, steps);
+                assertEquals(0.0, timestep.getAlpha(), EPSILON);
+            }
+        }
+        assertEquals(600, timestep.getStepCount());
+    }
+
+    @Test
+    public void testUnevenFramesKeepTheRemainder () {
+        APAFixedTimestep timestep = timestep();
+        // 1.5 steps, then 0.75 steps: 1 step with 0.5 left, then 1 with 0.25 left
+        assertEquals(1, timestep.advance(1.5 * STEP));
+        assertEquals(0.5, timestep.getAlpha(), EPSILON);
+        assertEquals(1, timestep.advance(0.75 * STEP));
+        assertEquals(0.25, timestep.getAlpha(), EPSILON);
+    }
+
+    @Test
+    public void testLongStallIsCappedAndExcessDropped () {
+        APAFixedTimestep timestep = timestep();
+        // A one second stall would need 60 steps, only 4 are run
+        assertEquals(4, timestep.advance(1.0));
+        assertEquals(56 * STEP, timestep.getDroppedTime(), EPSILON);
+        assertEquals(0.0, timestep.getAlpha(), EPSILON);
+        // The dropped time isn't caught up with later
+        assertEquals(1, timestep.advance(STEP));
+        assertEquals(5, timestep.getStepCount());
+
+        // A remainder survives the cap
+        assertEquals(4, timestep.advance(10.5 * STEP));
+        assertEquals(0.5, timestep.getAlpha(), EPSILON);
+        assertEquals(62 * STEP, timestep.getDroppedTime(), EPSILON);
+    }
+
+    @Test
+    public void testInvalidTimesAreIgnored () {
+        APAFixedTimestep timestep = timestep();
+        assertEquals(0, timestep.advance(-1));
+        assertEquals(0, timestep.advance(Double.NaN));
+        assertEquals(0, timestep.advance(Double.POSITIVE_INFINITY));
+        assertEquals(0.0, timestep.getAlpha(), 0.0);
+        assertEquals(0, timestep.getStepCount());
+    }
+
+    @Test
+    public void testReset () {
+        APAFixedTimestep timestep = timestep();
+        timestep.advance(0.5 * STEP);
+        timestep.reset();
+        assertEquals(0.0, timestep.getAlpha(), 0.0);
+        assertEquals(0, timestep.advance(0.5 * STEP));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsZeroStep () {
+        new APAFixedTimestep(0, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsZeroMaxSteps () {
+        new APAFixedTimestep(STEP, 0);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class APAFlowFieldTest {
+    private static final int[] DX = {1, 1, 0, -1, -1, -1, 0, 1};
+    private static final int[] DY = {0, 1, 1, 1, 0, -1, -1, -1};
+
+    private static byte[] randomWalls (int size, int blocks, long seed) {
+        Random random = new Random(seed);
+        byte[] walls = new byte[size * size];
+        for (int i = 0; i < blocks; i++) {
+            int bx = random.nextInt(size - 3);
+            int by = random.nextInt(size - 3);
+            for (int y = by; y < by + 3; y++) {
+                for (int x = bx; x < bx + 3; x++) {
+                    walls[y * size + x] = 1;
+                }
+            }
+        }
+        return walls;
+    }
+
+    private static boolean isOpen (byte[] walls, int size, int x, int y) {
+        return x >= 0 && y >= 0 && x < size && y < size && walls[y * size + x] == 0;
+    }
+
+    /** Plain Dijkstra with the same costs and corner rule. */
+    private static int[] referenceDistances (byte[] walls, int size, int goal) {
+        int[] dist = new int[size * size];
+        Arrays.fill(dist, APAFlowField.UNREACHABLE);
+        PriorityQueue<long[]> queue = new PriorityQueue<>(16, new Comparator<long[]>() {
+            @Override
+            public int compare (long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+        dist[goal] = 0;
+        queue.add(new long[] {0, goal});
+        while (!queue.isEmpty()) {
+            long[] entry = queue.poll();
+            int cell = (int)entry[1];
+            if (entry[0] != dist[cell]) {
+                continue;
+            }
+            int x = cell % size;
+            int y = cell / size;
+            for (int dir = 0; dir < 8; dir++) {
+                int nx = x + DX[dir];
+                int ny = y + DY[dir];
+                if (!isOpen(walls, size, nx, ny)) {
+                    continue;
+                }
+                boolean diagonal = (dir & 1) != 0;
+                if (diagonal && (!isOpen(walls, size, nx, y) || !isOpen(walls, size, x, ny))) {
+                    continue;
+                }
+                int d = dist[cell] + (diagonal ? 7 : 5);
+                int n = ny * size + nx;
+                if (d < dist[n]) {
+                    dist[n] = d;
+                    queue.add(new long[] {d, n});
+                }
+            }
+        }
+        return dist;
+    }
+
+    @Test
+    public void testMatchesReferenceDijkstra () {
+        int size = 128;
+        byte[] walls = randomWalls(size, 400, 1);
+        int goal = 64 * size + 64;
+        walls[goal] = 0;
+        APAFlowField field = new APAFlowField(walls, size, size);
+        field.setGoal(64, 64);
+        // In slices, like the scene does
+        int frames = 0;
+        while (!field.update(1000)) {
+            frames++;
+        }
+        assertTrue(frames > 1);
+        assertEquals(goal, field.getGoal());
+
+        int[] expected = referenceDistances(walls, size, goal);
+        int reachable = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                assertEquals("(" + x + ", " + y + ")", expected[y * size + x], field.getDistance(x, y));
+                if (expected[y * size + x] == APAFlowField.UNREACHABLE || (x == 64 && y == 64)) {
+                    continue;
+                }
+                reachable++;
+                // Following the directions reaches the goal
+                int cx = x;
+                int cy = y;
+                for (int steps = 0; cx != 64 || cy != 64; steps++) {
+                    assertTrue(steps < size * size);
+                    int direction = field.getDirection(cx, cy);
+                    assertTrue(direction != APAFlowField.NO_DIRECTION);
+                    int nx = cx + DX[direction];
+                    int ny = cy + DY[direction];
+                    assertTrue(isOpen(walls, size, nx, ny));
+                    if ((direction & 1) != 0) {
+                        assertTrue(isOpen(walls, size, nx, cy) && isOpen(walls, size, cx, ny));
+                    }
+                    cx = nx;
+                    cy = ny;
+                }
+            }
+        }
+        assertTrue(reachable > size * size / 2);
+    }
+
+    @Test
+    public void testNoCornerCutting () {
+        // Walls at (1, 0) and (0, 1) close off the diagonal from (0, 0) to (1, 1)
+        byte[] walls = {
+            0, 1, 0,
+            1, 0, 0,
+            0, 0, 0};
+        APAFlowField field = new APAFlowField(walls, 3, 3);
+        field.setGoal(1, 1);
+        assertTrue(field.update(Integer.MAX_VALUE));
+        assertEquals(APAFlowField.UNREACHABLE, field.getDistance(0, 0));
+        assertEquals(APAFlowField.NO_DIRECTION, field.getDirection(0, 0));
+        assertEquals(7, field.getDistance(2, 2));
+        assertEquals(APAFlowField.NO_DIRECTION, field.getDirection(1, 1));
+    }
+
+    @Test
+    public void testGoalOutsideGridOrInWall () {
+        byte[] walls = new byte[16];
+        walls[5] = 1;
+        APAFlowField field = new APAFlowField(walls, 4, 4);
+        assertTrue(field.setGoal(1, 1));
+        assertFalse(field.setGoal(1, 1));
+        assertTrue(field.update(100));
+        assertEquals(APAFlowField.UNREACHABLE, field.getDistance(0, 0));
+        field.setGoal(-1, 7);
+        assertTrue(field.update(100));
+        assertEquals(-1, field.getGoal());
+        assertEquals(APAFlowField.NO_DIRECTION, field.getDirection(0, 0));
+    }
+
+    /**
+     * A goal which moves to another cell every frame, faster than a field can
+     * be integrated, still gets fields swapped in regularly and the last goal
+     * is reached soon after it stops moving.
+     */
+    @Test
+    public void testFastMovingGoalStillCompletesFields () {
+        int size = 64;
+        APAFlowField field = new APAFlowField(new byte[size * size], size, size);
+        int budget = size * size / 4;
+        int swaps = 0;
+        int previousGoal = field.getGoal();
+        for (int frame = 0; frame < 200; frame++) {
+            int x = frame % size;
+            int y = (frame / size) * 7 % size;
+            assertTrue(field.setGoal(x, y));
+            assertFalse(field.update(budget));
+            if (field.getGoal() != previousGoal) {
+                swaps++;
+                previousGoal = field.getGoal();
+                // The field is at most two goals behind
+                assertEquals(0, field.getDistance(previousGoal % size, previousGoal / size));
+                int age = frame - (previousGoal % size + previousGoal / size / 7 * size);
+                assertTrue("field is " + age + " frames old", age <= 2 * 5);
+            }
+        }
+        assertTrue("only " + swaps + " swaps", swaps >= 200 / 10);
+
+        // Once the goal stops moving its field is done within two fields' time
+        int frames = 0;
+        while (!field.update(budget)) {
+            frames++;
+        }
+        assertTrue(frames <= 2 * 5);
+        assertEquals(199 % size + (199 / size) * 7 % size * size, field.getGoal());
+    }
+
+    @Test
+    public void testReturningToCurrentGoalStopsIntegrating () {
+        APAFlowField field = new APAFlowField(new byte[32 * 32], 32, 32);
+        field.setGoal(3, 3);
+        assertTrue(field.update(Integer.MAX_VALUE));
+        field.setGoal(20, 20);
+        assertFalse(field.update(10));
+        assertTrue(field.setGoal(3, 3));
+        assertFalse(field.isIntegrating());
+        assertTrue(field.update(10));
+        assertEquals(3 * 32 + 3, field.getGoal());
+        assertEquals(5, field.getDistance(4, 3));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class APAGridRaycasterTest {
+    private static final double EPSILON = 1e-9;
+
+    /** Returns a raycaster over a grid with walls at the specified x, y pairs. */
+    private static APAGridRaycaster grid (int width, int height, int... walls) {
+        byte[] cells = new byte[width * height];
+        for (int i = 0; i < walls.length; i += 2) {
+            cells[walls[i + 1] * width + walls[i]] = 1;
+        }
+        return new APAGridRaycaster(cells, width, height);
+    }
+
+    @Test
+    public void testEmptyGrid () {
+        APAGridRaycaster r = grid(4, 4);
+        assertTrue(r.canSee(0.5, 0.5, 3.5, 3.5));
+        assertTrue(r.canSee(0.5, 2.5, 3.5, 2.5));
+        assertTrue(r.canSee(2.5, 3.5, 2.5, 0.5));
+        assertTrue(r.canSee(1.5, 1.5, 1.5, 1.5));
+        assertEquals(APAGridRaycaster.NO_HIT, r.cast(0.1, 3.9, 3.9, 0.1), 0);
+    }
+
+    @Test
+    public void testAxisAlignedRays () {
+        APAGridRaycaster r = grid(4, 4, 2, 1);
+        assertEquals(1.5, r.cast(0.5, 1.5, 3.5, 1.5), EPSILON);
+        assertEquals(0.5, r.cast(3.5, 1.5, 0.5, 1.5), EPSILON);
+        assertEquals(1.5, r.cast(2.5, 3.5, 2.5, 0.5), EPSILON);
+        assertEquals(0.5, r.cast(2.5, 0.5, 2.5, 3.5), EPSILON);
+        assertTrue(r.canSee(0.5, 0.5, 3.5, 0.5));
+        assertTrue(r.canSee(1.5, 0.5, 1.5, 3.5));
+        // Stops short of the wall
+        assertTrue(r.canSee(0.5, 1.5, 1.99, 1.5));
+        assertFalse(r.canSee(0.5, 1.5, 2.0, 1.5));
+    }
+
+    @Test
+    public void testRayAlongGridLineBelongsToCellAfterIt () {
+        // x = 2.0 lies in column 2, not column 1
+        assertTrue(grid(4, 4, 1, 2).canSee(2.0, 0.5, 2.0, 3.5));
+        assertEquals(1.5, grid(4, 4, 2, 2).cast(2.0, 0.5, 2.0, 3.5), EPSILON);
+    }
+
+    @Test
+    public void testStartOrEndInWall () {
+        APAGridRaycaster r = grid(4, 4, 1, 1);
+        assertEquals(0.0, r.cast(1.5, 1.5, 3.5, 3.5), 0);
+        assertEquals(0.0, r.cast(1.5, 1.5, 1.5, 1.5), 0);
+        assertFalse(r.canSee(3.5, 1.5, 1.5, 1.5));
+        assertEquals(1.5, r.cast(3.5, 1.5, 1.5, 1.5), EPSILON);
+    }
+
+    @Test
+    public void testDiagonalThroughCorner () {
+        double diagonal = Math.hypot(0.5, 0.5);
+        // Can't slip between two diagonally adjacent walls
+        assertEquals(diagonal, grid(3, 3, 1, 0, 0, 1).cast(0.5, 0.5, 1.5, 1.5), EPSILON);
+        // Either wall touching the corner blocks
+        assertEquals(diagonal, grid(3, 3, 1, 0).cast(0.5, 0.5, 1.5, 1.5), EPSILON);
+        assertEquals(diagonal, grid(3, 3, 0, 1).cast(0.5, 0.5, 1.5, 1.5), EPSILON);
+        assertEquals(diagonal, grid(3, 3, 1, 0).cast(1.5, 1.5, 0.5, 0.5), EPSILON);
+        // Walls diagonal to the corner don't
+        assertTrue(grid(3, 3, 0, 2, 2, 0).canSee(0.5, 0.5, 2.5, 2.5));
+        assertEquals(diagonal, grid(3, 3, 1, 1).cast(0.5, 0.5, 2.5, 2.5), EPSILON);
+    }
+
+    @Test
+    public void testOutsideGridIsWall () {
+        APAGridRaycaster r = grid(4, 4);
+        assertTrue(r.isWall(-1, 0));
+        assertTrue(r.isWall(0, 4));
+        assertFalse(r.isWall(3, 3));
+        assertEquals(0.5, r.cast(0.5, 0.5, -1.5, 0.5), EPSILON);
+        assertEquals(0.5, r.cast(3.5, 3.5, 3.5, 5.5), EPSILON);
+        assertEquals(Math.hypot(0.5, 0.5), r.cast(3.5, 0.5, 4.5, -0.5), EPSILON);
+        assertEquals(0.0, r.cast(-0.5, 1.5, 1.5, 1.5), 0);
+        assertEquals(0.0, r.cast(1.5, 4.0, 1.5, 1.5), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGridTooSmall () {
+        new APAGridRaycaster(new byte[15], 4, 4);
+    }
+
+    /**
+     * Returns the distance to the first wall cell on the segment by testing
+     * the segment against every cell in its bounding box.
+     */
+    private static double bruteForce (APAGridRaycaster r, double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double first = Double.POSITIVE_INFINITY;
+        for (int y = (int)Math.floor(Math.min(y0, y1)); y <= (int)Math.floor(Math.max(y0, y1)); y++) {
+            for (int x = (int)Math.floor(Math.min(x0, x1)); x <= (int)Math.floor(Math.max(x0, x1)); x++) {
+                if (!r.isWall(x, y)) {
+                    continue;
+                }
+                double[] t = {0, 1};
+                if (clip(-dx, x0 - x, t) && clip(dx, x + 1 - x0, t) && clip(-dy, y0 - y, t) && clip(dy, y + 1 - y0, t)) {
+                    first = Math.min(first, t[0]);
+                }
+            }
+        }
+        return first == Double.POSITIVE_INFINITY ? APAGridRaycaster.NO_HIT : first * Math.hypot(dx, dy);
+    }
+
+    private static boolean clip (double p, double q, double[] t) {
+        if (p == 0) {
+            return q >= 0;
+        }
+        double r = q / p;
+        if (p < 0) {
+            t[0] = Math.max(t[0], r);
+        } else {
+            t[1] = Math.min(t[1], r);
+        }
+        return t[0] <= t[1];
+    }
+
+    @Test
+    public void testMatchesBruteForce () {
+        Random random = new Random(42);
+        int size = 64;
+        byte[] cells = new byte[size * size];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = (byte)(random.nextInt(10) == 0 ? 1 : 0);
+        }
+        APAGridRaycaster r = new APAGridRaycaster(cells, size, size);
+        for (int i = 0; i < 20000; i++) {
+            // Some rays start or end outside the grid
+            double x0 = random.nextDouble() * (size + 4) - 2;
+            double y0 = random.nextDouble() * (size + 4) - 2;
+            double length = random.nextDouble() * 20;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double x1 = x0 + Math.cos(angle) * length;
+            double y1 = y0 + Math.sin(angle) * length;
+            assertEquals(x0 + "," + y0 + " -> " + x1 + "," + y1, bruteForce(r, x0, y0, x1, y1),
+                r.cast(x0, y0, x1, y1), EPSILON);
+        }
+    }
+}
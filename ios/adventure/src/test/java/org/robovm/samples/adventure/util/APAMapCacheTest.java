@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class APAMapCacheTest {
+    private File directory;
+    private File png;
+    private File cacheFile;
+    private APAMapCache cache;
+
+    @Before
+    public void setUp () throws IOException {
+        directory = Files.createTempDirectory("APAMapCacheTest").toFile();
+        png = new File(directory, "map_level.png");
+        Files.copy(new File(APAPngDecoderTest.ENVIRONMENT, "map_level.png").toPath(), png.toPath());
+        cacheFile = new File(directory, "cache/map_level.png.map");
+        cache = new APAMapCache(new File(directory, "cache"));
+    }
+
+    @After
+    public void tearDown () {
+        for (File f : new File(directory, "cache").listFiles()) {
+            f.delete();
+        }
+        new File(directory, "cache").delete();
+        png.delete();
+        directory.delete();
+    }
+
+    private static byte[] bytes (ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private byte[] decoded () throws IOException {
+        return APAPngDecoder.decode(Files.readAllBytes(png.toPath())).argb;
+    }
+
+    @Test
+    public void testMatchesDecoder () throws IOException {
+        APAMapCache.Bitmap bitmap = cache.load(png);
+        assertEquals(256, bitmap.width);
+        assertEquals(256, bitmap.height);
+        assertTrue(bitmap.pixels.isDirect());
+        assertArrayEquals(decoded(), bytes(bitmap.pixels));
+        assertEquals(APAMapCache.HEADER_SIZE + 256 * 256 * 4, cacheFile.length());
+
+        // Read from the cache file the second time
+        assertArrayEquals(decoded(), bytes(cache.load(png).pixels));
+    }
+
+    /**
+     * With the size and modification time unchanged the PNG isn't read at
+     * all, not even to hash it.
+     */
+    @Test
+    public void testUnchangedAttributesSkipReading () throws IOException {
+        byte[] expected = bytes(cache.load(png).pixels);
+        long lastModified = png.lastModified();
+        try (RandomAccessFile file = new RandomAccessFile(png, "rw")) {
+            file.write(new byte[(int)file.length()]);
+        }
+        assertTrue(png.setLastModified(lastModified));
+        assertArrayEquals(expected, bytes(cache.load(png).pixels));
+    }
+
+    @Test
+    public void testTouchedPngReusesPixels () throws IOException {
+        byte[] expected = bytes(cache.load(png).pixels);
+        long touched = png.lastModified() - 60000;
+        assertTrue(png.setLastModified(touched));
+        assertArrayEquals(expected, bytes(cache.load(png).pixels));
+
+        // The header now has the new time, so the PNG isn't read again
+        try (RandomAccessFile file = new RandomAccessFile(png, "rw")) {
+            file.write(new byte[(int)file.length()]);
+        }
+        assertTrue(png.setLastModified(touched));
+        assertArrayEquals(expected, bytes(cache.load(png).pixels));
+    }
+
+    @Test
+    public void testChangedPngIsDecodedAgain () throws IOException {
+        cache.load(png);
+        Files.copy(new File(APAPngDecoderTest.ENVIRONMENT, "map_trees.png").toPath(), png.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+        assertTrue(png.setLastModified(png.lastModified() + 60000));
+        assertArrayEquals(decoded(), bytes(cache.load(png).pixels));
+    }
+
+    @Test
+    public void testInvalidCacheFileIsRewritten () throws IOException {
+        cache.load(png);
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.setLength(cacheFile.length() - 1);
+        }
+        assertArrayEquals(decoded(), bytes(cache.load(png).pixels));
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.writeInt(0);
+        }
+        assertArrayEquals(decoded(), bytes(cache.load(png).pixels));
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class APAObjectPoolTest {
+    private static final class Item {
+        final int id;
+        boolean dirty;
+        int resets;
+
+        Item (int id) {
+            this.id = id;
+        }
+    }
+
+    private static final class ItemFactory implements APAObjectPool.Factory<Item> {
+        int created;
+
+        @Override
+        public Item create () {
+            return new Item(created++);
+        }
+
+        @Override
+        public void reset (Item item) {
+            item.dirty = false;
+            item.resets++;
+        }
+    }
+
+    @Test
+    public void testCap () {
+        APAObjectPool<Item> pool = new APAObjectPool<>(new ItemFactory(), 2);
+        Item a = pool.acquire();
+        Item b = pool.acquire();
+        assertNotNull(a);
+        assertNotNull(b);
+        assertNull(pool.acquire());
+        assertEquals(1, pool.getRefusedCount());
+        assertEquals(2, pool.getInUseCount());
+
+        // Releasing makes room again
+        assertTrue(pool.release(a));
+        assertSame(a, pool.acquire());
+        assertNull(pool.acquire());
+        assertEquals(2, pool.getRefusedCount());
+        assertEquals(2, pool.getCreatedCount());
+        assertEquals(3, pool.getAcquiredCount());
+        assertEquals(2, pool.getHighWater());
+    }
+
+    @Test
+    public void testLoweredAndRemovedCap () {
+        APAObjectPool<Item> pool = new APAObjectPool<>(new ItemFactory(), 0);
+        Item a = pool.acquire();
+        pool.acquire();
+        pool.acquire();
+        // Objects above a lowered cap stay in use, but no more are handed out
+        pool.setCap(2);
+        assertNull(pool.acquire());
+        assertEquals(3, pool.getInUseCount());
+        pool.release(a);
+        assertNull(pool.acquire());
+        pool.setCap(0);
+        assertSame(a, pool.acquire());
+        assertNotNull(pool.acquire());
+        assertEquals(4, pool.getHighWater());
+    }
+
+    @Test
+    public void testDoubleRelease () {
+        ItemFactory factory = new ItemFactory();
+        APAObjectPool<Item> pool = new APAObjectPool<>(factory, 0);
+        Item a = pool.acquire();
+        assertTrue(pool.release(a));
+        assertFalse(pool.release(a));
+        assertEquals(1, a.resets);
+        assertEquals(1, pool.getFreeCount());
+
+        // Released only once, so it's handed out only once
+        assertSame(a, pool.acquire());
+        assertNotSame(a, pool.acquire());
+
+        // Objects the pool never handed out aren't taken
+        assertFalse(pool.release(new Item(-1)));
+        assertEquals(0, pool.getFreeCount());
+    }
+
+    @Test
+    public void testResetOnRelease () {
+        APAObjectPool<Item> pool = new APAObjectPool<>(new ItemFactory(), 0);
+        Item a = pool.acquire();
+        a.dirty = true;
+        assertEquals(0, a.resets);
+        assertTrue(pool.isInUse(a));
+        pool.release(a);
+        assertFalse(pool.isInUse(a));
+        assertFalse(a.dirty);
+        assertEquals(1, a.resets);
+
+        // Prefilled objects come straight from the factory
+        pool.prefill(3);
+        assertEquals(3, pool.getFreeCount());
+        assertEquals(3, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testReuseOrder () {
+        APAObjectPool<Item> pool = new APAObjectPool<>(new ItemFactory(), 0);
+        Item a = pool.acquire();
+        Item b = pool.acquire();
+        Item c = pool.acquire();
+        pool.release(a);
+        pool.release(c);
+        pool.release(b);
+
+        // The most recently released object comes back first
+        assertSame(b, pool.acquire());
+        assertSame(c, pool.acquire());
+        assertSame(a, pool.acquire());
+        // Then new ones are created
+        assertEquals(3, pool.acquire().id);
+        assertEquals(4, pool.getCreatedCount());
+    }
+
+    @Test
+    public void testClear () {
+        APAObjectPool<Item> pool = new APAObjectPool<>(new ItemFactory(), 0);
+        Item a = pool.acquire();
+        Item b = pool.acquire();
+        pool.release(a);
+        pool.clear();
+        assertEquals(0, pool.getFreeCount());
+        assertNotSame(a, pool.acquire());
+        // Objects in use can still be released
+        assertTrue(pool.release(b));
+        assertSame(b, pool.acquire());
+    }
+
+    @Test
+    public void testOtherThreadFails () throws InterruptedException {
+        final APAObjectPool<Item> pool = new APAObjectPool<>(new ItemFactory(), 0);
+        pool.acquire();
+        final Throwable[] thrown = new Throwable[1];
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run () {
+                try {
+                    pool.acquire();
+                } catch (Throwable t) {
+                    thrown[0] = t;
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        assertTrue(thrown[0] instanceof IllegalStateException);
+        assertEquals(1, pool.getInUseCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNegativeCap () {
+        new APAObjectPool<>(new ItemFactory(), -1);
+    }
+}
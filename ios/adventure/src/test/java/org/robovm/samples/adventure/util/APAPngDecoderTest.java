@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class APAPngDecoderTest {
+    static final File ENVIRONMENT = new File("resources/Environment");
+
+    /** Asserts that the decoder matches ImageIO, premultiplied, in every pixel. */
+    private static void assertMatchesImageIO (byte[] png) throws IOException {
+        BufferedImage expected = ImageIO.read(new ByteArrayInputStream(png));
+        APAPngDecoder.Image image = APAPngDecoder.decode(png);
+        assertEquals(expected.getWidth(), image.width);
+        assertEquals(expected.getHeight(), image.height);
+        assertEquals(image.width * image.height * 4, image.argb.length);
+        for (int y = 0; y < image.height; y++) {
+            for (int x = 0; x < image.width; x++) {
+                int argb = expected.getRGB(x, y);
+                if (expected.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+                    // getRGB() converts linear gray to sRGB, the decoder
+                    // ignores color spaces
+                    int gray = expected.getRaster().getSample(x, y, 0);
+                    argb = 0xff000000 | gray << 16 | gray << 8 | gray;
+                }
+                int a = argb >>> 24;
+                int i = (y * image.width + x) * 4;
+                String at = "(" + x + ", " + y + ")";
+                assertEquals(at, a, image.argb[i] & 0xff);
+                assertEquals(at, premultiply((argb >> 16) & 0xff, a), image.argb[i + 1] & 0xff);
+                assertEquals(at, premultiply((argb >> 8) & 0xff, a), image.argb[i + 2] & 0xff);
+                assertEquals(at, premultiply(argb & 0xff, a), image.argb[i + 3] & 0xff);
+            }
+        }
+    }
+
+    private static int premultiply (int c, int a) {
+        return (c * a + 127) / 255;
+    }
+
+    private static byte[] encode (BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "png", out));
+        return out.toByteArray();
+    }
+
+    private static BufferedImage randomImage (int type, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(37, 23, type);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    @Test
+    public void testLevelMap () throws IOException {
+        assertMatchesImageIO(Files.readAllBytes(new File(ENVIRONMENT, "map_level.png").toPath()));
+    }
+
+    @Test
+    public void testTreeMap () throws IOException {
+        assertMatchesImageIO(Files.readAllBytes(new File(ENVIRONMENT, "map_trees.png").toPath()));
+    }
+
+    @Test
+    public void testColorTypes () throws IOException {
+        int[] types = {BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_BYTE_INDEXED};
+        for (int type : types) {
+            assertMatchesImageIO(encode(randomImage(type, type)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAPng () throws IOException {
+        APAPngDecoder.decode(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9});
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated () throws IOException {
+        byte[] png = encode(randomImage(BufferedImage.TYPE_INT_ARGB, 1));
+        byte[] truncated = new byte[png.length / 2];
+        System.arraycopy(png, 0, truncated, 0, truncated.length);
+        APAPngDecoder.decode(truncated);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class APASpatialHashTest {
+
+    /** An entity with a position, compared by identity. */
+    private static final class Entity {
+        final int id;
+        double x;
+        double y;
+
+        Entity (int id, double x, double y) {
+            this.id = id;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public String toString () {
+            return id + "@" + x + "," + y;
+        }
+    }
+
+    private static final APASpatialHash.Filter<Entity> EVEN = new APASpatialHash.Filter<Entity>() {
+        @Override
+        public boolean accept (Entity e) {
+            return e.id % 2 == 0;
+        }
+    };
+
+    private static double distanceSquared (Entity e, double x, double y) {
+        double dx = e.x - x;
+        double dy = e.y - y;
+        return dx * dx + dy * dy;
+    }
+
+    /** The distances of the k nearest accepted entities, by brute force. */
+    private static List<Double> bruteForceNearest (List<Entity> entities, double x, double y, int k, double maxDistance,
+        APASpatialHash.Filter<Entity> filter) {
+        List<Double> distances = new ArrayList<>();
+        for (Entity e : entities) {
+            double d = distanceSquared(e, x, y);
+            if (d < maxDistance * maxDistance && (filter == null || filter.accept(e))) {
+                distances.add(d);
+            }
+        }
+        Collections.sort(distances);
+        return distances.subList(0, Math.min(k, distances.size()));
+    }
+
+    private static List<Double> distances (List<Entity> found, double x, double y) {
+        List<Double> distances = new ArrayList<>();
+        for (Entity e : found) {
+            distances.add(distanceSquared(e, x, y));
+        }
+        return distances;
+    }
+
+    @Test
+    public void testInsertMoveRemove () {
+        APASpatialHash<Entity> hash = new APASpatialHash<>(10);
+        Entity a = new Entity(0, 5, 5);
+        Entity b = new Entity(1, 25, 5);
+        hash.insert(a, a.x, a.y);
+        hash.insert(b, b.x, b.y);
+        assertEquals(2, hash.size());
+        assertTrue(hash.contains(a));
+        assertSame(a, hash.nearest(0, 0, 100, null));
+
+        // Within the cell and into another one
+        hash.move(a, 6, 6);
+        hash.move(a, 40, 0);
+        assertSame(b, hash.nearest(0, 0, 100, null));
+        assertNull(hash.nearest(0, 0, 20, null));
+
+        assertTrue(hash.remove(b));
+        assertFalse(hash.remove(b));
+        assertFalse(hash.contains(b));
+        assertSame(a, hash.nearest(0, 0, 100, null));
+        hash.clear();
+        assertEquals(0, hash.size());
+        assertNull(hash.nearest(0, 0, Double.POSITIVE_INFINITY, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInsertTwice () {
+        APASpatialHash<Entity> hash = new APASpatialHash<>(10);
+        Entity a = new Entity(0, 5, 5);
+        hash.insert(a, a.x, a.y);
+        hash.insert(a, a.x, a.y);
+    }
+
+    @Test
+    public void testNearestIsStrictlyCloserThanMaxDistance () {
+        APASpatialHash<Entity> hash = new APASpatialHash<>(4);
+        Entity a = new Entity(0, 10, 0);
+        hash.insert(a, a.x, a.y);
+        assertNull(hash.nearest(0, 0, 10, null));
+        assertSame(a, hash.nearest(0, 0, 10.001, null));
+        List<Entity> out = new ArrayList<>();
+        assertEquals(0, hash.queryRadius(0, 0, 10, null, out));
+        assertEquals(1, hash.queryRadius(0, 0, 10.001, null, out));
+    }
+
+    /**
+     * The ring search stops as soon as the best candidate is closer than
+     * anything in the next ring could be. A candidate in the corner of an
+     * inner ring must not hide a closer item in an outer ring.
+     */
+    @Test
+    public void testRingSearchDoesNotStopEarly () {
+        APASpatialHash<Entity> hash = new APASpatialHash<>(10);
+        // The query point may lie at the edge of its cell, so a candidate in
+        // ring 0 never ends the search by itself
+        Entity center = new Entity(5, 5.9, 5);
+        Entity neighbour = new Entity(6, 10.5, 5);
+        hash.insert(center, center.x, center.y);
+        hash.insert(neighbour, neighbour.x, neighbour.y);
+        assertSame(neighbour, hash.nearest(9.9, 5, Double.POSITIVE_INFINITY, null));
+        hash.clear();
+
+        // Query near the right edge of cell (0, 0). The corner of ring 1 holds
+        // an item at distance ~17.8, ring 2 one at distance 10.6.
+        Entity corner = new Entity(0, -5, -5);
+        Entity outer = new Entity(1, 20.5, 5);
+        hash.insert(corner, corner.x, corner.y);
+        hash.insert(outer, outer.x, outer.y);
+        assertSame(outer, hash.nearest(9.9, 5, Double.POSITIVE_INFINITY, null));
+        List<Entity> out = new ArrayList<>();
+        assertEquals(2, hash.nearest(9.9, 5, 2, Double.POSITIVE_INFINITY, null, out));
+        assertSame(outer, out.get(0));
+        assertSame(corner, out.get(1));
+
+        // An item just past the border of ring 1 is at least 10 away, so one
+        // at distance 9.9 in ring 0 ends the search
+        Entity inner = new Entity(2, 0, 5);
+        Entity justOutside = new Entity(3, 20.01, 5);
+        hash.insert(inner, inner.x, inner.y);
+        hash.insert(justOutside, justOutside.x, justOutside.y);
+        assertSame(inner, hash.nearest(9.9, 5, Double.POSITIVE_INFINITY, null));
+        // ...but one at distance 9.89 in ring 1 still beats it
+        Entity ring1 = new Entity(4, 19.8, 5);
+        hash.insert(ring1, ring1.x, ring1.y);
+        assertSame(ring1, hash.nearest(9.91, 5, Double.POSITIVE_INFINITY, null));
+    }
+
+    @Test
+    public void testSparseItemsFarAway () {
+        APASpatialHash<Entity> hash = new APASpatialHash<>(1);
+        Entity a = new Entity(0, 1000, -1000);
+        Entity b = new Entity(1, -700, 900);
+        hash.insert(a, a.x, a.y);
+        hash.insert(b, b.x, b.y);
+        assertSame(b, hash.nearest(0, 0, Double.POSITIVE_INFINITY, null));
+        List<Entity> out = new ArrayList<>();
+        assertEquals(2, hash.nearest(0, 0, 5, Double.POSITIVE_INFINITY, null, out));
+        assertEquals(b, out.get(0));
+        assertEquals(a, out.get(1));
+    }
+
+    @Test
+    public void testMatchesBruteForce () {
+        Random random = new Random(42);
+        for (double cellSize : new double[] {16, 128, 1000}) {
+            APASpatialHash<Entity> hash = new APASpatialHash<>(cellSize);
+            List<Entity> entities = new ArrayList<>();
+            IdentityHashMap<Entity, Boolean> inserted = new IdentityHashMap<>();
+            for (int i = 0; i < 3000; i++) {
+                // Half uniform over the world, half in a few tight clusters
+                double x = i % 2 == 0 ? random.nextDouble() * 4096 - 2048 : (i % 7) * 300 + random.nextGaussian() * 5;
+                double y = i % 2 == 0 ? random.nextDouble() * 4096 - 2048 : (i % 5) * -300 + random.nextGaussian() * 5;
+                Entity e = new Entity(i, x, y);
+                entities.add(e);
+                hash.insert(e, x, y);
+                inserted.put(e, true);
+            }
+            for (int i = 0; i < 2000; i++) {
+                // Churn
+                Entity e = entities.get(random.nextInt(entities.size()));
+                if (random.nextInt(10) == 0) {
+                    entities.remove(e);
+                    assertTrue(hash.remove(e));
+                } else {
+                    e.x += random.nextGaussian() * cellSize;
+                    e.y += random.nextGaussian() * cellSize;
+                    hash.move(e, e.x, e.y);
+                }
+                assertEquals(entities.size(), hash.size());
+
+                double x = random.nextDouble() * 5000 - 2500;
+                double y = random.nextDouble() * 5000 - 2500;
+                double radius = random.nextDouble() * 600;
+                APASpatialHash.Filter<Entity> filter = random.nextBoolean() ? EVEN : null;
+
+                List<Entity> found = new ArrayList<>();
+                hash.queryRadius(x, y, radius, filter, found);
+                List<Entity> expected = new ArrayList<>();
+                for (Entity candidate : entities) {
+                    if (distanceSquared(candidate, x, y) < radius * radius
+                        && (filter == null || filter.accept(candidate))) {
+                        expected.add(candidate);
+                    }
+                }
+                Comparator<Entity> byId = new Comparator<Entity>() {
+                    @Override
+                    public int compare (Entity a, Entity b) {
+                        return Integer.compare(a.id, b.id);
+                    }
+                };
+                Collections.sort(found, byId);
+                Collections.sort(expected, byId);
+                assertEquals(expected, found);
+
+                double maxDistance = random.nextInt(4) == 0 ? Double.POSITIVE_INFINITY : radius;
+                int k = 1 + random.nextInt(8);
+                List<Entity> nearest = new ArrayList<>();
+                hash.nearest(x, y, k, maxDistance, filter, nearest);
+                assertEquals(bruteForceNearest(entities, x, y, k, maxDistance, filter), distances(nearest, x, y));
+
+                Entity single = hash.nearest(x, y, maxDistance, filter);
+                List<Double> best = bruteForceNearest(entities, x, y, 1, maxDistance, filter);
+                if (best.isEmpty()) {
+                    assertNull(single);
+                } else {
+                    assertEquals(best.get(0), distanceSquared(single, x, y), 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class APAVisibilityCacheTest {
+
+    @Test
+    public void testCapacity () {
+        APAGridRaycaster raycaster = new APAGridRaycaster(new byte[16], 4, 4);
+        assertEquals(4096, new APAVisibilityCache(raycaster, 4096).getCapacity());
+        assertEquals(1024, new APAVisibilityCache(raycaster, 1000).getCapacity());
+    }
+
+    @Test
+    public void testSymmetricPairsShareEntry () {
+        byte[] walls = new byte[8 * 8];
+        walls[3 * 8 + 4] = 1;
+        APAVisibilityCache cache = new APAVisibilityCache(new APAGridRaycaster(walls, 8, 8), 64);
+        assertFalse(cache.canSee(1, 3, 6, 3));
+        assertEquals(1, cache.getMissCount());
+        assertFalse(cache.canSee(6, 3, 1, 3));
+        assertFalse(cache.canSee(1, 3, 6, 3));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertTrue(cache.canSee(1, 1, 6, 1));
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testOutsideGrid () {
+        APAVisibilityCache cache = new APAVisibilityCache(new APAGridRaycaster(new byte[16], 4, 4), 16);
+        assertFalse(cache.canSee(-1, 0, 2, 2));
+        assertFalse(cache.canSee(1, 1, 1, 4));
+        assertEquals(0, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidateCellOnlyDropsRaysTouchingIt () {
+        byte[] walls = new byte[8 * 8];
+        APAVisibilityCache cache = new APAVisibilityCache(new APAGridRaycaster(walls, 8, 8), 64);
+        assertTrue(cache.canSee(0, 2, 7, 2));
+        assertTrue(cache.canSee(0, 5, 7, 5));
+        walls[2 * 8 + 3] = 1;
+        cache.invalidateCell(3, 2);
+        assertFalse(cache.canSee(0, 2, 7, 2));
+        assertEquals(3, cache.getMissCount());
+        assertTrue(cache.canSee(0, 5, 7, 5));
+        assertEquals(3, cache.getMissCount());
+
+        walls[5 * 8 + 0] = 1;
+        cache.invalidateAll();
+        assertFalse(cache.canSee(0, 5, 7, 5));
+    }
+
+    @Test
+    public void testInvalidateCellDropsRaysThroughItsCorner () {
+        byte[] walls = new byte[8 * 8];
+        APAVisibilityCache cache = new APAVisibilityCache(new APAGridRaycaster(walls, 8, 8), 64);
+        // Only touches the corner (5, 4) of cell (4, 4), which the raycaster
+        // treats as blocked once the cell is a wall
+        assertTrue(cache.canSee(2, 1, 6, 5));
+        walls[4 * 8 + 4] = 1;
+        cache.invalidateCell(4, 4);
+        assertFalse(cache.canSee(2, 1, 6, 5));
+    }
+
+    /**
+     * Random queries on a small cache, so entries collide, while walls are
+     * toggled and their cells invalidated. Every answer must match an
+     * uncached cast.
+     */
+    @Test
+    public void testMatchesUncachedCasts () {
+        Random random = new Random(42);
+        int size = 64;
+        byte[] walls = new byte[size * size];
+        for (int i = 0; i < walls.length; i++) {
+            walls[i] = (byte)(random.nextInt(8) == 0 ? 1 : 0);
+        }
+        APAGridRaycaster raycaster = new APAGridRaycaster(walls, size, size);
+        APAVisibilityCache cache = new APAVisibilityCache(raycaster, 256);
+        // A few fixed sources and targets, like caves and heroes, so that
+        // results get reused
+        int[] sources = new int[24];
+        int[] targets = new int[64];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = random.nextInt(size);
+        }
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = random.nextInt(size);
+        }
+        for (int i = 0; i < 100000; i++) {
+            if (i % 20 == 0) {
+                int x = random.nextInt(size);
+                int y = random.nextInt(size);
+                walls[y * size + x] ^= 1;
+                cache.invalidateCell(x, y);
+            }
+            int s = random.nextInt(sources.length / 2) * 2;
+            int fromX = sources[s];
+            int fromY = sources[s + 1];
+            int t = random.nextInt(targets.length / 2) * 2;
+            int toX = targets[t];
+            int toY = targets[t + 1];
+            boolean expected = raycaster.canSee(fromX + 0.5, fromY + 0.5, toX + 0.5, toY + 0.5);
+            assertEquals(fromX + "," + fromY + " -> " + toX + "," + toY, expected,
+                cache.canSee(fromX, fromY, toX, toY));
+        }
+        assertTrue(cache.getHitCount() > 0);
+    }
+}
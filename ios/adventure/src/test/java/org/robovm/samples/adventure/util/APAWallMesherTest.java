@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 RoboVM AB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.robovm.samples.adventure.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class APAWallMesherTest {
+
+    @Test
+    public void testSmallGrid () {
+        byte[] walls = {
+            1, 1, 0, 1,
+            1, 1, 0, 1,
+            0, 1, 1, 1};
+        List<APAWallMesher.Rect> rects = APAWallMesher.mesh(walls, 4, 3);
+        assertTrue(APAWallMesher.coversExactly(walls, 4, 3, rects));
+        assertEquals(3, rects.size());
+        APAWallMesher.Rect first = rects.get(0);
+        assertEquals(0, first.x);
+        assertEquals(0, first.y);
+        assertEquals(2, first.width);
+        assertEquals(2, first.height);
+    }
+
+    @Test
+    public void testEmptyAndFullGrids () {
+        assertTrue(APAWallMesher.mesh(new byte[12], 4, 3).isEmpty());
+        byte[] full = new byte[12];
+        Arrays.fill(full, (byte)1);
+        List<APAWallMesher.Rect> rects = APAWallMesher.mesh(full, 4, 3);
+        assertEquals(1, rects.size());
+        assertTrue(APAWallMesher.coversExactly(full, 4, 3, rects));
+    }
+
+    @Test
+    public void testCoversExactlyRejects () {
+        byte[] walls = {
+            1, 1,
+            0, 1};
+        List<APAWallMesher.Rect> rects = new ArrayList<>();
+        rects.add(new APAWallMesher.Rect(0, 0, 2, 1));
+        // A wall cell is missing
+        assertFalse(APAWallMesher.coversExactly(walls, 2, 2, rects));
+        rects.add(new APAWallMesher.Rect(1, 1, 1, 1));
+        assertTrue(APAWallMesher.coversExactly(walls, 2, 2, rects));
+        // Overlap
+        rects.add(new APAWallMesher.Rect(1, 0, 1, 2));
+        assertFalse(APAWallMesher.coversExactly(walls, 2, 2, rects));
+        rects.remove(2);
+        // Outside the grid and an open cell
+        rects.add(new APAWallMesher.Rect(1, 1, 1, 2));
+        assertFalse(APAWallMesher.coversExactly(walls, 2, 2, rects));
+        rects.set(2, new APAWallMesher.Rect(0, 1, 1, 1));
+        assertFalse(APAWallMesher.coversExactly(walls, 2, 2, rects));
+    }
+
+    @Test
+    public void testLevelMap () throws IOException {
+        APAPngDecoder.Image map = APAPngDecoder.decode(Files.readAllBytes(new File(APAPngDecoderTest.ENVIRONMENT,
+            "map_level.png").toPath()));
+        // Red above 200 is a wall, as in the scene
+        byte[] walls = new byte[map.width * map.height];
+        int wallCells = 0;
+        for (int i = 0; i < walls.length; i++) {
+            walls[i] = (byte)((map.argb[i * 4 + 1] & 0xff) > 200 ? 1 : 0);
+            wallCells += walls[i];
+        }
+        assertTrue(wallCells > 0);
+        List<APAWallMesher.Rect> rects = APAWallMesher.mesh(walls, map.width, map.height);
+        assertTrue(APAWallMesher.coversExactly(walls, map.width, map.height, rects));
+        assertTrue(rects.size() + " bodies", rects.size() < wallCells / 100);
+    }
+
+    @Test
+    public void testRandomGrids () {
+        Random random = new Random(47);
+        for (int n = 0; n < 2000; n++) {
+            int width = 1 + random.nextInt(64);
+            int height = 1 + random.nextInt(64);
+            double density = random.nextDouble();
+            byte[] walls = new byte[width * height];
+            for (int i = 0; i < walls.length; i++) {
+                walls[i] = (byte)(random.nextDouble() < density ? 1 : 0);
+            }
+            List<APAWallMesher.Rect> rects = APAWallMesher.mesh(walls, width, height);
+            assertTrue(width + "x" + height + " grid " + n, APAWallMesher.coversExactly(walls, width, height, rects));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGridTooSmall () {
+        APAWallMesher.mesh(new byte[5], 2, 3);
+    }
+}